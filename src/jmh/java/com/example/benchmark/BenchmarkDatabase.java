@@ -0,0 +1,37 @@
+package com.example.benchmark;
+
+import com.example.entity.UserEntity;
+import com.example.service.UserManagementServiceImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkDatabase {
+    static final int SEEDED_USER_COUNT = 10_000;
+    private static boolean isSeeded;
+    private static long firstSeededUserId;
+    
+    private BenchmarkDatabase() {}
+    
+    static synchronized void ensureSeeded() {
+        if (isSeeded) {
+            return;
+        }
+        System.setProperty("database.config", "classpath:benchmark-database.properties");
+        List<UserEntity> seedUsers = new ArrayList<>(SEEDED_USER_COUNT);
+        for (int userIndex = 0; userIndex < SEEDED_USER_COUNT; userIndex++) {
+            seedUsers.add(new UserEntity("Benchmark User", seededEmail(userIndex), 18 + userIndex % 60));
+        }
+        List<UserEntity> insertedUsers = new UserManagementServiceImpl().registerUsersInBulk(seedUsers).getInsertedUsers();
+        firstSeededUserId = insertedUsers.get(0).getUserId();
+        isSeeded = true;
+    }
+    
+    static String seededEmail(int userIndex) {
+        return "seed" + userIndex + "@benchmark.example.com";
+    }
+    
+    static long seededUserId(int userIndex) {
+        return firstSeededUserId + userIndex;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+    private static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+    
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder myOptionsBuilder = new OptionsBuilder()
+            .parent(commandLineOptions)
+            .jvmArgsAppend("-Dorg.slf4j.simpleLogger.defaultLogLevel=warn",
+                           "-Dorg.slf4j.simpleLogger.log.com.example=warn");
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            myOptionsBuilder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLineOptions.getResult().hasValue()) {
+            myOptionsBuilder.result(DEFAULT_RESULT_FILE);
+        }
+        new Runner(myOptionsBuilder.build()).run();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.benchmark;
+
+import com.example.config.DatabaseConfigurationManager;
+import com.example.entity.UserEntity;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserEntityHydrationBenchmark {
+    @Param({"10", "100", "1000"})
+    public int hydratedUserCount;
+    
+    @Setup(Level.Trial)
+    public void prepareDatabase() {
+        BenchmarkDatabase.ensureSeeded();
+    }
+    
+    @Benchmark
+    public List<UserEntity> hydrateManagedEntities() {
+        try (Session mySession = DatabaseConfigurationManager.getDatabaseSession()) {
+            mySession.setCacheMode(CacheMode.IGNORE);
+            return mySession.createNamedQuery("UserEntity.findUsersAfterId", UserEntity.class)
+                .setParameter("afterUserId", 0L)
+                .setMaxResults(hydratedUserCount)
+                .getResultList();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.benchmark;
+
+import com.example.entity.UserEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserEntityIdentityBenchmark {
+    @Param({"10000", "100000"})
+    public int indexedUserCount;
+    
+    private UserEntity[] myUsers;
+    private LegacyIdentityKey[] myLegacyKeys;
+    
+    @Setup(Level.Trial)
+    public void prepareUsers() {
+        LocalDateTime createdAt = LocalDateTime.now();
+        myUsers = new UserEntity[indexedUserCount];
+        myLegacyKeys = new LegacyIdentityKey[indexedUserCount];
+        for (int userIndex = 0; userIndex < indexedUserCount; userIndex++) {
+            UserEntity myUser = new UserEntity("Benchmark User", BenchmarkDatabase.seededEmail(userIndex), 18 + userIndex % 60);
+            myUser.setUserId((long) userIndex + 1);
+            myUser.setUserCreatedAt(createdAt);
+            myUsers[userIndex] = myUser;
+            myLegacyKeys[userIndex] = new LegacyIdentityKey(myUser.getUserId(), myUser.getUserEmail());
+        }
+        // Hash codes of the email strings are cached after the first pass, as they are for entities loaded in a session
+        buildUserSet();
+    }
+    
+    @Benchmark
+    public Set<UserEntity> buildUserSet() {
+        Set<UserEntity> userSet = new HashSet<>(indexedUserCount * 2);
+        for (UserEntity myUser : myUsers) {
+            userSet.add(myUser);
+        }
+        return userSet;
+    }
+    
+    @Benchmark
+    public Map<UserEntity, Long> buildUserMap() {
+        Map<UserEntity, Long> userMap = new HashMap<>(indexedUserCount * 2);
+        for (UserEntity myUser : myUsers) {
+            userMap.put(myUser, myUser.getUserId());
+        }
+        return userMap;
+    }
+    
+    @Benchmark
+    public Set<LegacyIdentityKey> buildLegacyKeySet() {
+        Set<LegacyIdentityKey> keySet = new HashSet<>(indexedUserCount * 2);
+        for (LegacyIdentityKey legacyKey : myLegacyKeys) {
+            keySet.add(legacyKey);
+        }
+        return keySet;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public int renderUsers() {
+        int renderedLength = 0;
+        for (int userIndex = 0; userIndex < 1000; userIndex++) {
+            renderedLength += myUsers[userIndex].toString().length();
+        }
+        return renderedLength;
+    }
+    
+    // The previous UserEntity identity (id plus email through Objects.hash), kept as the baseline
+    public static final class LegacyIdentityKey {
+        private final Long userId;
+        private final String userEmail;
+        
+        LegacyIdentityKey(Long userId, String userEmail) {
+            this.userId = userId;
+            this.userEmail = userEmail;
+        }
+        
+        @Override
+        public boolean equals(Object myObject) {
+            if (this == myObject) return true;
+            if (!(myObject instanceof LegacyIdentityKey)) return false;
+            LegacyIdentityKey thatKey = (LegacyIdentityKey) myObject;
+            return Objects.equals(userId, thatKey.userId) && Objects.equals(userEmail, thatKey.userEmail);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, userEmail);
+        }
+    }
+}
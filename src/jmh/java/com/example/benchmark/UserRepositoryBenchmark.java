@@ -0,0 +1,61 @@
+package com.example.benchmark;
+
+import com.example.entity.UserEntity;
+import com.example.repository.UserRepositoryImplementation;
+import com.example.repository.UserRepositoryInterface;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserRepositoryBenchmark {
+    private final AtomicLong insertedUserCounter = new AtomicLong();
+    private UserRepositoryInterface myUserRepository;
+    
+    @Setup(Level.Trial)
+    public void prepareRepository() {
+        BenchmarkDatabase.ensureSeeded();
+        myUserRepository = new UserRepositoryImplementation();
+    }
+    
+    @Benchmark
+    public Optional<UserEntity> findUserById() {
+        int userIndex = ThreadLocalRandom.current().nextInt(BenchmarkDatabase.SEEDED_USER_COUNT);
+        return myUserRepository.findUserById(BenchmarkDatabase.seededUserId(userIndex));
+    }
+    
+    @Benchmark
+    public Optional<UserEntity> findUserByEmailAddress() {
+        int userIndex = ThreadLocalRandom.current().nextInt(BenchmarkDatabase.SEEDED_USER_COUNT);
+        return myUserRepository.findUserByEmailAddress(BenchmarkDatabase.seededEmail(userIndex));
+    }
+    
+    @Benchmark
+    public boolean checkIfEmailExists() {
+        int userIndex = ThreadLocalRandom.current().nextInt(BenchmarkDatabase.SEEDED_USER_COUNT);
+        return myUserRepository.checkIfEmailExists(BenchmarkDatabase.seededEmail(userIndex));
+    }
+    
+    @Benchmark
+    public List<UserEntity> retrieveUsersPage() {
+        int userIndex = ThreadLocalRandom.current().nextInt(BenchmarkDatabase.SEEDED_USER_COUNT - 100);
+        return myUserRepository.retrieveUsersPage(BenchmarkDatabase.seededUserId(userIndex), 100);
+    }
+    
+    @Benchmark
+    public boolean insertThenRemoveUser() {
+        UserEntity newUser = new UserEntity("Insert Benchmark", 
+            "insert" + insertedUserCounter.incrementAndGet() + "@benchmark.example.com", 30);
+        myUserRepository.MyInsertNewUser(newUser);
+        return myUserRepository.removeUserById(newUser.getUserId());
+    }
+}
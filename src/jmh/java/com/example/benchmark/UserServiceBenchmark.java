@@ -0,0 +1,39 @@
+package com.example.benchmark;
+
+import com.example.entity.UserEntity;
+import com.example.service.UserManagementServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserServiceBenchmark {
+    private final AtomicLong registeredUserCounter = new AtomicLong();
+    private UserManagementServiceImpl myUserService;
+    
+    @Setup(Level.Trial)
+    public void prepareService() {
+        BenchmarkDatabase.ensureSeeded();
+        myUserService = new UserManagementServiceImpl();
+    }
+    
+    @Benchmark
+    public UserEntity registerNewUser() {
+        return myUserService.registerNewUser("Сервис Бенчмарк", 
+            "register" + registeredUserCounter.incrementAndGet() + "@benchmark.example.com", 35);
+    }
+    
+    @Benchmark
+    public UserEntity modifyUserData() {
+        ThreadLocalRandom myRandom = ThreadLocalRandom.current();
+        int userIndex = myRandom.nextInt(BenchmarkDatabase.SEEDED_USER_COUNT);
+        return myUserService.modifyUserData(BenchmarkDatabase.seededUserId(userIndex), null, null, 18 + myRandom.nextInt(80));
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.benchmark;
+
+import com.example.util.ValidationUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+    @State(Scope.Benchmark)
+    public static class EmailCandidates {
+        @Param({"ivan.petrov@example.com", "not-an-email@", "a@b.c"})
+        public String emailCandidate;
+    }
+    
+    @State(Scope.Benchmark)
+    public static class NameCandidates {
+        @Param({"Иван Петров-Сидоров", "J", "John42"})
+        public String nameCandidate;
+    }
+    
+    @Benchmark
+    public boolean validateEmail(EmailCandidates emailCandidates) {
+        return ValidationUtils.isValidEmail(emailCandidates.emailCandidate);
+    }
+    
+    @Benchmark
+    public boolean validateName(NameCandidates nameCandidates) {
+        return ValidationUtils.isValidName(nameCandidates.nameCandidate);
+    }
+}
@@ -1,23 +1,37 @@
 package com.example;
 
+import com.example.batch.BatchCommandRunner;
 import com.example.entity.UserEntity;
 import com.example.service.UserManagementServiceImpl;
 import com.example.config.DatabaseConfigurationManager;
+import com.example.config.ShardRegistry;
+import com.example.metrics.MetricsRegistry;
+import com.example.repository.UserRepositoryFactory;
+import com.example.repository.UserSearchCriteria;
+import com.example.repository.UserSummary;
+import com.example.transfer.TransferFormat;
+import com.example.transfer.TransferReport;
+import com.example.transfer.UserDataExporter;
+import com.example.transfer.UserDataImporter;
 import com.example.util.ValidationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
 
 public class ApplicationMain {
     private static final Logger myLoggerInstance = LoggerFactory.getLogger(ApplicationMain.class);
+    private static final int SEARCH_PAGE_SIZE = 20;
     private final UserManagementServiceImpl myUserServiceInstance;
     private final Scanner myScannerInstance;
     
     public ApplicationMain() {
-        this.myUserServiceInstance = new UserManagementServiceImpl();
+        this.myUserServiceInstance = UserManagementServiceImpl.createConfiguredService();
         this.myScannerInstance = new Scanner(System.in);
     }
     
@@ -37,6 +51,10 @@ public class ApplicationMain {
                 case "4" -> editUserOperationWithValidation();
                 case "5" -> deleteUserOperation();
                 case "6" -> searchUserByEmailOperation();
+                case "7" -> displayMetricsOperation();
+                case "8" -> exportUsersOperation();
+                case "9" -> importUsersOperation();
+                case "10" -> searchUsersByFiltersOperation();
                 case "0" -> isApplicationRunning = false;
                 default -> System.out.println("Неверная опция. Пожалуйста, попробуйте снова.");
             }
@@ -64,6 +82,10 @@ public class ApplicationMain {
         System.out.println("4. Редактировать пользователя");
         System.out.println("5. Удалить пользователя");
         System.out.println("6. Найти пользователя по Email");
+        System.out.println("7. Показать метрики производительности");
+        System.out.println("8. Экспорт пользователей в файл (CSV/JSON)");
+        System.out.println("9. Импорт пользователей из файла (CSV/JSON)");
+        System.out.println("10. Поиск пользователей по фильтрам");
         System.out.println("0. Выход");
         System.out.print("Выберите опцию: ");
     }
@@ -172,23 +194,14 @@ public class ApplicationMain {
     private void listAllUsersOperation() {
         System.out.println("\n--- Все зарегистрированные пользователи ---");
         try {
-            List<UserEntity> usersList = myUserServiceInstance.getAllUsersList();
-            if (usersList.isEmpty()) {
+            System.out.printf("%-5s %-20s %-25s %-5s %-20s%n", 
+                "ID", "Имя", "Email", "Возраст", "Дата регистрации");
+            System.out.println("-".repeat(80));
+            long usersCount = myUserServiceInstance.processAllUserSummaries(this::printUserSummary);
+            if (usersCount == 0) {
                 System.out.println("Пользователи не найдены.");
             } else {
-                System.out.printf("%-5s %-20s %-25s %-5s %-20s%n", 
-                    "ID", "Имя", "Email", "Возраст", "Дата регистрации");
-                System.out.println("-".repeat(80));
-                for (UserEntity user : usersList) {
-                    System.out.printf("%-5d %-20s %-25s %-5d %-20s%n",
-                        user.getUserId(),
-                        user.getUserName().length() > 18 ? user.getUserName().substring(0, 15) + "..." : user.getUserName(),
-                        user.getUserEmail().length() > 23 ? user.getUserEmail().substring(0, 20) + "..." : user.getUserEmail(),
-                        user.getUserAge(),
-                        user.getUserCreatedAt().toLocalDate()
-                    );
-                }
-                System.out.println("Всего пользователей: " + usersList.size());
+                System.out.println("Всего пользователей: " + usersCount);
             }
         } catch (Exception myException) {
             System.out.println("Ошибка при получении пользователей: " + myException.getMessage());
@@ -196,6 +209,16 @@ public class ApplicationMain {
         }
     }
     
+    private void printUserSummary(UserSummary user) {
+        System.out.printf("%-5d %-20s %-25s %-5d %-20s%n",
+            user.userId(),
+            user.userName().length() > 18 ? user.userName().substring(0, 15) + "..." : user.userName(),
+            user.userEmail().length() > 23 ? user.userEmail().substring(0, 20) + "..." : user.userEmail(),
+            user.userAge(),
+            user.userCreatedAt().toLocalDate()
+        );
+    }
+    
     private void editUserOperationWithValidation() {
         System.out.println("\n--- Редактирование пользователя ---");
         
@@ -367,6 +390,140 @@ public class ApplicationMain {
         }
     }
     
+    private void searchUsersByFiltersOperation() {
+        System.out.println("\n--- Поиск пользователей по фильтрам (Enter - без фильтра) ---");
+        try {
+            System.out.print("Начало имени: ");
+            String namePrefixInput = myScannerInstance.nextLine().trim();
+            System.out.print("Начало email: ");
+            String emailPrefixInput = myScannerInstance.nextLine().trim();
+            System.out.print("Возраст (например 20-30): ");
+            String ageRangeInput = myScannerInstance.nextLine().trim();
+            System.out.print("Зарегистрирован с (ГГГГ-ММ-ДД): ");
+            String createdFromInput = myScannerInstance.nextLine().trim();
+            System.out.print("Зарегистрирован по (ГГГГ-ММ-ДД): ");
+            String createdToInput = myScannerInstance.nextLine().trim();
+            
+            Integer minimumAge = null;
+            Integer maximumAge = null;
+            if (!ageRangeInput.isEmpty()) {
+                String[] ageBounds = ageRangeInput.split("-", -1);
+                minimumAge = ageBounds[0].isBlank() ? null : Integer.parseInt(ageBounds[0].trim());
+                maximumAge = ageBounds.length < 2 ? minimumAge : ageBounds[1].isBlank() ? null : Integer.parseInt(ageBounds[1].trim());
+            }
+            UserSearchCriteria searchCriteria = UserSearchCriteria.builder()
+                .withNamePrefix(namePrefixInput)
+                .withEmailPrefix(emailPrefixInput)
+                .withAgeBetween(minimumAge, maximumAge)
+                .withCreatedBetween(createdFromInput.isEmpty() ? null : LocalDate.parse(createdFromInput).atStartOfDay(),
+                    createdToInput.isEmpty() ? null : LocalDate.parse(createdToInput).plusDays(1).atStartOfDay())
+                .withPageSize(SEARCH_PAGE_SIZE)
+                .build();
+            
+            long shownUsers = 0;
+            while (true) {
+                List<UserSummary> foundUsers = myUserServiceInstance.searchUserSummaries(searchCriteria);
+                foundUsers.forEach(this::printUserSummary);
+                shownUsers += foundUsers.size();
+                if (foundUsers.size() < SEARCH_PAGE_SIZE) {
+                    break;
+                }
+                System.out.print("Enter - следующая страница, 'отмена' - выход: ");
+                if (myScannerInstance.nextLine().trim().equalsIgnoreCase("отмена")) {
+                    break;
+                }
+                searchCriteria = searchCriteria.nextPage(foundUsers.get(foundUsers.size() - 1).userId());
+            }
+            System.out.println(shownUsers == 0 ? "Пользователи не найдены." : "Показано пользователей: " + shownUsers);
+        } catch (NumberFormatException e) {
+            System.out.println("Ошибка: возраст должен быть числом");
+        } catch (DateTimeParseException e) {
+            System.out.println("Ошибка: дата должна быть в формате ГГГГ-ММ-ДД");
+        } catch (Exception myException) {
+            System.out.println("Ошибка: " + myException.getMessage());
+        }
+    }
+    
+    private void displayMetricsOperation() {
+        System.out.println("\n--- Метрики производительности ---");
+        if (!MetricsRegistry.isEnabled()) {
+            System.out.println("Сбор метрик отключен (-Dmetrics.enabled=false).");
+            return;
+        }
+        try {
+            System.out.print(MetricsRegistry.getInstance().dumpMetrics());
+        } catch (Exception myException) {
+            System.out.println("Ошибка при получении метрик: " + myException.getMessage());
+        }
+    }
+    
+    private void exportUsersOperation() {
+        System.out.println("\n--- Экспорт пользователей ---");
+        System.out.print("Введите путь к файлу (.csv или .jsonl, или 'отмена' для выхода): ");
+        String pathInput = myScannerInstance.nextLine().trim();
+        if (pathInput.isEmpty() || pathInput.equalsIgnoreCase("отмена")) {
+            System.out.println("Операция отменена.");
+            return;
+        }
+        runExport(Path.of(pathInput));
+    }
+    
+    private void importUsersOperation() {
+        System.out.println("\n--- Импорт пользователей ---");
+        System.out.print("Введите путь к файлу (.csv или .jsonl, или 'отмена' для выхода): ");
+        String pathInput = myScannerInstance.nextLine().trim();
+        if (pathInput.isEmpty() || pathInput.equalsIgnoreCase("отмена")) {
+            System.out.println("Операция отменена.");
+            return;
+        }
+        runImport(Path.of(pathInput));
+    }
+    
+    private static boolean runExport(Path exportFile) {
+        try {
+            TransferReport exportReport = new UserDataExporter(UserRepositoryFactory.createConfiguredRepository())
+                .exportUsers(exportFile, TransferFormat.fromPath(exportFile), System.out::println);
+            System.out.println("Экспорт завершен: " + exportReport);
+            return true;
+        } catch (Exception myException) {
+            System.out.println("Ошибка экспорта: " + myException.getMessage());
+            return false;
+        }
+    }
+    
+    private static boolean runImport(Path importFile) {
+        try {
+            TransferReport importReport = new UserDataImporter(UserRepositoryFactory.createConfiguredRepository())
+                .importUsers(importFile, System.out::println);
+            System.out.println("Импорт завершен: " + importReport);
+            if (importReport.getRejectedRowsFile() != null) {
+                System.out.println("Отклоненные строки: " + importReport.getRejectedRowsFile());
+            }
+            return true;
+        } catch (Exception myException) {
+            System.out.println("Ошибка импорта: " + myException.getMessage());
+            return false;
+        }
+    }
+    
+    // Standalone runs are only safe while no other process writes users, see ShardRebalancer
+    private static boolean runShardRebalance() {
+        try {
+            ShardRegistry shardRegistry = DatabaseConfigurationManager.getShardRegistry();
+            if (shardRegistry == null) {
+                System.out.println("Шардирование не настроено: добавьте shard.1.url в настройки базы данных");
+                return false;
+            }
+            int movedBuckets = shardRegistry.getShardRebalancer().rebalance();
+            System.out.println("Перебалансировка завершена, перенесено корзин: " + movedBuckets + " (" 
+                + shardRegistry.getShardRebalancer() + ")");
+            return true;
+        } catch (Exception myException) {
+            System.out.println("Ошибка перебалансировки: " + myException.getMessage());
+            return false;
+        }
+    }
+    
     private void shutdownApplication() {
         System.out.println("\nЗавершение работы приложения...");
         DatabaseConfigurationManager.shutdownDatabase();
@@ -376,6 +533,30 @@ public class ApplicationMain {
     }
     
     public static void main(String[] args) {
+        // Hibernate bootstrap runs in the background while the menu is shown; the first database call waits for it
+        DatabaseConfigurationManager.startAsync();
+        if (args.length == 2 && (args[0].equals("export") || args[0].equals("import"))) {
+            boolean isSuccessful = args[0].equals("export") ? runExport(Path.of(args[1])) : runImport(Path.of(args[1]));
+            DatabaseConfigurationManager.shutdownDatabase();
+            System.exit(isSuccessful ? 0 : 1);
+        }
+        if (args.length == 1 && args[0].equals("--rebalance-shards")) {
+            boolean isSuccessful = runShardRebalance();
+            DatabaseConfigurationManager.shutdownDatabase();
+            System.exit(isSuccessful ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            int exitCode;
+            try {
+                exitCode = BatchCommandRunner.runFromArguments(args);
+            } catch (RuntimeException myException) {
+                myLoggerInstance.error("Batch run failed: {}", myException.getMessage(), myException);
+                System.err.println("Ошибка пакетного режима: " + myException.getMessage());
+                exitCode = 1;
+            }
+            DatabaseConfigurationManager.shutdownDatabase();
+            System.exit(exitCode);
+        }
         ApplicationMain myApplication = new ApplicationMain();
         try {
             myApplication.executeApplication();
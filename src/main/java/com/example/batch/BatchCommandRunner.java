@@ -0,0 +1,346 @@
+package com.example.batch;
+
+import com.example.config.DatabaseConfigurationManager;
+import com.example.entity.UserEntity;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.OperationMetrics;
+import com.example.repository.BulkInsertResult;
+import com.example.service.AsyncUserManagementService;
+import com.example.service.UserManagementServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// Reads one command per line and drives them through the async service facade, so the CLI doubles as a load driver.
+// Consecutive "add" lines are grouped into one bulk registration; everything else runs one command per operation.
+public class BatchCommandRunner {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(BatchCommandRunner.class);
+    private static final int OUTPUT_BUFFER_CHARS = 64 * 1024;
+    private static final Duration BATCH_OPERATION_TIMEOUT = Duration.ofMinutes(5);
+    
+    private final int parallelism;
+    private final int groupSize;
+    private final Map<String, OperationMetrics> myCommandMetrics = new LinkedHashMap<>();
+    private final LongAdder failedCommands = new LongAdder();
+    private Semaphore myInFlightPermits;
+    private AsyncUserManagementService myAsyncUserService;
+    private Writer myResultWriter;
+    
+    public BatchCommandRunner(int parallelism, int groupSize) {
+        if (parallelism <= 0 || groupSize <= 0) {
+            throw new IllegalArgumentException("parallelism and groupSize must be positive");
+        }
+        this.parallelism = parallelism;
+        this.groupSize = groupSize;
+        for (String commandName : List.of("add", "get", "find", "update", "delete", "page")) {
+            myCommandMetrics.put(commandName, new OperationMetrics("batch." + commandName));
+        }
+    }
+    
+    // --batch [file|-] [--parallelism N] [--group-size N] [--output file]
+    public static int runFromArguments(String[] args) {
+        String inputPath = "-";
+        String outputPath = null;
+        int parallelism = 1;
+        int groupSize = 100;
+        for (int argIndex = 0; argIndex < args.length; argIndex++) {
+            switch (args[argIndex]) {
+                case "--batch" -> {
+                    if (argIndex + 1 < args.length && !args[argIndex + 1].startsWith("--")) {
+                        inputPath = args[++argIndex];
+                    }
+                }
+                case "--parallelism" -> parallelism = Integer.parseInt(args[++argIndex]);
+                case "--group-size" -> groupSize = Integer.parseInt(args[++argIndex]);
+                case "--output" -> outputPath = args[++argIndex];
+                default -> throw new IllegalArgumentException("Неизвестный аргумент: " + args[argIndex]);
+            }
+        }
+        BatchCommandRunner myRunner = new BatchCommandRunner(parallelism, groupSize);
+        // System.in and System.out are flushed but never closed: the application keeps logging after the run
+        try {
+            Reader commandReader = "-".equals(inputPath) ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Path.of(inputPath), StandardCharsets.UTF_8);
+            Writer resultWriter = outputPath == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Path.of(outputPath), StandardCharsets.UTF_8);
+            try {
+                System.err.print(myRunner.executeCommands(commandReader, resultWriter));
+            } finally {
+                resultWriter.flush();
+                if (outputPath != null) {
+                    resultWriter.close();
+                }
+                if (!"-".equals(inputPath)) {
+                    commandReader.close();
+                }
+            }
+            return myRunner.getFailedCommands() == 0 ? 0 : 2;
+        } catch (IOException myException) {
+            throw new UncheckedIOException(myException);
+        }
+    }
+    
+    public String executeCommands(Reader commandReader, Writer resultWriter) throws IOException {
+        // Bootstrap time would otherwise show up as the latency of the first few commands
+        DatabaseConfigurationManager.initialize();
+        long startNanos = System.nanoTime();
+        // With parallelism 1 every command finishes before the next starts, so scripts keep their written order
+        myInFlightPermits = new Semaphore(parallelism);
+        myResultWriter = new BufferedWriter(resultWriter, OUTPUT_BUFFER_CHARS);
+        long executedCommands = 0;
+        try (AsyncUserManagementService asyncUserService = new AsyncUserManagementService(
+                UserManagementServiceImpl.createConfiguredService(), parallelism, BATCH_OPERATION_TIMEOUT)) {
+            myAsyncUserService = asyncUserService;
+            BufferedReader lineReader = new BufferedReader(commandReader, OUTPUT_BUFFER_CHARS);
+            List<UserEntity> pendingUsers = new ArrayList<>(groupSize);
+            List<Long> pendingLineNumbers = new ArrayList<>(groupSize);
+            String commandLine;
+            long lineNumber = 0;
+            while ((commandLine = lineReader.readLine()) != null) {
+                lineNumber++;
+                String trimmedLine = commandLine.trim();
+                if (trimmedLine.isEmpty() || trimmedLine.startsWith("#")) {
+                    continue;
+                }
+                executedCommands++;
+                int separatorIndex = trimmedLine.indexOf(' ');
+                String commandName = separatorIndex < 0 ? trimmedLine : trimmedLine.substring(0, separatorIndex);
+                String commandArguments = separatorIndex < 0 ? "" : trimmedLine.substring(separatorIndex + 1).trim();
+                if (!"add".equals(commandName) && !pendingUsers.isEmpty()) {
+                    submitAddGroup(pendingUsers, pendingLineNumbers);
+                    pendingUsers = new ArrayList<>(groupSize);
+                    pendingLineNumbers = new ArrayList<>(groupSize);
+                }
+                try {
+                    if ("add".equals(commandName)) {
+                        String[] userFields = splitUserFields(commandArguments);
+                        pendingUsers.add(new UserEntity(userFields[0], userFields[1], parseInteger(userFields[2])));
+                        pendingLineNumbers.add(lineNumber);
+                        if (pendingUsers.size() == groupSize) {
+                            submitAddGroup(pendingUsers, pendingLineNumbers);
+                            pendingUsers = new ArrayList<>(groupSize);
+                            pendingLineNumbers = new ArrayList<>(groupSize);
+                        }
+                    } else {
+                        submitCommand(lineNumber, commandName, commandArguments);
+                    }
+                } catch (IllegalArgumentException myException) {
+                    // Goes through the permits like any other command so its line still comes out in script order
+                    long failedLineNumber = lineNumber;
+                    runLimited(() -> CompletableFuture.failedFuture(myException), (ignoredResult, commandFailure) -> {
+                        failedCommands.increment();
+                        writeResult(failedLineNumber, false, commandFailure.getMessage());
+                    });
+                }
+            }
+            if (!pendingUsers.isEmpty()) {
+                submitAddGroup(pendingUsers, pendingLineNumbers);
+            }
+            myInFlightPermits.acquireUninterruptibly(parallelism);
+            myInFlightPermits.release(parallelism);
+        } finally {
+            myResultWriter.flush();
+        }
+        
+        double elapsedSeconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-3);
+        String runSummary = String.format("Batch finished: %d commands, %d failed, %.1f s, %.0f commands/s%n",
+            executedCommands, getFailedCommands(), elapsedSeconds, executedCommands / elapsedSeconds)
+            + MetricsRegistry.formatOperationTable(myCommandMetrics.values(), elapsedSeconds);
+        myLoggerInstance.info("Batch finished: {} commands, {} failed in {} ms", executedCommands, getFailedCommands(),
+            (long) (elapsedSeconds * 1000));
+        return runSummary;
+    }
+    
+    public long getFailedCommands() {
+        return failedCommands.sum();
+    }
+    
+    private void submitCommand(long lineNumber, String commandName, String commandArguments) {
+        OperationMetrics commandMetrics = myCommandMetrics.get(commandName);
+        if (commandMetrics == null) {
+            throw new IllegalArgumentException("Неизвестная команда: " + commandName);
+        }
+        Supplier<CompletableFuture<String>> commandStarter;
+        switch (commandName) {
+            case "get" -> {
+                long userIdValue = parseLong(commandArguments);
+                commandStarter = () -> myAsyncUserService.getUserByIdValue(userIdValue)
+                    .thenApply(foundUser -> describeUser(foundUser, "Пользователь не найден с ID: " + userIdValue));
+            }
+            case "find" -> commandStarter = () -> myAsyncUserService.findUserByEmailString(commandArguments)
+                .thenApply(foundUser -> describeUser(foundUser, "Пользователь не найден с email: " + commandArguments));
+            case "update" -> {
+                int separatorIndex = commandArguments.indexOf(' ');
+                if (separatorIndex < 0) {
+                    throw new IllegalArgumentException("Формат: update <id> <имя>,<email>,<возраст>");
+                }
+                long userIdValue = parseLong(commandArguments.substring(0, separatorIndex));
+                String[] userFields = splitUserFields(commandArguments.substring(separatorIndex + 1));
+                Integer userAge = userFields[2].isBlank() ? null : parseInteger(userFields[2]);
+                commandStarter = () -> myAsyncUserService.modifyUserData(userIdValue, emptyToNull(userFields[0]),
+                    emptyToNull(userFields[1]), userAge).thenApply(BatchCommandRunner::formatUser);
+            }
+            case "delete" -> {
+                long userIdValue = parseLong(commandArguments);
+                commandStarter = () -> myAsyncUserService.deleteUserById(userIdValue).thenApply(isDeleted -> {
+                    if (!isDeleted) {
+                        throw new IllegalArgumentException("Пользователь не найден с ID: " + userIdValue);
+                    }
+                    return "deleted " + userIdValue;
+                });
+            }
+            default -> {
+                String[] pageArguments = commandArguments.isEmpty() ? new String[0] : commandArguments.split("\\s+");
+                long afterUserId = pageArguments.length > 0 ? parseLong(pageArguments[0]) : 0L;
+                int pageSize = pageArguments.length > 1 ? parseInteger(pageArguments[1]) : 100;
+                commandStarter = () -> myAsyncUserService.getUsersPage(afterUserId, pageSize)
+                    .thenApply(BatchCommandRunner::formatUsers);
+            }
+        }
+        long startNanos = System.nanoTime();
+        runLimited(commandStarter, (resultText, commandFailure) -> {
+            if (commandFailure == null) {
+                commandMetrics.recordSuccess(System.nanoTime() - startNanos);
+                writeResult(lineNumber, true, resultText);
+            } else {
+                commandMetrics.recordFailure(System.nanoTime() - startNanos, commandFailure);
+                failedCommands.increment();
+                writeResult(lineNumber, false, commandFailure.getMessage());
+            }
+        });
+    }
+    
+    private void submitAddGroup(List<UserEntity> pendingUsers, List<Long> pendingLineNumbers) {
+        OperationMetrics addMetrics = myCommandMetrics.get("add");
+        Map<UserEntity, Long> userLineNumbers = new IdentityHashMap<>(pendingUsers.size() * 2);
+        for (int userIndex = 0; userIndex < pendingUsers.size(); userIndex++) {
+            userLineNumbers.put(pendingUsers.get(userIndex), pendingLineNumbers.get(userIndex));
+        }
+        long startNanos = System.nanoTime();
+        runLimited(() -> myAsyncUserService.registerUsersInBulk(pendingUsers), (bulkResult, bulkFailure) -> {
+            // Every add in the group waited for the same bulk call, so each gets that call's latency
+            long elapsedNanos = System.nanoTime() - startNanos;
+            if (bulkFailure != null) {
+                for (Long lineNumber : pendingLineNumbers) {
+                    addMetrics.recordFailure(elapsedNanos, bulkFailure);
+                    failedCommands.increment();
+                    writeResult(lineNumber, false, bulkFailure.getMessage());
+                }
+                return;
+            }
+            for (UserEntity insertedUser : bulkResult.getInsertedUsers()) {
+                addMetrics.recordSuccess(elapsedNanos);
+                writeResult(userLineNumbers.get(insertedUser), true, "added " + insertedUser.getUserId());
+            }
+            for (BulkInsertResult.RejectedUser rejectedUser : bulkResult.getRejectedUsers()) {
+                addMetrics.recordFailure(elapsedNanos, new IllegalArgumentException(rejectedUser.getRejectionReason()));
+                failedCommands.increment();
+                writeResult(pendingLineNumbers.get(rejectedUser.getInputPosition()), false, rejectedUser.getRejectionReason());
+            }
+        });
+    }
+    
+    // Bounds in-flight commands so a huge script is streamed, not buffered as millions of pending futures.
+    // The permit is returned only after the result is written, so waiting for all permits means all output is out.
+    private <T> void runLimited(Supplier<CompletableFuture<T>> commandStarter, BiConsumer<T, Throwable> resultHandler) {
+        myInFlightPermits.acquireUninterruptibly();
+        CompletableFuture<T> commandResult;
+        try {
+            commandResult = commandStarter.get();
+        } catch (RuntimeException myException) {
+            myInFlightPermits.release();
+            throw myException;
+        }
+        commandResult.whenComplete((resultValue, commandFailure) -> {
+            try {
+                resultHandler.accept(resultValue, commandFailure instanceof CompletionException 
+                    && commandFailure.getCause() != null ? commandFailure.getCause() : commandFailure);
+            } finally {
+                myInFlightPermits.release();
+            }
+        });
+    }
+    
+    private synchronized void writeResult(long lineNumber, boolean isSuccessful, String resultText) {
+        try {
+            myResultWriter.write(Long.toString(lineNumber));
+            myResultWriter.write(isSuccessful ? "\tOK\t" : "\tERROR\t");
+            myResultWriter.write(resultText == null ? "" : resultText);
+            myResultWriter.write('\n');
+        } catch (IOException myException) {
+            throw new UncheckedIOException(myException);
+        }
+    }
+    
+    private static String describeUser(Optional<UserEntity> foundUser, String notFoundMessage) {
+        return foundUser.map(BatchCommandRunner::formatUser).orElseThrow(() -> new IllegalArgumentException(notFoundMessage));
+    }
+    
+    private static String formatUser(UserEntity myUserEntity) {
+        return myUserEntity.getUserId() + "," + myUserEntity.getUserName() + "," + myUserEntity.getUserEmail() + ","
+            + myUserEntity.getUserAge() + "," + myUserEntity.getVersionNumber();
+    }
+    
+    private static String formatUsers(List<UserEntity> foundUsers) {
+        StringBuilder usersText = new StringBuilder(foundUsers.size() * 48).append(foundUsers.size()).append(" users");
+        for (UserEntity foundUser : foundUsers) {
+            usersText.append(';').append(formatUser(foundUser));
+        }
+        return usersText.toString();
+    }
+    
+    private static String[] splitUserFields(String commandArguments) {
+        String[] userFields = commandArguments.split(",", -1);
+        if (userFields.length != 3) {
+            throw new IllegalArgumentException("Ожидалось <имя>,<email>,<возраст>: " + commandArguments);
+        }
+        for (int fieldIndex = 0; fieldIndex < userFields.length; fieldIndex++) {
+            userFields[fieldIndex] = userFields[fieldIndex].trim();
+        }
+        return userFields;
+    }
+    
+    private static String emptyToNull(String fieldValue) {
+        return fieldValue.isEmpty() ? null : fieldValue;
+    }
+    
+    private static long parseLong(String numberText) {
+        try {
+            return Long.parseLong(numberText.trim());
+        } catch (NumberFormatException myException) {
+            throw new IllegalArgumentException("ID должен быть числом: " + numberText);
+        }
+    }
+    
+    private static int parseInteger(String numberText) {
+        try {
+            return Integer.parseInt(numberText.trim());
+        } catch (NumberFormatException myException) {
+            throw new IllegalArgumentException("Ожидалось число: " + numberText);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.cdc;
+
+import com.example.entity.UserChangeRecord;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Moves committed outbox records of one database to the sinks in changeId order and remembers how far it got in
+// user_change_checkpoints, so a restarted relay continues where it stopped. Delivery is at least once: records published
+// before a crash but after the last checkpoint are published again.
+class ChangeFeedRelay {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(ChangeFeedRelay.class);
+    private static final int BATCH_SIZE = Integer.getInteger("cdc.relay.batch-size", 500);
+    private static final long GAP_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("cdc.relay.gap-timeout-ms", 10_000));
+    private static final boolean PRUNE_ENABLED = Boolean.parseBoolean(System.getProperty("cdc.relay.prune", "true"));
+    private static final int MAX_LOGGED_LATE_CHANGES = 20;
+    private static final String SNAPSHOT_XMIN_SQL = "SELECT txid_snapshot_xmin(txid_current_snapshot())";
+    private static final String SNAPSHOT_XMAX_SQL = "SELECT txid_snapshot_xmax(txid_current_snapshot())";
+    private static final String CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS user_change_checkpoints "
+        + "(relay_name VARCHAR(100) PRIMARY KEY, last_change_id BIGINT NOT NULL)";
+    
+    private final String myRelayName;
+    private final SessionFactory mySessionFactory;
+    private final List<UserChangeSink> myChangeSinks;
+    private final LongAdder publishedRecords = new LongAdder();
+    private final LongAdder publishedBatches = new LongAdder();
+    private final LongAdder skippedGaps = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder lateChanges = new LongAdder();
+    private final boolean isSnapshotSupported;
+    private final long startupChangeId;
+    private volatile long checkpointChangeId;
+    private long gapFirstSeenNanos;
+    private long gapWarnedNanos;
+    private long gapTransactionHorizon;
+    private volatile String lastFailure;
+    
+    ChangeFeedRelay(String myRelayName, SessionFactory mySessionFactory, List<UserChangeSink> myChangeSinks) {
+        this.myRelayName = myRelayName;
+        this.mySessionFactory = mySessionFactory;
+        this.myChangeSinks = List.copyOf(myChangeSinks);
+        this.checkpointChangeId = loadCheckpoint();
+        this.startupChangeId = checkpointChangeId;
+        this.isSnapshotSupported = detectSnapshotSupport();
+        myLoggerInstance.info("Change feed relay '{}' resumes after change {}", myRelayName, checkpointChangeId);
+        if (!isSnapshotSupported) {
+            myLoggerInstance.warn("Change feed relay '{}' cannot see running transactions on this database; it treats a gap "
+                + "as rolled back after {} ms, which must exceed the longest writer transaction", myRelayName,
+                TimeUnit.NANOSECONDS.toMillis(GAP_TIMEOUT_NANOS));
+        }
+    }
+    
+    // Returns the number of records published; 0 when there was nothing to do, a gap is still open or a sink failed
+    int pollOnce() {
+        // Checked before reading, so a change committed by one of the awaited transactions is visible to the read below
+        boolean isGapSettled = gapFirstSeenNanos != 0 && isGapSettled();
+        List<UserChangeRecord> pendingRecords = UserChangeOutbox.readAfter(mySessionFactory, checkpointChangeId, BATCH_SIZE);
+        if (pendingRecords.isEmpty()) {
+            gapFirstSeenNanos = 0;
+            return 0;
+        }
+        // Ids are taken at insert time but become visible at commit, so a missing id may belong to a transaction that is
+        // still running. Only the gap-free prefix is published; a gap is skipped as a rollback only once every transaction
+        // that was running when it appeared has ended (on databases that cannot tell, once it outlives the timeout).
+        int contiguousCount = 0;
+        long expectedChangeId = checkpointChangeId + 1;
+        while (contiguousCount < pendingRecords.size() && pendingRecords.get(contiguousCount).getChangeId() == expectedChangeId) {
+            contiguousCount++;
+            expectedChangeId++;
+        }
+        if (contiguousCount == 0) {
+            long nowNanos = System.nanoTime();
+            if (gapFirstSeenNanos == 0) {
+                gapFirstSeenNanos = nowNanos;
+                gapWarnedNanos = nowNanos;
+                // A writer holding a missing id already had a transaction id when the gap was read
+                gapTransactionHorizon = isSnapshotSupported ? readSnapshotBound(SNAPSHOT_XMAX_SQL) : 0;
+                return 0;
+            }
+            long nextChangeId = pendingRecords.get(0).getChangeId();
+            if (!isGapSettled) {
+                if (nowNanos - gapWarnedNanos >= GAP_TIMEOUT_NANOS) {
+                    gapWarnedNanos = nowNanos;
+                    myLoggerInstance.warn("Change feed relay '{}' still waits for changes {}..{}: transactions older than "
+                        + "transaction id {} are running", myRelayName, checkpointChangeId + 1, nextChangeId - 1, gapTransactionHorizon);
+                }
+                return 0;
+            }
+            myLoggerInstance.warn("Change feed relay '{}' skips missing changes {}..{} as rolled back after waiting {} ms", 
+                myRelayName, checkpointChangeId + 1, nextChangeId - 1, TimeUnit.NANOSECONDS.toMillis(nowNanos - gapFirstSeenNanos));
+            skippedGaps.increment();
+            contiguousCount = 1;
+            while (contiguousCount < pendingRecords.size() 
+                    && pendingRecords.get(contiguousCount).getChangeId() == nextChangeId + contiguousCount) {
+                contiguousCount++;
+            }
+        }
+        gapFirstSeenNanos = 0;
+        List<UserChangeRecord> changeBatch = pendingRecords.subList(0, contiguousCount);
+        for (UserChangeSink changeSink : myChangeSinks) {
+            try {
+                changeSink.publish(changeBatch);
+            } catch (IOException | RuntimeException myException) {
+                failedBatches.increment();
+                lastFailure = changeSink.getSinkName() + ": " + myException.getMessage();
+                myLoggerInstance.error("Change feed relay '{}' could not publish changes {}..{} to {}, retrying: {}", myRelayName,
+                    changeBatch.get(0).getChangeId(), changeBatch.get(contiguousCount - 1).getChangeId(),
+                    changeSink.getSinkName(), myException.getMessage());
+                return 0;
+            }
+        }
+        saveCheckpoint(changeBatch.get(contiguousCount - 1).getChangeId());
+        publishedRecords.add(contiguousCount);
+        publishedBatches.increment();
+        return contiguousCount;
+    }
+    
+    // Publishes until the outbox has nothing more that can be delivered right now
+    void drain() {
+        while (pollOnce() > 0) {
+            // keep going
+        }
+    }
+    
+    void closeSinks() {
+        for (UserChangeSink changeSink : myChangeSinks) {
+            try {
+                changeSink.close();
+            } catch (Exception myException) {
+                myLoggerInstance.error("Could not close change sink {}: {}", changeSink.getSinkName(), myException.getMessage());
+            }
+        }
+    }
+    
+    long getCheckpointChangeId() {
+        return checkpointChangeId;
+    }
+    
+    private boolean isGapSettled() {
+        if (!isSnapshotSupported) {
+            return System.nanoTime() - gapFirstSeenNanos >= GAP_TIMEOUT_NANOS;
+        }
+        return readSnapshotBound(SNAPSHOT_XMIN_SQL) >= gapTransactionHorizon;
+    }
+    
+    private long readSnapshotBound(String snapshotQuery) {
+        try (Session mySession = mySessionFactory.openSession()) {
+            return mySession.doReturningWork(myConnection -> {
+                try (Statement myStatement = myConnection.createStatement();
+                     ResultSet myResults = myStatement.executeQuery(snapshotQuery)) {
+                    myResults.next();
+                    return myResults.getLong(1);
+                }
+            });
+        }
+    }
+    
+    private boolean detectSnapshotSupport() {
+        try (Session mySession = mySessionFactory.openSession()) {
+            return mySession.doReturningWork(myConnection -> myConnection.isWrapperFor(PGConnection.class));
+        }
+    }
+    
+    private long loadCheckpoint() {
+        Transaction myTransaction = null;
+        Session mySession = mySessionFactory.openSession();
+        try {
+            myTransaction = mySession.beginTransaction();
+            long storedChangeId = mySession.doReturningWork(myConnection -> {
+                try (Statement myStatement = myConnection.createStatement()) {
+                    myStatement.execute(CREATE_TABLE_STATEMENT);
+                }
+                try (PreparedStatement myStatement = myConnection.prepareStatement(
+                        "SELECT last_change_id FROM user_change_checkpoints WHERE relay_name = ?")) {
+                    myStatement.setString(1, myRelayName);
+                    try (ResultSet myResults = myStatement.executeQuery()) {
+                        if (myResults.next()) {
+                            return myResults.getLong(1);
+                        }
+                    }
+                }
+                try (PreparedStatement myStatement = myConnection.prepareStatement(
+                        "INSERT INTO user_change_checkpoints (relay_name, last_change_id) VALUES (?, 0)")) {
+                    myStatement.setString(1, myRelayName);
+                    myStatement.executeUpdate();
+                }
+                return 0L;
+            });
+            myTransaction.commit();
+            return storedChangeId;
+        } catch (RuntimeException myException) {
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
+            throw myException;
+        } finally {
+            mySession.close();
+        }
+    }
+    
+    // Guarded by the previous value, so a second relay on the same database fails here instead of moving the checkpoint
+    // back and forth. Published records are pruned in the same transaction, which keeps the outbox small.
+    private void saveCheckpoint(long newChangeId) {
+        long previousChangeId = checkpointChangeId;
+        Transaction myTransaction = null;
+        Session mySession = mySessionFactory.openSession();
+        try {
+            myTransaction = mySession.beginTransaction();
+            int updatedRows = mySession.doReturningWork(myConnection -> {
+                try (PreparedStatement myStatement = myConnection.prepareStatement(
+                        "UPDATE user_change_checkpoints SET last_change_id = ? WHERE relay_name = ? AND last_change_id = ?")) {
+                    myStatement.setLong(1, newChangeId);
+                    myStatement.setString(2, myRelayName);
+                    myStatement.setLong(3, previousChangeId);
+                    return myStatement.executeUpdate();
+                }
+            });
+            if (updatedRows == 0) {
+                throw new IllegalStateException("Checkpoint of change feed relay '" + myRelayName 
+                    + "' was moved by another process; only one relay may run per database");
+            }
+            if (PRUNE_ENABLED) {
+                reportLateChanges(mySession, previousChangeId);
+                mySession.doWork(myConnection -> {
+                    try (PreparedStatement myStatement = myConnection.prepareStatement(
+                            "DELETE FROM user_change_outbox WHERE change_id <= ?")) {
+                        myStatement.setLong(1, newChangeId);
+                        myStatement.executeUpdate();
+                    }
+                });
+            }
+            myTransaction.commit();
+            checkpointChangeId = newChangeId;
+        } catch (RuntimeException myException) {
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
+            throw myException;
+        } finally {
+            mySession.close();
+        }
+    }
+    
+    // Everything up to the previous checkpoint was pruned by this relay, so a record still there committed after the relay
+    // had skipped its id. It is pruned with the rest and never published.
+    private void reportLateChanges(Session mySession, long previousChangeId) {
+        List<Long> lateChangeIds = mySession.doReturningWork(myConnection -> {
+            List<Long> changeIds = new ArrayList<>();
+            try (PreparedStatement myStatement = myConnection.prepareStatement(
+                    "SELECT change_id FROM user_change_outbox WHERE change_id > ? AND change_id <= ? ORDER BY change_id")) {
+                myStatement.setLong(1, startupChangeId);
+                myStatement.setLong(2, previousChangeId);
+                try (ResultSet myResults = myStatement.executeQuery()) {
+                    while (myResults.next()) {
+                        changeIds.add(myResults.getLong(1));
+                    }
+                }
+            }
+            return changeIds;
+        });
+        if (!lateChangeIds.isEmpty()) {
+            lateChanges.add(lateChangeIds.size());
+            myLoggerInstance.error("Change feed relay '{}' LOST {} changes that committed after their gap was skipped: {}",
+                myRelayName, lateChangeIds.size(), lateChangeIds.subList(0, Math.min(lateChangeIds.size(), MAX_LOGGED_LATE_CHANGES)));
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "relay '" + myRelayName + "': checkpoint " + checkpointChangeId + ", published " + publishedRecords.sum() 
+            + " changes in " + publishedBatches.sum() + " batches, gaps skipped " + skippedGaps.sum() + ", late changes lost " 
+            + lateChanges.sum() + ", failed batches " + failedBatches.sum() + (lastFailure == null ? "" : ", last failure " + lastFailure);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.cdc;
+
+import com.example.entity.UserChangeRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Append-only JSON-lines log. A consumer keeps the byte offset returned by readFrom as its cursor, so it can stop and
+// resume anywhere without the relay knowing about it. A line cut short by a crash is truncated when the log is reopened,
+// and records the log already holds are skipped when the relay redelivers them after a missed checkpoint.
+public class FileChangeLogSink implements UserChangeSink {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(FileChangeLogSink.class);
+    private static final int READ_BLOCK_SIZE = 64 * 1024;
+    
+    public record ChangeLogBatch(List<UserChangeRecord> changeRecords, long nextOffset) {}
+    
+    private final Path myLogPath;
+    private final boolean myForceOnPublish;
+    private final FileChannel myLogChannel;
+    private long myLastChangeId;
+    
+    public FileChangeLogSink(Path logPath, boolean forceOnPublish) throws IOException {
+        this.myLogPath = logPath;
+        this.myForceOnPublish = forceOnPublish;
+        Path parentDirectory = logPath.toAbsolutePath().getParent();
+        if (parentDirectory != null) {
+            Files.createDirectories(parentDirectory);
+        }
+        this.myLogChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recoverTail();
+    }
+    
+    @Override
+    public String getSinkName() {
+        return "file:" + myLogPath;
+    }
+    
+    public long getLastChangeId() {
+        return myLastChangeId;
+    }
+    
+    @Override
+    public synchronized void publish(List<UserChangeRecord> changeBatch) throws IOException {
+        StringBuilder batchBuilder = new StringBuilder(changeBatch.size() * 160);
+        long lastWrittenId = myLastChangeId;
+        for (UserChangeRecord changeRecord : changeBatch) {
+            if (changeRecord.getChangeId() > lastWrittenId) {
+                UserChangeJson.appendRecord(changeRecord, batchBuilder);
+                lastWrittenId = changeRecord.getChangeId();
+            }
+        }
+        if (batchBuilder.length() == 0) {
+            return;
+        }
+        ByteBuffer batchBuffer = ByteBuffer.wrap(batchBuilder.toString().getBytes(StandardCharsets.UTF_8));
+        long writePosition = myLogChannel.size();
+        while (batchBuffer.hasRemaining()) {
+            writePosition += myLogChannel.write(batchBuffer, writePosition);
+        }
+        if (myForceOnPublish) {
+            myLogChannel.force(false);
+        }
+        myLastChangeId = lastWrittenId;
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        myLogChannel.force(false);
+        myLogChannel.close();
+    }
+    
+    // Reads at most maxRecords complete lines starting at a line boundary; a partly written last line is left for the
+    // next call. Pass 0 to start from the beginning and the returned nextOffset afterwards.
+    public static ChangeLogBatch readFrom(Path logPath, long startOffset, int maxRecords) throws IOException {
+        List<UserChangeRecord> changeRecords = new ArrayList<>();
+        if (!Files.exists(logPath)) {
+            return new ChangeLogBatch(changeRecords, startOffset);
+        }
+        try (FileChannel readChannel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            ByteBuffer readBuffer = ByteBuffer.allocate(READ_BLOCK_SIZE);
+            long readPosition = startOffset;
+            long lineStartOffset = startOffset;
+            ByteArrayOutputStream lineBytes = new ByteArrayOutputStream(256);
+            while (changeRecords.size() < maxRecords) {
+                readBuffer.clear();
+                int bytesRead = readChannel.read(readBuffer, readPosition);
+                if (bytesRead <= 0) {
+                    break;
+                }
+                readBuffer.flip();
+                while (readBuffer.hasRemaining() && changeRecords.size() < maxRecords) {
+                    byte currentByte = readBuffer.get();
+                    readPosition++;
+                    if (currentByte != '\n') {
+                        lineBytes.write(currentByte);
+                        continue;
+                    }
+                    changeRecords.add(UserChangeJson.parseRecord(lineBytes.toString(StandardCharsets.UTF_8)));
+                    lineBytes.reset();
+                    lineStartOffset = readPosition;
+                }
+            }
+            return new ChangeLogBatch(changeRecords, lineStartOffset);
+        }
+    }
+    
+    private void recoverTail() throws IOException {
+        long logSize = myLogChannel.size();
+        long completeSize = findEndOfLastLine(logSize);
+        if (completeSize < logSize) {
+            myLoggerInstance.warn("Truncating {} incomplete bytes at the end of change log {}", logSize - completeSize, myLogPath);
+            myLogChannel.truncate(completeSize);
+        }
+        if (completeSize == 0) {
+            myLastChangeId = 0;
+            return;
+        }
+        long lastLineStart = findEndOfLastLine(completeSize - 1);
+        ByteBuffer lineBuffer = ByteBuffer.allocate((int) (completeSize - 1 - lastLineStart));
+        while (lineBuffer.hasRemaining()) {
+            if (myLogChannel.read(lineBuffer, lastLineStart + lineBuffer.position()) < 0) {
+                break;
+            }
+        }
+        String lastLine = new String(lineBuffer.array(), 0, lineBuffer.position(), StandardCharsets.UTF_8);
+        myLastChangeId = UserChangeJson.parseRecord(lastLine).getChangeId();
+        myLoggerInstance.info("Change log {} ends at change {}", myLogPath, myLastChangeId);
+    }
+    
+    // Offset just past the last newline before endOffset, or 0 when there is none
+    private long findEndOfLastLine(long endOffset) throws IOException {
+        ByteBuffer scanBuffer = ByteBuffer.allocate(READ_BLOCK_SIZE);
+        long blockEnd = endOffset;
+        while (blockEnd > 0) {
+            long blockStart = Math.max(0, blockEnd - READ_BLOCK_SIZE);
+            scanBuffer.clear().limit((int) (blockEnd - blockStart));
+            while (scanBuffer.hasRemaining()) {
+                if (myLogChannel.read(scanBuffer, blockStart + scanBuffer.position()) < 0) {
+                    break;
+                }
+            }
+            for (int byteIndex = scanBuffer.position() - 1; byteIndex >= 0; byteIndex--) {
+                if (scanBuffer.get(byteIndex) == '\n') {
+                    return blockStart + byteIndex + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return 0;
+    }
+}
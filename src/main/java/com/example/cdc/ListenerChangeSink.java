@@ -0,0 +1,41 @@
+package com.example.cdc;
+
+import com.example.entity.UserChangeRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// In-process delivery. Listeners only see records published after they registered; a listener that throws is
+// logged and skipped, so one faulty consumer cannot hold back the file log or the other listeners.
+class ListenerChangeSink implements UserChangeSink {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(ListenerChangeSink.class);
+    
+    private final List<UserChangeListener> myListeners = new CopyOnWriteArrayList<>();
+    
+    void addListener(UserChangeListener myListener) {
+        myListeners.add(myListener);
+    }
+    
+    void removeListener(UserChangeListener myListener) {
+        myListeners.remove(myListener);
+    }
+    
+    @Override
+    public String getSinkName() {
+        return "listeners";
+    }
+    
+    @Override
+    public void publish(List<UserChangeRecord> changeBatch) {
+        for (UserChangeListener myListener : myListeners) {
+            try {
+                myListener.onChanges(changeBatch);
+            } catch (RuntimeException myException) {
+                myLoggerInstance.error("Change listener {} failed on changes {}..{}: {}", myListener, 
+                    changeBatch.get(0).getChangeId(), changeBatch.get(changeBatch.size() - 1).getChangeId(), myException.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.cdc;
+
+import com.example.config.DatabaseConfigurationManager;
+import com.example.metrics.MetricsRegistry;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Entry point of the change feed: one background thread relays the outbox of the primary, or of every shard, to the
+// file log and to the registered listeners. Changes on different shards are not ordered against each other. A user
+// whose email change moved it to another shard is recorded by the shard it left and continues on the new one, so
+// consumers that need a user's changes in order compare version numbers.
+public final class UserChangeFeed {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(UserChangeFeed.class);
+    private static final boolean RELAY_ENABLED = Boolean.parseBoolean(System.getProperty("cdc.relay.enabled", "true"));
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("cdc.relay.poll-interval-ms", 200));
+    private static final String FILE_LOG_PATH = System.getProperty("cdc.file-log", "user-changes.log");
+    private static final boolean FILE_LOG_FSYNC = Boolean.parseBoolean(System.getProperty("cdc.file-log.fsync", "true"));
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30_000;
+    private static final ListenerChangeSink myListenerSink = new ListenerChangeSink();
+    private static final List<ChangeFeedRelay> myRelays = new ArrayList<>();
+    private static Thread myRelayThread;
+    private static volatile boolean isStopping;
+    
+    private UserChangeFeed() {}
+    
+    public static void addListener(UserChangeListener myListener) {
+        myListenerSink.addListener(myListener);
+    }
+    
+    public static void removeListener(UserChangeListener myListener) {
+        myListenerSink.removeListener(myListener);
+    }
+    
+    // Log file of the relay for the given database: the configured path itself without sharding, otherwise with the
+    // shard name before the extension, e.g. user-changes.shard-1.log
+    public static Path getFileLogPath(String relayName) {
+        if (!DatabaseConfigurationManager.isShardingConfigured()) {
+            return Path.of(FILE_LOG_PATH);
+        }
+        int extensionStart = FILE_LOG_PATH.lastIndexOf('.');
+        return extensionStart > Math.max(FILE_LOG_PATH.lastIndexOf('/'), FILE_LOG_PATH.lastIndexOf('\\')) 
+            ? Path.of(FILE_LOG_PATH.substring(0, extensionStart) + "." + relayName + FILE_LOG_PATH.substring(extensionStart))
+            : Path.of(FILE_LOG_PATH + "." + relayName);
+    }
+    
+    // Safe to call from every repository that gets built; only the first call starts the relay
+    public static synchronized void startRelay() {
+        if (!UserChangeOutbox.isEnabled() || !RELAY_ENABLED || myRelayThread != null) {
+            return;
+        }
+        isStopping = false;
+        synchronized (myRelays) {
+            myRelays.clear();
+        }
+        myRelayThread = new Thread(UserChangeFeed::runRelay, "change-feed-relay");
+        myRelayThread.setDaemon(true);
+        myRelayThread.start();
+        // Publishes what the last transactions wrote while the pool is still open
+        DatabaseConfigurationManager.registerShutdownAction(UserChangeFeed::stopRelay);
+        MetricsRegistry.getInstance().registerStatusSection("change feed", UserChangeFeed::describeRelays);
+    }
+    
+    public static synchronized void stopRelay() {
+        if (myRelayThread == null) {
+            return;
+        }
+        isStopping = true;
+        LockSupport.unpark(myRelayThread);
+        try {
+            myRelayThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException myException) {
+            Thread.currentThread().interrupt();
+        }
+        if (myRelayThread.isAlive()) {
+            myLoggerInstance.warn("Change feed relay did not stop within {} ms", SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        myRelayThread = null;
+    }
+    
+    private static void runRelay() {
+        List<ChangeFeedRelay> startedRelays;
+        try {
+            startedRelays = createRelays();
+        } catch (RuntimeException myException) {
+            myLoggerInstance.error("Change feed relay could not start: {}", myException.getMessage(), myException);
+            return;
+        }
+        synchronized (myRelays) {
+            myRelays.addAll(startedRelays);
+        }
+        while (!isStopping) {
+            int publishedRecords = 0;
+            for (ChangeFeedRelay changeRelay : startedRelays) {
+                publishedRecords += pollQuietly(changeRelay);
+            }
+            if (publishedRecords == 0 && !isStopping) {
+                LockSupport.parkNanos(POLL_INTERVAL_NANOS);
+            }
+        }
+        for (ChangeFeedRelay changeRelay : startedRelays) {
+            try {
+                changeRelay.drain();
+            } catch (RuntimeException myException) {
+                myLoggerInstance.error("Final change feed drain failed: {}", myException.getMessage());
+            }
+            changeRelay.closeSinks();
+        }
+        myLoggerInstance.info("Change feed relay stopped: {}", describeRelays());
+    }
+    
+    private static int pollQuietly(ChangeFeedRelay changeRelay) {
+        try {
+            return changeRelay.pollOnce();
+        } catch (RuntimeException myException) {
+            myLoggerInstance.error("Change feed {} failed: {}", changeRelay, myException.getMessage());
+            return 0;
+        }
+    }
+    
+    private static List<ChangeFeedRelay> createRelays() {
+        List<ChangeFeedRelay> createdRelays = new ArrayList<>();
+        if (!DatabaseConfigurationManager.isShardingConfigured()) {
+            createdRelays.add(createRelay("primary", DatabaseConfigurationManager.getMySessionFactory()));
+            return createdRelays;
+        }
+        List<SessionFactory> shardSessionFactories = DatabaseConfigurationManager.getShardRegistry().getShardSessionFactories();
+        for (int shardIndex = 0; shardIndex < shardSessionFactories.size(); shardIndex++) {
+            createdRelays.add(createRelay("shard-" + shardIndex, shardSessionFactories.get(shardIndex)));
+        }
+        return createdRelays;
+    }
+    
+    private static ChangeFeedRelay createRelay(String relayName, SessionFactory mySessionFactory) {
+        try {
+            return new ChangeFeedRelay(relayName, mySessionFactory, 
+                List.of(new FileChangeLogSink(getFileLogPath(relayName), FILE_LOG_FSYNC), myListenerSink));
+        } catch (IOException myException) {
+            throw new UncheckedIOException("Cannot open change log for relay " + relayName, myException);
+        }
+    }
+    
+    private static String describeRelays() {
+        StringJoiner relayStatus = new StringJoiner("\n");
+        synchronized (myRelays) {
+            for (ChangeFeedRelay changeRelay : myRelays) {
+                relayStatus.add(changeRelay.toString());
+            }
+        }
+        return relayStatus.length() == 0 ? "relay not running" : relayStatus.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.cdc;
+
+import com.example.entity.UserChangeRecord;
+
+import java.time.LocalDateTime;
+
+// One flat JSON object per change record; fields that did not change are left out rather than written as null
+final class UserChangeJson {
+    private UserChangeJson() {}
+    
+    static void appendRecord(UserChangeRecord changeRecord, StringBuilder targetBuilder) {
+        targetBuilder.append("{\"changeId\":").append(changeRecord.getChangeId())
+            .append(",\"userId\":").append(changeRecord.getUserId())
+            .append(",\"changeType\":\"").append(changeRecord.getChangeType().name())
+            .append("\",\"versionNumber\":").append(changeRecord.getVersionNumber())
+            .append(",\"changedAt\":\"").append(changeRecord.getChangedAt()).append('"');
+        if (changeRecord.getChangedFields() != null) {
+            targetBuilder.append(",\"changedFields\":");
+            appendString(changeRecord.getChangedFields(), targetBuilder);
+        }
+        if (changeRecord.getUserName() != null) {
+            targetBuilder.append(",\"userName\":");
+            appendString(changeRecord.getUserName(), targetBuilder);
+        }
+        if (changeRecord.getUserEmail() != null) {
+            targetBuilder.append(",\"userEmail\":");
+            appendString(changeRecord.getUserEmail(), targetBuilder);
+        }
+        if (changeRecord.getUserAge() != null) {
+            targetBuilder.append(",\"userAge\":").append(changeRecord.getUserAge());
+        }
+        if (changeRecord.getUserCreatedAt() != null) {
+            targetBuilder.append(",\"userCreatedAt\":\"").append(changeRecord.getUserCreatedAt()).append('"');
+        }
+        targetBuilder.append("}\n");
+    }
+    
+    // Reads back what appendRecord wrote: string and numeric values only, no nesting
+    static UserChangeRecord parseRecord(String recordLine) {
+        UserChangeRecord changeRecord = new UserChangeRecord();
+        StringBuilder valueBuilder = new StringBuilder(32);
+        int readPosition = expect(recordLine, 0, '{');
+        while (readPosition < recordLine.length() && recordLine.charAt(readPosition) != '}') {
+            readPosition = readString(recordLine, readPosition, valueBuilder);
+            String fieldName = valueBuilder.toString();
+            readPosition = expect(recordLine, readPosition, ':');
+            if (recordLine.charAt(readPosition) == '"') {
+                readPosition = readString(recordLine, readPosition, valueBuilder);
+            } else {
+                valueBuilder.setLength(0);
+                while (readPosition < recordLine.length() && recordLine.charAt(readPosition) != ',' 
+                        && recordLine.charAt(readPosition) != '}') {
+                    valueBuilder.append(recordLine.charAt(readPosition++));
+                }
+            }
+            applyField(changeRecord, fieldName, valueBuilder.toString());
+            if (readPosition < recordLine.length() && recordLine.charAt(readPosition) == ',') {
+                readPosition++;
+            }
+        }
+        expect(recordLine, readPosition, '}');
+        return changeRecord;
+    }
+    
+    private static void applyField(UserChangeRecord changeRecord, String fieldName, String fieldValue) {
+        switch (fieldName) {
+            case "changeId" -> changeRecord.setChangeId(Long.valueOf(fieldValue));
+            case "userId" -> changeRecord.setUserId(Long.valueOf(fieldValue));
+            case "changeType" -> changeRecord.setChangeType(UserChangeRecord.ChangeType.valueOf(fieldValue));
+            case "versionNumber" -> changeRecord.setVersionNumber(Long.valueOf(fieldValue));
+            case "changedAt" -> changeRecord.setChangedAt(LocalDateTime.parse(fieldValue));
+            case "changedFields" -> changeRecord.setChangedFields(fieldValue);
+            case "userName" -> changeRecord.setUserName(fieldValue);
+            case "userEmail" -> changeRecord.setUserEmail(fieldValue);
+            case "userAge" -> changeRecord.setUserAge(Integer.valueOf(fieldValue));
+            case "userCreatedAt" -> changeRecord.setUserCreatedAt(LocalDateTime.parse(fieldValue));
+            default -> { }
+        }
+    }
+    
+    private static void appendString(String textValue, StringBuilder targetBuilder) {
+        targetBuilder.append('"');
+        for (int charIndex = 0; charIndex < textValue.length(); charIndex++) {
+            char currentChar = textValue.charAt(charIndex);
+            switch (currentChar) {
+                case '"' -> targetBuilder.append("\\\"");
+                case '\\' -> targetBuilder.append("\\\\");
+                case '\n' -> targetBuilder.append("\\n");
+                case '\r' -> targetBuilder.append("\\r");
+                case '\t' -> targetBuilder.append("\\t");
+                default -> {
+                    if (currentChar < 0x20) {
+                        targetBuilder.append(String.format("\\u%04x", (int) currentChar));
+                    } else {
+                        targetBuilder.append(currentChar);
+                    }
+                }
+            }
+        }
+        targetBuilder.append('"');
+    }
+    
+    private static int readString(String recordLine, int readPosition, StringBuilder valueBuilder) {
+        readPosition = expect(recordLine, readPosition, '"');
+        valueBuilder.setLength(0);
+        while (readPosition < recordLine.length()) {
+            char currentChar = recordLine.charAt(readPosition++);
+            if (currentChar == '"') {
+                return readPosition;
+            }
+            if (currentChar != '\\') {
+                valueBuilder.append(currentChar);
+                continue;
+            }
+            char escapedChar = recordLine.charAt(readPosition++);
+            switch (escapedChar) {
+                case 'n' -> valueBuilder.append('\n');
+                case 'r' -> valueBuilder.append('\r');
+                case 't' -> valueBuilder.append('\t');
+                case 'u' -> {
+                    valueBuilder.append((char) Integer.parseInt(recordLine, readPosition, readPosition + 4, 16));
+                    readPosition += 4;
+                }
+                default -> valueBuilder.append(escapedChar);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string in change record: " + recordLine);
+    }
+    
+    private static int expect(String recordLine, int readPosition, char expectedChar) {
+        if (readPosition >= recordLine.length() || recordLine.charAt(readPosition) != expectedChar) {
+            throw new IllegalArgumentException("Expected '" + expectedChar + "' at " + readPosition + " in change record: " + recordLine);
+        }
+        return readPosition + 1;
+    }
+}
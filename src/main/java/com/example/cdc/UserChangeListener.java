@@ -0,0 +1,11 @@
+package com.example.cdc;
+
+import com.example.entity.UserChangeRecord;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface UserChangeListener {
+    // Called on the relay thread; a slow listener delays every other sink
+    void onChanges(List<UserChangeRecord> changeBatch);
+}
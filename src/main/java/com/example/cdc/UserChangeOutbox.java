@@ -0,0 +1,153 @@
+package com.example.cdc;
+
+import com.example.entity.UserChangeRecord;
+import com.example.entity.UserEntity;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+// Writes change records inside the caller's transaction, so a record exists exactly when its user change committed.
+// Inserts are plain JDBC batches: persisting an IDENTITY entity would cost one round trip per record.
+public final class UserChangeOutbox {
+    public static final boolean CDC_ENABLED = Boolean.parseBoolean(System.getProperty("cdc.enabled", "false"));
+    private static final String INSERT_STATEMENT = "INSERT INTO user_change_outbox (user_id, change_type, version_number, "
+        + "changed_fields, user_full_name, user_email_address, user_age_value, user_registration_timestamp, changed_at) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_COLUMNS = "change_id, user_id, change_type, version_number, changed_fields, "
+        + "user_full_name, user_email_address, user_age_value, user_registration_timestamp, changed_at";
+    
+    private UserChangeOutbox() {}
+    
+    public static boolean isEnabled() {
+        return CDC_ENABLED;
+    }
+    
+    public static void recordCreated(Session mySession, List<UserEntity> createdUsers) {
+        List<UserChangeRecord> changeRecords = new ArrayList<>(createdUsers.size());
+        for (UserEntity createdUser : createdUsers) {
+            UserChangeRecord changeRecord = new UserChangeRecord(createdUser.getUserId(), UserChangeRecord.ChangeType.CREATED,
+                createdUser.getVersionNumber());
+            changeRecord.setChangedFields("userName,userEmail,userAge,userCreatedAt");
+            changeRecord.setUserName(createdUser.getUserName());
+            changeRecord.setUserEmail(createdUser.getUserEmail());
+            changeRecord.setUserAge(createdUser.getUserAge());
+            changeRecord.setUserCreatedAt(createdUser.getUserCreatedAt());
+            changeRecords.add(changeRecord);
+        }
+        append(mySession, changeRecords);
+    }
+    
+    // Compares against the state the row had before the change; nothing is written when no field differs
+    public static void recordUpdated(Session mySession, UserEntity previousState, UserEntity updatedUser) {
+        String userName = Objects.equals(previousState.getUserName(), updatedUser.getUserName()) ? null : updatedUser.getUserName();
+        String userEmail = Objects.equals(previousState.getUserEmail(), updatedUser.getUserEmail()) ? null : updatedUser.getUserEmail();
+        Integer userAge = Objects.equals(previousState.getUserAge(), updatedUser.getUserAge()) ? null : updatedUser.getUserAge();
+        LocalDateTime userCreatedAt = Objects.equals(previousState.getUserCreatedAt(), updatedUser.getUserCreatedAt()) 
+            ? null : updatedUser.getUserCreatedAt();
+        recordFieldsUpdated(mySession, updatedUser.getUserId(), updatedUser.getVersionNumber(), userName, userEmail, userAge, userCreatedAt);
+    }
+    
+    // Null arguments are fields that did not change
+    public static void recordFieldsUpdated(Session mySession, Long userIdValue, Long newVersion, String userName, String userEmail,
+                                           Integer userAge, LocalDateTime userCreatedAt) {
+        StringJoiner changedFields = new StringJoiner(",");
+        if (userName != null) changedFields.add("userName");
+        if (userEmail != null) changedFields.add("userEmail");
+        if (userAge != null) changedFields.add("userAge");
+        if (userCreatedAt != null) changedFields.add("userCreatedAt");
+        if (changedFields.length() == 0) {
+            return;
+        }
+        UserChangeRecord changeRecord = new UserChangeRecord(userIdValue, UserChangeRecord.ChangeType.UPDATED, newVersion);
+        changeRecord.setChangedFields(changedFields.toString());
+        changeRecord.setUserName(userName);
+        changeRecord.setUserEmail(userEmail);
+        changeRecord.setUserAge(userAge);
+        changeRecord.setUserCreatedAt(userCreatedAt);
+        append(mySession, List.of(changeRecord));
+    }
+    
+    public static void recordDeleted(Session mySession, Long userIdValue, Long lastVersion) {
+        append(mySession, List.of(new UserChangeRecord(userIdValue, UserChangeRecord.ChangeType.DELETED, lastVersion)));
+    }
+    
+    // Keys are the deleted user ids, values the version each had when it was deleted
+    public static void recordDeleted(Session mySession, Map<Long, Long> deletedVersions) {
+        List<UserChangeRecord> changeRecords = new ArrayList<>(deletedVersions.size());
+        deletedVersions.forEach((userIdValue, lastVersion) -> 
+            changeRecords.add(new UserChangeRecord(userIdValue, UserChangeRecord.ChangeType.DELETED, lastVersion)));
+        append(mySession, changeRecords);
+    }
+    
+    private static void append(Session mySession, List<UserChangeRecord> changeRecords) {
+        if (changeRecords.isEmpty()) {
+            return;
+        }
+        mySession.doWork(myConnection -> {
+            try (PreparedStatement myStatement = myConnection.prepareStatement(INSERT_STATEMENT)) {
+                for (UserChangeRecord changeRecord : changeRecords) {
+                    myStatement.setLong(1, changeRecord.getUserId());
+                    myStatement.setString(2, changeRecord.getChangeType().name());
+                    myStatement.setLong(3, changeRecord.getVersionNumber());
+                    myStatement.setString(4, changeRecord.getChangedFields());
+                    myStatement.setString(5, changeRecord.getUserName());
+                    myStatement.setString(6, changeRecord.getUserEmail());
+                    if (changeRecord.getUserAge() == null) {
+                        myStatement.setNull(7, Types.INTEGER);
+                    } else {
+                        myStatement.setInt(7, changeRecord.getUserAge());
+                    }
+                    myStatement.setTimestamp(8, changeRecord.getUserCreatedAt() == null ? null : Timestamp.valueOf(changeRecord.getUserCreatedAt()));
+                    myStatement.setTimestamp(9, Timestamp.valueOf(changeRecord.getChangedAt()));
+                    myStatement.addBatch();
+                }
+                myStatement.executeBatch();
+            }
+        });
+    }
+    
+    static List<UserChangeRecord> readAfter(SessionFactory mySessionFactory, long afterChangeId, int maxRecords) {
+        try (Session mySession = mySessionFactory.openSession()) {
+            return mySession.doReturningWork(myConnection -> {
+                List<UserChangeRecord> changeRecords = new ArrayList<>();
+                try (PreparedStatement myStatement = myConnection.prepareStatement("SELECT " + SELECT_COLUMNS 
+                        + " FROM user_change_outbox WHERE change_id > ? ORDER BY change_id")) {
+                    myStatement.setLong(1, afterChangeId);
+                    myStatement.setMaxRows(maxRecords);
+                    try (ResultSet myResults = myStatement.executeQuery()) {
+                        while (myResults.next()) {
+                            changeRecords.add(readRecord(myResults));
+                        }
+                    }
+                }
+                return changeRecords;
+            });
+        }
+    }
+    
+    private static UserChangeRecord readRecord(ResultSet myResults) throws SQLException {
+        UserChangeRecord changeRecord = new UserChangeRecord(myResults.getLong(2), 
+            UserChangeRecord.ChangeType.valueOf(myResults.getString(3)), myResults.getLong(4));
+        changeRecord.setChangeId(myResults.getLong(1));
+        changeRecord.setChangedFields(myResults.getString(5));
+        changeRecord.setUserName(myResults.getString(6));
+        changeRecord.setUserEmail(myResults.getString(7));
+        int userAge = myResults.getInt(8);
+        changeRecord.setUserAge(myResults.wasNull() ? null : userAge);
+        Timestamp userCreatedAt = myResults.getTimestamp(9);
+        changeRecord.setUserCreatedAt(userCreatedAt == null ? null : userCreatedAt.toLocalDateTime());
+        changeRecord.setChangedAt(myResults.getTimestamp(10).toLocalDateTime());
+        return changeRecord;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.cdc;
+
+import com.example.entity.UserChangeRecord;
+
+import java.io.IOException;
+import java.util.List;
+
+// Receives published change records in changeId order. A batch that failed, or that was delivered just before a
+// crash and not yet checkpointed, is delivered again, so sinks must tolerate seeing the same records twice.
+public interface UserChangeSink extends AutoCloseable {
+    String getSinkName();
+    
+    void publish(List<UserChangeRecord> changeBatch) throws IOException;
+    
+    @Override
+    default void close() throws IOException {}
+}
@@ -0,0 +1,81 @@
+package com.example.config;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConnectionPoolMetrics implements MetricsTrackerFactory, IMetricsTracker {
+    private final LongAdder acquisitionCount = new LongAdder();
+    private final LongAdder acquisitionNanosTotal = new LongAdder();
+    private final LongAccumulator acquisitionNanosMax = new LongAccumulator(Math::max, 0);
+    private final LongAdder usageCount = new LongAdder();
+    private final LongAdder usageMillisTotal = new LongAdder();
+    private final LongAdder connectionTimeoutCount = new LongAdder();
+    private final LongAdder connectionCreatedCount = new LongAdder();
+    private volatile PoolStats myPoolStats;
+    
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.myPoolStats = poolStats;
+        return this;
+    }
+    
+    @Override
+    public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+        connectionCreatedCount.increment();
+    }
+    
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquisitionCount.increment();
+        acquisitionNanosTotal.add(elapsedAcquiredNanos);
+        acquisitionNanosMax.accumulate(elapsedAcquiredNanos);
+    }
+    
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        usageCount.increment();
+        usageMillisTotal.add(elapsedBorrowedMillis);
+    }
+    
+    @Override
+    public void recordConnectionTimeout() {
+        connectionTimeoutCount.increment();
+    }
+    
+    public int getActiveConnections() { return myPoolStats == null ? 0 : myPoolStats.getActiveConnections(); }
+    public int getIdleConnections() { return myPoolStats == null ? 0 : myPoolStats.getIdleConnections(); }
+    public int getTotalConnections() { return myPoolStats == null ? 0 : myPoolStats.getTotalConnections(); }
+    public int getThreadsAwaitingConnection() { return myPoolStats == null ? 0 : myPoolStats.getPendingThreads(); }
+    public long getAcquisitionCount() { return acquisitionCount.sum(); }
+    public long getConnectionTimeoutCount() { return connectionTimeoutCount.sum(); }
+    public long getConnectionCreatedCount() { return connectionCreatedCount.sum(); }
+    public long getMaxAcquisitionMicros() { return TimeUnit.NANOSECONDS.toMicros(acquisitionNanosMax.get()); }
+    
+    public long getAverageAcquisitionMicros() {
+        long acquisitions = acquisitionCount.sum();
+        return acquisitions == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(acquisitionNanosTotal.sum() / acquisitions);
+    }
+    
+    public long getAverageUsageMillis() {
+        long usages = usageCount.sum();
+        return usages == 0 ? 0 : usageMillisTotal.sum() / usages;
+    }
+    
+    @Override
+    public String toString() {
+        return "ConnectionPoolMetrics[active=" + getActiveConnections() 
+            + ", idle=" + getIdleConnections() 
+            + ", total=" + getTotalConnections() 
+            + ", awaiting=" + getThreadsAwaitingConnection() 
+            + ", acquisitions=" + getAcquisitionCount() 
+            + ", avgAcquireMicros=" + getAverageAcquisitionMicros() 
+            + ", maxAcquireMicros=" + getMaxAcquisitionMicros() 
+            + ", avgUsageMillis=" + getAverageUsageMillis() 
+            + ", timeouts=" + getConnectionTimeoutCount() + "]";
+    }
+}
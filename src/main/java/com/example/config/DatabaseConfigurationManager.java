@@ -1,53 +1,340 @@
 package com.example.config;
 
+import com.example.metrics.MetricsRegistry;
+import com.example.shard.ShardAwareSequenceGenerator;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
 public class DatabaseConfigurationManager {
     private static final Logger myLoggerInstance = LoggerFactory.getLogger(DatabaseConfigurationManager.class);
-    private static SessionFactory mySessionFactoryInstance;
+    private static volatile SessionFactory mySessionFactoryInstance;
+    private static HikariDataSource myDataSourceInstance;
+    private static final ConnectionPoolMetrics myConnectionPoolMetrics = new ConnectionPoolMetrics();
+    private static ReadReplicaRouter myReadReplicaRouter;
+    private static ShardRegistry myShardRegistry;
+    private static volatile Boolean isShardingConfigured;
+    private static CompletableFuture<SessionFactory> myInitializationFuture;
+    private static final Map<String, Long> myStartupPhaseTimings = Collections.synchronizedMap(new LinkedHashMap<>());
+    private static final List<Runnable> myShutdownActions = new CopyOnWriteArrayList<>();
+    private static final String STORAGE_ENGINE = System.getProperty("storage.engine", "database");
+    
+    public static synchronized CompletableFuture<SessionFactory> startAsync() {
+        if (isEmbeddedStorage()) {
+            // Code that still reaches for a session fails with a clear message instead of connecting somewhere
+            return CompletableFuture.failedFuture(new IllegalStateException("storage.engine=embedded uses no database"));
+        }
+        if (myInitializationFuture == null || myInitializationFuture.isCompletedExceptionally()) {
+            myInitializationFuture = new CompletableFuture<>();
+            Thread initializationThread = new Thread(DatabaseConfigurationManager::initializeMySessionFactory, "database-bootstrap");
+            initializationThread.setDaemon(true);
+            initializationThread.start();
+        }
+        return myInitializationFuture;
+    }
+    
+    public static void initialize() {
+        if (!isEmbeddedStorage()) {
+            awaitSessionFactory();
+        }
+    }
     
-    static {
-        initializeMySessionFactory();
+    public static boolean isEmbeddedStorage() {
+        return STORAGE_ENGINE.equals("embedded");
+    }
+    
+    private static SessionFactory awaitSessionFactory() {
+        SessionFactory initializedFactory = mySessionFactoryInstance;
+        if (initializedFactory != null) {
+            return initializedFactory;
+        }
+        try {
+            return startAsync().join();
+        } catch (CompletionException myException) {
+            throw new DatabaseInitializationException("Database is not available: " + myException.getCause().getMessage(), 
+                myException.getCause());
+        }
     }
     
     private static void initializeMySessionFactory() {
+        CompletableFuture<SessionFactory> currentInitialization = myInitializationFuture;
+        long bootstrapStartNanos = System.nanoTime();
+        SessionFactory builtSessionFactory = null;
+        CompletableFuture<ReadReplicaRouter> replicaRouterFuture = null;
         try {
-            StandardServiceRegistry myStandardRegistry = new StandardServiceRegistryBuilder()
-                .configure("hibernate.cfg.xml")
-                .build();
+            myStartupPhaseTimings.clear();
+            long phaseStartNanos = System.nanoTime();
+            Properties myDatabaseProperties = DatabasePropertiesLoader.loadDatabaseProperties();
+            phaseStartNanos = recordStartupPhase("properties", phaseStartNanos);
+            
+            myDataSourceInstance = createPooledDataSource(myDatabaseProperties, 
+                myDatabaseProperties.getProperty("database.url"),
+                myDatabaseProperties.getProperty("database.username"),
+                myDatabaseProperties.getProperty("database.password"),
+                null, myConnectionPoolMetrics, false);
+            recordStartupPhase("connection-pool", phaseStartNanos);
+            
+            String schemaAction = resolveSchemaAction(myDatabaseProperties);
+            boolean isSharded = ShardRegistry.isShardingConfigured(myDatabaseProperties);
+            Map<String, Object> primarySettings = new HashMap<>();
+            primarySettings.put(AvailableSettings.HBM2DDL_AUTO, schemaAction);
+            if (isSharded) {
+                primarySettings.put(ShardAwareSequenceGenerator.SHARD_INDEX_SETTING, "0");
+            }
+            builtSessionFactory = buildSessionFactory(myDatabaseProperties, myDataSourceInstance, primarySettings, true);
+            
+            // Replica and shard factories are independent of each other, so the replicas build on a thread of their own
+            // while this one builds the shards (which also run their schema updates); the phases overlap in the timings
+            replicaRouterFuture = CompletableFuture.supplyAsync(() -> {
+                long replicaStartNanos = System.nanoTime();
+                ReadReplicaRouter builtReplicaRouter = ReadReplicaRouter.fromProperties(myDatabaseProperties);
+                recordStartupPhase("read-replicas", replicaStartNanos);
+                return builtReplicaRouter;
+            }, DatabaseConfigurationManager::startReplicaBootstrapThread);
             
-            Metadata myMetadata = new MetadataSources(myStandardRegistry)
-                .addAnnotatedClass(com.example.entity.UserEntity.class)
-                .getMetadataBuilder()
-                .build();
+            if (isSharded) {
+                phaseStartNanos = System.nanoTime();
+                myShardRegistry = ShardRegistry.fromProperties(myDatabaseProperties, builtSessionFactory, schemaAction);
+                recordStartupPhase("shards", phaseStartNanos);
+            }
+            try {
+                myReadReplicaRouter = replicaRouterFuture.join();
+            } catch (CompletionException myException) {
+                throw myException.getCause() instanceof Exception replicaFailure ? replicaFailure : myException;
+            }
             
-            mySessionFactoryInstance = myMetadata.getSessionFactoryBuilder().build();
-            myLoggerInstance.info("Hibernate SessionFactory initialized successfully");
+            mySessionFactoryInstance = builtSessionFactory;
+            myLoggerInstance.info("Hibernate SessionFactory initialized in {} ms, phases: {}", 
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bootstrapStartNanos), myStartupPhaseTimings);
+            currentInitialization.complete(builtSessionFactory);
         } catch (Exception myException) {
             myLoggerInstance.error("Hibernate SessionFactory initialization failed: {}", myException.getMessage());
-            throw new ExceptionInInitializerError(myException);
+            closeFailedBootstrap(builtSessionFactory, replicaRouterFuture);
+            if (myDataSourceInstance != null) {
+                myDataSourceInstance.close();
+                myDataSourceInstance = null;
+            }
+            currentInitialization.completeExceptionally(myException);
+        }
+    }
+    
+    private static void startReplicaBootstrapThread(Runnable bootstrapStep) {
+        Thread bootstrapThread = new Thread(bootstrapStep, "replica-bootstrap");
+        bootstrapThread.setDaemon(true);
+        bootstrapThread.start();
+    }
+    
+    // A retry through startAsync() builds everything again, so nothing from the failed attempt may stay open
+    private static void closeFailedBootstrap(SessionFactory builtSessionFactory, CompletableFuture<ReadReplicaRouter> replicaRouterFuture) {
+        if (replicaRouterFuture != null) {
+            // Still running when the shards failed; waiting for it is the only way to close the pools it opens
+            ReadReplicaRouter builtReplicaRouter = replicaRouterFuture.handle((replicaRouter, replicaFailure) -> replicaRouter).join();
+            if (builtReplicaRouter != null) {
+                builtReplicaRouter.close();
+            }
+        }
+        myReadReplicaRouter = null;
+        if (myShardRegistry != null) {
+            myShardRegistry.close();
+            myShardRegistry = null;
+        }
+        if (builtSessionFactory != null) {
+            builtSessionFactory.close();
+        }
+    }
+    
+    private static String resolveSchemaAction(Properties myDatabaseProperties) {
+        // 'migrated' means an external tool owns the schema, so Hibernate does not even inspect it
+        String schemaMode = myDatabaseProperties.getProperty("database.schema.mode", "update").trim().toLowerCase();
+        switch (schemaMode) {
+            case "update":
+            case "validate":
+                return schemaMode;
+            case "migrated":
+            case "none":
+                return "none";
+            default:
+                throw new IllegalArgumentException("Unknown database.schema.mode: " + schemaMode);
+        }
+    }
+    
+    private static long recordStartupPhase(String phaseName, long phaseStartNanos) {
+        long phaseEndNanos = System.nanoTime();
+        myStartupPhaseTimings.put(phaseName, TimeUnit.NANOSECONDS.toMillis(phaseEndNanos - phaseStartNanos));
+        return phaseEndNanos;
+    }
+    
+    static SessionFactory buildSessionFactory(Properties myDatabaseProperties, DataSource myDataSource, 
+                                              Map<String, Object> settingOverrides, boolean isTimed) {
+        long phaseStartNanos = System.nanoTime();
+        // Statistics cost a counter update on every statement and are only read by the metrics dump
+        StandardServiceRegistryBuilder myRegistryBuilder = new StandardServiceRegistryBuilder()
+            .configure("hibernate.cfg.xml")
+            .applySetting(AvailableSettings.GENERATE_STATISTICS, MetricsRegistry.isEnabled());
+        for (String propertyName : myDatabaseProperties.stringPropertyNames()) {
+            if (propertyName.startsWith("hibernate.")) {
+                myRegistryBuilder.applySetting(propertyName, myDatabaseProperties.getProperty(propertyName));
+            }
+        }
+        StandardServiceRegistry myStandardRegistry = myRegistryBuilder
+            .applySettings(settingOverrides)
+            .applySetting(AvailableSettings.DATASOURCE, myDataSource)
+            .build();
+        if (isTimed) phaseStartNanos = recordStartupPhase("service-registry", phaseStartNanos);
+        
+        Metadata myMetadata = new MetadataSources(myStandardRegistry)
+            .addAnnotatedClass(com.example.entity.UserEntity.class)
+            .addAnnotatedClass(com.example.entity.UserChangeRecord.class)
+            .getMetadataBuilder()
+            .build();
+        SearchIndexDefinition.registerOn(myMetadata);
+        if (isTimed) phaseStartNanos = recordStartupPhase("metadata", phaseStartNanos);
+        
+        SessionFactory builtSessionFactory = myMetadata.getSessionFactoryBuilder().build();
+        if (isTimed) recordStartupPhase("session-factory-and-schema", phaseStartNanos);
+        return builtSessionFactory;
+    }
+    
+    static HikariDataSource createPooledDataSource(Properties myDatabaseProperties, String jdbcUrl, String username, 
+                                                   String password, String poolNameSuffix, ConnectionPoolMetrics poolMetrics,
+                                                   boolean isReadOnly) {
+        HikariConfig myPoolConfig = new HikariConfig(DatabasePropertiesLoader.extractPrefixed(myDatabaseProperties, "pool."));
+        myPoolConfig.setJdbcUrl(jdbcUrl);
+        myPoolConfig.setUsername(username);
+        myPoolConfig.setPassword(password);
+        myPoolConfig.setMetricsTrackerFactory(poolMetrics);
+        if (poolNameSuffix != null) {
+            myPoolConfig.setPoolName(myPoolConfig.getPoolName() + "-" + poolNameSuffix);
         }
+        if (isReadOnly) {
+            myPoolConfig.setReadOnly(true);
+            myPoolConfig.setInitializationFailTimeout(-1);
+        }
+        HikariDataSource pooledDataSource = new HikariDataSource(myPoolConfig);
+        myLoggerInstance.info("Connection pool '{}' started with maximum size {}", 
+            pooledDataSource.getPoolName(), pooledDataSource.getMaximumPoolSize());
+        return pooledDataSource;
     }
     
     public static Session getDatabaseSession() {
-        return mySessionFactoryInstance.openSession();
+        return awaitSessionFactory().openSession();
+    }
+    
+    public static StatelessSession getStatelessDatabaseSession() {
+        return awaitSessionFactory().openStatelessSession();
+    }
+    
+    // Runs at the start of shutdownDatabase(), while sessions can still be opened, e.g. to flush buffered writes
+    public static void registerShutdownAction(Runnable shutdownAction) {
+        myShutdownActions.add(shutdownAction);
     }
     
-    public static void shutdownDatabase() {
+    public static synchronized void shutdownDatabase() {
+        // Actions run even without a database, the embedded store is closed by one of them
+        for (Runnable shutdownAction : myShutdownActions) {
+            try {
+                shutdownAction.run();
+            } catch (RuntimeException myException) {
+                myLoggerInstance.error("Shutdown action failed: {}", myException.getMessage(), myException);
+            }
+        }
+        myShutdownActions.clear();
+        if (myInitializationFuture == null) {
+            return;
+        }
+        try {
+            myInitializationFuture.join();
+        } catch (CompletionException myException) {
+            return;
+        }
+        if (myReadReplicaRouter != null) {
+            myReadReplicaRouter.close();
+        }
+        if (myShardRegistry != null) {
+            myShardRegistry.close();
+            myShardRegistry = null;
+        }
         if (mySessionFactoryInstance != null && !mySessionFactoryInstance.isClosed()) {
+            if (MetricsRegistry.isEnabled()) {
+                myLoggerInstance.info("Second-level cache statistics at shutdown: {}", getCacheStatistics());
+            }
             mySessionFactoryInstance.close();
             myLoggerInstance.info("Hibernate SessionFactory closed");
         }
+        if (myDataSourceInstance != null && !myDataSourceInstance.isClosed()) {
+            myLoggerInstance.info("Closing connection pool: {}", myConnectionPoolMetrics);
+            myDataSourceInstance.close();
+        }
     }
     
     public static SessionFactory getMySessionFactory() {
-        return mySessionFactoryInstance;
+        return awaitSessionFactory();
+    }
+    
+    public static ReadReplicaRouter getReadReplicaRouter() {
+        awaitSessionFactory();
+        return myReadReplicaRouter;
+    }
+    
+    // Answered from the properties alone, so repositories can be wired before the database has started
+    public static boolean isShardingConfigured() {
+        if (isEmbeddedStorage()) {
+            return false;
+        }
+        Boolean shardingConfigured = isShardingConfigured;
+        if (shardingConfigured == null) {
+            shardingConfigured = ShardRegistry.isShardingConfigured(DatabasePropertiesLoader.loadDatabaseProperties());
+            isShardingConfigured = shardingConfigured;
+        }
+        return shardingConfigured;
+    }
+    
+    public static ShardRegistry getShardRegistry() {
+        awaitSessionFactory();
+        return myShardRegistry;
+    }
+    
+    public static ConnectionPoolMetrics getConnectionPoolMetrics() {
+        return myConnectionPoolMetrics;
+    }
+    
+    public static Map<String, SecondLevelCacheMetrics.RegionStatistics> getCacheStatistics() {
+        return SecondLevelCacheMetrics.captureRegionStatistics(awaitSessionFactory());
+    }
+    
+    public static Map<String, Long> getStartupPhaseTimings() {
+        synchronized (myStartupPhaseTimings) {
+            return new LinkedHashMap<>(myStartupPhaseTimings);
+        }
+    }
+    
+    // Sizes the async service's worker pool; the embedded store has no connections to wait for
+    public static int getMaximumPoolSize() {
+        if (isEmbeddedStorage()) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        awaitSessionFactory();
+        return myDataSourceInstance.getMaximumPoolSize();
     }
 }
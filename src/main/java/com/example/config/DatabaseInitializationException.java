@@ -0,0 +1,7 @@
+package com.example.config;
+
+public class DatabaseInitializationException extends RuntimeException {
+    public DatabaseInitializationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+public class DatabasePropertiesLoader {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(DatabasePropertiesLoader.class);
+    private static final String DEFAULT_PROPERTIES_RESOURCE = "database.properties";
+    private static final String EXTERNAL_PROPERTIES_KEY = "database.config";
+    private static final String CLASSPATH_PREFIX = "classpath:";
+    
+    private DatabasePropertiesLoader() {}
+    
+    public static Properties loadDatabaseProperties() {
+        Properties myProperties = new Properties();
+        try (InputStream defaultsStream = DatabasePropertiesLoader.class.getClassLoader()
+                .getResourceAsStream(DEFAULT_PROPERTIES_RESOURCE)) {
+            if (defaultsStream != null) {
+                myProperties.load(new InputStreamReader(defaultsStream, StandardCharsets.UTF_8));
+            }
+        } catch (IOException myException) {
+            throw new IllegalStateException("Cannot read " + DEFAULT_PROPERTIES_RESOURCE, myException);
+        }
+        
+        String externalPropertiesPath = System.getProperty(EXTERNAL_PROPERTIES_KEY, System.getenv("DATABASE_CONFIG"));
+        if (externalPropertiesPath != null && externalPropertiesPath.startsWith(CLASSPATH_PREFIX)) {
+            String resourceName = externalPropertiesPath.substring(CLASSPATH_PREFIX.length());
+            try (InputStream overridesStream = DatabasePropertiesLoader.class.getClassLoader().getResourceAsStream(resourceName)) {
+                if (overridesStream == null) {
+                    throw new IllegalStateException("Database properties resource not found: " + resourceName);
+                }
+                myProperties.load(new InputStreamReader(overridesStream, StandardCharsets.UTF_8));
+                myLoggerInstance.info("Loaded database properties from classpath resource {}", resourceName);
+            } catch (IOException myException) {
+                throw new IllegalStateException("Cannot read " + resourceName, myException);
+            }
+        } else if (externalPropertiesPath != null && !externalPropertiesPath.isBlank()) {
+            try (Reader externalReader = Files.newBufferedReader(Path.of(externalPropertiesPath), StandardCharsets.UTF_8)) {
+                myProperties.load(externalReader);
+                myLoggerInstance.info("Loaded database properties from {}", externalPropertiesPath);
+            } catch (IOException myException) {
+                throw new IllegalStateException("Cannot read database properties from " + externalPropertiesPath, myException);
+            }
+        }
+        return myProperties;
+    }
+    
+    public static Properties extractPrefixed(Properties sourceProperties, String keyPrefix) {
+        Properties prefixedProperties = new Properties();
+        for (String propertyName : sourceProperties.stringPropertyNames()) {
+            if (propertyName.startsWith(keyPrefix)) {
+                prefixedProperties.setProperty(propertyName.substring(keyPrefix.length()), sourceProperties.getProperty(propertyName));
+            }
+        }
+        return prefixedProperties;
+    }
+}
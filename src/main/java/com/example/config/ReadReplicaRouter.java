@@ -0,0 +1,230 @@
+package com.example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.cfg.AvailableSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class ReadReplicaRouter implements AutoCloseable {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(ReadReplicaRouter.class);
+    private static final int HEALTH_CHECK_TIMEOUT_SECONDS = 2;
+    private static final ThreadLocal<Boolean> myPrimaryReadScope = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    // Read-your-writes is per caller: one caller's writes must not pull every other caller's reads onto the primary
+    private static final ThreadLocal<WriteScope> myWriteScope = ThreadLocal.withInitial(WriteScope::new);
+    
+    public enum SelectionStrategy { ROUND_ROBIN, LEAST_LOADED }
+    
+    private final List<ReplicaNode> myReplicaNodes;
+    private final SelectionStrategy mySelectionStrategy;
+    private final long readYourWritesWindowNanos;
+    private final AtomicInteger roundRobinCounter = new AtomicInteger();
+    private final ScheduledExecutorService myHealthCheckScheduler;
+    
+    private ReadReplicaRouter(List<ReplicaNode> myReplicaNodes, SelectionStrategy mySelectionStrategy, 
+                              long readYourWritesWindowMillis, long healthCheckIntervalMillis) {
+        this.myReplicaNodes = myReplicaNodes;
+        this.mySelectionStrategy = mySelectionStrategy;
+        this.readYourWritesWindowNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesWindowMillis);
+        if (myReplicaNodes.isEmpty()) {
+            this.myHealthCheckScheduler = null;
+        } else {
+            this.myHealthCheckScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread healthCheckThread = new Thread(runnable, "replica-health-check");
+                healthCheckThread.setDaemon(true);
+                return healthCheckThread;
+            });
+            myHealthCheckScheduler.scheduleWithFixedDelay(this::checkReplicaHealth, 
+                0, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    static ReadReplicaRouter fromProperties(Properties myDatabaseProperties) {
+        List<ReplicaNode> replicaNodes = new ArrayList<>();
+        HikariDataSource pendingDataSource = null;
+        try {
+            for (int replicaIndex = 1; myDatabaseProperties.containsKey("replica." + replicaIndex + ".url"); replicaIndex++) {
+                String replicaPrefix = "replica." + replicaIndex + ".";
+                String replicaName = "replica-" + replicaIndex;
+                ConnectionPoolMetrics replicaPoolMetrics = new ConnectionPoolMetrics();
+                pendingDataSource = DatabaseConfigurationManager.createPooledDataSource(myDatabaseProperties,
+                    myDatabaseProperties.getProperty(replicaPrefix + "url"),
+                    myDatabaseProperties.getProperty(replicaPrefix + "username", myDatabaseProperties.getProperty("database.username")),
+                    myDatabaseProperties.getProperty(replicaPrefix + "password", myDatabaseProperties.getProperty("database.password")),
+                    replicaName, replicaPoolMetrics, true);
+                // Replicas never own the schema, and their second-level cache could not see primary writes
+                SessionFactory replicaSessionFactory = DatabaseConfigurationManager.buildSessionFactory(myDatabaseProperties, 
+                    pendingDataSource, Map.of(
+                        AvailableSettings.HBM2DDL_AUTO, "none",
+                        AvailableSettings.USE_SECOND_LEVEL_CACHE, "false",
+                        AvailableSettings.USE_QUERY_CACHE, "false"), false);
+                replicaNodes.add(new ReplicaNode(replicaName, pendingDataSource, replicaSessionFactory, replicaPoolMetrics));
+                pendingDataSource = null;
+                myLoggerInstance.info("Read replica {} registered", replicaName);
+            }
+            return new ReadReplicaRouter(replicaNodes,
+                SelectionStrategy.valueOf(myDatabaseProperties.getProperty("replica.selection", "round_robin").toUpperCase()),
+                Long.parseLong(myDatabaseProperties.getProperty("replica.read-your-writes-window-ms", "2000")),
+                Long.parseLong(myDatabaseProperties.getProperty("replica.health-check-interval-ms", "5000")));
+        } catch (RuntimeException myException) {
+            // One bad replica must not leave the pools of the others open
+            if (pendingDataSource != null) {
+                pendingDataSource.close();
+            }
+            for (ReplicaNode replicaNode : replicaNodes) {
+                replicaNode.mySessionFactory.close();
+                replicaNode.myDataSource.close();
+            }
+            throw myException;
+        }
+    }
+    
+    // Reads made by the call on this thread skip the replicas, e.g. the version a guarded write compares against: a
+    // lagging replica would hand out an old version and turn an edit that did not conflict into a conflict
+    public static <T> T readFromPrimary(Supplier<T> primaryRead) {
+        boolean wasPrimaryReadScope = myPrimaryReadScope.get();
+        myPrimaryReadScope.set(Boolean.TRUE);
+        try {
+            return primaryRead.get();
+        } finally {
+            myPrimaryReadScope.set(wasPrimaryReadScope);
+        }
+    }
+    
+    // The caller's window, so work handed to another thread can keep reading its own writes there
+    public static WriteScope currentWriteScope() {
+        return myWriteScope.get();
+    }
+    
+    public static <T> T callInWriteScope(WriteScope callerWriteScope, Callable<T> myOperation) throws Exception {
+        WriteScope previousWriteScope = myWriteScope.get();
+        myWriteScope.set(callerWriteScope);
+        try {
+            return myOperation.call();
+        } finally {
+            myWriteScope.set(previousWriteScope);
+        }
+    }
+    
+    public ReplicaNode selectReplica() {
+        if (myReplicaNodes.isEmpty() || myPrimaryReadScope.get() || myWriteScope.get().wroteWithin(readYourWritesWindowNanos)) {
+            return null;
+        }
+        if (mySelectionStrategy == SelectionStrategy.LEAST_LOADED) {
+            ReplicaNode leastLoadedNode = null;
+            for (ReplicaNode replicaNode : myReplicaNodes) {
+                if (replicaNode.isHealthy() && (leastLoadedNode == null 
+                        || replicaNode.getActiveConnections() < leastLoadedNode.getActiveConnections())) {
+                    leastLoadedNode = replicaNode;
+                }
+            }
+            return leastLoadedNode;
+        }
+        int startIndex = Math.floorMod(roundRobinCounter.getAndIncrement(), myReplicaNodes.size());
+        for (int offset = 0; offset < myReplicaNodes.size(); offset++) {
+            ReplicaNode replicaNode = myReplicaNodes.get((startIndex + offset) % myReplicaNodes.size());
+            if (replicaNode.isHealthy()) {
+                return replicaNode;
+            }
+        }
+        return null;
+    }
+    
+    public void recordPrimaryWrite() {
+        if (!myReplicaNodes.isEmpty()) {
+            myWriteScope.get().recordWrite();
+        }
+    }
+    
+    public List<ReplicaNode> getReplicaNodes() {
+        return List.copyOf(myReplicaNodes);
+    }
+    
+    private void checkReplicaHealth() {
+        for (ReplicaNode replicaNode : myReplicaNodes) {
+            boolean isReachable;
+            try (Connection healthCheckConnection = replicaNode.myDataSource.getConnection()) {
+                isReachable = healthCheckConnection.isValid(HEALTH_CHECK_TIMEOUT_SECONDS);
+            } catch (Exception myException) {
+                isReachable = false;
+            }
+            if (isReachable != replicaNode.isHealthy()) {
+                myLoggerInstance.warn("Read replica {} is now {}", replicaNode.getReplicaName(), isReachable ? "healthy" : "unhealthy");
+            }
+            replicaNode.healthy = isReachable;
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (myHealthCheckScheduler != null) {
+            myHealthCheckScheduler.shutdownNow();
+        }
+        for (ReplicaNode replicaNode : myReplicaNodes) {
+            replicaNode.mySessionFactory.close();
+            replicaNode.myDataSource.close();
+        }
+    }
+    
+    public static final class WriteScope {
+        private volatile long lastWriteNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+        
+        public void recordWrite() {
+            lastWriteNanos = System.nanoTime();
+        }
+        
+        private boolean wroteWithin(long windowNanos) {
+            return System.nanoTime() - lastWriteNanos < windowNanos;
+        }
+    }
+    
+    public static class ReplicaNode {
+        private final String replicaName;
+        private final HikariDataSource myDataSource;
+        private final SessionFactory mySessionFactory;
+        private final ConnectionPoolMetrics myPoolMetrics;
+        private volatile boolean healthy = true;
+        
+        ReplicaNode(String replicaName, HikariDataSource myDataSource, SessionFactory mySessionFactory, 
+                    ConnectionPoolMetrics myPoolMetrics) {
+            this.replicaName = replicaName;
+            this.myDataSource = myDataSource;
+            this.mySessionFactory = mySessionFactory;
+            this.myPoolMetrics = myPoolMetrics;
+        }
+        
+        public Session openSession() {
+            return mySessionFactory.openSession();
+        }
+        
+        public StatelessSession openStatelessSession() {
+            return mySessionFactory.openStatelessSession();
+        }
+        
+        public void markUnhealthy(Exception failureCause) {
+            if (healthy) {
+                myLoggerInstance.warn("Read replica {} marked unhealthy: {}", replicaName, failureCause.getMessage());
+            }
+            healthy = false;
+        }
+        
+        public String getReplicaName() { return replicaName; }
+        public boolean isHealthy() { return healthy; }
+        public int getActiveConnections() { return myPoolMetrics.getActiveConnections(); }
+        public ConnectionPoolMetrics getPoolMetrics() { return myPoolMetrics; }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.config;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.boot.model.relational.SimpleAuxiliaryDatabaseObject;
+import org.hibernate.boot.spi.MetadataImplementor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+
+import java.util.Collections;
+
+// JPA @Index only takes plain column lists, so the search indexes that need an operator class or an expression
+// are registered here. Schema update re-runs auxiliary objects on every start, hence IF NOT EXISTS and no drop.
+class SearchIndexDefinition extends SimpleAuxiliaryDatabaseObject {
+    // Under a non-C collation a default btree cannot serve LIKE 'prefix%'; text_pattern_ops can
+    private static final String[] POSTGRESQL_INDEX_STATEMENTS = {
+        "CREATE INDEX IF NOT EXISTS idx_app_users_name_pattern ON app_users (user_full_name text_pattern_ops)",
+        "CREATE INDEX IF NOT EXISTS idx_app_users_email_lower_pattern ON app_users (lower(user_email_address) text_pattern_ops)"
+    };
+    private static final String[] PORTABLE_INDEX_STATEMENTS = {
+        "CREATE INDEX IF NOT EXISTS idx_app_users_name ON app_users (user_full_name)"
+    };
+    
+    private final boolean isPostgreSqlOnly;
+    
+    private SearchIndexDefinition(Database myDatabase, String[] createStatements, boolean isPostgreSqlOnly) {
+        super(myDatabase.getDefaultNamespace(), createStatements, new String[0], Collections.emptySet());
+        this.isPostgreSqlOnly = isPostgreSqlOnly;
+    }
+    
+    static void registerOn(Metadata myMetadata) {
+        Database myDatabase = ((MetadataImplementor) myMetadata).getDatabase();
+        myDatabase.addAuxiliaryDatabaseObject(new SearchIndexDefinition(myDatabase, POSTGRESQL_INDEX_STATEMENTS, true));
+        myDatabase.addAuxiliaryDatabaseObject(new SearchIndexDefinition(myDatabase, PORTABLE_INDEX_STATEMENTS, false));
+    }
+    
+    // The schema migrator runs "before tables" objects after its table pass, which is what an index on a
+    // table created in the same run needs
+    @Override
+    public boolean beforeTablesOnCreation() {
+        return true;
+    }
+    
+    @Override
+    public boolean appliesToDialect(Dialect myDialect) {
+        return (myDialect instanceof PostgreSQL81Dialect) == isPostgreSqlOnly;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.config;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class SecondLevelCacheMetrics {
+    private static final String[] USER_CACHE_REGIONS = {"users", "user-natural-ids", "default-query-results-region"};
+    
+    private SecondLevelCacheMetrics() {}
+    
+    public static Map<String, RegionStatistics> captureRegionStatistics(SessionFactory mySessionFactory) {
+        Statistics myStatistics = mySessionFactory.getStatistics();
+        Map<String, RegionStatistics> regionStatistics = new LinkedHashMap<>();
+        for (String regionName : USER_CACHE_REGIONS) {
+            CacheRegionStatistics hibernateRegionStats = myStatistics.getCacheRegionStatistics(regionName);
+            if (hibernateRegionStats == null) {
+                continue;
+            }
+            regionStatistics.put(regionName, new RegionStatistics(
+                hibernateRegionStats.getHitCount(),
+                hibernateRegionStats.getMissCount(),
+                hibernateRegionStats.getPutCount(),
+                readJCacheEvictions(regionName)));
+        }
+        return regionStatistics;
+    }
+    
+    private static long readJCacheEvictions(String regionName) {
+        try {
+            MBeanServer myMBeanServer = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> statisticsBeans = myMBeanServer.queryNames(
+                new ObjectName("javax.cache:type=CacheStatistics,Cache=" + regionName + ",*"), null);
+            long evictionCount = 0;
+            for (ObjectName statisticsBean : statisticsBeans) {
+                evictionCount += (Long) myMBeanServer.getAttribute(statisticsBean, "CacheEvictions");
+            }
+            return evictionCount;
+        } catch (Exception myException) {
+            return -1;
+        }
+    }
+    
+    public static class RegionStatistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long putCount;
+        private final long evictionCount;
+        
+        public RegionStatistics(long hitCount, long missCount, long putCount, long evictionCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.putCount = putCount;
+            this.evictionCount = evictionCount;
+        }
+        
+        public long getHitCount() { return hitCount; }
+        public long getMissCount() { return missCount; }
+        public long getPutCount() { return putCount; }
+        public long getEvictionCount() { return evictionCount; }
+        
+        @Override
+        public String toString() {
+            return "hits=" + hitCount + ", misses=" + missCount + ", puts=" + putCount + ", evictions=" + evictionCount;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.config;
+
+import com.example.shard.ShardAwareSequenceGenerator;
+import com.example.shard.ShardBucketMap;
+import com.example.shard.ShardRebalancer;
+import com.example.shard.UserShardKeys;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+// Shard 0 is the primary database; shard.N.url (N = 1, 2, ...) adds the others
+public class ShardRegistry implements AutoCloseable {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(ShardRegistry.class);
+    
+    private final List<SessionFactory> myShardSessionFactories;
+    private final List<HikariDataSource> myShardDataSources;
+    private ShardBucketMap myBucketMap;
+    private ShardRebalancer myShardRebalancer;
+    
+    private ShardRegistry(List<SessionFactory> myShardSessionFactories, List<HikariDataSource> myShardDataSources) {
+        this.myShardSessionFactories = myShardSessionFactories;
+        this.myShardDataSources = myShardDataSources;
+    }
+    
+    static boolean isShardingConfigured(Properties myDatabaseProperties) {
+        return myDatabaseProperties.containsKey("shard.1.url");
+    }
+    
+    static ShardRegistry fromProperties(Properties myDatabaseProperties, SessionFactory primarySessionFactory, String schemaAction) {
+        List<SessionFactory> shardSessionFactories = new ArrayList<>();
+        List<HikariDataSource> shardDataSources = new ArrayList<>();
+        shardSessionFactories.add(primarySessionFactory);
+        try {
+            for (int shardIndex = 1; myDatabaseProperties.containsKey("shard." + shardIndex + ".url"); shardIndex++) {
+                if (shardIndex >= UserShardKeys.MAX_SHARDS) {
+                    throw new IllegalArgumentException("At most " + UserShardKeys.MAX_SHARDS + " shards are supported");
+                }
+                String shardPrefix = "shard." + shardIndex + ".";
+                String shardName = "shard-" + shardIndex;
+                HikariDataSource shardDataSource = DatabaseConfigurationManager.createPooledDataSource(myDatabaseProperties,
+                    myDatabaseProperties.getProperty(shardPrefix + "url"),
+                    myDatabaseProperties.getProperty(shardPrefix + "username", myDatabaseProperties.getProperty("database.username")),
+                    myDatabaseProperties.getProperty(shardPrefix + "password", myDatabaseProperties.getProperty("database.password")),
+                    shardName, new ConnectionPoolMetrics(), false);
+                shardDataSources.add(shardDataSource);
+                // Each shard gets its own cache regions: the same query or natural id means a different row on every shard
+                shardSessionFactories.add(DatabaseConfigurationManager.buildSessionFactory(myDatabaseProperties, shardDataSource, 
+                    Map.of(AvailableSettings.HBM2DDL_AUTO, schemaAction,
+                        ShardAwareSequenceGenerator.SHARD_INDEX_SETTING, String.valueOf(shardIndex),
+                        AvailableSettings.CACHE_REGION_PREFIX, shardName,
+                        "hibernate.javax.cache.missing_cache_strategy", "create"), false));
+                myLoggerInstance.info("Shard {} registered", shardName);
+            }
+        } catch (RuntimeException myException) {
+            new ShardRegistry(shardSessionFactories, shardDataSources).close();
+            throw myException;
+        }
+        return new ShardRegistry(shardSessionFactories, shardDataSources);
+    }
+    
+    public int getShardCount() {
+        return myShardSessionFactories.size();
+    }
+    
+    public List<SessionFactory> getShardSessionFactories() {
+        return List.copyOf(myShardSessionFactories);
+    }
+    
+    // One map per process: its locks are what fences writers while the rebalancer hands buckets over
+    public synchronized ShardBucketMap getBucketMap() {
+        if (myBucketMap == null) {
+            myBucketMap = ShardBucketMap.load(myShardSessionFactories.get(0), myShardSessionFactories.size());
+        }
+        return myBucketMap;
+    }
+    
+    public synchronized ShardRebalancer getShardRebalancer() {
+        if (myShardRebalancer == null) {
+            myShardRebalancer = new ShardRebalancer(getShardSessionFactories(), getBucketMap());
+        }
+        return myShardRebalancer;
+    }
+    
+    // The primary (shard 0) is closed by DatabaseConfigurationManager itself
+    @Override
+    public void close() {
+        for (int shardIndex = 1; shardIndex < myShardSessionFactories.size(); shardIndex++) {
+            myShardSessionFactories.get(shardIndex).close();
+        }
+        for (HikariDataSource shardDataSource : myShardDataSources) {
+            shardDataSource.close();
+        }
+    }
+}
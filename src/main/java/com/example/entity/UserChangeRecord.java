@@ -0,0 +1,82 @@
+package com.example.entity;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// One row of the change outbox: written in the same transaction as the user change it describes, read in changeId
+// order by ChangeFeedRelay. Only the fields named in changedFields carry values; the rest stay null.
+@Entity
+@Table(name = "user_change_outbox")
+public class UserChangeRecord {
+    public enum ChangeType { CREATED, UPDATED, DELETED }
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "change_id")
+    private Long changeId;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false, length = 10)
+    private ChangeType changeType;
+    
+    @Column(name = "version_number", nullable = false)
+    private Long versionNumber;
+    
+    // Comma-separated UserEntity property names, e.g. "userName,userAge"
+    @Column(name = "changed_fields", length = 100)
+    private String changedFields;
+    
+    @Column(name = "user_full_name", length = 50)
+    private String userName;
+    
+    @Column(name = "user_email_address", length = 100)
+    private String userEmail;
+    
+    @Column(name = "user_age_value")
+    private Integer userAge;
+    
+    @Column(name = "user_registration_timestamp")
+    private LocalDateTime userCreatedAt;
+    
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+    
+    public UserChangeRecord() {}
+    
+    public UserChangeRecord(Long userId, ChangeType changeType, Long versionNumber) {
+        this.userId = userId;
+        this.changeType = changeType;
+        this.versionNumber = versionNumber;
+        this.changedAt = LocalDateTime.now();
+    }
+    
+    public Long getChangeId() { return changeId; }
+    public void setChangeId(Long changeId) { this.changeId = changeId; }
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public ChangeType getChangeType() { return changeType; }
+    public void setChangeType(ChangeType changeType) { this.changeType = changeType; }
+    public Long getVersionNumber() { return versionNumber; }
+    public void setVersionNumber(Long versionNumber) { this.versionNumber = versionNumber; }
+    public String getChangedFields() { return changedFields; }
+    public void setChangedFields(String changedFields) { this.changedFields = changedFields; }
+    public String getUserName() { return userName; }
+    public void setUserName(String userName) { this.userName = userName; }
+    public String getUserEmail() { return userEmail; }
+    public void setUserEmail(String userEmail) { this.userEmail = userEmail; }
+    public Integer getUserAge() { return userAge; }
+    public void setUserAge(Integer userAge) { this.userAge = userAge; }
+    public LocalDateTime getUserCreatedAt() { return userCreatedAt; }
+    public void setUserCreatedAt(LocalDateTime userCreatedAt) { this.userCreatedAt = userCreatedAt; }
+    public LocalDateTime getChangedAt() { return changedAt; }
+    public void setChangedAt(LocalDateTime changedAt) { this.changedAt = changedAt; }
+    
+    @Override
+    public String toString() {
+        return "UserChangeRecord[changeId=" + changeId + ", userId=" + userId + ", changeType=" + changeType 
+            + ", versionNumber=" + versionNumber + ", changedFields=" + changedFields + "]";
+    }
+}
@@ -1,24 +1,55 @@
 package com.example.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.Parameter;
+
 import javax.persistence.*;
 import java.time.LocalDateTime;
-import java.util.Objects;
 
 @Entity
-@Table(name = "app_users")
+// Name and email prefix indexes need operator classes JPA cannot express, see SearchIndexDefinition
+@Table(name = "app_users", indexes = {
+    @Index(name = "idx_app_users_created_at", columnList = "user_registration_timestamp"),
+    @Index(name = "idx_app_users_age", columnList = "user_age_value")
+})
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@NaturalIdCache(region = "user-natural-ids")
 @NamedQueries({
     @NamedQuery(name = "UserEntity.findAllUsers", query = "SELECT myUser FROM UserEntity myUser"),
-    @NamedQuery(name = "UserEntity.findUserByEmail", query = "SELECT myUser FROM UserEntity myUser WHERE myUser.userEmail = :userEmail")
+    @NamedQuery(name = "UserEntity.findUserByEmail", query = "SELECT myUser FROM UserEntity myUser WHERE myUser.userEmail = :userEmail",
+        hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
+    @NamedQuery(name = "UserEntity.existsByEmail", query = "SELECT myUser.userId FROM UserEntity myUser WHERE myUser.userEmail = :userEmail"),
+    @NamedQuery(name = "UserEntity.findExistingEmails", query = "SELECT myUser.userEmail FROM UserEntity myUser WHERE myUser.userEmail IN :userEmails"),
+    @NamedQuery(name = "UserEntity.findUsersByEmails", query = "SELECT myUser FROM UserEntity myUser WHERE myUser.userEmail IN :userEmails"),
+    @NamedQuery(name = "UserEntity.findUsersAfterId", query = "SELECT myUser FROM UserEntity myUser WHERE myUser.userId > :afterUserId ORDER BY myUser.userId"),
+    @NamedQuery(name = "UserEntity.streamAllUsersOrdered", query = "SELECT myUser FROM UserEntity myUser ORDER BY myUser.userId"),
+    @NamedQuery(name = "UserEntity.findUserSummariesAfterId", query = "SELECT new com.example.repository.UserSummary(myUser.userId, "
+        + "myUser.userName, myUser.userEmail, myUser.userAge, myUser.userCreatedAt) FROM UserEntity myUser "
+        + "WHERE myUser.userId > :afterUserId ORDER BY myUser.userId"),
+    @NamedQuery(name = "UserEntity.streamAllUserSummaries", query = "SELECT new com.example.repository.UserSummary(myUser.userId, "
+        + "myUser.userName, myUser.userEmail, myUser.userAge, myUser.userCreatedAt) FROM UserEntity myUser ORDER BY myUser.userId")
 })
 public class UserEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_sequence_generator")
-    @SequenceGenerator(name = "user_sequence_generator", sequenceName = "user_sequence_table", allocationSize = 1)
+    @GenericGenerator(name = "user_sequence_generator", strategy = "com.example.shard.ShardAwareSequenceGenerator", parameters = {
+        @Parameter(name = "sequence_name", value = "user_sequence_table"),
+        @Parameter(name = "increment_size", value = "50"),
+        @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     private Long userId;
     
     @Column(name = "user_full_name", nullable = false, length = 50)
     private String userName;
     
+    @NaturalId(mutable = true)
     @Column(name = "user_email_address", unique = true, nullable = false, length = 100)
     private String userEmail;
     
@@ -33,7 +64,9 @@ public class UserEntity {
     
     @PrePersist
     protected void executeBeforePersist() {
-        userCreatedAt = LocalDateTime.now();
+        if (userCreatedAt == null) {
+            userCreatedAt = LocalDateTime.now();
+        }
     }
     
     public UserEntity() {}
@@ -55,24 +88,26 @@ public class UserEntity {
     public LocalDateTime getUserCreatedAt() { return userCreatedAt; }
     public void setUserCreatedAt(LocalDateTime userCreatedAt) { this.userCreatedAt = userCreatedAt; }
     public Long getVersionNumber() { return versionNumber; }
+    public void setVersionNumber(Long versionNumber) { this.versionNumber = versionNumber; }
     
+    // Identity is the natural key: the generated id is assigned on persist, so hashing it would move transient users
+    // to another bucket once they are saved. String caches its own hash, so this allocates nothing.
     @Override
     public boolean equals(Object myObject) {
         if (this == myObject) return true;
         if (!(myObject instanceof UserEntity)) return false;
-        UserEntity thatUser = (UserEntity) myObject;
-        return Objects.equals(userId, thatUser.userId) && 
-               Objects.equals(userEmail, thatUser.userEmail);
+        String thatEmail = ((UserEntity) myObject).getUserEmail();
+        return userEmail != null && userEmail.equals(thatEmail);
     }
     
     @Override
     public int hashCode() {
-        return Objects.hash(userId, userEmail);
+        return userEmail == null ? 0 : userEmail.hashCode();
     }
     
     @Override
     public String toString() {
-        return String.format("UserEntity[userId=%d, userName='%s', userEmail='%s', userAge=%d, userCreatedAt=%s]", 
-                           userId, userName, userEmail, userAge, userCreatedAt);
+        return "UserEntity[userId=" + userId + ", userName='" + userName + "', userEmail='" + userEmail
+            + "', userAge=" + userAge + ", userCreatedAt=" + userCreatedAt + "]";
     }
 }
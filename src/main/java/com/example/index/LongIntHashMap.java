@@ -0,0 +1,150 @@
+package com.example.index;
+
+import java.util.Arrays;
+
+// Open addressing with linear probing and backward-shift deletion: two flat arrays, no per-entry objects.
+// Duplicate keys are allowed through add(), which the email index relies on for hash collisions.
+final class LongIntHashMap {
+    private static final int EMPTY_VALUE = -1;
+    private static final double LOAD_FACTOR = 0.6;
+    
+    private long[] tableKeys;
+    private int[] tableValues;
+    private int tableMask;
+    private int mapSize;
+    private int resizeThreshold;
+    
+    LongIntHashMap(int expectedSize) {
+        allocateTable(tableCapacityFor(expectedSize));
+    }
+    
+    int get(long mapKey) {
+        int position = firstPosition(mapKey);
+        return position < 0 ? EMPTY_VALUE : tableValues[position];
+    }
+    
+    void put(long mapKey, int mapValue) {
+        int position = firstPosition(mapKey);
+        if (position >= 0) {
+            tableValues[position] = mapValue;
+        } else {
+            add(mapKey, mapValue);
+        }
+    }
+    
+    void add(long mapKey, int mapValue) {
+        if (mapSize >= resizeThreshold) {
+            resizeTable(tableKeys.length << 1);
+        }
+        int position = homePosition(mapKey);
+        while (tableValues[position] != EMPTY_VALUE) {
+            position = (position + 1) & tableMask;
+        }
+        tableKeys[position] = mapKey;
+        tableValues[position] = mapValue;
+        mapSize++;
+    }
+    
+    boolean remove(long mapKey, int mapValue) {
+        for (int position = firstPosition(mapKey); position >= 0; position = nextPosition(mapKey, position)) {
+            if (tableValues[position] == mapValue) {
+                removeAt(position);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    int firstPosition(long mapKey) {
+        return scanFrom(mapKey, homePosition(mapKey));
+    }
+    
+    int nextPosition(long mapKey, int position) {
+        return scanFrom(mapKey, (position + 1) & tableMask);
+    }
+    
+    int valueAt(int position) {
+        return tableValues[position];
+    }
+    
+    int size() {
+        return mapSize;
+    }
+    
+    long getTableBytes() {
+        return (long) tableKeys.length * (Long.BYTES + Integer.BYTES);
+    }
+    
+    void clear() {
+        Arrays.fill(tableValues, EMPTY_VALUE);
+        mapSize = 0;
+    }
+    
+    private int scanFrom(long mapKey, int position) {
+        while (tableValues[position] != EMPTY_VALUE) {
+            if (tableKeys[position] == mapKey) {
+                return position;
+            }
+            position = (position + 1) & tableMask;
+        }
+        return -1;
+    }
+    
+    private void removeAt(int position) {
+        int gapPosition = position;
+        int probePosition = (position + 1) & tableMask;
+        while (tableValues[probePosition] != EMPTY_VALUE) {
+            int probeHome = homePosition(tableKeys[probePosition]);
+            // An entry may only move back into the gap if the gap lies between its home slot and where it sits now
+            if (((probePosition - probeHome) & tableMask) >= ((probePosition - gapPosition) & tableMask)) {
+                tableKeys[gapPosition] = tableKeys[probePosition];
+                tableValues[gapPosition] = tableValues[probePosition];
+                gapPosition = probePosition;
+            }
+            probePosition = (probePosition + 1) & tableMask;
+        }
+        tableValues[gapPosition] = EMPTY_VALUE;
+        mapSize--;
+    }
+    
+    private void resizeTable(int newCapacity) {
+        long[] oldKeys = tableKeys;
+        int[] oldValues = tableValues;
+        allocateTable(newCapacity);
+        for (int position = 0; position < oldValues.length; position++) {
+            if (oldValues[position] != EMPTY_VALUE) {
+                int newPosition = homePosition(oldKeys[position]);
+                while (tableValues[newPosition] != EMPTY_VALUE) {
+                    newPosition = (newPosition + 1) & tableMask;
+                }
+                tableKeys[newPosition] = oldKeys[position];
+                tableValues[newPosition] = oldValues[position];
+            }
+        }
+    }
+    
+    private void allocateTable(int tableCapacity) {
+        tableKeys = new long[tableCapacity];
+        tableValues = new int[tableCapacity];
+        Arrays.fill(tableValues, EMPTY_VALUE);
+        tableMask = tableCapacity - 1;
+        resizeThreshold = (int) (tableCapacity * LOAD_FACTOR);
+    }
+    
+    private int homePosition(long mapKey) {
+        return (int) mixBits(mapKey) & tableMask;
+    }
+    
+    static long mixBits(long hashValue) {
+        hashValue ^= hashValue >>> 33;
+        hashValue *= 0xff51afd7ed558ccdL;
+        hashValue ^= hashValue >>> 33;
+        hashValue *= 0xc4ceb9fe1a85ec53L;
+        return hashValue ^ (hashValue >>> 33);
+    }
+    
+    private static int tableCapacityFor(int expectedSize) {
+        int minimumCapacity = (int) Math.min(1L << 30, (long) Math.ceil(Math.max(expectedSize, 16) / LOAD_FACTOR));
+        return Integer.highestOneBit(minimumCapacity - 1) << 1;
+    }
+}
@@ -0,0 +1,466 @@
+package com.example.index;
+
+import com.example.entity.UserEntity;
+import com.example.repository.UserRepositoryInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Records live in fixed 64-byte slots of direct buffers and strings in an off-heap UTF-16 arena,
+// so millions of users cost a handful of large objects instead of several small ones per user
+public class OffHeapUserIndex {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(OffHeapUserIndex.class);
+    
+    private static final int RECORD_SIZE = 64;
+    private static final int USER_ID_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int CREATED_SECONDS_OFFSET = 16;
+    private static final int CREATED_NANOS_OFFSET = 24;
+    private static final int AGE_OFFSET = 28;
+    private static final int NAME_ADDRESS_OFFSET = 32;
+    private static final int EMAIL_ADDRESS_OFFSET = 40;
+    private static final int NAME_LENGTH_OFFSET = 48;
+    private static final int EMAIL_LENGTH_OFFSET = 52;
+    private static final int EMAIL_HASH_OFFSET = 56;
+    private static final int RECORD_CHUNK_SHIFT = 16;
+    private static final int RECORDS_PER_CHUNK = 1 << RECORD_CHUNK_SHIFT;
+    private static final int STRING_CHUNK_BYTES = 16 * 1024 * 1024;
+    private static final long NO_USER_ID = 0L;
+    private static final int CHANGE_STRIPE_SHIFT = 14;
+    
+    private final List<ByteBuffer> myRecordChunks = new ArrayList<>();
+    private final List<ByteBuffer> myStringChunks = new ArrayList<>();
+    private final LongIntHashMap myIdToSlot;
+    private final LongIntHashMap myEmailHashToSlot;
+    private final LongIntHashMap myChangedWhileLoading = new LongIntHashMap(16);
+    // Generation of the latest remove or field update per stripe of ids; a shared stripe only costs a skipped upsert
+    private final long[] myChangeStripes = new long[1 << CHANGE_STRIPE_SHIFT];
+    private final ReentrantReadWriteLock myIndexLock = new ReentrantReadWriteLock();
+    private final LongAdder indexHits = new LongAdder();
+    private final LongAdder indexMisses = new LongAdder();
+    private int[] myFreeSlots = new int[1024];
+    private int freeSlotCount;
+    private int nextUnusedSlot;
+    private int stringChunkPosition = STRING_CHUNK_BYTES;
+    private long liveStringBytes;
+    private long usedStringBytes;
+    private volatile long changeGeneration;
+    private volatile boolean isLoading;
+    private volatile boolean isLoaded;
+    
+    public OffHeapUserIndex(int expectedUsers) {
+        this.myIdToSlot = new LongIntHashMap(expectedUsers);
+        this.myEmailHashToSlot = new LongIntHashMap(expectedUsers);
+    }
+    
+    public long loadFrom(UserRepositoryInterface myUserRepository) {
+        long startNanos = System.nanoTime();
+        isLoading = true;
+        try {
+            long loadedUsers = myUserRepository.streamAllUsers(this::loadUser);
+            isLoaded = true;
+            myLoggerInstance.info("User index loaded {} users in {} ms ({} MB off-heap)", loadedUsers,
+                (System.nanoTime() - startNanos) / 1_000_000, getOffHeapBytes() / (1024 * 1024));
+            return loadedUsers;
+        } finally {
+            isLoading = false;
+            myIndexLock.writeLock().lock();
+            try {
+                myChangedWhileLoading.clear();
+            } finally {
+                myIndexLock.writeLock().unlock();
+            }
+        }
+    }
+    
+    public boolean isLoaded() {
+        return isLoaded;
+    }
+    
+    public UserEntity findById(long userIdValue) {
+        myIndexLock.readLock().lock();
+        try {
+            int recordSlot = myIdToSlot.get(userIdValue);
+            return recordSlot < 0 ? recordMiss() : recordHit(readUser(recordSlot));
+        } finally {
+            myIndexLock.readLock().unlock();
+        }
+    }
+    
+    public UserEntity findByEmail(String emailAddress) {
+        myIndexLock.readLock().lock();
+        try {
+            int recordSlot = findSlotByEmail(emailAddress);
+            return recordSlot < 0 ? recordMiss() : recordHit(readUser(recordSlot));
+        } finally {
+            myIndexLock.readLock().unlock();
+        }
+    }
+    
+    public boolean containsEmail(String emailAddress) {
+        myIndexLock.readLock().lock();
+        try {
+            boolean isIndexed = findSlotByEmail(emailAddress) >= 0;
+            (isIndexed ? indexHits : indexMisses).increment();
+            return isIndexed;
+        } finally {
+            myIndexLock.readLock().unlock();
+        }
+    }
+    
+    public void upsert(UserEntity myUserEntity) {
+        if (myUserEntity.getUserId() == null || myUserEntity.getUserEmail() == null) {
+            return;
+        }
+        myIndexLock.writeLock().lock();
+        try {
+            storeUser(myUserEntity);
+        } finally {
+            myIndexLock.writeLock().unlock();
+        }
+    }
+    
+    // Taken before a database read whose row is later offered to upsertIfUnchanged
+    public long changeStamp() {
+        return changeGeneration;
+    }
+    
+    // A row read outside the lock may have been deleted or updated since; a version check cannot see
+    // that once its slot is gone, so the row is only stored if nothing touched its id after the stamp
+    public boolean upsertIfUnchanged(UserEntity myUserEntity, long readStamp) {
+        if (myUserEntity.getUserId() == null || myUserEntity.getUserEmail() == null) {
+            return false;
+        }
+        myIndexLock.writeLock().lock();
+        try {
+            if (myChangeStripes[changeStripe(myUserEntity.getUserId())] > readStamp) {
+                return false;
+            }
+            storeUser(myUserEntity);
+            return true;
+        } finally {
+            myIndexLock.writeLock().unlock();
+        }
+    }
+    
+    public void applyFieldUpdate(long userIdValue, long newVersion, String userName, String userEmail, Integer userAge) {
+        myIndexLock.writeLock().lock();
+        try {
+            markChanged(userIdValue);
+            int recordSlot = myIdToSlot.get(userIdValue);
+            if (recordSlot < 0) {
+                if (isLoading) {
+                    // The loading stream's copy of this row predates the update and must not be indexed
+                    myChangedWhileLoading.put(userIdValue, 0);
+                }
+                return;
+            }
+            UserEntity updatedUser = readUser(recordSlot);
+            if (userName != null) updatedUser.setUserName(userName);
+            if (userEmail != null) updatedUser.setUserEmail(userEmail);
+            if (userAge != null) updatedUser.setUserAge(userAge);
+            updatedUser.setVersionNumber(newVersion);
+            storeUser(updatedUser);
+        } finally {
+            myIndexLock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(long userIdValue) {
+        myIndexLock.writeLock().lock();
+        try {
+            markChanged(userIdValue);
+            if (isLoading) {
+                // The loading stream may still deliver this row from its snapshot; it must not resurrect it
+                myChangedWhileLoading.put(userIdValue, 0);
+            }
+            int recordSlot = myIdToSlot.get(userIdValue);
+            if (recordSlot >= 0) {
+                releaseSlot(recordSlot);
+            }
+        } finally {
+            myIndexLock.writeLock().unlock();
+        }
+    }
+    
+    public int size() {
+        myIndexLock.readLock().lock();
+        try {
+            return myIdToSlot.size();
+        } finally {
+            myIndexLock.readLock().unlock();
+        }
+    }
+    
+    public long getOffHeapBytes() {
+        myIndexLock.readLock().lock();
+        try {
+            return (long) myRecordChunks.size() * RECORDS_PER_CHUNK * RECORD_SIZE + (long) myStringChunks.size() * STRING_CHUNK_BYTES;
+        } finally {
+            myIndexLock.readLock().unlock();
+        }
+    }
+    
+    public long getHitCount() { return indexHits.sum(); }
+    public long getMissCount() { return indexMisses.sum(); }
+    
+    @Override
+    public String toString() {
+        return "OffHeapUserIndex[users=" + size() + ", loaded=" + isLoaded + ", offHeapBytes=" + getOffHeapBytes()
+            + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+    
+    // The stream reads a snapshot, so anything written while it runs is newer; it may only fill the gaps
+    private void loadUser(UserEntity myUserEntity) {
+        myIndexLock.writeLock().lock();
+        try {
+            long userIdValue = myUserEntity.getUserId();
+            if (myChangedWhileLoading.get(userIdValue) >= 0) {
+                return;
+            }
+            long versionNumber = myUserEntity.getVersionNumber() == null ? 0L : myUserEntity.getVersionNumber();
+            int recordSlot = myIdToSlot.get(userIdValue);
+            if (recordSlot >= 0 && recordChunk(recordSlot).getLong(recordOffset(recordSlot) + VERSION_OFFSET) >= versionNumber) {
+                return;
+            }
+            // Another user holding this email took it after the snapshot, so it is this row that is stale
+            int emailSlot = findSlotByEmail(myUserEntity.getUserEmail());
+            if (emailSlot >= 0 && recordChunk(emailSlot).getLong(recordOffset(emailSlot) + USER_ID_OFFSET) != userIdValue) {
+                return;
+            }
+            storeUser(myUserEntity);
+        } finally {
+            myIndexLock.writeLock().unlock();
+        }
+    }
+    
+    private void markChanged(long userIdValue) {
+        changeGeneration++;
+        myChangeStripes[changeStripe(userIdValue)] = changeGeneration;
+    }
+    
+    private static int changeStripe(long userIdValue) {
+        return (int) LongIntHashMap.mixBits(userIdValue) & ((1 << CHANGE_STRIPE_SHIFT) - 1);
+    }
+    
+    private UserEntity recordHit(UserEntity myUserEntity) {
+        indexHits.increment();
+        return myUserEntity;
+    }
+    
+    private UserEntity recordMiss() {
+        indexMisses.increment();
+        return null;
+    }
+    
+    private void storeUser(UserEntity myUserEntity) {
+        long userIdValue = myUserEntity.getUserId();
+        long versionNumber = myUserEntity.getVersionNumber() == null ? 0L : myUserEntity.getVersionNumber();
+        long emailHash = hashString(myUserEntity.getUserEmail());
+        int recordSlot = myIdToSlot.get(userIdValue);
+        if (recordSlot >= 0) {
+            ByteBuffer recordChunk = recordChunk(recordSlot);
+            int recordOffset = recordOffset(recordSlot);
+            // Write hooks and the startup stream race; never let an older row overwrite a newer one
+            if (recordChunk.getLong(recordOffset + VERSION_OFFSET) > versionNumber) {
+                return;
+            }
+            myEmailHashToSlot.remove(recordChunk.getLong(recordOffset + EMAIL_HASH_OFFSET), recordSlot);
+            releaseString(recordChunk.getInt(recordOffset + NAME_LENGTH_OFFSET));
+            releaseString(recordChunk.getInt(recordOffset + EMAIL_LENGTH_OFFSET));
+        } else {
+            recordSlot = allocateSlot();
+            myIdToSlot.put(userIdValue, recordSlot);
+        }
+        
+        // Email is unique in the table, so an entry still holding it belongs to a row deleted behind our back
+        int staleSlot = findSlotByEmail(myUserEntity.getUserEmail(), emailHash);
+        if (staleSlot >= 0) {
+            releaseSlot(staleSlot);
+        }
+        
+        ByteBuffer recordChunk = recordChunk(recordSlot);
+        int recordOffset = recordOffset(recordSlot);
+        LocalDateTime userCreatedAt = myUserEntity.getUserCreatedAt();
+        recordChunk.putLong(recordOffset + USER_ID_OFFSET, userIdValue);
+        recordChunk.putLong(recordOffset + VERSION_OFFSET, versionNumber);
+        recordChunk.putLong(recordOffset + CREATED_SECONDS_OFFSET, userCreatedAt == null ? Long.MIN_VALUE : userCreatedAt.toEpochSecond(ZoneOffset.UTC));
+        recordChunk.putInt(recordOffset + CREATED_NANOS_OFFSET, userCreatedAt == null ? 0 : userCreatedAt.getNano());
+        recordChunk.putInt(recordOffset + AGE_OFFSET, myUserEntity.getUserAge() == null ? 0 : myUserEntity.getUserAge());
+        recordChunk.putLong(recordOffset + NAME_ADDRESS_OFFSET, writeString(myUserEntity.getUserName()));
+        recordChunk.putInt(recordOffset + NAME_LENGTH_OFFSET, myUserEntity.getUserName().length());
+        recordChunk.putLong(recordOffset + EMAIL_ADDRESS_OFFSET, writeString(myUserEntity.getUserEmail()));
+        recordChunk.putInt(recordOffset + EMAIL_LENGTH_OFFSET, myUserEntity.getUserEmail().length());
+        recordChunk.putLong(recordOffset + EMAIL_HASH_OFFSET, emailHash);
+        myEmailHashToSlot.add(emailHash, recordSlot);
+        
+        if (usedStringBytes > 4L * STRING_CHUNK_BYTES && usedStringBytes > 2 * liveStringBytes) {
+            compactStrings();
+        }
+    }
+    
+    private UserEntity readUser(int recordSlot) {
+        ByteBuffer recordChunk = recordChunk(recordSlot);
+        int recordOffset = recordOffset(recordSlot);
+        UserEntity myUserEntity = new UserEntity(
+            readString(recordChunk.getLong(recordOffset + NAME_ADDRESS_OFFSET), recordChunk.getInt(recordOffset + NAME_LENGTH_OFFSET)),
+            readString(recordChunk.getLong(recordOffset + EMAIL_ADDRESS_OFFSET), recordChunk.getInt(recordOffset + EMAIL_LENGTH_OFFSET)),
+            recordChunk.getInt(recordOffset + AGE_OFFSET));
+        myUserEntity.setUserId(recordChunk.getLong(recordOffset + USER_ID_OFFSET));
+        myUserEntity.setVersionNumber(recordChunk.getLong(recordOffset + VERSION_OFFSET));
+        long createdSeconds = recordChunk.getLong(recordOffset + CREATED_SECONDS_OFFSET);
+        myUserEntity.setUserCreatedAt(createdSeconds == Long.MIN_VALUE ? null
+            : LocalDateTime.ofEpochSecond(createdSeconds, recordChunk.getInt(recordOffset + CREATED_NANOS_OFFSET), ZoneOffset.UTC));
+        return myUserEntity;
+    }
+    
+    private int findSlotByEmail(String emailAddress) {
+        return emailAddress == null ? -1 : findSlotByEmail(emailAddress, hashString(emailAddress));
+    }
+    
+    private int findSlotByEmail(String emailAddress, long emailHash) {
+        for (int position = myEmailHashToSlot.firstPosition(emailHash); position >= 0;
+                position = myEmailHashToSlot.nextPosition(emailHash, position)) {
+            int recordSlot = myEmailHashToSlot.valueAt(position);
+            ByteBuffer recordChunk = recordChunk(recordSlot);
+            int recordOffset = recordOffset(recordSlot);
+            if (stringEquals(recordChunk.getLong(recordOffset + EMAIL_ADDRESS_OFFSET),
+                    recordChunk.getInt(recordOffset + EMAIL_LENGTH_OFFSET), emailAddress)) {
+                return recordSlot;
+            }
+        }
+        return -1;
+    }
+    
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return myFreeSlots[--freeSlotCount];
+        }
+        if ((nextUnusedSlot >>> RECORD_CHUNK_SHIFT) == myRecordChunks.size()) {
+            myRecordChunks.add(ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SIZE));
+        }
+        return nextUnusedSlot++;
+    }
+    
+    private void releaseSlot(int recordSlot) {
+        ByteBuffer recordChunk = recordChunk(recordSlot);
+        int recordOffset = recordOffset(recordSlot);
+        myIdToSlot.remove(recordChunk.getLong(recordOffset + USER_ID_OFFSET), recordSlot);
+        myEmailHashToSlot.remove(recordChunk.getLong(recordOffset + EMAIL_HASH_OFFSET), recordSlot);
+        releaseString(recordChunk.getInt(recordOffset + NAME_LENGTH_OFFSET));
+        releaseString(recordChunk.getInt(recordOffset + EMAIL_LENGTH_OFFSET));
+        recordChunk.putLong(recordOffset + USER_ID_OFFSET, NO_USER_ID);
+        if (freeSlotCount == myFreeSlots.length) {
+            myFreeSlots = Arrays.copyOf(myFreeSlots, freeSlotCount << 1);
+        }
+        myFreeSlots[freeSlotCount++] = recordSlot;
+    }
+    
+    private ByteBuffer recordChunk(int recordSlot) {
+        return myRecordChunks.get(recordSlot >>> RECORD_CHUNK_SHIFT);
+    }
+    
+    private static int recordOffset(int recordSlot) {
+        return (recordSlot & (RECORDS_PER_CHUNK - 1)) * RECORD_SIZE;
+    }
+    
+    // A string address packs the arena chunk into the high half and the byte offset into the low half
+    private long writeString(String stringValue) {
+        int stringBytes = stringValue.length() * Character.BYTES;
+        if (stringChunkPosition + stringBytes > STRING_CHUNK_BYTES) {
+            myStringChunks.add(ByteBuffer.allocateDirect(STRING_CHUNK_BYTES));
+            stringChunkPosition = 0;
+        }
+        ByteBuffer stringChunk = myStringChunks.get(myStringChunks.size() - 1);
+        long stringAddress = ((long) (myStringChunks.size() - 1) << 32) | stringChunkPosition;
+        for (int charIndex = 0; charIndex < stringValue.length(); charIndex++) {
+            stringChunk.putChar(stringChunkPosition + charIndex * Character.BYTES, stringValue.charAt(charIndex));
+        }
+        stringChunkPosition += stringBytes;
+        liveStringBytes += stringBytes;
+        usedStringBytes += stringBytes;
+        return stringAddress;
+    }
+    
+    private String readString(long stringAddress, int stringLength) {
+        ByteBuffer stringChunk = myStringChunks.get((int) (stringAddress >>> 32));
+        int stringOffset = (int) stringAddress;
+        char[] stringChars = new char[stringLength];
+        for (int charIndex = 0; charIndex < stringLength; charIndex++) {
+            stringChars[charIndex] = stringChunk.getChar(stringOffset + charIndex * Character.BYTES);
+        }
+        return new String(stringChars);
+    }
+    
+    private boolean stringEquals(long stringAddress, int stringLength, String stringValue) {
+        if (stringLength != stringValue.length()) {
+            return false;
+        }
+        ByteBuffer stringChunk = myStringChunks.get((int) (stringAddress >>> 32));
+        int stringOffset = (int) stringAddress;
+        for (int charIndex = 0; charIndex < stringLength; charIndex++) {
+            if (stringChunk.getChar(stringOffset + charIndex * Character.BYTES) != stringValue.charAt(charIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void releaseString(int stringLength) {
+        liveStringBytes -= (long) stringLength * Character.BYTES;
+    }
+    
+    private void compactStrings() {
+        long startNanos = System.nanoTime();
+        List<ByteBuffer> oldStringChunks = new ArrayList<>(myStringChunks);
+        myStringChunks.clear();
+        stringChunkPosition = STRING_CHUNK_BYTES;
+        liveStringBytes = 0;
+        usedStringBytes = 0;
+        for (int recordSlot = 0; recordSlot < nextUnusedSlot; recordSlot++) {
+            ByteBuffer recordChunk = recordChunk(recordSlot);
+            int recordOffset = recordOffset(recordSlot);
+            if (recordChunk.getLong(recordOffset + USER_ID_OFFSET) == NO_USER_ID) {
+                continue;
+            }
+            recordChunk.putLong(recordOffset + NAME_ADDRESS_OFFSET, copyString(oldStringChunks,
+                recordChunk.getLong(recordOffset + NAME_ADDRESS_OFFSET), recordChunk.getInt(recordOffset + NAME_LENGTH_OFFSET)));
+            recordChunk.putLong(recordOffset + EMAIL_ADDRESS_OFFSET, copyString(oldStringChunks,
+                recordChunk.getLong(recordOffset + EMAIL_ADDRESS_OFFSET), recordChunk.getInt(recordOffset + EMAIL_LENGTH_OFFSET)));
+        }
+        myLoggerInstance.debug("Compacted user index strings from {} to {} chunks in {} ms", oldStringChunks.size(),
+            myStringChunks.size(), (System.nanoTime() - startNanos) / 1_000_000);
+    }
+    
+    private long copyString(List<ByteBuffer> oldStringChunks, long oldAddress, int stringLength) {
+        ByteBuffer oldChunk = oldStringChunks.get((int) (oldAddress >>> 32));
+        int stringBytes = stringLength * Character.BYTES;
+        if (stringChunkPosition + stringBytes > STRING_CHUNK_BYTES) {
+            myStringChunks.add(ByteBuffer.allocateDirect(STRING_CHUNK_BYTES));
+            stringChunkPosition = 0;
+        }
+        ByteBuffer newChunk = myStringChunks.get(myStringChunks.size() - 1);
+        long newAddress = ((long) (myStringChunks.size() - 1) << 32) | stringChunkPosition;
+        newChunk.put(stringChunkPosition, oldChunk, (int) oldAddress, stringBytes);
+        stringChunkPosition += stringBytes;
+        liveStringBytes += stringBytes;
+        usedStringBytes += stringBytes;
+        return newAddress;
+    }
+    
+    private static long hashString(String stringValue) {
+        long hashValue = 1125899906842597L;
+        for (int charIndex = 0; charIndex < stringValue.length(); charIndex++) {
+            hashValue = 31 * hashValue + stringValue.charAt(charIndex);
+        }
+        return LongIntHashMap.mixBits(hashValue);
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.metrics;
+
+import com.example.config.DatabaseConfigurationManager;
+import org.HdrHistogram.Histogram;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public class MetricsRegistry implements UserMetricsMXBean {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(MetricsRegistry.class);
+    private static final boolean METRICS_ENABLED = Boolean.parseBoolean(System.getProperty("metrics.enabled", "true"));
+    private static final MetricsRegistry myRegistryInstance = new MetricsRegistry();
+    
+    private final Map<String, OperationMetrics> myOperationMetrics = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<String>> myStatusSections = new ConcurrentSkipListMap<>();
+    private volatile long metricsStartNanos = System.nanoTime();
+    
+    static {
+        if (METRICS_ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(myRegistryInstance, 
+                    new ObjectName("com.example:type=UserMetrics"));
+            } catch (Exception myException) {
+                myLoggerInstance.warn("Could not register metrics MBean: {}", myException.getMessage());
+            }
+        }
+    }
+    
+    private MetricsRegistry() {}
+    
+    public static boolean isEnabled() {
+        return METRICS_ENABLED;
+    }
+    
+    public static MetricsRegistry getInstance() {
+        return myRegistryInstance;
+    }
+    
+    public OperationMetrics operation(String operationName) {
+        return myOperationMetrics.computeIfAbsent(operationName, OperationMetrics::new);
+    }
+    
+    // Components outside this package (e.g. the repository circuit breaker) add a line to dumpMetrics()
+    public void registerStatusSection(String sectionName, Supplier<String> statusSupplier) {
+        myStatusSections.put(sectionName, statusSupplier);
+    }
+    
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> operationCounts = new TreeMap<>();
+        myOperationMetrics.forEach((operationName, metrics) -> 
+            operationCounts.put(operationName, metrics.getSuccessCount() + metrics.getErrorCount()));
+        return operationCounts;
+    }
+    
+    @Override
+    public Map<String, Long> getOperationErrorCounts() {
+        Map<String, Long> errorCounts = new TreeMap<>();
+        myOperationMetrics.forEach((operationName, metrics) -> errorCounts.put(operationName, metrics.getErrorCount()));
+        return errorCounts;
+    }
+    
+    @Override
+    public Map<String, Long> getOperationP99Micros() {
+        Map<String, Long> p99Latencies = new TreeMap<>();
+        myOperationMetrics.forEach((operationName, metrics) -> p99Latencies.put(operationName, 
+            TimeUnit.NANOSECONDS.toMicros(metrics.snapshotLatencyHistogram().getValueAtPercentile(99.0))));
+        return p99Latencies;
+    }
+    
+    @Override
+    public Map<String, Long> getHibernateStatistics() {
+        Map<String, Long> hibernateStatistics = new TreeMap<>();
+        if (DatabaseConfigurationManager.isEmbeddedStorage()) {
+            return hibernateStatistics;
+        }
+        Statistics myStatistics = DatabaseConfigurationManager.getMySessionFactory().getStatistics();
+        hibernateStatistics.put("statementsPrepared", myStatistics.getPrepareStatementCount());
+        hibernateStatistics.put("queriesExecuted", myStatistics.getQueryExecutionCount());
+        hibernateStatistics.put("slowestQueryMillis", myStatistics.getQueryExecutionMaxTime());
+        hibernateStatistics.put("flushes", myStatistics.getFlushCount());
+        hibernateStatistics.put("transactions", myStatistics.getTransactionCount());
+        hibernateStatistics.put("connectionsObtained", myStatistics.getConnectCount());
+        hibernateStatistics.put("entitiesLoaded", myStatistics.getEntityLoadCount());
+        hibernateStatistics.put("entitiesInserted", myStatistics.getEntityInsertCount());
+        hibernateStatistics.put("entitiesUpdated", myStatistics.getEntityUpdateCount());
+        hibernateStatistics.put("secondLevelCacheHits", myStatistics.getSecondLevelCacheHitCount());
+        hibernateStatistics.put("secondLevelCacheMisses", myStatistics.getSecondLevelCacheMissCount());
+        hibernateStatistics.put("naturalIdCacheHits", myStatistics.getNaturalIdCacheHitCount());
+        hibernateStatistics.put("naturalIdCacheMisses", myStatistics.getNaturalIdCacheMissCount());
+        hibernateStatistics.put("queryCacheHits", myStatistics.getQueryCacheHitCount());
+        hibernateStatistics.put("queryCacheMisses", myStatistics.getQueryCacheMissCount());
+        return hibernateStatistics;
+    }
+    
+    @Override
+    public String dumpMetrics() {
+        StringBuilder metricsDump = new StringBuilder(1024);
+        double elapsedSeconds = Math.max((System.nanoTime() - metricsStartNanos) / 1e9, 1e-3);
+        metricsDump.append(formatOperationTable(myOperationMetrics.values(), elapsedSeconds));
+        if (!DatabaseConfigurationManager.isEmbeddedStorage()) {
+            metricsDump.append("hibernate: ").append(getHibernateStatistics()).append('\n');
+            metricsDump.append("second-level cache: ").append(DatabaseConfigurationManager.getCacheStatistics()).append('\n');
+            metricsDump.append("connection pool: ").append(DatabaseConfigurationManager.getConnectionPoolMetrics()).append('\n');
+        }
+        myStatusSections.forEach((sectionName, statusSupplier) -> 
+            metricsDump.append(sectionName).append(": ").append(statusSupplier.get()).append('\n'));
+        return metricsDump.toString();
+    }
+    
+    public static String formatOperationTable(Collection<OperationMetrics> operationMetrics, double elapsedSeconds) {
+        StringBuilder operationTable = new StringBuilder(1024);
+        operationTable.append(String.format("%-42s %9s %7s %10s %9s %9s %9s %9s%n", 
+            "operation", "count", "errors", "ops/s", "p50 us", "p90 us", "p99 us", "max us"));
+        List<OperationMetrics> sortedMetrics = new ArrayList<>(operationMetrics);
+        sortedMetrics.sort(Comparator.comparing(OperationMetrics::getOperationName));
+        for (OperationMetrics metrics : sortedMetrics) {
+            Histogram latencyHistogram = metrics.snapshotLatencyHistogram();
+            long operationCount = metrics.getSuccessCount() + metrics.getErrorCount();
+            operationTable.append(String.format("%-42s %9d %7d %10.1f %9d %9d %9d %9d%n", metrics.getOperationName(), 
+                operationCount, metrics.getErrorCount(), operationCount / elapsedSeconds,
+                TimeUnit.NANOSECONDS.toMicros(latencyHistogram.getValueAtPercentile(50.0)),
+                TimeUnit.NANOSECONDS.toMicros(latencyHistogram.getValueAtPercentile(90.0)),
+                TimeUnit.NANOSECONDS.toMicros(latencyHistogram.getValueAtPercentile(99.0)),
+                TimeUnit.NANOSECONDS.toMicros(latencyHistogram.getMaxValue())));
+            metrics.getErrorsByCause().forEach((causeName, causeCount) -> 
+                operationTable.append("    error ").append(causeName).append(": ").append(causeCount).append('\n'));
+        }
+        return operationTable.toString();
+    }
+    
+    @Override
+    public void resetMetrics() {
+        myOperationMetrics.values().forEach(OperationMetrics::reset);
+        if (!DatabaseConfigurationManager.isEmbeddedStorage()) {
+            DatabaseConfigurationManager.getMySessionFactory().getStatistics().clear();
+        }
+        metricsStartNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.metrics;
+
+import com.example.repository.DataAccessCustomException;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class OperationMetrics {
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int SIGNIFICANT_VALUE_DIGITS = 2;
+    
+    private final String operationName;
+    private final Recorder myLatencyRecorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_VALUE_DIGITS);
+    private final Histogram myCumulativeHistogram = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_VALUE_DIGITS);
+    private final LongAdder successCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final Map<String, LongAdder> errorsByCause = new ConcurrentHashMap<>();
+    private Histogram myRecycledIntervalHistogram;
+    
+    public OperationMetrics(String operationName) {
+        this.operationName = operationName;
+    }
+    
+    public void recordSuccess(long elapsedNanos) {
+        myLatencyRecorder.recordValue(Math.min(elapsedNanos, HIGHEST_TRACKABLE_NANOS));
+        successCount.increment();
+    }
+    
+    public void recordFailure(long elapsedNanos, Throwable failureCause) {
+        myLatencyRecorder.recordValue(Math.min(elapsedNanos, HIGHEST_TRACKABLE_NANOS));
+        errorCount.increment();
+        errorsByCause.computeIfAbsent(describeFailureCause(failureCause), causeName -> new LongAdder()).increment();
+    }
+    
+    // Recorder swaps its active histogram on every snapshot, so writers never block on readers
+    public synchronized Histogram snapshotLatencyHistogram() {
+        myRecycledIntervalHistogram = myLatencyRecorder.getIntervalHistogram(myRecycledIntervalHistogram);
+        myCumulativeHistogram.add(myRecycledIntervalHistogram);
+        return myCumulativeHistogram.copy();
+    }
+    
+    public synchronized void reset() {
+        myLatencyRecorder.reset();
+        myCumulativeHistogram.reset();
+        successCount.reset();
+        errorCount.reset();
+        errorsByCause.clear();
+    }
+    
+    public String getOperationName() { return operationName; }
+    public long getSuccessCount() { return successCount.sum(); }
+    public long getErrorCount() { return errorCount.sum(); }
+    
+    public Map<String, Long> getErrorsByCause() {
+        Map<String, Long> errorCounts = new TreeMap<>();
+        errorsByCause.forEach((causeName, causeCount) -> errorCounts.put(causeName, causeCount.sum()));
+        return errorCounts;
+    }
+    
+    private static String describeFailureCause(Throwable failureCause) {
+        // DataAccessCustomException is only a wrapper; the interesting part is what the driver or Hibernate threw
+        if (failureCause instanceof DataAccessCustomException && failureCause.getClass() == DataAccessCustomException.class 
+                && failureCause.getCause() != null) {
+            Throwable rootCause = failureCause.getCause();
+            while (rootCause.getCause() != null && rootCause.getCause() != rootCause) {
+                rootCause = rootCause.getCause();
+            }
+            return rootCause.getClass().getSimpleName();
+        }
+        return failureCause.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.metrics;
+
+import java.util.Map;
+
+public interface UserMetricsMXBean {
+    Map<String, Long> getOperationCounts();
+    Map<String, Long> getOperationErrorCounts();
+    Map<String, Long> getOperationP99Micros();
+    Map<String, Long> getHibernateStatistics();
+    String dumpMetrics();
+    void resetMetrics();
+}
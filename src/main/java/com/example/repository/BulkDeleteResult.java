@@ -0,0 +1,26 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class BulkDeleteResult {
+    private final List<Long> myDeletedIds = new ArrayList<>();
+    private final List<Long> myMissingIds = new ArrayList<>();
+    
+    public BulkDeleteResult(List<Long> requestedIds, Set<Long> deletedIds) {
+        for (Long requestedId : requestedIds) {
+            if (deletedIds.contains(requestedId)) {
+                myDeletedIds.add(requestedId);
+            } else {
+                myMissingIds.add(requestedId);
+            }
+        }
+    }
+    
+    public List<Long> getDeletedIds() { return Collections.unmodifiableList(myDeletedIds); }
+    public List<Long> getMissingIds() { return Collections.unmodifiableList(myMissingIds); }
+    public int getDeletedCount() { return myDeletedIds.size(); }
+    public int getMissingCount() { return myMissingIds.size(); }
+}
@@ -0,0 +1,49 @@
+package com.example.repository;
+
+import com.example.entity.UserEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BulkInsertResult {
+    private final List<UserEntity> myInsertedUsers = new ArrayList<>();
+    private final List<RejectedUser> myRejectedUsers = new ArrayList<>();
+    
+    public void addInsertedUser(UserEntity insertedUser) {
+        myInsertedUsers.add(insertedUser);
+    }
+    
+    public void addRejectedUser(int inputPosition, UserEntity rejectedUser, String rejectionReason) {
+        myRejectedUsers.add(new RejectedUser(inputPosition, rejectedUser, rejectionReason));
+    }
+    
+    public void mergeFrom(BulkInsertResult otherResult, int[] inputPositionMapping) {
+        myInsertedUsers.addAll(otherResult.myInsertedUsers);
+        for (RejectedUser rejectedUser : otherResult.myRejectedUsers) {
+            addRejectedUser(inputPositionMapping[rejectedUser.getInputPosition()], 
+                rejectedUser.getUser(), rejectedUser.getRejectionReason());
+        }
+    }
+    
+    public List<UserEntity> getInsertedUsers() { return Collections.unmodifiableList(myInsertedUsers); }
+    public List<RejectedUser> getRejectedUsers() { return Collections.unmodifiableList(myRejectedUsers); }
+    public int getInsertedCount() { return myInsertedUsers.size(); }
+    public int getRejectedCount() { return myRejectedUsers.size(); }
+    
+    public static class RejectedUser {
+        private final int inputPosition;
+        private final UserEntity user;
+        private final String rejectionReason;
+        
+        public RejectedUser(int inputPosition, UserEntity user, String rejectionReason) {
+            this.inputPosition = inputPosition;
+            this.user = user;
+            this.rejectionReason = rejectionReason;
+        }
+        
+        public int getInputPosition() { return inputPosition; }
+        public UserEntity getUser() { return user; }
+        public String getRejectionReason() { return rejectionReason; }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.repository;
+
+import com.example.entity.UserEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Every distinct key of the request appears once, in the order it was first requested, either as a found user or as
+// a missing key
+public class BulkLookupResult<K> {
+    private final List<UserEntity> myFoundUsers;
+    private final List<K> myMissingKeys = new ArrayList<>();
+    private final Map<K, UserEntity> myUsersByKey;
+    
+    public BulkLookupResult(List<K> requestedKeys, Map<K, UserEntity> foundUsersByKey) {
+        this.myFoundUsers = new ArrayList<>(foundUsersByKey.size());
+        this.myUsersByKey = foundUsersByKey;
+        for (K requestedKey : requestedKeys) {
+            UserEntity foundUser = foundUsersByKey.get(requestedKey);
+            if (foundUser != null) {
+                myFoundUsers.add(foundUser);
+            } else {
+                myMissingKeys.add(requestedKey);
+            }
+        }
+    }
+    
+    // Duplicates are dropped so each key costs one bind parameter; null keys are a caller error
+    static <K> List<K> distinctKeys(Collection<K> requestedKeys) {
+        LinkedHashSet<K> distinctKeys = new LinkedHashSet<>(requestedKeys);
+        if (distinctKeys.contains(null)) {
+            throw new IllegalArgumentException("Lookup keys must not be null");
+        }
+        return new ArrayList<>(distinctKeys);
+    }
+    
+    public Optional<UserEntity> getUser(K requestedKey) { return Optional.ofNullable(myUsersByKey.get(requestedKey)); }
+    public List<UserEntity> getFoundUsers() { return Collections.unmodifiableList(myFoundUsers); }
+    public List<K> getMissingKeys() { return Collections.unmodifiableList(myMissingKeys); }
+    public int getFoundCount() { return myFoundUsers.size(); }
+    public int getMissingCount() { return myMissingKeys.size(); }
+}
@@ -0,0 +1,14 @@
+package com.example.repository;
+
+public class DuplicateEmailException extends DataAccessCustomException {
+    private final String emailAddress;
+    
+    public DuplicateEmailException(String emailAddress, Throwable cause) {
+        super("Email address already registered: " + emailAddress, cause);
+        this.emailAddress = emailAddress;
+    }
+    
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+}
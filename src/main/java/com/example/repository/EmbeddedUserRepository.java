@@ -0,0 +1,401 @@
+package com.example.repository;
+
+import com.example.entity.UserEntity;
+import com.example.storage.EmbeddedUserStore;
+import com.example.storage.StoredUser;
+import org.hibernate.StaleObjectStateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Runs the repository contract against the embedded store instead of a database: the same version checks, email
+// uniqueness and id-ordered paging, with entities handed out as detached copies
+public class EmbeddedUserRepository implements UserRepositoryInterface {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(EmbeddedUserRepository.class);
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int BULK_TRANSACTION_SIZE = 1000;
+    
+    private final EmbeddedUserStore myUserStore;
+    
+    public EmbeddedUserRepository(EmbeddedUserStore myUserStore) {
+        this.myUserStore = myUserStore;
+    }
+    
+    @Override
+    public UserEntity MyInsertNewUser(UserEntity myUserEntity) {
+        try {
+            StoredUser insertedUser = myUserStore.write(myWriteBatch -> insertUser(myWriteBatch, myUserEntity));
+            myLoggerInstance.debug("Created user with ID: {}", insertedUser.userId());
+            return myUserEntity;
+        } catch (DuplicateEmailException myException) {
+            myLoggerInstance.warn("Rejected duplicate email on create: {}", myUserEntity.getUserEmail());
+            throw myException;
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to create user: {}", myException.getMessage());
+            throw new DataAccessCustomException("Failed to create user", myException);
+        }
+    }
+    
+    // Like persist: the passed entity itself receives the id, registration time and initial version
+    private static StoredUser insertUser(EmbeddedUserStore.WriteBatch myWriteBatch, UserEntity myUserEntity) {
+        if (myUserEntity.getUserId() != null) {
+            throw new IllegalArgumentException("User " + myUserEntity.getUserId() + " is already stored");
+        }
+        LocalDateTime userCreatedAt = myUserEntity.getUserCreatedAt() == null ? LocalDateTime.now() : myUserEntity.getUserCreatedAt();
+        StoredUser insertedUser = myWriteBatch.insert(myUserEntity.getUserName(), myUserEntity.getUserEmail(), myUserEntity.getUserAge(),
+            userCreatedAt);
+        myUserEntity.setUserId(insertedUser.userId());
+        myUserEntity.setUserCreatedAt(userCreatedAt);
+        myUserEntity.setVersionNumber(insertedUser.versionNumber());
+        return insertedUser;
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserById(Long userIdValue) {
+        return myUserStore.findById(userIdValue).map(StoredUser::toEntity);
+    }
+    
+    @Override
+    public List<UserEntity> retrieveAllUsers() {
+        List<UserEntity> allUsers = new ArrayList<>(myUserStore.size());
+        streamAllUsers(allUsers::add);
+        return allUsers;
+    }
+    
+    @Override
+    public List<UserEntity> retrieveUsersPage(Long afterUserId, int pageSize) {
+        validatePageSize(pageSize);
+        return collectPage(afterUserId, pageSize, storedUser -> true, StoredUser::toEntity);
+    }
+    
+    @Override
+    public long streamAllUsers(Consumer<UserEntity> userConsumer) {
+        long streamedCount = 0;
+        for (StoredUser storedUser : myUserStore.usersAfter(0L)) {
+            userConsumer.accept(storedUser.toEntity());
+            streamedCount++;
+        }
+        return streamedCount;
+    }
+    
+    @Override
+    public List<UserSummary> retrieveUserSummariesPage(Long afterUserId, int pageSize) {
+        validatePageSize(pageSize);
+        return collectPage(afterUserId, pageSize, storedUser -> true, EmbeddedUserRepository::toSummary);
+    }
+    
+    @Override
+    public long streamAllUserSummaries(Consumer<UserSummary> summaryConsumer) {
+        long streamedCount = 0;
+        for (StoredUser storedUser : myUserStore.usersAfter(0L)) {
+            summaryConsumer.accept(toSummary(storedUser));
+            streamedCount++;
+        }
+        return streamedCount;
+    }
+    
+    @Override
+    public List<UserEntity> searchUsers(UserSearchCriteria searchCriteria) {
+        validatePageSize(searchCriteria.getPageSize());
+        return collectPage(searchCriteria.getAfterUserId(), searchCriteria.getPageSize(), storedUser -> matches(storedUser, searchCriteria),
+            StoredUser::toEntity);
+    }
+    
+    @Override
+    public List<Object[]> searchUserFields(UserSearchCriteria searchCriteria, List<UserSearchField> selectedFields) {
+        validatePageSize(searchCriteria.getPageSize());
+        if (selectedFields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field must be selected");
+        }
+        return collectPage(searchCriteria.getAfterUserId(), searchCriteria.getPageSize(), storedUser -> matches(storedUser, searchCriteria),
+            storedUser -> {
+                Object[] fieldValues = new Object[selectedFields.size()];
+                for (int fieldIndex = 0; fieldIndex < fieldValues.length; fieldIndex++) {
+                    fieldValues[fieldIndex] = fieldValue(storedUser, selectedFields.get(fieldIndex));
+                }
+                return fieldValues;
+            });
+    }
+    
+    @Override
+    public List<UserSummary> searchUserSummaries(UserSearchCriteria searchCriteria) {
+        validatePageSize(searchCriteria.getPageSize());
+        return collectPage(searchCriteria.getAfterUserId(), searchCriteria.getPageSize(), storedUser -> matches(storedUser, searchCriteria),
+            EmbeddedUserRepository::toSummary);
+    }
+    
+    // Only id and email are indexed, so the other filters are checked row by row while walking the id order
+    private <T> List<T> collectPage(Long afterUserId, int pageSize, Predicate<StoredUser> userFilter,
+                                    Function<StoredUser, T> rowMapper) {
+        List<T> pageRows = new ArrayList<>(Math.min(pageSize, 64));
+        for (StoredUser storedUser : myUserStore.usersAfter(afterUserId == null ? 0L : afterUserId)) {
+            if (userFilter.test(storedUser)) {
+                pageRows.add(rowMapper.apply(storedUser));
+                if (pageRows.size() == pageSize) {
+                    break;
+                }
+            }
+        }
+        return pageRows;
+    }
+    
+    // Same semantics as the SQL predicates: case-sensitive name prefix, prefix of the lower-cased email, inclusive
+    // age bounds, registration time from inclusive and before exclusive
+    private static boolean matches(StoredUser storedUser, UserSearchCriteria searchCriteria) {
+        if (searchCriteria.getNamePrefix() != null && !storedUser.userName().startsWith(searchCriteria.getNamePrefix())) return false;
+        if (searchCriteria.getEmailPrefix() != null
+                && !storedUser.userEmail().toLowerCase(Locale.ROOT).startsWith(searchCriteria.getEmailPrefix())) return false;
+        if (searchCriteria.getMinimumAge() != null && storedUser.userAge() < searchCriteria.getMinimumAge()) return false;
+        if (searchCriteria.getMaximumAge() != null && storedUser.userAge() > searchCriteria.getMaximumAge()) return false;
+        if (searchCriteria.getCreatedFrom() != null && storedUser.userCreatedAt().isBefore(searchCriteria.getCreatedFrom())) return false;
+        return searchCriteria.getCreatedBefore() == null || storedUser.userCreatedAt().isBefore(searchCriteria.getCreatedBefore());
+    }
+    
+    private static Object fieldValue(StoredUser storedUser, UserSearchField selectedField) {
+        switch (selectedField) {
+            case USER_ID: return storedUser.userId();
+            case USER_NAME: return storedUser.userName();
+            case USER_EMAIL: return storedUser.userEmail();
+            case USER_AGE: return storedUser.userAge();
+            case USER_CREATED_AT: return storedUser.userCreatedAt();
+            case VERSION_NUMBER: return storedUser.versionNumber();
+            default: throw new IllegalArgumentException("Unknown search field " + selectedField);
+        }
+    }
+    
+    private static UserSummary toSummary(StoredUser storedUser) {
+        return new UserSummary(storedUser.userId(), storedUser.userName(), storedUser.userEmail(), storedUser.userAge(),
+            storedUser.userCreatedAt());
+    }
+    
+    private static void validatePageSize(int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+    
+    // Behaves like merge: no id, or an unknown id without a version, stores a new user; an unknown id with a version,
+    // or a version other than the stored one, is a stale update
+    @Override
+    public UserEntity updateExistingUser(UserEntity myUserEntity) {
+        try {
+            UserEntity mergedUser = myUserStore.write(myWriteBatch -> {
+                StoredUser currentUser = myUserEntity.getUserId() == null ? null
+                    : myWriteBatch.findById(myUserEntity.getUserId()).orElse(null);
+                if (currentUser == null && (myUserEntity.getUserId() == null || myUserEntity.getVersionNumber() == null)) {
+                    UserEntity insertedUser = copyWithoutId(myUserEntity);
+                    insertUser(myWriteBatch, insertedUser);
+                    return insertedUser;
+                }
+                if (currentUser == null || (myUserEntity.getVersionNumber() != null
+                        && myUserEntity.getVersionNumber() != currentUser.versionNumber())) {
+                    throw new StaleObjectStateException(UserEntity.class.getName(), myUserEntity.getUserId());
+                }
+                LocalDateTime userCreatedAt = myUserEntity.getUserCreatedAt() == null ? currentUser.userCreatedAt()
+                    : myUserEntity.getUserCreatedAt();
+                if (isUnchanged(currentUser, myUserEntity, userCreatedAt)) {
+                    // merge of an unmodified entity issues no UPDATE, so the version stays where it is
+                    return currentUser.toEntity();
+                }
+                return myWriteBatch.replace(currentUser, myUserEntity.getUserName(), myUserEntity.getUserEmail(), myUserEntity.getUserAge(),
+                    userCreatedAt).toEntity();
+            });
+            myLoggerInstance.debug("Updated user with ID: {}", mergedUser.getUserId());
+            return mergedUser;
+        } catch (DuplicateEmailException myException) {
+            myLoggerInstance.warn("Rejected duplicate email on update: {}", myUserEntity.getUserEmail());
+            throw myException;
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to update user: {}", myException.getMessage());
+            throw new DataAccessCustomException("Failed to update user", myException);
+        }
+    }
+    
+    private static boolean isUnchanged(StoredUser currentUser, UserEntity myUserEntity, LocalDateTime userCreatedAt) {
+        return currentUser.userName().equals(myUserEntity.getUserName()) && currentUser.userEmail().equals(myUserEntity.getUserEmail())
+            && myUserEntity.getUserAge() != null && currentUser.userAge() == myUserEntity.getUserAge()
+            && currentUser.userCreatedAt().equals(userCreatedAt);
+    }
+    
+    private static UserEntity copyWithoutId(UserEntity myUserEntity) {
+        UserEntity copiedUser = new UserEntity(myUserEntity.getUserName(), myUserEntity.getUserEmail(), myUserEntity.getUserAge());
+        copiedUser.setUserCreatedAt(myUserEntity.getUserCreatedAt());
+        return copiedUser;
+    }
+    
+    @Override
+    public boolean removeUserById(Long userIdValue) {
+        return removeUser(userIdValue, null);
+    }
+    
+    @Override
+    public boolean removeUserByIdAndVersion(Long userIdValue, Long expectedVersion) {
+        return removeUser(userIdValue, expectedVersion);
+    }
+    
+    private boolean removeUser(Long userIdValue, Long expectedVersion) {
+        try {
+            boolean isDeleted = myUserStore.write(myWriteBatch -> {
+                StoredUser currentUser = myWriteBatch.findById(userIdValue).orElse(null);
+                if (currentUser == null || (expectedVersion != null && currentUser.versionNumber() != expectedVersion)) {
+                    return false;
+                }
+                myWriteBatch.delete(currentUser);
+                return true;
+            });
+            if (isDeleted) {
+                myLoggerInstance.debug("Deleted user with ID: {}", userIdValue);
+            }
+            return isDeleted;
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to delete user with ID {}: {}", userIdValue, myException.getMessage());
+            throw new DataAccessCustomException("Failed to delete user", myException);
+        }
+    }
+    
+    @Override
+    public boolean updateUserFields(Long userIdValue, Long expectedVersion, String userName, String userEmail, Integer userAge) {
+        if (userName == null && userEmail == null && userAge == null) {
+            throw new IllegalArgumentException("At least one field must be updated");
+        }
+        try {
+            boolean isUpdated = myUserStore.write(myWriteBatch -> {
+                StoredUser currentUser = myWriteBatch.findById(userIdValue).orElse(null);
+                if (currentUser == null || expectedVersion == null || currentUser.versionNumber() != expectedVersion) {
+                    return false;
+                }
+                // Like the UPDATE statement, this bumps the version even when the values are the same
+                myWriteBatch.replace(currentUser, userName == null ? currentUser.userName() : userName,
+                    userEmail == null ? currentUser.userEmail() : userEmail, userAge == null ? currentUser.userAge() : userAge,
+                    currentUser.userCreatedAt());
+                return true;
+            });
+            if (!isUpdated) {
+                myLoggerInstance.warn("No user updated for ID {} at version {}", userIdValue, expectedVersion);
+                return false;
+            }
+            myLoggerInstance.debug("Updated user with ID: {}", userIdValue);
+            return true;
+        } catch (DuplicateEmailException myException) {
+            myLoggerInstance.warn("Rejected duplicate email on update: {}", userEmail);
+            throw myException;
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to update user with ID {}: {}", userIdValue, myException.getMessage());
+            throw new DataAccessCustomException("Failed to update user", myException);
+        }
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserByEmailAddress(String emailAddress) {
+        return myUserStore.findByEmail(emailAddress).map(StoredUser::toEntity);
+    }
+    
+    @Override
+    public boolean checkIfEmailExists(String emailAddress) {
+        return myUserStore.findByEmail(emailAddress).isPresent();
+    }
+    
+    @Override
+    public Set<String> findExistingEmails(Collection<String> emailAddresses) {
+        Set<String> existingEmails = new HashSet<>();
+        for (String emailAddress : emailAddresses) {
+            if (myUserStore.findByEmail(emailAddress).isPresent()) {
+                existingEmails.add(emailAddress);
+            }
+        }
+        return existingEmails;
+    }
+    
+    @Override
+    public BulkLookupResult<Long> findUsersByIds(Collection<Long> userIds) {
+        List<Long> distinctIds = BulkLookupResult.distinctKeys(userIds);
+        Map<Long, UserEntity> foundUsers = new HashMap<>();
+        for (Long userId : distinctIds) {
+            myUserStore.findById(userId).ifPresent(storedUser -> foundUsers.put(userId, storedUser.toEntity()));
+        }
+        return new BulkLookupResult<>(distinctIds, foundUsers);
+    }
+    
+    @Override
+    public BulkLookupResult<String> findUsersByEmails(Collection<String> emailAddresses) {
+        List<String> distinctEmails = BulkLookupResult.distinctKeys(emailAddresses);
+        Map<String, UserEntity> foundUsers = new HashMap<>();
+        for (String emailAddress : distinctEmails) {
+            myUserStore.findByEmail(emailAddress).ifPresent(storedUser -> foundUsers.put(emailAddress, storedUser.toEntity()));
+        }
+        return new BulkLookupResult<>(distinctEmails, foundUsers);
+    }
+    
+    // Every chunk commits on its own, like bulk inserts: if a later chunk fails, the users of earlier chunks stay deleted
+    @Override
+    public BulkDeleteResult removeUsersByIds(Collection<Long> userIds) {
+        List<Long> distinctIds = BulkLookupResult.distinctKeys(userIds);
+        Set<Long> deletedIds = new HashSet<>();
+        try {
+            for (int chunkStart = 0; chunkStart < distinctIds.size(); chunkStart += BULK_TRANSACTION_SIZE) {
+                List<Long> idsChunk = distinctIds.subList(chunkStart, Math.min(chunkStart + BULK_TRANSACTION_SIZE, distinctIds.size()));
+                myUserStore.write(myWriteBatch -> {
+                    for (Long userId : idsChunk) {
+                        myWriteBatch.findById(userId).ifPresent(currentUser -> {
+                            myWriteBatch.delete(currentUser);
+                            deletedIds.add(userId);
+                        });
+                    }
+                    return null;
+                });
+            }
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to delete {} users: {}", distinctIds.size(), myException.getMessage());
+            throw new DataAccessCustomException("Failed to delete users", myException);
+        }
+        myLoggerInstance.debug("Deleted {} of {} users", deletedIds.size(), distinctIds.size());
+        return new BulkDeleteResult(distinctIds, deletedIds);
+    }
+    
+    // A rejected row costs nothing here, so rows are checked one by one inside chunk-sized writes instead of
+    // replaying a failed chunk
+    @Override
+    public BulkInsertResult insertUsersInBulk(Collection<UserEntity> usersToInsert) {
+        List<UserEntity> usersList = new ArrayList<>(usersToInsert);
+        BulkInsertResult bulkResult = new BulkInsertResult();
+        try {
+            for (int chunkStart = 0; chunkStart < usersList.size(); chunkStart += BULK_TRANSACTION_SIZE) {
+                int chunkEnd = Math.min(chunkStart + BULK_TRANSACTION_SIZE, usersList.size());
+                int firstRow = chunkStart;
+                List<UserEntity> insertedChunk = myUserStore.write(myWriteBatch -> {
+                    List<UserEntity> insertedUsers = new ArrayList<>(chunkEnd - firstRow);
+                    for (int rowPosition = firstRow; rowPosition < chunkEnd; rowPosition++) {
+                        UserEntity myUserEntity = usersList.get(rowPosition);
+                        try {
+                            insertUser(myWriteBatch, myUserEntity);
+                            insertedUsers.add(myUserEntity);
+                        } catch (DuplicateEmailException | IllegalArgumentException myException) {
+                            bulkResult.addRejectedUser(rowPosition, myUserEntity, myException.getMessage());
+                        }
+                    }
+                    return insertedUsers;
+                });
+                insertedChunk.forEach(bulkResult::addInsertedUser);
+            }
+        } catch (Exception myException) {
+            myLoggerInstance.error("Bulk insert failed after {} users: {}", bulkResult.getInsertedCount(), myException.getMessage());
+            throw new DataAccessCustomException("Failed to insert users", myException);
+        }
+        myLoggerInstance.debug("Bulk insert finished: {} inserted, {} rejected",
+            bulkResult.getInsertedCount(), bulkResult.getRejectedCount());
+        return bulkResult;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.repository;
+
+import com.example.config.ReadReplicaRouter;
+import com.example.entity.UserEntity;
+import com.example.index.OffHeapUserIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class IndexedUserRepository implements UserRepositoryInterface {
+    private final UserRepositoryInterface myDelegateRepository;
+    private final OffHeapUserIndex myUserIndex;
+    
+    public IndexedUserRepository(UserRepositoryInterface myDelegateRepository, OffHeapUserIndex myUserIndex) {
+        this.myDelegateRepository = myDelegateRepository;
+        this.myUserIndex = myUserIndex;
+    }
+    
+    @Override
+    public UserEntity MyInsertNewUser(UserEntity myUserEntity) {
+        UserEntity insertedUser = myDelegateRepository.MyInsertNewUser(myUserEntity);
+        myUserIndex.upsert(insertedUser);
+        return insertedUser;
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserById(Long userIdValue) {
+        if (!myUserIndex.isLoaded() || userIdValue == null) {
+            return myDelegateRepository.findUserById(userIdValue);
+        }
+        UserEntity indexedUser = myUserIndex.findById(userIdValue);
+        if (indexedUser != null) {
+            return Optional.of(indexedUser);
+        }
+        // Rows written by other processes are picked up on first miss. A lagging replica could hand back a row the
+        // index has already moved past, so reads that fill it go to the primary; before loading they are not stored
+        long readStamp = myUserIndex.changeStamp();
+        Optional<UserEntity> loadedUser = ReadReplicaRouter.readFromPrimary(() -> myDelegateRepository.findUserById(userIdValue));
+        loadedUser.ifPresent(myUser -> myUserIndex.upsertIfUnchanged(myUser, readStamp));
+        return loadedUser;
+    }
+    
+    @Override
+    public List<UserEntity> retrieveAllUsers() {
+        return myDelegateRepository.retrieveAllUsers();
+    }
+    
+    @Override
+    public List<UserEntity> retrieveUsersPage(Long afterUserId, int pageSize) {
+        return myDelegateRepository.retrieveUsersPage(afterUserId, pageSize);
+    }
+    
+    @Override
+    public long streamAllUsers(Consumer<UserEntity> userConsumer) {
+        return myDelegateRepository.streamAllUsers(userConsumer);
+    }
+    
+    @Override
+    public List<UserSummary> retrieveUserSummariesPage(Long afterUserId, int pageSize) {
+        return myDelegateRepository.retrieveUserSummariesPage(afterUserId, pageSize);
+    }
+    
+    @Override
+    public long streamAllUserSummaries(Consumer<UserSummary> summaryConsumer) {
+        return myDelegateRepository.streamAllUserSummaries(summaryConsumer);
+    }
+    
+    @Override
+    public List<UserSummary> searchUserSummaries(UserSearchCriteria searchCriteria) {
+        return myDelegateRepository.searchUserSummaries(searchCriteria);
+    }
+    
+    @Override
+    public List<UserEntity> searchUsers(UserSearchCriteria searchCriteria) {
+        return myDelegateRepository.searchUsers(searchCriteria);
+    }
+    
+    @Override
+    public List<Object[]> searchUserFields(UserSearchCriteria searchCriteria, List<UserSearchField> selectedFields) {
+        return myDelegateRepository.searchUserFields(searchCriteria, selectedFields);
+    }
+    
+    @Override
+    public UserEntity updateExistingUser(UserEntity myUserEntity) {
+        try {
+            UserEntity updatedUser = myDelegateRepository.updateExistingUser(myUserEntity);
+            myUserIndex.upsert(updatedUser);
+            return updatedUser;
+        } catch (RuntimeException myException) {
+            invalidateUser(myUserEntity.getUserId());
+            throw myException;
+        }
+    }
+    
+    @Override
+    public boolean removeUserById(Long userIdValue) {
+        try {
+            return myDelegateRepository.removeUserById(userIdValue);
+        } finally {
+            invalidateUser(userIdValue);
+        }
+    }
+    
+    @Override
+    public boolean updateUserFields(Long userIdValue, Long expectedVersion, String userName, String userEmail, Integer userAge) {
+        boolean isUpdated;
+        try {
+            isUpdated = myDelegateRepository.updateUserFields(userIdValue, expectedVersion, userName, userEmail, userAge);
+        } catch (DuplicateEmailException myException) {
+            throw myException;
+        } catch (RuntimeException myException) {
+            invalidateUser(userIdValue);
+            throw myException;
+        }
+        if (isUpdated) {
+            myUserIndex.applyFieldUpdate(userIdValue, expectedVersion + 1, userName, userEmail, userAge);
+        } else {
+            // A version mismatch means our copy is behind whoever won the race
+            invalidateUser(userIdValue);
+        }
+        return isUpdated;
+    }
+    
+    @Override
+    public boolean removeUserByIdAndVersion(Long userIdValue, Long expectedVersion) {
+        try {
+            return myDelegateRepository.removeUserByIdAndVersion(userIdValue, expectedVersion);
+        } finally {
+            invalidateUser(userIdValue);
+        }
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserByEmailAddress(String emailAddress) {
+        if (!myUserIndex.isLoaded()) {
+            return myDelegateRepository.findUserByEmailAddress(emailAddress);
+        }
+        UserEntity indexedUser = myUserIndex.findByEmail(emailAddress);
+        if (indexedUser != null) {
+            return Optional.of(indexedUser);
+        }
+        long readStamp = myUserIndex.changeStamp();
+        Optional<UserEntity> loadedUser = ReadReplicaRouter.readFromPrimary(() -> myDelegateRepository.findUserByEmailAddress(emailAddress));
+        loadedUser.ifPresent(myUser -> myUserIndex.upsertIfUnchanged(myUser, readStamp));
+        return loadedUser;
+    }
+    
+    @Override
+    public boolean checkIfEmailExists(String emailAddress) {
+        if (myUserIndex.isLoaded() && myUserIndex.containsEmail(emailAddress)) {
+            return true;
+        }
+        return myDelegateRepository.checkIfEmailExists(emailAddress);
+    }
+    
+    @Override
+    public Set<String> findExistingEmails(Collection<String> emailAddresses) {
+        if (!myUserIndex.isLoaded()) {
+            return myDelegateRepository.findExistingEmails(emailAddresses);
+        }
+        Set<String> existingEmails = new HashSet<>();
+        List<String> unindexedEmails = new ArrayList<>();
+        for (String emailAddress : emailAddresses) {
+            if (myUserIndex.containsEmail(emailAddress)) {
+                existingEmails.add(emailAddress);
+            } else {
+                unindexedEmails.add(emailAddress);
+            }
+        }
+        if (!unindexedEmails.isEmpty()) {
+            existingEmails.addAll(myDelegateRepository.findExistingEmails(unindexedEmails));
+        }
+        return existingEmails;
+    }
+    
+    @Override
+    public BulkInsertResult insertUsersInBulk(Collection<UserEntity> usersToInsert) {
+        BulkInsertResult bulkResult = myDelegateRepository.insertUsersInBulk(usersToInsert);
+        bulkResult.getInsertedUsers().forEach(myUserIndex::upsert);
+        return bulkResult;
+    }
+    
+    @Override
+    public BulkLookupResult<Long> findUsersByIds(Collection<Long> userIds) {
+        if (!myUserIndex.isLoaded()) {
+            return myDelegateRepository.findUsersByIds(userIds);
+        }
+        List<Long> distinctIds = BulkLookupResult.distinctKeys(userIds);
+        Map<Long, UserEntity> foundUsers = new HashMap<>();
+        List<Long> unindexedIds = new ArrayList<>();
+        for (Long userIdValue : distinctIds) {
+            UserEntity indexedUser = myUserIndex.findById(userIdValue);
+            if (indexedUser != null) {
+                foundUsers.put(userIdValue, indexedUser);
+            } else {
+                unindexedIds.add(userIdValue);
+            }
+        }
+        if (!unindexedIds.isEmpty()) {
+            long readStamp = myUserIndex.changeStamp();
+            BulkLookupResult<Long> lookupResult = ReadReplicaRouter.readFromPrimary(() -> myDelegateRepository.findUsersByIds(unindexedIds));
+            for (UserEntity loadedUser : upsertLoaded(lookupResult, readStamp).getFoundUsers()) {
+                foundUsers.put(loadedUser.getUserId(), loadedUser);
+            }
+        }
+        return new BulkLookupResult<>(distinctIds, foundUsers);
+    }
+    
+    @Override
+    public BulkLookupResult<String> findUsersByEmails(Collection<String> emailAddresses) {
+        if (!myUserIndex.isLoaded()) {
+            return myDelegateRepository.findUsersByEmails(emailAddresses);
+        }
+        List<String> distinctEmails = BulkLookupResult.distinctKeys(emailAddresses);
+        Map<String, UserEntity> foundUsers = new HashMap<>();
+        List<String> unindexedEmails = new ArrayList<>();
+        for (String emailAddress : distinctEmails) {
+            UserEntity indexedUser = myUserIndex.findByEmail(emailAddress);
+            if (indexedUser != null) {
+                foundUsers.put(emailAddress, indexedUser);
+            } else {
+                unindexedEmails.add(emailAddress);
+            }
+        }
+        if (!unindexedEmails.isEmpty()) {
+            long readStamp = myUserIndex.changeStamp();
+            BulkLookupResult<String> lookupResult = ReadReplicaRouter.readFromPrimary(() -> myDelegateRepository.findUsersByEmails(unindexedEmails));
+            for (UserEntity loadedUser : upsertLoaded(lookupResult, readStamp).getFoundUsers()) {
+                foundUsers.put(loadedUser.getUserEmail(), loadedUser);
+            }
+        }
+        return new BulkLookupResult<>(distinctEmails, foundUsers);
+    }
+    
+    @Override
+    public BulkDeleteResult removeUsersByIds(Collection<Long> userIds) {
+        try {
+            return myDelegateRepository.removeUsersByIds(userIds);
+        } finally {
+            userIds.forEach(this::invalidateUser);
+        }
+    }
+    
+    private <K> BulkLookupResult<K> upsertLoaded(BulkLookupResult<K> lookupResult, long readStamp) {
+        lookupResult.getFoundUsers().forEach(myUser -> myUserIndex.upsertIfUnchanged(myUser, readStamp));
+        return lookupResult;
+    }
+    
+    private void invalidateUser(Long userIdValue) {
+        if (userIdValue != null) {
+            myUserIndex.remove(userIdValue);
+        }
+    }
+}
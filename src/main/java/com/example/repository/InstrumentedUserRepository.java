@@ -0,0 +1,181 @@
+package com.example.repository;
+
+import com.example.entity.UserEntity;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.OperationMetrics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class InstrumentedUserRepository implements UserRepositoryInterface {
+    private final UserRepositoryInterface myDelegateRepository;
+    private final OperationMetrics insertMetrics;
+    private final OperationMetrics findByIdMetrics;
+    private final OperationMetrics retrieveAllMetrics;
+    private final OperationMetrics retrievePageMetrics;
+    private final OperationMetrics streamAllMetrics;
+    private final OperationMetrics summaryPageMetrics;
+    private final OperationMetrics streamSummariesMetrics;
+    private final OperationMetrics searchSummariesMetrics;
+    private final OperationMetrics searchMetrics;
+    private final OperationMetrics searchFieldsMetrics;
+    private final OperationMetrics updateMetrics;
+    private final OperationMetrics removeMetrics;
+    private final OperationMetrics updateFieldsMetrics;
+    private final OperationMetrics removeVersionedMetrics;
+    private final OperationMetrics findByEmailMetrics;
+    private final OperationMetrics emailExistsMetrics;
+    private final OperationMetrics findExistingEmailsMetrics;
+    private final OperationMetrics bulkInsertMetrics;
+    private final OperationMetrics findByIdsMetrics;
+    private final OperationMetrics findByEmailsMetrics;
+    private final OperationMetrics bulkRemoveMetrics;
+    
+    public InstrumentedUserRepository(UserRepositoryInterface myDelegateRepository) {
+        this.myDelegateRepository = myDelegateRepository;
+        MetricsRegistry myRegistry = MetricsRegistry.getInstance();
+        this.insertMetrics = myRegistry.operation("repository.insertNewUser");
+        this.findByIdMetrics = myRegistry.operation("repository.findUserById");
+        this.retrieveAllMetrics = myRegistry.operation("repository.retrieveAllUsers");
+        this.retrievePageMetrics = myRegistry.operation("repository.retrieveUsersPage");
+        this.streamAllMetrics = myRegistry.operation("repository.streamAllUsers");
+        this.summaryPageMetrics = myRegistry.operation("repository.retrieveUserSummariesPage");
+        this.streamSummariesMetrics = myRegistry.operation("repository.streamAllUserSummaries");
+        this.searchSummariesMetrics = myRegistry.operation("repository.searchUserSummaries");
+        this.searchMetrics = myRegistry.operation("repository.searchUsers");
+        this.searchFieldsMetrics = myRegistry.operation("repository.searchUserFields");
+        this.updateMetrics = myRegistry.operation("repository.updateExistingUser");
+        this.removeMetrics = myRegistry.operation("repository.removeUserById");
+        this.updateFieldsMetrics = myRegistry.operation("repository.updateUserFields");
+        this.removeVersionedMetrics = myRegistry.operation("repository.removeUserByIdAndVersion");
+        this.findByEmailMetrics = myRegistry.operation("repository.findUserByEmailAddress");
+        this.emailExistsMetrics = myRegistry.operation("repository.checkIfEmailExists");
+        this.findExistingEmailsMetrics = myRegistry.operation("repository.findExistingEmails");
+        this.bulkInsertMetrics = myRegistry.operation("repository.insertUsersInBulk");
+        this.findByIdsMetrics = myRegistry.operation("repository.findUsersByIds");
+        this.findByEmailsMetrics = myRegistry.operation("repository.findUsersByEmails");
+        this.bulkRemoveMetrics = myRegistry.operation("repository.removeUsersByIds");
+    }
+    
+    @Override
+    public UserEntity MyInsertNewUser(UserEntity myUserEntity) {
+        return timed(insertMetrics, () -> myDelegateRepository.MyInsertNewUser(myUserEntity));
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserById(Long userIdValue) {
+        return timed(findByIdMetrics, () -> myDelegateRepository.findUserById(userIdValue));
+    }
+    
+    @Override
+    public List<UserEntity> retrieveAllUsers() {
+        return timed(retrieveAllMetrics, myDelegateRepository::retrieveAllUsers);
+    }
+    
+    @Override
+    public List<UserEntity> retrieveUsersPage(Long afterUserId, int pageSize) {
+        return timed(retrievePageMetrics, () -> myDelegateRepository.retrieveUsersPage(afterUserId, pageSize));
+    }
+    
+    @Override
+    public long streamAllUsers(Consumer<UserEntity> userConsumer) {
+        return timed(streamAllMetrics, () -> myDelegateRepository.streamAllUsers(userConsumer));
+    }
+    
+    @Override
+    public List<UserSummary> retrieveUserSummariesPage(Long afterUserId, int pageSize) {
+        return timed(summaryPageMetrics, () -> myDelegateRepository.retrieveUserSummariesPage(afterUserId, pageSize));
+    }
+    
+    @Override
+    public long streamAllUserSummaries(Consumer<UserSummary> summaryConsumer) {
+        return timed(streamSummariesMetrics, () -> myDelegateRepository.streamAllUserSummaries(summaryConsumer));
+    }
+    
+    @Override
+    public List<UserSummary> searchUserSummaries(UserSearchCriteria searchCriteria) {
+        return timed(searchSummariesMetrics, () -> myDelegateRepository.searchUserSummaries(searchCriteria));
+    }
+    
+    @Override
+    public List<UserEntity> searchUsers(UserSearchCriteria searchCriteria) {
+        return timed(searchMetrics, () -> myDelegateRepository.searchUsers(searchCriteria));
+    }
+    
+    @Override
+    public List<Object[]> searchUserFields(UserSearchCriteria searchCriteria, List<UserSearchField> selectedFields) {
+        return timed(searchFieldsMetrics, () -> myDelegateRepository.searchUserFields(searchCriteria, selectedFields));
+    }
+    
+    @Override
+    public UserEntity updateExistingUser(UserEntity myUserEntity) {
+        return timed(updateMetrics, () -> myDelegateRepository.updateExistingUser(myUserEntity));
+    }
+    
+    @Override
+    public boolean removeUserById(Long userIdValue) {
+        return timed(removeMetrics, () -> myDelegateRepository.removeUserById(userIdValue));
+    }
+    
+    @Override
+    public boolean updateUserFields(Long userIdValue, Long expectedVersion, String userName, String userEmail, Integer userAge) {
+        return timed(updateFieldsMetrics, () -> 
+            myDelegateRepository.updateUserFields(userIdValue, expectedVersion, userName, userEmail, userAge));
+    }
+    
+    @Override
+    public boolean removeUserByIdAndVersion(Long userIdValue, Long expectedVersion) {
+        return timed(removeVersionedMetrics, () -> myDelegateRepository.removeUserByIdAndVersion(userIdValue, expectedVersion));
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserByEmailAddress(String emailAddress) {
+        return timed(findByEmailMetrics, () -> myDelegateRepository.findUserByEmailAddress(emailAddress));
+    }
+    
+    @Override
+    public boolean checkIfEmailExists(String emailAddress) {
+        return timed(emailExistsMetrics, () -> myDelegateRepository.checkIfEmailExists(emailAddress));
+    }
+    
+    @Override
+    public Set<String> findExistingEmails(Collection<String> emailAddresses) {
+        return timed(findExistingEmailsMetrics, () -> myDelegateRepository.findExistingEmails(emailAddresses));
+    }
+    
+    @Override
+    public BulkInsertResult insertUsersInBulk(Collection<UserEntity> usersToInsert) {
+        return timed(bulkInsertMetrics, () -> myDelegateRepository.insertUsersInBulk(usersToInsert));
+    }
+    
+    @Override
+    public BulkLookupResult<Long> findUsersByIds(Collection<Long> userIds) {
+        return timed(findByIdsMetrics, () -> myDelegateRepository.findUsersByIds(userIds));
+    }
+    
+    @Override
+    public BulkLookupResult<String> findUsersByEmails(Collection<String> emailAddresses) {
+        return timed(findByEmailsMetrics, () -> myDelegateRepository.findUsersByEmails(emailAddresses));
+    }
+    
+    @Override
+    public BulkDeleteResult removeUsersByIds(Collection<Long> userIds) {
+        return timed(bulkRemoveMetrics, () -> myDelegateRepository.removeUsersByIds(userIds));
+    }
+    
+    private static <T> T timed(OperationMetrics operationMetrics, Supplier<T> repositoryOperation) {
+        long startNanos = System.nanoTime();
+        try {
+            T operationResult = repositoryOperation.get();
+            operationMetrics.recordSuccess(System.nanoTime() - startNanos);
+            return operationResult;
+        } catch (RuntimeException myException) {
+            operationMetrics.recordFailure(System.nanoTime() - startNanos, myException);
+            throw myException;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts database outages (connection failures and timeouts) over the last calls and, once they dominate,
+// rejects calls for a cool-down period instead of letting every caller wait for its own timeout
+public class RepositoryCircuitBreaker implements RepositoryCircuitBreakerMXBean {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(RepositoryCircuitBreaker.class);
+    private static final int WINDOW_SIZE = Integer.getInteger("circuit-breaker.window-size", 20);
+    private static final int MINIMUM_CALLS = Integer.getInteger("circuit-breaker.minimum-calls", 10);
+    private static final int FAILURE_RATE_PERCENT = Integer.getInteger("circuit-breaker.failure-rate-percent", 50);
+    private static final long OPEN_DURATION_NANOS = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("circuit-breaker.open-duration-ms", 5000));
+    private static final int HALF_OPEN_TRIAL_CALLS = Integer.getInteger("circuit-breaker.half-open-calls", 3);
+    
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+    
+    private final boolean[] myOutcomeWindow = new boolean[WINDOW_SIZE];
+    private final LongAdder shortCircuitedCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder recoveredByRetryCount = new LongAdder();
+    private volatile State myState = State.CLOSED;
+    private int windowPosition;
+    private int recordedCalls;
+    private int failedCalls;
+    private int trialPermits;
+    private int trialSuccesses;
+    private long openedAtNanos;
+    private long openedCount;
+    
+    public RepositoryCircuitBreaker() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, 
+                new ObjectName("com.example:type=RepositoryCircuitBreaker"));
+        } catch (Exception myException) {
+            myLoggerInstance.warn("Could not register circuit breaker MBean: {}", myException.getMessage());
+        }
+    }
+    
+    public synchronized boolean tryAcquirePermission() {
+        if (myState == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < OPEN_DURATION_NANOS) {
+                shortCircuitedCount.increment();
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+            trialPermits = HALF_OPEN_TRIAL_CALLS;
+            trialSuccesses = 0;
+        }
+        if (myState == State.HALF_OPEN) {
+            if (trialPermits == 0) {
+                shortCircuitedCount.increment();
+                return false;
+            }
+            trialPermits--;
+        }
+        return true;
+    }
+    
+    // Any answer from the database counts as a success here, including duplicates and version conflicts
+    public synchronized void recordSuccess() {
+        if (myState == State.HALF_OPEN) {
+            if (++trialSuccesses >= HALF_OPEN_TRIAL_CALLS) {
+                transitionTo(State.CLOSED);
+                clearWindow();
+            }
+            return;
+        }
+        if (myState == State.CLOSED) {
+            recordOutcome(false);
+        }
+    }
+    
+    public synchronized void recordFailure() {
+        if (myState == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (myState == State.CLOSED) {
+            recordOutcome(true);
+            if (recordedCalls >= MINIMUM_CALLS && failedCalls * 100 >= FAILURE_RATE_PERCENT * recordedCalls) {
+                open();
+            }
+        }
+    }
+    
+    void recordRetry() {
+        retryCount.increment();
+    }
+    
+    void recordRecoveredByRetry() {
+        recoveredByRetryCount.increment();
+    }
+    
+    public State currentState() {
+        return myState;
+    }
+    
+    private void recordOutcome(boolean isFailure) {
+        if (recordedCalls == WINDOW_SIZE) {
+            if (myOutcomeWindow[windowPosition]) failedCalls--;
+        } else {
+            recordedCalls++;
+        }
+        myOutcomeWindow[windowPosition] = isFailure;
+        if (isFailure) failedCalls++;
+        windowPosition = (windowPosition + 1) % WINDOW_SIZE;
+    }
+    
+    private void open() {
+        openedAtNanos = System.nanoTime();
+        openedCount++;
+        transitionTo(State.OPEN);
+    }
+    
+    private void clearWindow() {
+        Arrays.fill(myOutcomeWindow, false);
+        windowPosition = 0;
+        recordedCalls = 0;
+        failedCalls = 0;
+    }
+    
+    private void transitionTo(State nextState) {
+        if (myState != nextState) {
+            myLoggerInstance.warn("Repository circuit breaker {} -> {} ({} of last {} calls failed)", 
+                myState, nextState, failedCalls, recordedCalls);
+            myState = nextState;
+        }
+    }
+    
+    @Override
+    public String getState() {
+        return myState.name();
+    }
+    
+    @Override
+    public synchronized int getFailureRatePercent() {
+        return recordedCalls == 0 ? 0 : failedCalls * 100 / recordedCalls;
+    }
+    
+    @Override
+    public synchronized long getOpenedCount() {
+        return openedCount;
+    }
+    
+    @Override
+    public long getShortCircuitedCount() {
+        return shortCircuitedCount.sum();
+    }
+    
+    @Override
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+    
+    @Override
+    public long getRecoveredByRetryCount() {
+        return recoveredByRetryCount.sum();
+    }
+    
+    @Override
+    public synchronized long getMillisUntilHalfOpen() {
+        if (myState != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(OPEN_DURATION_NANOS - (System.nanoTime() - openedAtNanos)));
+    }
+    
+    @Override
+    public synchronized void forceOpen() {
+        open();
+    }
+    
+    @Override
+    public synchronized void reset() {
+        transitionTo(State.CLOSED);
+        clearWindow();
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "state=" + myState + ", failureRate=" + getFailureRatePercent() + "% of " + recordedCalls + " calls"
+            + ", opened=" + openedCount + ", shortCircuited=" + shortCircuitedCount.sum()
+            + ", retries=" + retryCount.sum() + ", recoveredByRetry=" + recoveredByRetryCount.sum();
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.repository;
+
+public interface RepositoryCircuitBreakerMXBean {
+    String getState();
+    int getFailureRatePercent();
+    long getOpenedCount();
+    long getShortCircuitedCount();
+    long getRetryCount();
+    long getRecoveredByRetryCount();
+    long getMillisUntilHalfOpen();
+    void forceOpen();
+    void reset();
+}
@@ -0,0 +1,7 @@
+package com.example.repository;
+
+public class RepositoryUnavailableException extends DataAccessCustomException {
+    public RepositoryUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.repository;
+
+import com.example.entity.UserEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Retries transient database failures where repeating the call cannot apply a change twice, and fails fast
+// through the shared circuit breaker while the database is down
+public class ResilientUserRepository implements UserRepositoryInterface {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(ResilientUserRepository.class);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("retry.max-attempts", 3);
+    private static final long BASE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("retry.base-delay-ms", 50));
+    private static final long MAX_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("retry.max-delay-ms", 1000));
+    private static final long RETRY_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("retry.budget-ms", 2000));
+    private static final String SERIALIZATION_FAILURE_SQL_STATE = "40001";
+    private static final String DEADLOCK_SQL_STATE = "40P01";
+    private static final String LOCK_NOT_AVAILABLE_SQL_STATE = "55P03";
+    private static final String QUERY_CANCELED_SQL_STATE = "57014";
+    private static final String ADMIN_SHUTDOWN_SQL_STATE = "57P01";
+    private static final String TOO_MANY_CONNECTIONS_SQL_STATE = "53300";
+    
+    private final UserRepositoryInterface myDelegateRepository;
+    private final RepositoryCircuitBreaker myCircuitBreaker;
+    
+    public ResilientUserRepository(UserRepositoryInterface myDelegateRepository, RepositoryCircuitBreaker myCircuitBreaker) {
+        this.myDelegateRepository = myDelegateRepository;
+        this.myCircuitBreaker = myCircuitBreaker;
+    }
+    
+    enum FailureKind {
+        // Not a database outage: duplicates, validation, version conflicts
+        NONE,
+        // Rolled back by the database (serialization failure, deadlock, lock timeout), so always safe to repeat
+        CONTENTION,
+        TIMEOUT,
+        // The pool could not hand out a connection, so the statement never reached the database
+        CONNECTION_NOT_ACQUIRED,
+        // The connection broke mid-call; a write may or may not have committed
+        CONNECTION
+    }
+    
+    enum RetryMode {
+        READ(true),
+        // Guarded by the version column (or idempotent), so a repeat after an unknown outcome is harmless
+        GUARDED_WRITE(true),
+        WRITE(false),
+        // Streams hand rows to the caller as they go and bulk inserts commit in chunks, so neither can restart
+        NONE(false);
+        
+        private final boolean isSafeAfterBrokenConnection;
+        
+        RetryMode(boolean isSafeAfterBrokenConnection) {
+            this.isSafeAfterBrokenConnection = isSafeAfterBrokenConnection;
+        }
+        
+        boolean allowsRetry(FailureKind failureKind) {
+            switch (failureKind) {
+                case CONTENTION:
+                case CONNECTION_NOT_ACQUIRED:
+                    return this != NONE;
+                case CONNECTION:
+                    return isSafeAfterBrokenConnection;
+                default:
+                    // A statement that hit its timeout would most likely hit it again and double the load
+                    return false;
+            }
+        }
+    }
+    
+    @Override
+    public UserEntity MyInsertNewUser(UserEntity myUserEntity) {
+        return execute("insertNewUser", RetryMode.WRITE, () -> myDelegateRepository.MyInsertNewUser(myUserEntity));
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserById(Long userIdValue) {
+        return execute("findUserById", RetryMode.READ, () -> myDelegateRepository.findUserById(userIdValue));
+    }
+    
+    @Override
+    public List<UserEntity> retrieveAllUsers() {
+        return execute("retrieveAllUsers", RetryMode.READ, myDelegateRepository::retrieveAllUsers);
+    }
+    
+    @Override
+    public List<UserEntity> retrieveUsersPage(Long afterUserId, int pageSize) {
+        return execute("retrieveUsersPage", RetryMode.READ, () -> myDelegateRepository.retrieveUsersPage(afterUserId, pageSize));
+    }
+    
+    @Override
+    public long streamAllUsers(Consumer<UserEntity> userConsumer) {
+        return execute("streamAllUsers", RetryMode.NONE, () -> myDelegateRepository.streamAllUsers(userConsumer));
+    }
+    
+    @Override
+    public List<UserSummary> retrieveUserSummariesPage(Long afterUserId, int pageSize) {
+        return execute("retrieveUserSummariesPage", RetryMode.READ, 
+            () -> myDelegateRepository.retrieveUserSummariesPage(afterUserId, pageSize));
+    }
+    
+    @Override
+    public long streamAllUserSummaries(Consumer<UserSummary> summaryConsumer) {
+        return execute("streamAllUserSummaries", RetryMode.NONE, () -> myDelegateRepository.streamAllUserSummaries(summaryConsumer));
+    }
+    
+    @Override
+    public List<UserEntity> searchUsers(UserSearchCriteria searchCriteria) {
+        return execute("searchUsers", RetryMode.READ, () -> myDelegateRepository.searchUsers(searchCriteria));
+    }
+    
+    @Override
+    public List<Object[]> searchUserFields(UserSearchCriteria searchCriteria, List<UserSearchField> selectedFields) {
+        return execute("searchUserFields", RetryMode.READ, () -> myDelegateRepository.searchUserFields(searchCriteria, selectedFields));
+    }
+    
+    @Override
+    public List<UserSummary> searchUserSummaries(UserSearchCriteria searchCriteria) {
+        return execute("searchUserSummaries", RetryMode.READ, () -> myDelegateRepository.searchUserSummaries(searchCriteria));
+    }
+    
+    @Override
+    public UserEntity updateExistingUser(UserEntity myUserEntity) {
+        return execute("updateExistingUser", RetryMode.GUARDED_WRITE, () -> myDelegateRepository.updateExistingUser(myUserEntity));
+    }
+    
+    // Not guarded: a repeat after a lost commit finds nothing and reports a delete that happened as "not found"
+    @Override
+    public boolean removeUserById(Long userIdValue) {
+        return execute("removeUserById", RetryMode.WRITE, () -> myDelegateRepository.removeUserById(userIdValue));
+    }
+    
+    @Override
+    public boolean updateUserFields(Long userIdValue, Long expectedVersion, String userName, String userEmail, Integer userAge) {
+        return execute("updateUserFields", RetryMode.GUARDED_WRITE, 
+            () -> myDelegateRepository.updateUserFields(userIdValue, expectedVersion, userName, userEmail, userAge));
+    }
+    
+    @Override
+    public boolean removeUserByIdAndVersion(Long userIdValue, Long expectedVersion) {
+        return execute("removeUserByIdAndVersion", RetryMode.GUARDED_WRITE, 
+            () -> myDelegateRepository.removeUserByIdAndVersion(userIdValue, expectedVersion));
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserByEmailAddress(String emailAddress) {
+        return execute("findUserByEmailAddress", RetryMode.READ, () -> myDelegateRepository.findUserByEmailAddress(emailAddress));
+    }
+    
+    @Override
+    public boolean checkIfEmailExists(String emailAddress) {
+        return execute("checkIfEmailExists", RetryMode.READ, () -> myDelegateRepository.checkIfEmailExists(emailAddress));
+    }
+    
+    @Override
+    public Set<String> findExistingEmails(Collection<String> emailAddresses) {
+        return execute("findExistingEmails", RetryMode.READ, () -> myDelegateRepository.findExistingEmails(emailAddresses));
+    }
+    
+    @Override
+    public BulkInsertResult insertUsersInBulk(Collection<UserEntity> usersToInsert) {
+        return execute("insertUsersInBulk", RetryMode.NONE, () -> myDelegateRepository.insertUsersInBulk(usersToInsert));
+    }
+    
+    @Override
+    public BulkLookupResult<Long> findUsersByIds(Collection<Long> userIds) {
+        return execute("findUsersByIds", RetryMode.READ, () -> myDelegateRepository.findUsersByIds(userIds));
+    }
+    
+    @Override
+    public BulkLookupResult<String> findUsersByEmails(Collection<String> emailAddresses) {
+        return execute("findUsersByEmails", RetryMode.READ, () -> myDelegateRepository.findUsersByEmails(emailAddresses));
+    }
+    
+    // Same as removeUserById: after a lost commit a repeat would count every deleted id as not found
+    @Override
+    public BulkDeleteResult removeUsersByIds(Collection<Long> userIds) {
+        return execute("removeUsersByIds", RetryMode.WRITE, () -> myDelegateRepository.removeUsersByIds(userIds));
+    }
+    
+    private <T> T execute(String operationName, RetryMode retryMode, Supplier<T> repositoryCall) {
+        long startNanos = System.nanoTime();
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            if (!myCircuitBreaker.tryAcquirePermission()) {
+                throw new RepositoryUnavailableException("Database is unavailable, " + operationName + " rejected by the circuit breaker");
+            }
+            FailureKind failureKind;
+            try {
+                T operationResult = repositoryCall.get();
+                myCircuitBreaker.recordSuccess();
+                if (attemptNumber > 1) {
+                    myCircuitBreaker.recordRecoveredByRetry();
+                }
+                return operationResult;
+            } catch (RuntimeException myException) {
+                failureKind = classifyFailure(myException);
+                if (failureKind == FailureKind.NONE || failureKind == FailureKind.CONTENTION) {
+                    myCircuitBreaker.recordSuccess();
+                } else {
+                    myCircuitBreaker.recordFailure();
+                }
+                long backoffNanos = computeBackoffNanos(attemptNumber);
+                if (attemptNumber >= MAX_ATTEMPTS || !retryMode.allowsRetry(failureKind)
+                        || System.nanoTime() - startNanos + backoffNanos > RETRY_BUDGET_NANOS) {
+                    throw myException;
+                }
+                myLoggerInstance.warn("Retrying {} after {} failure (attempt {} of {}, backoff {} ms): {}", operationName, failureKind, 
+                    attemptNumber, MAX_ATTEMPTS, TimeUnit.NANOSECONDS.toMillis(backoffNanos), rootCauseMessage(myException));
+                myCircuitBreaker.recordRetry();
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoffNanos);
+                } catch (InterruptedException myInterruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw myException;
+                }
+            }
+        }
+    }
+    
+    // Full jitter: callers that failed together spread their retries over the whole window instead of stampeding back
+    private static long computeBackoffNanos(int attemptNumber) {
+        long ceilingNanos = Math.min(MAX_DELAY_NANOS, BASE_DELAY_NANOS << Math.min(attemptNumber - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceilingNanos + 1);
+    }
+    
+    static FailureKind classifyFailure(Throwable myException) {
+        if (myException instanceof RepositoryUnavailableException) {
+            return FailureKind.NONE;
+        }
+        for (Throwable currentCause = myException; currentCause != null; currentCause = currentCause.getCause()) {
+            if (currentCause instanceof SQLTransientConnectionException) {
+                return FailureKind.CONNECTION_NOT_ACQUIRED;
+            }
+            if (currentCause instanceof SQLException) {
+                String sqlState = ((SQLException) currentCause).getSQLState();
+                if (SERIALIZATION_FAILURE_SQL_STATE.equals(sqlState) || DEADLOCK_SQL_STATE.equals(sqlState)
+                        || LOCK_NOT_AVAILABLE_SQL_STATE.equals(sqlState)) {
+                    return FailureKind.CONTENTION;
+                }
+                if (QUERY_CANCELED_SQL_STATE.equals(sqlState)) {
+                    return FailureKind.TIMEOUT;
+                }
+                if (ADMIN_SHUTDOWN_SQL_STATE.equals(sqlState) || TOO_MANY_CONNECTIONS_SQL_STATE.equals(sqlState)) {
+                    return FailureKind.CONNECTION;
+                }
+            }
+        }
+        return UserRepositoryImplementation.isConnectionFailure(myException) ? FailureKind.CONNECTION : FailureKind.NONE;
+    }
+    
+    private static String rootCauseMessage(Throwable myException) {
+        Throwable rootCause = myException;
+        while (rootCause.getCause() != null) {
+            rootCause = rootCause.getCause();
+        }
+        return rootCause.getMessage();
+    }
+}
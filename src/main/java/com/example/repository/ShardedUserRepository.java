@@ -0,0 +1,589 @@
+package com.example.repository;
+
+import com.example.config.DatabaseConfigurationManager;
+import com.example.config.ShardRegistry;
+import com.example.entity.UserEntity;
+import com.example.metrics.MetricsRegistry;
+import com.example.shard.ShardBucketMap;
+import com.example.shard.ShardRebalancer;
+import com.example.shard.ShardRowStore;
+import com.example.shard.UserShardKeys;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleObjectStateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+// Places every user on the shard that owns the bucket of their email (see ShardBucketMap) and runs reads that span
+// users on all shards in parallel, merging the answers by id. While the rebalancer moves a bucket, its rows briefly
+// exist on two shards; a row only counts on the shard that currently owns its bucket, so merges never see it twice.
+public class ShardedUserRepository implements UserRepositoryInterface {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(ShardedUserRepository.class);
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final ExecutorService myScatterExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    
+    private volatile ShardTopology myShardTopology;
+    
+    private record ShardTopology(List<SessionFactory> shardSessionFactories, List<UserRepositoryImplementation> shardRepositories,
+                                 ShardBucketMap bucketMap) {}
+    
+    private record LocatedUser(int shardIndex, UserEntity user) {}
+    
+    @FunctionalInterface
+    private interface ShardPageReader<T> {
+        List<T> readPage(UserRepositoryInterface shardRepository, Long afterUserId);
+    }
+    
+    @Override
+    public UserEntity MyInsertNewUser(UserEntity myUserEntity) {
+        return withEmailShard(myUserEntity.getUserEmail(), shardIndex -> shard(shardIndex).MyInsertNewUser(myUserEntity));
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserById(Long userIdValue) {
+        if (userIdValue == null) {
+            return shard(0).findUserById(null);
+        }
+        LocatedUser locatedUser = locateUser(userIdValue);
+        return locatedUser == null ? Optional.empty() : Optional.of(locatedUser.user());
+    }
+    
+    @Override
+    public List<UserEntity> retrieveAllUsers() {
+        List<List<UserEntity>> shardUsers = scatterAll(shardIndex -> shard(shardIndex).retrieveAllUsers());
+        List<UserEntity> allUsers = new ArrayList<>();
+        for (int shardIndex = 0; shardIndex < shardUsers.size(); shardIndex++) {
+            for (UserEntity shardUser : shardUsers.get(shardIndex)) {
+                if (isOwnedBy(shardIndex, shardUser.getUserEmail())) {
+                    allUsers.add(shardUser);
+                }
+            }
+        }
+        allUsers.sort(Comparator.comparing(UserEntity::getUserId));
+        return allUsers;
+    }
+    
+    @Override
+    public List<UserEntity> retrieveUsersPage(Long afterUserId, int pageSize) {
+        validatePageSize(pageSize);
+        return mergeShardPages(afterUserId, pageSize, (shardRepository, shardAfterId) ->
+            shardRepository.retrieveUsersPage(shardAfterId, pageSize), UserEntity::getUserId, UserEntity::getUserEmail);
+    }
+    
+    @Override
+    public long streamAllUsers(Consumer<UserEntity> userConsumer) {
+        return streamMergedPages((shardRepository, shardAfterId) -> shardRepository.retrieveUsersPage(shardAfterId, MAX_PAGE_SIZE),
+            UserEntity::getUserId, UserEntity::getUserEmail, userConsumer);
+    }
+    
+    @Override
+    public List<UserSummary> retrieveUserSummariesPage(Long afterUserId, int pageSize) {
+        validatePageSize(pageSize);
+        return mergeShardPages(afterUserId, pageSize, (shardRepository, shardAfterId) ->
+            shardRepository.retrieveUserSummariesPage(shardAfterId, pageSize), UserSummary::userId, UserSummary::userEmail);
+    }
+    
+    @Override
+    public long streamAllUserSummaries(Consumer<UserSummary> summaryConsumer) {
+        return streamMergedPages((shardRepository, shardAfterId) ->
+            shardRepository.retrieveUserSummariesPage(shardAfterId, MAX_PAGE_SIZE), UserSummary::userId, UserSummary::userEmail,
+            summaryConsumer);
+    }
+    
+    @Override
+    public List<UserEntity> searchUsers(UserSearchCriteria searchCriteria) {
+        validatePageSize(searchCriteria.getPageSize());
+        return mergeShardPages(searchCriteria.getAfterUserId(), searchCriteria.getPageSize(), (shardRepository, shardAfterId) ->
+            shardRepository.searchUsers(searchCriteria.nextPage(shardAfterId)), UserEntity::getUserId, UserEntity::getUserEmail);
+    }
+    
+    @Override
+    public List<Object[]> searchUserFields(UserSearchCriteria searchCriteria, List<UserSearchField> selectedFields) {
+        validatePageSize(searchCriteria.getPageSize());
+        if (selectedFields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field must be selected");
+        }
+        // The merge needs every row's id and email; columns the caller did not ask for are appended and cut off again
+        List<UserSearchField> readFields = new ArrayList<>(selectedFields);
+        if (!readFields.contains(UserSearchField.USER_ID)) readFields.add(UserSearchField.USER_ID);
+        if (!readFields.contains(UserSearchField.USER_EMAIL)) readFields.add(UserSearchField.USER_EMAIL);
+        int idPosition = readFields.indexOf(UserSearchField.USER_ID);
+        int emailPosition = readFields.indexOf(UserSearchField.USER_EMAIL);
+        List<Object[]> fieldRows = mergeShardPages(searchCriteria.getAfterUserId(), searchCriteria.getPageSize(),
+            (shardRepository, shardAfterId) -> shardRepository.searchUserFields(searchCriteria.nextPage(shardAfterId), readFields),
+            fieldRow -> (Long) fieldRow[idPosition], fieldRow -> (String) fieldRow[emailPosition]);
+        if (readFields.size() == selectedFields.size()) {
+            return fieldRows;
+        }
+        List<Object[]> selectedRows = new ArrayList<>(fieldRows.size());
+        for (Object[] fieldRow : fieldRows) {
+            selectedRows.add(Arrays.copyOf(fieldRow, selectedFields.size()));
+        }
+        return selectedRows;
+    }
+    
+    @Override
+    public List<UserSummary> searchUserSummaries(UserSearchCriteria searchCriteria) {
+        validatePageSize(searchCriteria.getPageSize());
+        return mergeShardPages(searchCriteria.getAfterUserId(), searchCriteria.getPageSize(), (shardRepository, shardAfterId) ->
+            shardRepository.searchUserSummaries(searchCriteria.nextPage(shardAfterId)), UserSummary::userId, UserSummary::userEmail);
+    }
+    
+    @Override
+    public UserEntity updateExistingUser(UserEntity myUserEntity) {
+        LocatedUser locatedUser = myUserEntity.getUserId() == null ? null : locateUser(myUserEntity.getUserId());
+        if (locatedUser == null) {
+            // Nothing to move; merge decides what an unknown id means, exactly as on a single database
+            return withEmailShard(myUserEntity.getUserEmail(), shardIndex -> shard(shardIndex).updateExistingUser(myUserEntity));
+        }
+        int[] userBuckets = {bucketOfEmail(locatedUser.user().getUserEmail()), bucketOfEmail(myUserEntity.getUserEmail())};
+        ShardBucketMap bucketMap = topology().bucketMap();
+        return bucketMap.withBucketsLocked(userBuckets, () -> {
+            int sourceShard = bucketMap.shardOfBucket(userBuckets[0]);
+            int targetShard = bucketMap.shardOfBucket(userBuckets[1]);
+            if (sourceShard == targetShard) {
+                return shard(sourceShard).updateExistingUser(myUserEntity);
+            }
+            UserEntity relocatedUser = relocateUser(sourceShard, targetShard, myUserEntity.getUserId(), myUserEntity.getVersionNumber(),
+                myUserEntity.getUserName(), myUserEntity.getUserEmail(), myUserEntity.getUserAge());
+            if (relocatedUser == null) {
+                myLoggerInstance.error("Failed to update user: user {} was changed or removed concurrently", myUserEntity.getUserId());
+                throw new DataAccessCustomException("Failed to update user",
+                    new StaleObjectStateException(UserEntity.class.getName(), myUserEntity.getUserId()));
+            }
+            return relocatedUser;
+        });
+    }
+    
+    @Override
+    public boolean removeUserById(Long userIdValue) {
+        return removeLocatedUser(userIdValue, null);
+    }
+    
+    @Override
+    public boolean removeUserByIdAndVersion(Long userIdValue, Long expectedVersion) {
+        return removeLocatedUser(userIdValue, expectedVersion);
+    }
+    
+    private boolean removeLocatedUser(Long userIdValue, Long expectedVersion) {
+        LocatedUser locatedUser = userIdValue == null ? null : locateUser(userIdValue);
+        if (locatedUser == null) {
+            return false;
+        }
+        return withEmailShard(locatedUser.user().getUserEmail(), shardIndex -> expectedVersion == null
+            ? shard(shardIndex).removeUserById(userIdValue)
+            : shard(shardIndex).removeUserByIdAndVersion(userIdValue, expectedVersion));
+    }
+    
+    @Override
+    public boolean updateUserFields(Long userIdValue, Long expectedVersion, String userName, String userEmail, Integer userAge) {
+        if (userName == null && userEmail == null && userAge == null) {
+            throw new IllegalArgumentException("At least one field must be updated");
+        }
+        LocatedUser locatedUser = userIdValue == null ? null : locateUser(userIdValue);
+        if (locatedUser == null) {
+            return false;
+        }
+        String currentEmail = locatedUser.user().getUserEmail();
+        int[] userBuckets = {bucketOfEmail(currentEmail), bucketOfEmail(userEmail == null ? currentEmail : userEmail)};
+        ShardBucketMap bucketMap = topology().bucketMap();
+        return bucketMap.withBucketsLocked(userBuckets, () -> {
+            int sourceShard = bucketMap.shardOfBucket(userBuckets[0]);
+            int targetShard = bucketMap.shardOfBucket(userBuckets[1]);
+            if (sourceShard == targetShard) {
+                return shard(sourceShard).updateUserFields(userIdValue, expectedVersion, userName, userEmail, userAge);
+            }
+            if (relocateUser(sourceShard, targetShard, userIdValue, expectedVersion, userName, userEmail, userAge) == null) {
+                myLoggerInstance.warn("No user updated for ID {} at version {}", userIdValue, expectedVersion);
+                return false;
+            }
+            return true;
+        });
+    }
+    
+    // An email in another shard's bucket moves the row: the id and creation time stay, the version goes up by one
+    // like any update. The copy is written first and the source row is removed only if it is still at the version
+    // that was copied, so a concurrent change on the source wins and the copy is discarded. Null fields keep their value.
+    private UserEntity relocateUser(int sourceShard, int targetShard, Long userIdValue, Long expectedVersion,
+                                    String userName, String userEmail, Integer userAge) {
+        SessionFactory sourceFactory = topology().shardSessionFactories().get(sourceShard);
+        SessionFactory targetFactory = topology().shardSessionFactories().get(targetShard);
+        List<UserEntity> currentRows = ShardRowStore.loadRows(sourceFactory, List.of(userIdValue));
+        if (currentRows.isEmpty() || (expectedVersion != null && !expectedVersion.equals(currentRows.get(0).getVersionNumber()))) {
+            return null;
+        }
+        UserEntity currentRow = currentRows.get(0);
+        UserEntity relocatedRow = new UserEntity(userName != null ? userName : currentRow.getUserName(),
+            userEmail, userAge != null ? userAge : currentRow.getUserAge());
+        relocatedRow.setUserId(userIdValue);
+        relocatedRow.setUserCreatedAt(currentRow.getUserCreatedAt());
+        relocatedRow.setVersionNumber(currentRow.getVersionNumber() + 1);
+        try {
+            // Upsert, because a rebalancer copy of the old row may already sit on the target under the same id
+            ShardRowStore.insertRows(targetFactory, List.of(relocatedRow), true);
+        } catch (RuntimeException myException) {
+            if (UserRepositoryImplementation.isUniqueViolation(myException)) {
+                myLoggerInstance.warn("Rejected duplicate email on update: {}", userEmail);
+                throw new DuplicateEmailException(userEmail, myException);
+            }
+            myLoggerInstance.error("Failed to move user {} to shard {}: {}", userIdValue, targetShard, myException.getMessage());
+            throw new DataAccessCustomException("Failed to update user", myException);
+        }
+        boolean isSourceRemoved;
+        try {
+            isSourceRemoved = ShardRowStore.deleteRelocatedRow(sourceFactory, currentRow, relocatedRow);
+        } catch (RuntimeException myException) {
+            ShardRowStore.deleteRows(targetFactory, List.of(userIdValue));
+            myLoggerInstance.error("Failed to move user {} off shard {}: {}", userIdValue, sourceShard, myException.getMessage());
+            throw new DataAccessCustomException("Failed to update user", myException);
+        }
+        if (!isSourceRemoved) {
+            ShardRowStore.deleteRows(targetFactory, List.of(userIdValue));
+            return null;
+        }
+        myLoggerInstance.debug("Moved user with ID {} from shard {} to shard {}", userIdValue, sourceShard, targetShard);
+        return relocatedRow;
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserByEmailAddress(String emailAddress) {
+        return shard(ownerOfEmail(emailAddress)).findUserByEmailAddress(emailAddress);
+    }
+    
+    @Override
+    public boolean checkIfEmailExists(String emailAddress) {
+        return shard(ownerOfEmail(emailAddress)).checkIfEmailExists(emailAddress);
+    }
+    
+    @Override
+    public Set<String> findExistingEmails(Collection<String> emailAddresses) {
+        Map<Integer, List<String>> emailsByShard = new TreeMap<>();
+        for (String emailAddress : emailAddresses) {
+            emailsByShard.computeIfAbsent(ownerOfEmail(emailAddress), shardIndex -> new ArrayList<>()).add(emailAddress);
+        }
+        int[] shardIndexes = emailsByShard.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Set<String> existingEmails = new HashSet<>();
+        for (Set<String> shardEmails : scatter(shardIndexes, shardIndex ->
+                shard(shardIndex).findExistingEmails(emailsByShard.get(shardIndex)))) {
+            existingEmails.addAll(shardEmails);
+        }
+        return existingEmails;
+    }
+    
+    @Override
+    public BulkInsertResult insertUsersInBulk(Collection<UserEntity> usersToInsert) {
+        List<UserEntity> usersList = new ArrayList<>(usersToInsert);
+        int[] userBuckets = usersList.stream().mapToInt(newUser -> bucketOfEmail(newUser.getUserEmail())).toArray();
+        ShardBucketMap bucketMap = topology().bucketMap();
+        return bucketMap.withBucketsLocked(userBuckets, () -> {
+            Map<Integer, List<Integer>> positionsByShard = new TreeMap<>();
+            for (int inputPosition = 0; inputPosition < usersList.size(); inputPosition++) {
+                positionsByShard.computeIfAbsent(bucketMap.shardOfBucket(userBuckets[inputPosition]), shardIndex -> new ArrayList<>())
+                    .add(inputPosition);
+            }
+            int[] shardIndexes = positionsByShard.keySet().stream().mapToInt(Integer::intValue).toArray();
+            List<BulkInsertResult> shardResults = scatter(shardIndexes, shardIndex -> shard(shardIndex).insertUsersInBulk(
+                positionsByShard.get(shardIndex).stream().map(usersList::get).toList()));
+            BulkInsertResult bulkResult = new BulkInsertResult();
+            for (int resultIndex = 0; resultIndex < shardIndexes.length; resultIndex++) {
+                bulkResult.mergeFrom(shardResults.get(resultIndex),
+                    positionsByShard.get(shardIndexes[resultIndex]).stream().mapToInt(Integer::intValue).toArray());
+            }
+            return bulkResult;
+        });
+    }
+    
+    @Override
+    public BulkLookupResult<Long> findUsersByIds(Collection<Long> userIds) {
+        List<Long> distinctIds = BulkLookupResult.distinctKeys(userIds);
+        Map<Long, UserEntity> foundUsers = new HashMap<>();
+        locateUsers(distinctIds).forEach((userIdValue, locatedUser) -> foundUsers.put(userIdValue, locatedUser.user()));
+        return new BulkLookupResult<>(distinctIds, foundUsers);
+    }
+    
+    @Override
+    public BulkLookupResult<String> findUsersByEmails(Collection<String> emailAddresses) {
+        List<String> distinctEmails = BulkLookupResult.distinctKeys(emailAddresses);
+        Map<Integer, List<String>> emailsByShard = new TreeMap<>();
+        for (String emailAddress : distinctEmails) {
+            emailsByShard.computeIfAbsent(ownerOfEmail(emailAddress), shardIndex -> new ArrayList<>()).add(emailAddress);
+        }
+        int[] shardIndexes = emailsByShard.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Map<String, UserEntity> foundUsers = new HashMap<>();
+        for (BulkLookupResult<String> shardResult : scatter(shardIndexes, shardIndex ->
+                shard(shardIndex).findUsersByEmails(emailsByShard.get(shardIndex)))) {
+            for (UserEntity shardUser : shardResult.getFoundUsers()) {
+                foundUsers.put(shardUser.getUserEmail(), shardUser);
+            }
+        }
+        return new BulkLookupResult<>(distinctEmails, foundUsers);
+    }
+    
+    @Override
+    public BulkDeleteResult removeUsersByIds(Collection<Long> userIds) {
+        List<Long> distinctIds = BulkLookupResult.distinctKeys(userIds);
+        Map<Long, LocatedUser> locatedUsers = locateUsers(distinctIds);
+        List<Long> locatedIds = new ArrayList<>(locatedUsers.keySet());
+        int[] userBuckets = locatedIds.stream().mapToInt(userIdValue -> bucketOfEmail(locatedUsers.get(userIdValue).user().getUserEmail()))
+            .toArray();
+        ShardBucketMap bucketMap = topology().bucketMap();
+        Set<Long> deletedIds = bucketMap.withBucketsLocked(userBuckets, () -> {
+            Map<Integer, List<Long>> idsByShard = new TreeMap<>();
+            for (int userPosition = 0; userPosition < locatedIds.size(); userPosition++) {
+                idsByShard.computeIfAbsent(bucketMap.shardOfBucket(userBuckets[userPosition]), shardIndex -> new ArrayList<>())
+                    .add(locatedIds.get(userPosition));
+            }
+            int[] shardIndexes = idsByShard.keySet().stream().mapToInt(Integer::intValue).toArray();
+            Set<Long> shardDeletedIds = new HashSet<>();
+            for (BulkDeleteResult shardResult : scatter(shardIndexes, shardIndex ->
+                    shard(shardIndex).removeUsersByIds(idsByShard.get(shardIndex)))) {
+                shardDeletedIds.addAll(shardResult.getDeletedIds());
+            }
+            return shardDeletedIds;
+        });
+        return new BulkDeleteResult(distinctIds, deletedIds);
+    }
+    
+    // Ids carry the bucket the user was created in, which is usually still where they live. Ids from before
+    // sharding, users who moved with an email change, and buckets in the middle of a move need the other shards.
+    private LocatedUser locateUser(long userIdValue) {
+        int shardCount = topology().shardRepositories().size();
+        int homeShard = topology().bucketMap().shardOfBucket(UserShardKeys.bucketOfUserId(userIdValue));
+        Optional<UserEntity> homeCopy = shard(homeShard).findUserById(userIdValue);
+        if (homeCopy.isPresent() && isOwnedBy(homeShard, homeCopy.get().getUserEmail())) {
+            return new LocatedUser(homeShard, homeCopy.get());
+        }
+        int[] otherShards = IntStream.range(0, shardCount).filter(shardIndex -> shardIndex != homeShard).toArray();
+        List<Optional<UserEntity>> otherCopies = scatter(otherShards, shardIndex -> shard(shardIndex).findUserById(userIdValue));
+        LocatedUser anyCopy = homeCopy.map(homeUser -> new LocatedUser(homeShard, homeUser)).orElse(null);
+        for (int copyIndex = 0; copyIndex < otherShards.length; copyIndex++) {
+            Optional<UserEntity> otherCopy = otherCopies.get(copyIndex);
+            if (otherCopy.isPresent()) {
+                if (isOwnedBy(otherShards[copyIndex], otherCopy.get().getUserEmail())) {
+                    return new LocatedUser(otherShards[copyIndex], otherCopy.get());
+                }
+                if (anyCopy == null) anyCopy = new LocatedUser(otherShards[copyIndex], otherCopy.get());
+            }
+        }
+        return anyCopy;
+    }
+    
+    // locateUser for many ids: one query per shard for the home buckets, then one per shard for whatever is left
+    private Map<Long, LocatedUser> locateUsers(List<Long> userIds) {
+        int shardCount = topology().shardRepositories().size();
+        ShardBucketMap bucketMap = topology().bucketMap();
+        Map<Integer, List<Long>> idsByHomeShard = new TreeMap<>();
+        for (Long userIdValue : userIds) {
+            idsByHomeShard.computeIfAbsent(bucketMap.shardOfBucket(UserShardKeys.bucketOfUserId(userIdValue)),
+                shardIndex -> new ArrayList<>()).add(userIdValue);
+        }
+        Map<Long, LocatedUser> ownedCopies = new HashMap<>();
+        Map<Long, LocatedUser> anyCopies = new HashMap<>();
+        collectCopies(idsByHomeShard, ownedCopies, anyCopies);
+        if (shardCount > 1 && ownedCopies.size() < userIds.size()) {
+            Map<Integer, List<Long>> idsByOtherShard = new TreeMap<>();
+            idsByHomeShard.forEach((homeShard, homeIds) -> {
+                for (Long userIdValue : homeIds) {
+                    if (ownedCopies.containsKey(userIdValue)) continue;
+                    for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+                        if (shardIndex != homeShard) {
+                            idsByOtherShard.computeIfAbsent(shardIndex, otherShard -> new ArrayList<>()).add(userIdValue);
+                        }
+                    }
+                }
+            });
+            collectCopies(idsByOtherShard, ownedCopies, anyCopies);
+        }
+        anyCopies.forEach(ownedCopies::putIfAbsent);
+        return ownedCopies;
+    }
+    
+    private void collectCopies(Map<Integer, List<Long>> idsByShard, Map<Long, LocatedUser> ownedCopies, Map<Long, LocatedUser> anyCopies) {
+        int[] shardIndexes = idsByShard.keySet().stream().mapToInt(Integer::intValue).toArray();
+        List<BulkLookupResult<Long>> shardResults = scatter(shardIndexes, shardIndex ->
+            shard(shardIndex).findUsersByIds(idsByShard.get(shardIndex)));
+        for (int resultIndex = 0; resultIndex < shardIndexes.length; resultIndex++) {
+            for (UserEntity shardUser : shardResults.get(resultIndex).getFoundUsers()) {
+                LocatedUser locatedUser = new LocatedUser(shardIndexes[resultIndex], shardUser);
+                if (isOwnedBy(shardIndexes[resultIndex], shardUser.getUserEmail())) {
+                    ownedCopies.put(shardUser.getUserId(), locatedUser);
+                } else {
+                    anyCopies.putIfAbsent(shardUser.getUserId(), locatedUser);
+                }
+            }
+        }
+    }
+    
+    // k-way merge by id: every shard is read page by page from its own position, and a shard whose page held only
+    // rows it does not own reads on before anything is merged, so the result is exactly the next pageSize users
+    private <T> List<T> mergeShardPages(Long afterUserId, int pageSize, ShardPageReader<T> pageReader,
+                                        Function<T, Long> idOf, Function<T, String> emailOf) {
+        int shardCount = topology().shardRepositories().size();
+        Long[] shardAfterIds = new Long[shardCount];
+        Arrays.fill(shardAfterIds, afterUserId);
+        boolean[] isShardExhausted = new boolean[shardCount];
+        List<ArrayDeque<T>> pendingRows = new ArrayList<>(shardCount);
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            pendingRows.add(new ArrayDeque<>());
+        }
+        List<T> mergedPage = new ArrayList<>(pageSize);
+        while (mergedPage.size() < pageSize) {
+            int[] refillShards = IntStream.range(0, shardCount)
+                .filter(shardIndex -> pendingRows.get(shardIndex).isEmpty() && !isShardExhausted[shardIndex]).toArray();
+            if (refillShards.length > 0) {
+                List<List<T>> shardPages = scatter(refillShards, shardIndex -> pageReader.readPage(shard(shardIndex), shardAfterIds[shardIndex]));
+                for (int pageIndex = 0; pageIndex < refillShards.length; pageIndex++) {
+                    int shardIndex = refillShards[pageIndex];
+                    List<T> shardPage = shardPages.get(pageIndex);
+                    isShardExhausted[shardIndex] = shardPage.size() < pageSize;
+                    if (!shardPage.isEmpty()) {
+                        shardAfterIds[shardIndex] = idOf.apply(shardPage.get(shardPage.size() - 1));
+                    }
+                    for (T shardRow : shardPage) {
+                        if (isOwnedBy(shardIndex, emailOf.apply(shardRow))) {
+                            pendingRows.get(shardIndex).add(shardRow);
+                        }
+                    }
+                }
+                continue;
+            }
+            int nextShard = -1;
+            for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+                T headRow = pendingRows.get(shardIndex).peek();
+                if (headRow != null && (nextShard < 0 || idOf.apply(headRow) < idOf.apply(pendingRows.get(nextShard).peek()))) {
+                    nextShard = shardIndex;
+                }
+            }
+            if (nextShard < 0) {
+                break;
+            }
+            mergedPage.add(pendingRows.get(nextShard).poll());
+        }
+        return mergedPage;
+    }
+    
+    // Pages instead of one cursor per shard: a push-style stream per shard cannot be merged without a thread and
+    // a queue for each, and keyset pages keep the memory bound the same
+    private <T> long streamMergedPages(ShardPageReader<T> pageReader, Function<T, Long> idOf, Function<T, String> emailOf,
+                                      Consumer<T> rowConsumer) {
+        long streamedCount = 0;
+        Long afterUserId = null;
+        while (true) {
+            List<T> mergedPage = mergeShardPages(afterUserId, MAX_PAGE_SIZE, pageReader, idOf, emailOf);
+            mergedPage.forEach(rowConsumer);
+            streamedCount += mergedPage.size();
+            if (mergedPage.size() < MAX_PAGE_SIZE) {
+                return streamedCount;
+            }
+            afterUserId = idOf.apply(mergedPage.get(mergedPage.size() - 1));
+        }
+    }
+    
+    private <T> List<T> scatterAll(IntFunction<T> shardOperation) {
+        return scatter(IntStream.range(0, topology().shardRepositories().size()).toArray(), shardOperation);
+    }
+    
+    private <T> List<T> scatter(int[] shardIndexes, IntFunction<T> shardOperation) {
+        if (shardIndexes.length == 1) {
+            return List.of(shardOperation.apply(shardIndexes[0]));
+        }
+        List<Future<T>> shardFutures = new ArrayList<>(shardIndexes.length);
+        for (int shardIndex : shardIndexes) {
+            shardFutures.add(myScatterExecutor.submit(() -> shardOperation.apply(shardIndex)));
+        }
+        List<T> shardResults = new ArrayList<>(shardIndexes.length);
+        try {
+            for (Future<T> shardFuture : shardFutures) {
+                shardResults.add(shardFuture.get());
+            }
+            return shardResults;
+        } catch (ExecutionException myException) {
+            if (myException.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) myException.getCause();
+            }
+            throw new DataAccessCustomException("Shard operation failed", myException.getCause());
+        } catch (InterruptedException myException) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessCustomException("Interrupted while waiting for shards", myException);
+        } finally {
+            for (Future<T> shardFuture : shardFutures) {
+                shardFuture.cancel(true);
+            }
+        }
+    }
+    
+    // The bucket's owner is resolved under its lock, so a rebalancer that moves the bucket waits for this write
+    private <T> T withEmailShard(String emailAddress, IntFunction<T> shardOperation) {
+        ShardBucketMap bucketMap = topology().bucketMap();
+        int emailBucket = bucketOfEmail(emailAddress);
+        return bucketMap.withBucketsLocked(new int[] {emailBucket}, () -> shardOperation.apply(bucketMap.shardOfBucket(emailBucket)));
+    }
+    
+    private int ownerOfEmail(String emailAddress) {
+        return topology().bucketMap().shardOfBucket(bucketOfEmail(emailAddress));
+    }
+    
+    private boolean isOwnedBy(int shardIndex, String emailAddress) {
+        return emailAddress != null && ownerOfEmail(emailAddress) == shardIndex;
+    }
+    
+    // A missing email is rejected by whichever shard gets it, so any bucket will do
+    private static int bucketOfEmail(String emailAddress) {
+        return emailAddress == null ? 0 : UserShardKeys.bucketOf(emailAddress);
+    }
+    
+    private static void validatePageSize(int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+    
+    private UserRepositoryImplementation shard(int shardIndex) {
+        return topology().shardRepositories().get(shardIndex);
+    }
+    
+    // Resolved on first use, because repositories are built before the database has finished starting
+    private ShardTopology topology() {
+        ShardTopology shardTopology = myShardTopology;
+        if (shardTopology == null) {
+            synchronized (this) {
+                if (myShardTopology == null) {
+                    ShardRegistry shardRegistry = DatabaseConfigurationManager.getShardRegistry();
+                    if (shardRegistry == null) {
+                        throw new DataAccessCustomException("Sharding is not configured");
+                    }
+                    List<SessionFactory> shardSessionFactories = shardRegistry.getShardSessionFactories();
+                    // Makes the rebalancer reachable over JMX in the serving process, the one place its fence is complete
+                    ShardRebalancer shardRebalancer = shardRegistry.getShardRebalancer();
+                    if (MetricsRegistry.isEnabled()) {
+                        MetricsRegistry.getInstance().registerStatusSection("shard rebalancer", shardRebalancer::toString);
+                    }
+                    myShardTopology = new ShardTopology(shardSessionFactories,
+                        shardSessionFactories.stream().map(UserRepositoryImplementation::new).toList(), shardRegistry.getBucketMap());
+                }
+                shardTopology = myShardTopology;
+            }
+        }
+        return shardTopology;
+    }
+}
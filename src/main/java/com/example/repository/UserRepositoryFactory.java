@@ -0,0 +1,98 @@
+package com.example.repository;
+
+import com.example.cdc.UserChangeFeed;
+import com.example.config.DatabaseConfigurationManager;
+import com.example.config.ReadReplicaRouter;
+import com.example.index.OffHeapUserIndex;
+import com.example.metrics.MetricsRegistry;
+import com.example.storage.EmbeddedUserStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+
+public final class UserRepositoryFactory {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(UserRepositoryFactory.class);
+    private static final boolean INDEX_ENABLED = Boolean.parseBoolean(System.getProperty("index.enabled", "false"));
+    private static final int INDEX_EXPECTED_USERS = Integer.getInteger("index.expected-users", 1_000_000);
+    private static final boolean RESILIENCE_ENABLED = Boolean.parseBoolean(System.getProperty("resilience.enabled", "true"));
+    private static final String EMBEDDED_STORE_DIRECTORY = System.getProperty("storage.embedded.dir", "user-store");
+    private static OffHeapUserIndex mySharedUserIndex;
+    private static RepositoryCircuitBreaker mySharedCircuitBreaker;
+    private static EmbeddedUserStore mySharedUserStore;
+    
+    private UserRepositoryFactory() {}
+    
+    public static UserRepositoryInterface createConfiguredRepository() {
+        if (DatabaseConfigurationManager.isEmbeddedStorage()) {
+            // The store is already an in-memory index that cannot go down, and it has no outbox for the change feed
+            UserRepositoryInterface myRepository = new EmbeddedUserRepository(getSharedUserStore());
+            return MetricsRegistry.isEnabled() ? new InstrumentedUserRepository(myRepository) : myRepository;
+        }
+        UserRepositoryInterface myRepository = createBaseRepository();
+        // Inside the index, so lookups it answers from memory never count against the breaker
+        if (RESILIENCE_ENABLED) {
+            myRepository = new ResilientUserRepository(myRepository, getSharedCircuitBreaker());
+        }
+        if (INDEX_ENABLED) {
+            myRepository = new IndexedUserRepository(myRepository, getSharedUserIndex());
+        }
+        if (MetricsRegistry.isEnabled()) {
+            myRepository = new InstrumentedUserRepository(myRepository);
+        }
+        UserChangeFeed.startRelay();
+        return myRepository;
+    }
+    
+    // Sharded deployments put the routing layer underneath everything else; one breaker then guards all shards,
+    // so an outage of a single shard can open it for the rest as well
+    private static UserRepositoryInterface createBaseRepository() {
+        return DatabaseConfigurationManager.isShardingConfigured() ? new ShardedUserRepository() : new UserRepositoryImplementation();
+    }
+    
+    // A second store on the same directory would fail on its lock, so every repository shares this one
+    public static synchronized EmbeddedUserStore getSharedUserStore() {
+        if (mySharedUserStore == null) {
+            mySharedUserStore = new EmbeddedUserStore(Path.of(EMBEDDED_STORE_DIRECTORY));
+            EmbeddedUserStore myUserStore = mySharedUserStore;
+            DatabaseConfigurationManager.registerShutdownAction(() -> closeSharedUserStore(myUserStore));
+            MetricsRegistry.getInstance().registerStatusSection("embedded store", myUserStore::toString);
+        }
+        return mySharedUserStore;
+    }
+    
+    private static synchronized void closeSharedUserStore(EmbeddedUserStore myUserStore) {
+        myUserStore.close();
+        if (mySharedUserStore == myUserStore) {
+            mySharedUserStore = null;
+        }
+    }
+    
+    // One breaker per database: a service that opened it must stop every other service from queueing on the pool
+    public static synchronized RepositoryCircuitBreaker getSharedCircuitBreaker() {
+        if (mySharedCircuitBreaker == null) {
+            mySharedCircuitBreaker = new RepositoryCircuitBreaker();
+            MetricsRegistry.getInstance().registerStatusSection("circuit breaker", mySharedCircuitBreaker::toString);
+        }
+        return mySharedCircuitBreaker;
+    }
+    
+    // Every repository built here must see the same index, otherwise one instance's writes leave another's copy stale
+    public static synchronized OffHeapUserIndex getSharedUserIndex() {
+        if (mySharedUserIndex == null) {
+            mySharedUserIndex = new OffHeapUserIndex(INDEX_EXPECTED_USERS);
+            OffHeapUserIndex myUserIndex = mySharedUserIndex;
+            Thread indexLoaderThread = new Thread(() -> {
+                try {
+                    // A replica's snapshot may predate writes this process has already seen
+                    ReadReplicaRouter.readFromPrimary(() -> myUserIndex.loadFrom(createBaseRepository()));
+                } catch (Exception myException) {
+                    myLoggerInstance.error("User index load failed, lookups stay on the database: {}", myException.getMessage());
+                }
+            }, "user-index-loader");
+            indexLoaderThread.setDaemon(true);
+            indexLoaderThread.start();
+        }
+        return mySharedUserIndex;
+    }
+}
@@ -1,31 +1,94 @@
 package com.example.repository;
 
+import com.example.cdc.UserChangeOutbox;
 import com.example.entity.UserEntity;
 import com.example.config.DatabaseConfigurationManager;
+import com.example.config.ReadReplicaRouter;
+import org.hibernate.Cache;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.TypedQuery;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class UserRepositoryImplementation implements UserRepositoryInterface {
     private static final Logger myLoggerInstance = LoggerFactory.getLogger(UserRepositoryImplementation.class);
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int JDBC_BATCH_SIZE = 50;
+    private static final int BULK_TRANSACTION_SIZE = 1000;
+    // Bind parameters per IN list; in_clause_parameter_padding rounds the last chunk up so statements stay reusable
+    private static final int IN_LIST_CHUNK_SIZE = 500;
+    private static final String UNIQUE_VIOLATION_SQL_STATE = "23505";
+    private static final String CONNECTION_FAILURE_SQL_STATE_CLASS = "08";
+    private static final String DIRECT_MUTATION_QUERY_SPACE = "app_users_direct_mutation";
+    private static final char LIKE_ESCAPE_CHARACTER = '!';
+    // Per-statement JDBC timeouts; loads by id or natural id and entity writes have no query object to carry one
+    // and rely on the connection-level statement_timeout and lock_timeout from database.properties
+    private static final int LOOKUP_TIMEOUT_SECONDS = Integer.getInteger("repository.lookup-timeout-seconds", 5);
+    private static final int SCAN_TIMEOUT_SECONDS = Integer.getInteger("repository.scan-timeout-seconds", 30);
+    private static final String USER_SUMMARY_SELECT = "new com.example.repository.UserSummary("
+        + "myUser.userId, myUser.userName, myUser.userEmail, myUser.userAge, myUser.userCreatedAt)";
+    
+    // Null means the configured primary database, whose reads may also go to its replicas
+    private final SessionFactory myShardSessionFactory;
+    
+    public UserRepositoryImplementation() {
+        this(null);
+    }
+    
+    // Works on one shard only; shards have no replicas of their own
+    public UserRepositoryImplementation(SessionFactory myShardSessionFactory) {
+        this.myShardSessionFactory = myShardSessionFactory;
+    }
     
     @Override
     public UserEntity MyInsertNewUser(UserEntity myUserEntity) {
         Transaction myTransaction = null;
-        Session mySession = DatabaseConfigurationManager.getDatabaseSession();
+        Session mySession = openSession();
         try {
             myTransaction = mySession.beginTransaction();
             mySession.persist(myUserEntity);
+            if (UserChangeOutbox.isEnabled()) {
+                // Flushed first so a duplicate email fails before the change record takes an outbox id
+                mySession.flush();
+                UserChangeOutbox.recordCreated(mySession, List.of(myUserEntity));
+            }
             myTransaction.commit();
-            myLoggerInstance.info("Created user with ID: {}", myUserEntity.getUserId());
+            markPrimaryWrite();
+            myLoggerInstance.debug("Created user with ID: {}", myUserEntity.getUserId());
             return myUserEntity;
         } catch (Exception myException) {
             if (myTransaction != null) myTransaction.rollback();
+            // The rolled-back id must not stick, or a retry would see a detached entity
+            myUserEntity.setUserId(null);
+            if (isUniqueViolation(myException)) {
+                myLoggerInstance.warn("Rejected duplicate email on create: {}", myUserEntity.getUserEmail());
+                throw new DuplicateEmailException(myUserEntity.getUserEmail(), myException);
+            }
             myLoggerInstance.error("Failed to create user: {}", myException.getMessage());
             throw new DataAccessCustomException("Failed to create user", myException);
         } finally {
@@ -35,44 +98,322 @@ public class UserRepositoryImplementation implements UserRepositoryInterface {
     
     @Override
     public Optional<UserEntity> findUserById(Long userIdValue) {
-        Session mySession = DatabaseConfigurationManager.getDatabaseSession();
         try {
-            UserEntity foundUser = mySession.find(UserEntity.class, userIdValue);
-            return Optional.ofNullable(foundUser);
+            // A second-level cache hit on the primary beats any replica round trip
+            if (sessionFactory().getCache().containsEntity(UserEntity.class, userIdValue)) {
+                try (Session mySession = openSession()) {
+                    return Optional.ofNullable(mySession.find(UserEntity.class, userIdValue));
+                }
+            }
+            return executeReadOperation(mySession -> Optional.ofNullable(mySession.find(UserEntity.class, userIdValue)));
         } catch (Exception myException) {
             myLoggerInstance.error("Failed to find user by ID {}: {}", userIdValue, myException.getMessage());
             throw new DataAccessCustomException("Failed to find user by ID", myException);
-        } finally {
-            mySession.close();
         }
     }
     
     @Override
     public List<UserEntity> retrieveAllUsers() {
-        Session mySession = DatabaseConfigurationManager.getDatabaseSession();
         try {
-            TypedQuery<UserEntity> myQuery = mySession.createNamedQuery("UserEntity.findAllUsers", UserEntity.class);
-            return myQuery.getResultList();
+            return executeReadOperation(mySession -> 
+                withTimeout(mySession.createNamedQuery("UserEntity.findAllUsers", UserEntity.class), SCAN_TIMEOUT_SECONDS)
+                    .getResultList());
         } catch (Exception myException) {
             myLoggerInstance.error("Failed to find all users: {}", myException.getMessage());
             throw new DataAccessCustomException("Failed to find all users", myException);
+        }
+    }
+    
+    @Override
+    public List<UserEntity> retrieveUsersPage(Long afterUserId, int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        try {
+            return executeReadOperation(mySession -> {
+                TypedQuery<UserEntity> myQuery = withTimeout(mySession.createNamedQuery("UserEntity.findUsersAfterId", UserEntity.class), 
+                    SCAN_TIMEOUT_SECONDS);
+                myQuery.setParameter("afterUserId", afterUserId == null ? 0L : afterUserId);
+                myQuery.setMaxResults(pageSize);
+                return myQuery.getResultList();
+            });
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to find users after ID {}: {}", afterUserId, myException.getMessage());
+            throw new DataAccessCustomException("Failed to find users page", myException);
+        }
+    }
+    
+    @Override
+    public long streamAllUsers(Consumer<UserEntity> userConsumer) {
+        return streamNamedQuery("UserEntity.streamAllUsersOrdered", UserEntity.class, userConsumer);
+    }
+    
+    @Override
+    public List<UserSummary> retrieveUserSummariesPage(Long afterUserId, int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        try {
+            return executeReadOperation(mySession -> {
+                TypedQuery<UserSummary> myQuery = withTimeout(mySession.createNamedQuery("UserEntity.findUserSummariesAfterId", 
+                    UserSummary.class), SCAN_TIMEOUT_SECONDS);
+                myQuery.setParameter("afterUserId", afterUserId == null ? 0L : afterUserId);
+                myQuery.setMaxResults(pageSize);
+                return myQuery.getResultList();
+            });
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to find user summaries after ID {}: {}", afterUserId, myException.getMessage());
+            throw new DataAccessCustomException("Failed to find user summaries page", myException);
+        }
+    }
+    
+    @Override
+    public long streamAllUserSummaries(Consumer<UserSummary> summaryConsumer) {
+        return streamNamedQuery("UserEntity.streamAllUserSummaries", UserSummary.class, summaryConsumer);
+    }
+    
+    private <T> long streamNamedQuery(String queryName, Class<T> rowType, Consumer<T> rowConsumer) {
+        ReadReplicaRouter.ReplicaNode replicaNode = selectReplica();
+        if (replicaNode != null) {
+            long[] streamedCount = new long[1];
+            try {
+                return streamRowsFrom(replicaNode.openStatelessSession(), queryName, rowType, rowConsumer, streamedCount);
+            } catch (RuntimeException myException) {
+                // Rows already handed to the consumer cannot be taken back, so only an unstarted stream falls back
+                if (streamedCount[0] > 0) {
+                    myLoggerInstance.error("Failed to stream users from {}: {}", replicaNode.getReplicaName(), myException.getMessage());
+                    throw new DataAccessCustomException("Failed to stream users", myException);
+                }
+                handleReplicaFailure(replicaNode, myException);
+            }
+        }
+        try {
+            return streamRowsFrom(openStatelessSession(), queryName, rowType, rowConsumer, new long[1]);
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to stream users: {}", myException.getMessage());
+            throw new DataAccessCustomException("Failed to stream users", myException);
+        }
+    }
+    
+    @Override
+    public List<UserEntity> searchUsers(UserSearchCriteria searchCriteria) {
+        validateSearchPageSize(searchCriteria);
+        try {
+            return executeReadOperation(mySession -> {
+                TypedQuery<UserEntity> myQuery = withTimeout(mySession.createQuery(buildSearchQuery("myUser", searchCriteria), 
+                    UserEntity.class), SCAN_TIMEOUT_SECONDS);
+                bindSearchParameters(myQuery, searchCriteria);
+                return myQuery.getResultList();
+            });
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to search users by {}: {}", searchCriteria, myException.getMessage());
+            throw new DataAccessCustomException("Failed to search users", myException);
+        }
+    }
+    
+    @Override
+    public List<Object[]> searchUserFields(UserSearchCriteria searchCriteria, List<UserSearchField> selectedFields) {
+        validateSearchPageSize(searchCriteria);
+        if (selectedFields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field must be selected");
+        }
+        StringBuilder selectClause = new StringBuilder();
+        for (UserSearchField selectedField : selectedFields) {
+            if (selectClause.length() > 0) selectClause.append(", ");
+            selectClause.append("myUser.").append(selectedField.getPropertyName());
+        }
+        try {
+            return executeReadOperation(mySession -> {
+                Query<?> myQuery = withTimeout(mySession.createQuery(buildSearchQuery(selectClause.toString(), searchCriteria)), 
+                    SCAN_TIMEOUT_SECONDS);
+                bindSearchParameters(myQuery, searchCriteria);
+                List<?> resultRows = myQuery.getResultList();
+                List<Object[]> fieldRows = new ArrayList<>(resultRows.size());
+                for (Object resultRow : resultRows) {
+                    // A single selected column comes back as a bare value rather than a one-element array
+                    fieldRows.add(selectedFields.size() == 1 ? new Object[] {resultRow} : (Object[]) resultRow);
+                }
+                return fieldRows;
+            });
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to search user fields {} by {}: {}", selectedFields, searchCriteria, myException.getMessage());
+            throw new DataAccessCustomException("Failed to search users", myException);
+        }
+    }
+    
+    @Override
+    public List<UserSummary> searchUserSummaries(UserSearchCriteria searchCriteria) {
+        validateSearchPageSize(searchCriteria);
+        try {
+            return executeReadOperation(mySession -> {
+                TypedQuery<UserSummary> myQuery = withTimeout(mySession.createQuery(buildSearchQuery(USER_SUMMARY_SELECT, 
+                    searchCriteria), UserSummary.class), SCAN_TIMEOUT_SECONDS);
+                bindSearchParameters(myQuery, searchCriteria);
+                return myQuery.getResultList();
+            });
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to search user summaries by {}: {}", searchCriteria, myException.getMessage());
+            throw new DataAccessCustomException("Failed to search users", myException);
+        }
+    }
+    
+    private static void validateSearchPageSize(UserSearchCriteria searchCriteria) {
+        if (searchCriteria.getPageSize() <= 0 || searchCriteria.getPageSize() > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+    
+    // Each predicate matches one index: the pattern indexes on name and lower(email), btree on age and
+    // registration time, and the primary key for the keyset condition and the ordering
+    private static String buildSearchQuery(String selectClause, UserSearchCriteria searchCriteria) {
+        StringBuilder searchQuery = new StringBuilder("SELECT ").append(selectClause)
+            .append(" FROM UserEntity myUser WHERE myUser.userId > :afterUserId");
+        if (searchCriteria.getNamePrefix() != null) {
+            searchQuery.append(" AND myUser.userName LIKE :namePattern ESCAPE '").append(LIKE_ESCAPE_CHARACTER).append("'");
+        }
+        if (searchCriteria.getEmailPrefix() != null) {
+            searchQuery.append(" AND lower(myUser.userEmail) LIKE :emailPattern ESCAPE '").append(LIKE_ESCAPE_CHARACTER).append("'");
+        }
+        if (searchCriteria.getMinimumAge() != null) searchQuery.append(" AND myUser.userAge >= :minimumAge");
+        if (searchCriteria.getMaximumAge() != null) searchQuery.append(" AND myUser.userAge <= :maximumAge");
+        if (searchCriteria.getCreatedFrom() != null) searchQuery.append(" AND myUser.userCreatedAt >= :createdFrom");
+        if (searchCriteria.getCreatedBefore() != null) searchQuery.append(" AND myUser.userCreatedAt < :createdBefore");
+        return searchQuery.append(" ORDER BY myUser.userId").toString();
+    }
+    
+    private static void bindSearchParameters(TypedQuery<?> myQuery, UserSearchCriteria searchCriteria) {
+        myQuery.setParameter("afterUserId", searchCriteria.getAfterUserId() == null ? 0L : searchCriteria.getAfterUserId());
+        if (searchCriteria.getNamePrefix() != null) myQuery.setParameter("namePattern", toPrefixPattern(searchCriteria.getNamePrefix()));
+        if (searchCriteria.getEmailPrefix() != null) myQuery.setParameter("emailPattern", toPrefixPattern(searchCriteria.getEmailPrefix()));
+        if (searchCriteria.getMinimumAge() != null) myQuery.setParameter("minimumAge", searchCriteria.getMinimumAge());
+        if (searchCriteria.getMaximumAge() != null) myQuery.setParameter("maximumAge", searchCriteria.getMaximumAge());
+        if (searchCriteria.getCreatedFrom() != null) myQuery.setParameter("createdFrom", searchCriteria.getCreatedFrom());
+        if (searchCriteria.getCreatedBefore() != null) myQuery.setParameter("createdBefore", searchCriteria.getCreatedBefore());
+        myQuery.setMaxResults(searchCriteria.getPageSize());
+    }
+    
+    private static String toPrefixPattern(String searchPrefix) {
+        StringBuilder prefixPattern = new StringBuilder(searchPrefix.length() + 2);
+        for (int charIndex = 0; charIndex < searchPrefix.length(); charIndex++) {
+            char prefixChar = searchPrefix.charAt(charIndex);
+            if (prefixChar == '%' || prefixChar == '_' || prefixChar == LIKE_ESCAPE_CHARACTER) {
+                prefixPattern.append(LIKE_ESCAPE_CHARACTER);
+            }
+            prefixPattern.append(prefixChar);
+        }
+        return prefixPattern.append('%').toString();
+    }
+    
+    private <T> long streamRowsFrom(StatelessSession mySession, String queryName, Class<T> rowType, Consumer<T> rowConsumer, 
+                                    long[] streamedCount) {
+        Transaction myTransaction = null;
+        try {
+            // PostgreSQL only honours the fetch size inside a transaction, otherwise the driver buffers every row
+            myTransaction = mySession.beginTransaction();
+            Query<T> myQuery = mySession.createNamedQuery(queryName, rowType);
+            myQuery.setFetchSize(STREAM_FETCH_SIZE);
+            myQuery.setReadOnly(true);
+            try (ScrollableResults myResults = myQuery.scroll(ScrollMode.FORWARD_ONLY)) {
+                while (myResults.next()) {
+                    rowConsumer.accept(rowType.cast(myResults.get(0)));
+                    streamedCount[0]++;
+                }
+            }
+            myTransaction.commit();
+            return streamedCount[0];
+        } catch (RuntimeException myException) {
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
+            throw myException;
         } finally {
             mySession.close();
         }
     }
     
+    private <T> T executeReadOperation(Function<Session, T> readOperation) {
+        ReadReplicaRouter.ReplicaNode replicaNode = selectReplica();
+        if (replicaNode != null) {
+            try (Session replicaSession = replicaNode.openSession()) {
+                return readOperation.apply(asReadOnly(replicaSession));
+            } catch (RuntimeException myException) {
+                handleReplicaFailure(replicaNode, myException);
+            }
+        }
+        try (Session primarySession = openSession()) {
+            return readOperation.apply(asReadOnly(primarySession));
+        }
+    }
+    
+    private static <Q extends TypedQuery<?>> Q withTimeout(Q myQuery, int timeoutSeconds) {
+        myQuery.setHint(QueryHints.TIMEOUT_HIBERNATE, timeoutSeconds);
+        return myQuery;
+    }
+    
+    // Read sessions never flush, so entities they load need neither loaded-state snapshots nor dirty checking
+    private static Session asReadOnly(Session mySession) {
+        mySession.setDefaultReadOnly(true);
+        mySession.setHibernateFlushMode(FlushMode.MANUAL);
+        return mySession;
+    }
+    
+    private void handleReplicaFailure(ReadReplicaRouter.ReplicaNode replicaNode, RuntimeException myException) {
+        if (isConnectionFailure(myException)) {
+            replicaNode.markUnhealthy(myException);
+        }
+        myLoggerInstance.warn("Read on {} failed, falling back to primary: {}", replicaNode.getReplicaName(), myException.getMessage());
+    }
+    
+    private void markPrimaryWrite() {
+        if (myShardSessionFactory == null) {
+            DatabaseConfigurationManager.getReadReplicaRouter().recordPrimaryWrite();
+        }
+    }
+    
+    private ReadReplicaRouter.ReplicaNode selectReplica() {
+        return myShardSessionFactory == null ? DatabaseConfigurationManager.getReadReplicaRouter().selectReplica() : null;
+    }
+    
+    private Session openSession() {
+        return myShardSessionFactory == null ? DatabaseConfigurationManager.getDatabaseSession() : myShardSessionFactory.openSession();
+    }
+    
+    private StatelessSession openStatelessSession() {
+        return myShardSessionFactory == null 
+            ? DatabaseConfigurationManager.getStatelessDatabaseSession() : myShardSessionFactory.openStatelessSession();
+    }
+    
+    private SessionFactory sessionFactory() {
+        return myShardSessionFactory == null ? DatabaseConfigurationManager.getMySessionFactory() : myShardSessionFactory;
+    }
+    
     @Override
     public UserEntity updateExistingUser(UserEntity myUserEntity) {
         Transaction myTransaction = null;
-        Session mySession = DatabaseConfigurationManager.getDatabaseSession();
+        Session mySession = openSession();
         try {
             myTransaction = mySession.beginTransaction();
+            // merge loads the row anyway; loading it first only adds a copy of the old values to diff against
+            UserEntity storedUser = UserChangeOutbox.isEnabled() && myUserEntity.getUserId() != null 
+                ? mySession.get(UserEntity.class, myUserEntity.getUserId()) : null;
+            UserEntity previousState = storedUser == null ? null : copyOf(storedUser);
             UserEntity mergedUser = (UserEntity) mySession.merge(myUserEntity);
+            if (UserChangeOutbox.isEnabled()) {
+                mySession.flush();
+                if (previousState == null) {
+                    UserChangeOutbox.recordCreated(mySession, List.of(mergedUser));
+                } else {
+                    UserChangeOutbox.recordUpdated(mySession, previousState, mergedUser);
+                }
+            }
             myTransaction.commit();
-            myLoggerInstance.info("Updated user with ID: {}", myUserEntity.getUserId());
+            markPrimaryWrite();
+            myLoggerInstance.debug("Updated user with ID: {}", myUserEntity.getUserId());
             return mergedUser;
         } catch (Exception myException) {
             if (myTransaction != null) myTransaction.rollback();
+            if (isUniqueViolation(myException)) {
+                myLoggerInstance.warn("Rejected duplicate email on update: {}", myUserEntity.getUserEmail());
+                throw new DuplicateEmailException(myUserEntity.getUserEmail(), myException);
+            }
             myLoggerInstance.error("Failed to update user: {}", myException.getMessage());
             throw new DataAccessCustomException("Failed to update user", myException);
         } finally {
@@ -82,20 +423,93 @@ public class UserRepositoryImplementation implements UserRepositoryInterface {
     
     @Override
     public boolean removeUserById(Long userIdValue) {
+        return executeDirectDelete(userIdValue, null);
+    }
+    
+    @Override
+    public boolean removeUserByIdAndVersion(Long userIdValue, Long expectedVersion) {
+        return executeDirectDelete(userIdValue, expectedVersion);
+    }
+    
+    @Override
+    public boolean updateUserFields(Long userIdValue, Long expectedVersion, String userName, String userEmail, Integer userAge) {
+        if (userName == null && userEmail == null && userAge == null) {
+            throw new IllegalArgumentException("At least one field must be updated");
+        }
+        StringBuilder updateStatement = new StringBuilder("UPDATE app_users SET versionNumber = versionNumber + 1");
+        if (userName != null) updateStatement.append(", user_full_name = :userName");
+        if (userEmail != null) updateStatement.append(", user_email_address = :userEmail");
+        if (userAge != null) updateStatement.append(", user_age_value = :userAge");
+        updateStatement.append(" WHERE userId = :userId AND versionNumber = :expectedVersion");
+        
         Transaction myTransaction = null;
-        Session mySession = DatabaseConfigurationManager.getDatabaseSession();
+        Session mySession = openSession();
         try {
             myTransaction = mySession.beginTransaction();
-            UserEntity userToDelete = mySession.find(UserEntity.class, userIdValue);
-            if (userToDelete != null) {
-                mySession.delete(userToDelete);
-                myTransaction.commit();
-                myLoggerInstance.info("Deleted user with ID: {}", userIdValue);
-                return true;
+            NativeQuery<?> myQuery = withTimeout(mySession.createNativeQuery(updateStatement.toString())
+                .addSynchronizedQuerySpace(DIRECT_MUTATION_QUERY_SPACE), LOOKUP_TIMEOUT_SECONDS);
+            myQuery.setParameter("userId", userIdValue);
+            myQuery.setParameter("expectedVersion", expectedVersion);
+            if (userName != null) myQuery.setParameter("userName", userName);
+            if (userEmail != null) myQuery.setParameter("userEmail", userEmail);
+            if (userAge != null) myQuery.setParameter("userAge", userAge);
+            int updatedRows = myQuery.executeUpdate();
+            if (updatedRows > 0 && UserChangeOutbox.isEnabled()) {
+                UserChangeOutbox.recordFieldsUpdated(mySession, userIdValue, expectedVersion + 1, userName, userEmail, userAge, null);
             }
-            return false;
+            myTransaction.commit();
+            markPrimaryWrite();
+            evictCachedUser(userIdValue, userEmail != null, userEmail != null);
+            if (updatedRows == 0) {
+                myLoggerInstance.warn("No user updated for ID {} at version {}", userIdValue, expectedVersion);
+                return false;
+            }
+            myLoggerInstance.debug("Updated user with ID: {}", userIdValue);
+            return true;
         } catch (Exception myException) {
-            if (myTransaction != null) myTransaction.rollback();
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
+            if (isUniqueViolation(myException)) {
+                myLoggerInstance.warn("Rejected duplicate email on update: {}", userEmail);
+                throw new DuplicateEmailException(userEmail, myException);
+            }
+            myLoggerInstance.error("Failed to update user with ID {}: {}", userIdValue, myException.getMessage());
+            throw new DataAccessCustomException("Failed to update user", myException);
+        } finally {
+            mySession.close();
+        }
+    }
+    
+    private boolean executeDirectDelete(Long userIdValue, Long expectedVersion) {
+        String deleteStatement = expectedVersion == null
+            ? "DELETE FROM app_users WHERE userId = :userId"
+            : "DELETE FROM app_users WHERE userId = :userId AND versionNumber = :expectedVersion";
+        Transaction myTransaction = null;
+        Session mySession = openSession();
+        try {
+            myTransaction = mySession.beginTransaction();
+            Long deletedVersion = expectedVersion;
+            if (deletedVersion == null && UserChangeOutbox.isEnabled()) {
+                // The change record carries the version that was deleted; the lock keeps it from moving before the delete
+                deletedVersion = lockCurrentVersion(mySession, userIdValue);
+            }
+            NativeQuery<?> myQuery = withTimeout(mySession.createNativeQuery(deleteStatement)
+                .addSynchronizedQuerySpace(DIRECT_MUTATION_QUERY_SPACE), LOOKUP_TIMEOUT_SECONDS);
+            myQuery.setParameter("userId", userIdValue);
+            if (expectedVersion != null) myQuery.setParameter("expectedVersion", expectedVersion);
+            int deletedRows = myQuery.executeUpdate();
+            if (deletedRows > 0 && UserChangeOutbox.isEnabled()) {
+                UserChangeOutbox.recordDeleted(mySession, userIdValue, deletedVersion);
+            }
+            myTransaction.commit();
+            markPrimaryWrite();
+            evictCachedUser(userIdValue, false, true);
+            if (deletedRows == 0) {
+                return false;
+            }
+            myLoggerInstance.debug("Deleted user with ID: {}", userIdValue);
+            return true;
+        } catch (Exception myException) {
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
             myLoggerInstance.error("Failed to delete user with ID {}: {}", userIdValue, myException.getMessage());
             throw new DataAccessCustomException("Failed to delete user", myException);
         } finally {
@@ -103,23 +517,303 @@ public class UserRepositoryImplementation implements UserRepositoryInterface {
         }
     }
     
+    private static Long lockCurrentVersion(Session mySession, Long userIdValue) {
+        List<?> versionRows = withTimeout(mySession.createNativeQuery(
+                "SELECT versionNumber FROM app_users WHERE userId = :userId FOR UPDATE"), LOOKUP_TIMEOUT_SECONDS)
+            .setParameter("userId", userIdValue)
+            .getResultList();
+        return versionRows.isEmpty() ? null : ((Number) versionRows.get(0)).longValue();
+    }
+    
+    private static UserEntity copyOf(UserEntity myUserEntity) {
+        UserEntity copiedUser = new UserEntity(myUserEntity.getUserName(), myUserEntity.getUserEmail(), myUserEntity.getUserAge());
+        copiedUser.setUserId(myUserEntity.getUserId());
+        copiedUser.setUserCreatedAt(myUserEntity.getUserCreatedAt());
+        copiedUser.setVersionNumber(myUserEntity.getVersionNumber());
+        return copiedUser;
+    }
+    
+    private void evictCachedUser(Long userIdValue, boolean isEmailMappingStale, boolean areQueryResultsStale) {
+        // Direct statements are synchronized on a private query space so Hibernate does not drop the whole
+        // region; only the touched user and, when needed, the email mappings are evicted here
+        Cache myCache = sessionFactory().getCache();
+        myCache.evictEntityData(UserEntity.class, userIdValue);
+        if (isEmailMappingStale) {
+            myCache.evictNaturalIdData(UserEntity.class);
+        }
+        if (areQueryResultsStale) {
+            myCache.evictDefaultQueryRegion();
+        }
+    }
+    
     @Override
     public Optional<UserEntity> findUserByEmailAddress(String emailAddress) {
-        Session mySession = DatabaseConfigurationManager.getDatabaseSession();
         try {
-            TypedQuery<UserEntity> myQuery = mySession.createNamedQuery("UserEntity.findUserByEmail", UserEntity.class);
-            myQuery.setParameter("userEmail", emailAddress);
-            return myQuery.getResultStream().findFirst();
+            return executeReadOperation(mySession -> mySession.byNaturalId(UserEntity.class)
+                .using("userEmail", emailAddress)
+                .loadOptional());
         } catch (Exception myException) {
             myLoggerInstance.error("Failed to find user by email {}: {}", emailAddress, myException.getMessage());
             throw new DataAccessCustomException("Failed to find user by email", myException);
+        }
+    }
+    
+    @Override
+    public boolean checkIfEmailExists(String emailAddress) {
+        Session mySession = openSession();
+        try {
+            TypedQuery<Long> myQuery = withTimeout(mySession.createNamedQuery("UserEntity.existsByEmail", Long.class), LOOKUP_TIMEOUT_SECONDS);
+            myQuery.setParameter("userEmail", emailAddress);
+            myQuery.setMaxResults(1);
+            return !myQuery.getResultList().isEmpty();
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to check email {}: {}", emailAddress, myException.getMessage());
+            throw new DataAccessCustomException("Failed to check email", myException);
         } finally {
             mySession.close();
         }
     }
     
     @Override
-    public boolean checkIfEmailExists(String emailAddress) {
-        return findUserByEmailAddress(emailAddress).isPresent();
+    public Set<String> findExistingEmails(Collection<String> emailAddresses) {
+        Set<String> existingEmails = new HashSet<>();
+        if (emailAddresses.isEmpty()) {
+            return existingEmails;
+        }
+        List<String> emailsList = new ArrayList<>(emailAddresses);
+        Session mySession = openSession();
+        try {
+            for (int chunkStart = 0; chunkStart < emailsList.size(); chunkStart += IN_LIST_CHUNK_SIZE) {
+                List<String> emailsChunk = emailsList.subList(chunkStart, Math.min(chunkStart + IN_LIST_CHUNK_SIZE, emailsList.size()));
+                TypedQuery<String> myQuery = withTimeout(mySession.createNamedQuery("UserEntity.findExistingEmails", String.class), 
+                    LOOKUP_TIMEOUT_SECONDS);
+                myQuery.setParameter("userEmails", emailsChunk);
+                existingEmails.addAll(myQuery.getResultList());
+            }
+            return existingEmails;
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to check {} emails: {}", emailsList.size(), myException.getMessage());
+            throw new DataAccessCustomException("Failed to check existing emails", myException);
+        } finally {
+            mySession.close();
+        }
+    }
+    
+    @Override
+    public BulkLookupResult<Long> findUsersByIds(Collection<Long> userIds) {
+        List<Long> distinctIds = BulkLookupResult.distinctKeys(userIds);
+        if (distinctIds.isEmpty()) {
+            return new BulkLookupResult<>(distinctIds, Map.of());
+        }
+        try {
+            // multiLoad fetches in IN lists of the batch size and answers ids already in the second-level cache from it
+            List<UserEntity> loadedUsers = executeReadOperation(mySession -> mySession.byMultipleIds(UserEntity.class)
+                .withBatchSize(IN_LIST_CHUNK_SIZE)
+                .multiLoad(distinctIds));
+            Map<Long, UserEntity> foundUsers = new HashMap<>();
+            for (UserEntity loadedUser : loadedUsers) {
+                if (loadedUser != null) {
+                    foundUsers.put(loadedUser.getUserId(), loadedUser);
+                }
+            }
+            return new BulkLookupResult<>(distinctIds, foundUsers);
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to find {} users by ID: {}", distinctIds.size(), myException.getMessage());
+            throw new DataAccessCustomException("Failed to find users by ID", myException);
+        }
+    }
+    
+    @Override
+    public BulkLookupResult<String> findUsersByEmails(Collection<String> emailAddresses) {
+        List<String> distinctEmails = BulkLookupResult.distinctKeys(emailAddresses);
+        if (distinctEmails.isEmpty()) {
+            return new BulkLookupResult<>(distinctEmails, Map.of());
+        }
+        try {
+            Map<String, UserEntity> foundUsers = executeReadOperation(mySession -> {
+                Map<String, UserEntity> chunkUsers = new HashMap<>();
+                for (int chunkStart = 0; chunkStart < distinctEmails.size(); chunkStart += IN_LIST_CHUNK_SIZE) {
+                    TypedQuery<UserEntity> myQuery = withTimeout(
+                        mySession.createNamedQuery("UserEntity.findUsersByEmails", UserEntity.class), LOOKUP_TIMEOUT_SECONDS);
+                    int chunkEnd = Math.min(chunkStart + IN_LIST_CHUNK_SIZE, distinctEmails.size());
+                    myQuery.setParameter("userEmails", distinctEmails.subList(chunkStart, chunkEnd));
+                    for (UserEntity foundUser : myQuery.getResultList()) {
+                        chunkUsers.put(foundUser.getUserEmail(), foundUser);
+                    }
+                }
+                return chunkUsers;
+            });
+            return new BulkLookupResult<>(distinctEmails, foundUsers);
+        } catch (Exception myException) {
+            myLoggerInstance.error("Failed to find {} users by email: {}", distinctEmails.size(), myException.getMessage());
+            throw new DataAccessCustomException("Failed to find users by email", myException);
+        }
+    }
+    
+    // Every chunk commits on its own, like bulk inserts: if a later chunk fails, the users of earlier chunks stay deleted
+    @Override
+    public BulkDeleteResult removeUsersByIds(Collection<Long> userIds) {
+        List<Long> distinctIds = BulkLookupResult.distinctKeys(userIds);
+        Set<Long> deletedIds = new HashSet<>();
+        for (int chunkStart = 0; chunkStart < distinctIds.size(); chunkStart += IN_LIST_CHUNK_SIZE) {
+            int chunkEnd = Math.min(chunkStart + IN_LIST_CHUNK_SIZE, distinctIds.size());
+            deletedIds.addAll(deleteUsersChunk(distinctIds.subList(chunkStart, chunkEnd)));
+        }
+        if (!deletedIds.isEmpty()) {
+            sessionFactory().getCache().evictDefaultQueryRegion();
+        }
+        return new BulkDeleteResult(distinctIds, deletedIds);
+    }
+    
+    // The rows are locked first, which tells which ids (and versions, for the change records) are really deleted
+    // without relying on DELETE ... RETURNING
+    private Set<Long> deleteUsersChunk(List<Long> idsChunk) {
+        Transaction myTransaction = null;
+        Session mySession = openSession();
+        try {
+            myTransaction = mySession.beginTransaction();
+            List<?> lockedRows = withTimeout(mySession.createNativeQuery(
+                    "SELECT userId, versionNumber FROM app_users WHERE userId IN (:userIds) FOR UPDATE"), LOOKUP_TIMEOUT_SECONDS)
+                .setParameterList("userIds", idsChunk)
+                .getResultList();
+            Map<Long, Long> deletedVersions = new HashMap<>();
+            for (Object lockedRow : lockedRows) {
+                Object[] rowValues = (Object[]) lockedRow;
+                deletedVersions.put(((Number) rowValues[0]).longValue(), ((Number) rowValues[1]).longValue());
+            }
+            if (!deletedVersions.isEmpty()) {
+                withTimeout(mySession.createNativeQuery("DELETE FROM app_users WHERE userId IN (:userIds)")
+                    .addSynchronizedQuerySpace(DIRECT_MUTATION_QUERY_SPACE), LOOKUP_TIMEOUT_SECONDS)
+                    .setParameterList("userIds", deletedVersions.keySet())
+                    .executeUpdate();
+                if (UserChangeOutbox.isEnabled()) {
+                    UserChangeOutbox.recordDeleted(mySession, deletedVersions);
+                }
+            }
+            myTransaction.commit();
+            markPrimaryWrite();
+            Cache myCache = sessionFactory().getCache();
+            for (Long deletedId : deletedVersions.keySet()) {
+                myCache.evictEntityData(UserEntity.class, deletedId);
+            }
+            myLoggerInstance.debug("Deleted {} of {} users", deletedVersions.size(), idsChunk.size());
+            return deletedVersions.keySet();
+        } catch (Exception myException) {
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
+            myLoggerInstance.error("Failed to delete {} users: {}", idsChunk.size(), myException.getMessage());
+            throw new DataAccessCustomException("Failed to delete users", myException);
+        } finally {
+            mySession.close();
+        }
+    }
+    
+    @Override
+    public BulkInsertResult insertUsersInBulk(Collection<UserEntity> usersToInsert) {
+        List<UserEntity> usersList = new ArrayList<>(usersToInsert);
+        BulkInsertResult bulkResult = new BulkInsertResult();
+        for (int chunkStart = 0; chunkStart < usersList.size(); chunkStart += BULK_TRANSACTION_SIZE) {
+            int chunkEnd = Math.min(chunkStart + BULK_TRANSACTION_SIZE, usersList.size());
+            if (!insertUsersChunk(usersList, chunkStart, chunkEnd, bulkResult)) {
+                // One bad row poisons the whole JDBC batch, so replay the chunk row by row to isolate it
+                for (int rowPosition = chunkStart; rowPosition < chunkEnd; rowPosition++) {
+                    insertSingleUserOfBulk(usersList.get(rowPosition), rowPosition, bulkResult);
+                }
+            }
+        }
+        myLoggerInstance.debug("Bulk insert finished: {} inserted, {} rejected", 
+            bulkResult.getInsertedCount(), bulkResult.getRejectedCount());
+        return bulkResult;
+    }
+    
+    private boolean insertUsersChunk(List<UserEntity> usersList, int chunkStart, int chunkEnd, BulkInsertResult bulkResult) {
+        Transaction myTransaction = null;
+        Session mySession = openSession();
+        try {
+            myTransaction = mySession.beginTransaction();
+            for (int rowPosition = chunkStart; rowPosition < chunkEnd; rowPosition++) {
+                mySession.persist(usersList.get(rowPosition));
+                if ((rowPosition - chunkStart + 1) % JDBC_BATCH_SIZE == 0) {
+                    mySession.flush();
+                    mySession.clear();
+                }
+            }
+            if (UserChangeOutbox.isEnabled()) {
+                mySession.flush();
+                UserChangeOutbox.recordCreated(mySession, usersList.subList(chunkStart, chunkEnd));
+            }
+            myTransaction.commit();
+            markPrimaryWrite();
+            for (int rowPosition = chunkStart; rowPosition < chunkEnd; rowPosition++) {
+                bulkResult.addInsertedUser(usersList.get(rowPosition));
+            }
+            return true;
+        } catch (Exception myException) {
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
+            myLoggerInstance.warn("Bulk insert chunk [{}, {}) failed, retrying row by row: {}", 
+                chunkStart, chunkEnd, myException.getMessage());
+            for (int rowPosition = chunkStart; rowPosition < chunkEnd; rowPosition++) {
+                usersList.get(rowPosition).setUserId(null);
+            }
+            return false;
+        } finally {
+            mySession.close();
+        }
+    }
+    
+    private void insertSingleUserOfBulk(UserEntity myUserEntity, int rowPosition, BulkInsertResult bulkResult) {
+        Transaction myTransaction = null;
+        Session mySession = openSession();
+        try {
+            myTransaction = mySession.beginTransaction();
+            mySession.persist(myUserEntity);
+            if (UserChangeOutbox.isEnabled()) {
+                mySession.flush();
+                UserChangeOutbox.recordCreated(mySession, List.of(myUserEntity));
+            }
+            myTransaction.commit();
+            markPrimaryWrite();
+            bulkResult.addInsertedUser(myUserEntity);
+        } catch (Exception myException) {
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
+            myUserEntity.setUserId(null);
+            if (isUniqueViolation(myException)) {
+                bulkResult.addRejectedUser(rowPosition, myUserEntity, "Email address already registered: " + myUserEntity.getUserEmail());
+                return;
+            }
+            Throwable rootCause = myException;
+            while (rootCause.getCause() != null) {
+                rootCause = rootCause.getCause();
+            }
+            bulkResult.addRejectedUser(rowPosition, myUserEntity, rootCause.getMessage());
+        } finally {
+            mySession.close();
+        }
+    }
+    
+    static boolean isConnectionFailure(Throwable myException) {
+        for (Throwable currentCause = myException; currentCause != null; currentCause = currentCause.getCause()) {
+            if (currentCause instanceof JDBCConnectionException || currentCause instanceof SQLTransientConnectionException) {
+                return true;
+            }
+            if (currentCause instanceof SQLException && ((SQLException) currentCause).getSQLState() != null
+                    && ((SQLException) currentCause).getSQLState().startsWith(CONNECTION_FAILURE_SQL_STATE_CLASS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    static boolean isUniqueViolation(Throwable myException) {
+        for (Throwable currentCause = myException; currentCause != null; currentCause = currentCause.getCause()) {
+            if (currentCause instanceof ConstraintViolationException
+                    && UNIQUE_VIOLATION_SQL_STATE.equals(((ConstraintViolationException) currentCause).getSQLState())) {
+                return true;
+            }
+            if (currentCause instanceof SQLException
+                    && UNIQUE_VIOLATION_SQL_STATE.equals(((SQLException) currentCause).getSQLState())) {
+                return true;
+            }
+        }
+        return false;
     }
 }
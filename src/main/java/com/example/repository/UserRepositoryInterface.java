@@ -1,15 +1,32 @@
 package com.example.repository;
 
 import com.example.entity.UserEntity;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserRepositoryInterface {
     UserEntity MyInsertNewUser(UserEntity myUserEntity);
     Optional<UserEntity> findUserById(Long userIdValue);
     List<UserEntity> retrieveAllUsers();
+    List<UserEntity> retrieveUsersPage(Long afterUserId, int pageSize);
+    long streamAllUsers(Consumer<UserEntity> userConsumer);
+    List<UserSummary> retrieveUserSummariesPage(Long afterUserId, int pageSize);
+    long streamAllUserSummaries(Consumer<UserSummary> summaryConsumer);
+    List<UserEntity> searchUsers(UserSearchCriteria searchCriteria);
+    List<Object[]> searchUserFields(UserSearchCriteria searchCriteria, List<UserSearchField> selectedFields);
+    List<UserSummary> searchUserSummaries(UserSearchCriteria searchCriteria);
     UserEntity updateExistingUser(UserEntity myUserEntity);
     boolean removeUserById(Long userIdValue);
+    boolean updateUserFields(Long userIdValue, Long expectedVersion, String userName, String userEmail, Integer userAge);
+    boolean removeUserByIdAndVersion(Long userIdValue, Long expectedVersion);
     Optional<UserEntity> findUserByEmailAddress(String emailAddress);
     boolean checkIfEmailExists(String emailAddress);
+    Set<String> findExistingEmails(Collection<String> emailAddresses);
+    BulkInsertResult insertUsersInBulk(Collection<UserEntity> usersToInsert);
+    BulkLookupResult<Long> findUsersByIds(Collection<Long> userIds);
+    BulkLookupResult<String> findUsersByEmails(Collection<String> emailAddresses);
+    BulkDeleteResult removeUsersByIds(Collection<Long> userIds);
 }
@@ -0,0 +1,132 @@
+package com.example.repository;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+// Every filter is optional; results are ordered by userId and paged by keyset, so the next page is
+// nextPage(lastUserId) rather than an OFFSET that rereads every skipped row
+public class UserSearchCriteria {
+    private final String namePrefix;
+    private final String emailPrefix;
+    private final Integer minimumAge;
+    private final Integer maximumAge;
+    private final LocalDateTime createdFrom;
+    private final LocalDateTime createdBefore;
+    private final Long afterUserId;
+    private final int pageSize;
+    
+    private UserSearchCriteria(Builder myBuilder) {
+        this.namePrefix = myBuilder.namePrefix;
+        this.emailPrefix = myBuilder.emailPrefix;
+        this.minimumAge = myBuilder.minimumAge;
+        this.maximumAge = myBuilder.maximumAge;
+        this.createdFrom = myBuilder.createdFrom;
+        this.createdBefore = myBuilder.createdBefore;
+        this.afterUserId = myBuilder.afterUserId;
+        this.pageSize = myBuilder.pageSize;
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    public UserSearchCriteria nextPage(Long lastUserId) {
+        return toBuilder().afterUserId(lastUserId).build();
+    }
+    
+    public Builder toBuilder() {
+        return new Builder()
+            .withNamePrefix(namePrefix)
+            .withEmailPrefix(emailPrefix)
+            .withAgeBetween(minimumAge, maximumAge)
+            .withCreatedBetween(createdFrom, createdBefore)
+            .afterUserId(afterUserId)
+            .withPageSize(pageSize);
+    }
+    
+    public String getNamePrefix() { return namePrefix; }
+    public String getEmailPrefix() { return emailPrefix; }
+    public Integer getMinimumAge() { return minimumAge; }
+    public Integer getMaximumAge() { return maximumAge; }
+    public LocalDateTime getCreatedFrom() { return createdFrom; }
+    public LocalDateTime getCreatedBefore() { return createdBefore; }
+    public Long getAfterUserId() { return afterUserId; }
+    public int getPageSize() { return pageSize; }
+    
+    public boolean hasFilters() {
+        return namePrefix != null || emailPrefix != null || minimumAge != null || maximumAge != null 
+            || createdFrom != null || createdBefore != null;
+    }
+    
+    @Override
+    public String toString() {
+        return "UserSearchCriteria[namePrefix=" + namePrefix + ", emailPrefix=" + emailPrefix + ", age=" + minimumAge + ".." 
+            + maximumAge + ", created=" + createdFrom + ".." + createdBefore + ", afterUserId=" + afterUserId 
+            + ", pageSize=" + pageSize + "]";
+    }
+    
+    public static class Builder {
+        private String namePrefix;
+        private String emailPrefix;
+        private Integer minimumAge;
+        private Integer maximumAge;
+        private LocalDateTime createdFrom;
+        private LocalDateTime createdBefore;
+        private Long afterUserId;
+        private int pageSize = 100;
+        
+        private Builder() {}
+        
+        public Builder withNamePrefix(String namePrefix) {
+            this.namePrefix = blankToNull(namePrefix);
+            return this;
+        }
+        
+        // Email matching is case-insensitive, so the prefix is stored in the same lower case as the index expression
+        public Builder withEmailPrefix(String emailPrefix) {
+            String trimmedPrefix = blankToNull(emailPrefix);
+            this.emailPrefix = trimmedPrefix == null ? null : trimmedPrefix.toLowerCase(Locale.ROOT);
+            return this;
+        }
+        
+        public Builder withAgeBetween(Integer minimumAge, Integer maximumAge) {
+            this.minimumAge = minimumAge;
+            this.maximumAge = maximumAge;
+            return this;
+        }
+        
+        // createdFrom is inclusive, createdBefore exclusive, so adjacent windows never overlap
+        public Builder withCreatedBetween(LocalDateTime createdFrom, LocalDateTime createdBefore) {
+            this.createdFrom = createdFrom;
+            this.createdBefore = createdBefore;
+            return this;
+        }
+        
+        public Builder afterUserId(Long afterUserId) {
+            this.afterUserId = afterUserId;
+            return this;
+        }
+        
+        public Builder withPageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+        
+        public UserSearchCriteria build() {
+            if (minimumAge != null && maximumAge != null && minimumAge > maximumAge) {
+                throw new IllegalArgumentException("Minimum age " + minimumAge + " is greater than maximum age " + maximumAge);
+            }
+            if (createdFrom != null && createdBefore != null && !createdFrom.isBefore(createdBefore)) {
+                throw new IllegalArgumentException("Registration window is empty: " + createdFrom + " .. " + createdBefore);
+            }
+            if (afterUserId != null && afterUserId < 0) {
+                throw new IllegalArgumentException("afterUserId must not be negative");
+            }
+            return new UserSearchCriteria(this);
+        }
+        
+        private static String blankToNull(String textValue) {
+            return textValue == null || textValue.trim().isEmpty() ? null : textValue.trim();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.repository;
+
+public enum UserSearchField {
+    USER_ID("userId"),
+    USER_NAME("userName"),
+    USER_EMAIL("userEmail"),
+    USER_AGE("userAge"),
+    USER_CREATED_AT("userCreatedAt"),
+    VERSION_NUMBER("versionNumber");
+    
+    private final String propertyName;
+    
+    UserSearchField(String propertyName) {
+        this.propertyName = propertyName;
+    }
+    
+    public String getPropertyName() { return propertyName; }
+}
@@ -0,0 +1,8 @@
+package com.example.repository;
+
+import java.time.LocalDateTime;
+
+// Read-only view for listings: built by a JPQL constructor expression, so no entity is hydrated,
+// registered in a persistence context or snapshotted for dirty checking
+public record UserSummary(Long userId, String userName, String userEmail, Integer userAge, LocalDateTime userCreatedAt) {
+}
@@ -0,0 +1,182 @@
+package com.example.service;
+
+import com.example.config.DatabaseConfigurationManager;
+import com.example.config.ReadReplicaRouter;
+import com.example.entity.UserEntity;
+import com.example.repository.BulkDeleteResult;
+import com.example.repository.BulkInsertResult;
+import com.example.repository.BulkLookupResult;
+import com.example.repository.UserSearchCriteria;
+import com.example.repository.UserSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+public class AsyncUserManagementService implements AutoCloseable {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(AsyncUserManagementService.class);
+    private static final Duration DEFAULT_OPERATION_TIMEOUT = Duration.ofSeconds(30);
+    private final UserManagementServiceImpl myUserServiceInstance;
+    private final ExecutorService myVirtualThreadExecutor;
+    private final Semaphore myDatabasePermits;
+    private final Duration myOperationTimeout;
+    
+    public AsyncUserManagementService(UserManagementServiceImpl myUserServiceInstance) {
+        this(myUserServiceInstance, DatabaseConfigurationManager.getMaximumPoolSize(), DEFAULT_OPERATION_TIMEOUT);
+    }
+    
+    public AsyncUserManagementService(UserManagementServiceImpl myUserServiceInstance, int maxConcurrentOperations, 
+                                      Duration myOperationTimeout) {
+        if (maxConcurrentOperations <= 0) {
+            throw new IllegalArgumentException("maxConcurrentOperations must be positive");
+        }
+        this.myUserServiceInstance = myUserServiceInstance;
+        this.myVirtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        // Virtual threads are cheap, pooled connections are not: without this bound thousands of callers
+        // would simply queue inside Hikari until connectionTimeout
+        this.myDatabasePermits = new Semaphore(maxConcurrentOperations, true);
+        this.myOperationTimeout = myOperationTimeout;
+    }
+    
+    public CompletableFuture<UserEntity> registerNewUser(String userName, String userEmail, Integer userAge) {
+        Callable<UserEntity> myRegistration = () -> myUserServiceInstance.registerNewUser(userName, userEmail, userAge);
+        // A write-behind registration only waits for the registration writer, which commits on its own connection;
+        // holding a permit meanwhile would cap every batch at the permit count
+        return WriteBehindRegistrationBuffer.WRITE_BEHIND_ENABLED 
+            ? submitOperation(myRegistration, false) : submitOperation(myRegistration);
+    }
+    
+    public CompletableFuture<BulkInsertResult> registerUsersInBulk(Collection<UserEntity> newUsers) {
+        return submitOperation(() -> myUserServiceInstance.registerUsersInBulk(newUsers));
+    }
+    
+    public CompletableFuture<Optional<UserEntity>> getUserByIdValue(Long userIdValue) {
+        return submitOperation(() -> myUserServiceInstance.getUserByIdValue(userIdValue));
+    }
+    
+    // Holds every user in the returned list; processAllUsers hands them over one at a time instead
+    @Deprecated
+    public CompletableFuture<List<UserEntity>> getAllUsersList() {
+        return submitOperation(myUserServiceInstance::getAllUsersList);
+    }
+    
+    // The consumer runs on the worker thread, once per user in id order; the whole scan counts against the timeout
+    public CompletableFuture<Long> processAllUsers(Consumer<UserEntity> userConsumer) {
+        return submitOperation(() -> myUserServiceInstance.processAllUsers(userConsumer));
+    }
+    
+    public CompletableFuture<List<UserEntity>> getUsersPage(Long afterUserId, int pageSize) {
+        return submitOperation(() -> myUserServiceInstance.getUsersPage(afterUserId, pageSize));
+    }
+    
+    public CompletableFuture<List<UserSummary>> getUserSummariesPage(Long afterUserId, int pageSize) {
+        return submitOperation(() -> myUserServiceInstance.getUserSummariesPage(afterUserId, pageSize));
+    }
+    
+    public CompletableFuture<List<UserSummary>> searchUserSummaries(UserSearchCriteria searchCriteria) {
+        return submitOperation(() -> myUserServiceInstance.searchUserSummaries(searchCriteria));
+    }
+    
+    public CompletableFuture<List<UserEntity>> searchUsers(UserSearchCriteria searchCriteria) {
+        return submitOperation(() -> myUserServiceInstance.searchUsers(searchCriteria));
+    }
+    
+    public CompletableFuture<UserEntity> modifyUserData(Long userIdValue, String userName, String userEmail, Integer userAge) {
+        return submitOperation(() -> myUserServiceInstance.modifyUserData(userIdValue, userName, userEmail, userAge));
+    }
+    
+    public CompletableFuture<Boolean> deleteUserById(Long userIdValue) {
+        return submitOperation(() -> myUserServiceInstance.deleteUserById(userIdValue));
+    }
+    
+    public CompletableFuture<Optional<UserEntity>> findUserByEmailString(String userEmail) {
+        return submitOperation(() -> myUserServiceInstance.findUserByEmailString(userEmail));
+    }
+    
+    public CompletableFuture<BulkLookupResult<Long>> getUsersByIds(Collection<Long> userIds) {
+        return submitOperation(() -> myUserServiceInstance.getUsersByIds(userIds));
+    }
+    
+    public CompletableFuture<BulkLookupResult<String>> getUsersByEmails(Collection<String> userEmails) {
+        return submitOperation(() -> myUserServiceInstance.getUsersByEmails(userEmails));
+    }
+    
+    public CompletableFuture<BulkDeleteResult> deleteUsersByIds(Collection<Long> userIds) {
+        return submitOperation(() -> myUserServiceInstance.deleteUsersByIds(userIds));
+    }
+    
+    public int getAvailablePermits() {
+        return myDatabasePermits.availablePermits();
+    }
+    
+    public int getQueuedOperations() {
+        return myDatabasePermits.getQueueLength();
+    }
+    
+    private <T> CompletableFuture<T> submitOperation(Callable<T> myOperation) {
+        return submitOperation(myOperation, true);
+    }
+    
+    private <T> CompletableFuture<T> submitOperation(Callable<T> myOperation, boolean needsDatabasePermit) {
+        CompletableFuture<T> resultFuture = new CompletableFuture<>();
+        // Every task gets a fresh thread; running it in the caller's window lets the caller read what it wrote
+        ReadReplicaRouter.WriteScope callerWriteScope = ReadReplicaRouter.currentWriteScope();
+        Future<?> runningTask = myVirtualThreadExecutor.submit(() -> {
+            if (resultFuture.isDone()) {
+                return;
+            }
+            boolean isPermitAcquired = false;
+            try {
+                if (needsDatabasePermit) {
+                    myDatabasePermits.acquire();
+                    isPermitAcquired = true;
+                }
+                if (!resultFuture.isDone()) {
+                    resultFuture.complete(ReadReplicaRouter.callInWriteScope(callerWriteScope, myOperation));
+                }
+            } catch (InterruptedException myException) {
+                Thread.currentThread().interrupt();
+                resultFuture.completeExceptionally(new CancellationException("Operation interrupted"));
+            } catch (Throwable myException) {
+                resultFuture.completeExceptionally(myException);
+            } finally {
+                if (isPermitAcquired) {
+                    myDatabasePermits.release();
+                }
+            }
+        });
+        resultFuture.whenComplete((operationResult, operationFailure) -> {
+            if (operationFailure instanceof CancellationException || operationFailure instanceof TimeoutException) {
+                runningTask.cancel(true);
+            }
+        });
+        return resultFuture.orTimeout(myOperationTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public void close() {
+        myVirtualThreadExecutor.shutdown();
+        try {
+            if (!myVirtualThreadExecutor.awaitTermination(myOperationTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                myLoggerInstance.warn("Async user operations still running after {}, interrupting", myOperationTimeout);
+                myVirtualThreadExecutor.shutdownNow();
+            }
+        } catch (InterruptedException myException) {
+            Thread.currentThread().interrupt();
+            myVirtualThreadExecutor.shutdownNow();
+        }
+    }
+}
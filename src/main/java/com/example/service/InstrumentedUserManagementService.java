@@ -0,0 +1,166 @@
+package com.example.service;
+
+import com.example.entity.UserEntity;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.OperationMetrics;
+import com.example.repository.BulkDeleteResult;
+import com.example.repository.BulkInsertResult;
+import com.example.repository.BulkLookupResult;
+import com.example.repository.UserRepositoryInterface;
+import com.example.repository.UserSearchCriteria;
+import com.example.repository.UserSearchField;
+import com.example.repository.UserSummary;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class InstrumentedUserManagementService extends UserManagementServiceImpl {
+    private final OperationMetrics registerMetrics = MetricsRegistry.getInstance().operation("service.registerNewUser");
+    private final OperationMetrics registerAsyncMetrics = MetricsRegistry.getInstance().operation("service.registerNewUserAsync");
+    private final OperationMetrics bulkRegisterMetrics = MetricsRegistry.getInstance().operation("service.registerUsersInBulk");
+    private final OperationMetrics getByIdMetrics = MetricsRegistry.getInstance().operation("service.getUserByIdValue");
+    private final OperationMetrics getAllMetrics = MetricsRegistry.getInstance().operation("service.getAllUsersList");
+    private final OperationMetrics getPageMetrics = MetricsRegistry.getInstance().operation("service.getUsersPage");
+    private final OperationMetrics processAllMetrics = MetricsRegistry.getInstance().operation("service.processAllUsers");
+    private final OperationMetrics summaryPageMetrics = MetricsRegistry.getInstance().operation("service.getUserSummariesPage");
+    private final OperationMetrics processSummariesMetrics = MetricsRegistry.getInstance().operation("service.processAllUserSummaries");
+    private final OperationMetrics searchSummariesMetrics = MetricsRegistry.getInstance().operation("service.searchUserSummaries");
+    private final OperationMetrics searchMetrics = MetricsRegistry.getInstance().operation("service.searchUsers");
+    private final OperationMetrics searchFieldsMetrics = MetricsRegistry.getInstance().operation("service.searchUserFields");
+    private final OperationMetrics modifyMetrics = MetricsRegistry.getInstance().operation("service.modifyUserData");
+    private final OperationMetrics deleteMetrics = MetricsRegistry.getInstance().operation("service.deleteUserById");
+    private final OperationMetrics findByEmailMetrics = MetricsRegistry.getInstance().operation("service.findUserByEmailString");
+    private final OperationMetrics getByIdsMetrics = MetricsRegistry.getInstance().operation("service.getUsersByIds");
+    private final OperationMetrics getByEmailsMetrics = MetricsRegistry.getInstance().operation("service.getUsersByEmails");
+    private final OperationMetrics bulkDeleteMetrics = MetricsRegistry.getInstance().operation("service.deleteUsersByIds");
+    
+    public InstrumentedUserManagementService() {
+        super();
+    }
+    
+    public InstrumentedUserManagementService(UserRepositoryInterface myUserRepositoryInstance) {
+        super(myUserRepositoryInstance);
+    }
+    
+    @Override
+    public UserEntity registerNewUser(String userName, String userEmail, Integer userAge) {
+        return timed(registerMetrics, () -> super.registerNewUser(userName, userEmail, userAge));
+    }
+    
+    // Measured until the registration is committed, so the time spent waiting for the group commit is included
+    @Override
+    public CompletableFuture<Long> registerNewUserAsync(String userName, String userEmail, Integer userAge) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<Long> registrationResult;
+        try {
+            registrationResult = super.registerNewUserAsync(userName, userEmail, userAge);
+        } catch (RuntimeException myException) {
+            registerAsyncMetrics.recordFailure(System.nanoTime() - startNanos, myException);
+            throw myException;
+        }
+        return registrationResult.whenComplete((userIdValue, registrationFailure) -> {
+            if (registrationFailure == null) {
+                registerAsyncMetrics.recordSuccess(System.nanoTime() - startNanos);
+            } else {
+                registerAsyncMetrics.recordFailure(System.nanoTime() - startNanos, registrationFailure);
+            }
+        });
+    }
+    
+    @Override
+    public BulkInsertResult registerUsersInBulk(Collection<UserEntity> newUsers) {
+        return timed(bulkRegisterMetrics, () -> super.registerUsersInBulk(newUsers));
+    }
+    
+    @Override
+    public Optional<UserEntity> getUserByIdValue(Long userIdValue) {
+        return timed(getByIdMetrics, () -> super.getUserByIdValue(userIdValue));
+    }
+    
+    @Deprecated
+    @Override
+    public List<UserEntity> getAllUsersList() {
+        return timed(getAllMetrics, super::getAllUsersList);
+    }
+    
+    @Override
+    public List<UserEntity> getUsersPage(Long afterUserId, int pageSize) {
+        return timed(getPageMetrics, () -> super.getUsersPage(afterUserId, pageSize));
+    }
+    
+    @Override
+    public long processAllUsers(Consumer<UserEntity> userConsumer) {
+        return timed(processAllMetrics, () -> super.processAllUsers(userConsumer));
+    }
+    
+    @Override
+    public List<UserSummary> getUserSummariesPage(Long afterUserId, int pageSize) {
+        return timed(summaryPageMetrics, () -> super.getUserSummariesPage(afterUserId, pageSize));
+    }
+    
+    @Override
+    public long processAllUserSummaries(Consumer<UserSummary> summaryConsumer) {
+        return timed(processSummariesMetrics, () -> super.processAllUserSummaries(summaryConsumer));
+    }
+    
+    @Override
+    public List<UserSummary> searchUserSummaries(UserSearchCriteria searchCriteria) {
+        return timed(searchSummariesMetrics, () -> super.searchUserSummaries(searchCriteria));
+    }
+    
+    @Override
+    public List<UserEntity> searchUsers(UserSearchCriteria searchCriteria) {
+        return timed(searchMetrics, () -> super.searchUsers(searchCriteria));
+    }
+    
+    @Override
+    public List<Object[]> searchUserFields(UserSearchCriteria searchCriteria, List<UserSearchField> selectedFields) {
+        return timed(searchFieldsMetrics, () -> super.searchUserFields(searchCriteria, selectedFields));
+    }
+    
+    @Override
+    public UserEntity modifyUserData(Long userIdValue, String userName, String userEmail, Integer userAge) {
+        return timed(modifyMetrics, () -> super.modifyUserData(userIdValue, userName, userEmail, userAge));
+    }
+    
+    @Override
+    public boolean deleteUserById(Long userIdValue) {
+        return timed(deleteMetrics, () -> super.deleteUserById(userIdValue));
+    }
+    
+    @Override
+    public Optional<UserEntity> findUserByEmailString(String userEmail) {
+        return timed(findByEmailMetrics, () -> super.findUserByEmailString(userEmail));
+    }
+    
+    @Override
+    public BulkLookupResult<Long> getUsersByIds(Collection<Long> userIds) {
+        return timed(getByIdsMetrics, () -> super.getUsersByIds(userIds));
+    }
+    
+    @Override
+    public BulkLookupResult<String> getUsersByEmails(Collection<String> userEmails) {
+        return timed(getByEmailsMetrics, () -> super.getUsersByEmails(userEmails));
+    }
+    
+    @Override
+    public BulkDeleteResult deleteUsersByIds(Collection<Long> userIds) {
+        return timed(bulkDeleteMetrics, () -> super.deleteUsersByIds(userIds));
+    }
+    
+    private static <T> T timed(OperationMetrics operationMetrics, Supplier<T> serviceOperation) {
+        long startNanos = System.nanoTime();
+        try {
+            T operationResult = serviceOperation.get();
+            operationMetrics.recordSuccess(System.nanoTime() - startNanos);
+            return operationResult;
+        } catch (RuntimeException myException) {
+            operationMetrics.recordFailure(System.nanoTime() - startNanos, myException);
+            throw myException;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.service;
+
+import com.example.entity.UserEntity;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.OperationMetrics;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Near cache in front of the repository for single-user lookups. Users are kept under their id; an email key only maps
+// to the id (or to "no such user"), and is checked against the cached user on every hit, so an email change or delete
+// can never serve the wrong user. Concurrent misses for one key share a single load running on the first caller.
+class UserLookupCache {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(UserLookupCache.class);
+    static final boolean USER_CACHE_ENABLED = Boolean.parseBoolean(System.getProperty("user-cache.enabled", "false"));
+    private static final long MAX_BYTES = Long.getLong("user-cache.max-bytes", 64L * 1024 * 1024);
+    private static final Duration ENTRY_TTL = Duration.ofMillis(Integer.getInteger("user-cache.ttl-ms", 30_000));
+    private static final Duration NEGATIVE_TTL = Duration.ofMillis(Integer.getInteger("user-cache.negative-ttl-ms", 5_000));
+    // Rough heap footprint: entity, boxed fields, two strings and the cache node; characters are counted as two bytes
+    private static final int USER_ENTRY_BYTES = 280;
+    private static final int EMAIL_ENTRY_BYTES = 120;
+    private static final long NO_SUCH_USER = 0L;
+    
+    // userSnapshot is set for id keys; email keys carry only the id, NO_SUCH_USER when the email is not registered
+    private record CachedLookup(long userId, UserEntity userSnapshot) {}
+    
+    private final AsyncCache<Object, CachedLookup> myLookupCache;
+    // Bumped by every delete, so an email lookup that read a row just before it was deleted does not cache it by id
+    private final AtomicLong deletionStamp = new AtomicLong();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder staleEmailMappings = new LongAdder();
+    private final OperationMetrics loadMetrics;
+    
+    UserLookupCache() {
+        // Caffeine evicts by W-TinyLFU, so a burst of one-off lookups does not push out frequently read profiles
+        this.myLookupCache = Caffeine.newBuilder()
+            .maximumWeight(MAX_BYTES)
+            .weigher(UserLookupCache::weighEntry)
+            .expireAfter(new LookupExpiry())
+            .recordStats()
+            .buildAsync();
+        this.loadMetrics = MetricsRegistry.isEnabled() ? MetricsRegistry.getInstance().operation("service.userCacheLoad") : null;
+        MetricsRegistry.getInstance().registerStatusSection("user cache", this::toString);
+        myLoggerInstance.info("User cache enabled: {} bytes, TTL {} ms, negative TTL {} ms", 
+            MAX_BYTES, ENTRY_TTL.toMillis(), NEGATIVE_TTL.toMillis());
+    }
+    
+    Optional<UserEntity> findById(Long userIdValue, Function<Long, Optional<UserEntity>> userLoader) {
+        CachedLookup userLookup = lookup(userIdValue, () -> userLoader.apply(userIdValue)
+            .map(foundUser -> new CachedLookup(foundUser.getUserId(), copyOf(foundUser))).orElse(null));
+        return userLookup == null ? Optional.empty() : Optional.of(copyOf(userLookup.userSnapshot()));
+    }
+    
+    Optional<UserEntity> findByEmail(String emailAddress, Function<String, Optional<UserEntity>> emailLoader,
+                                     Function<Long, Optional<UserEntity>> userLoader) {
+        UserEntity[] loadedUser = new UserEntity[1];
+        boolean[] isLoadedHere = new boolean[1];
+        CachedLookup emailLookup = lookup(emailAddress, () -> {
+            isLoadedHere[0] = true;
+            long stampBeforeLoad = deletionStamp.get();
+            Optional<UserEntity> foundUser = emailLoader.apply(emailAddress);
+            if (foundUser.isEmpty()) {
+                return new CachedLookup(NO_SUCH_USER, null);
+            }
+            loadedUser[0] = foundUser.get();
+            // Callers that joined this load read the user through its id. Dropped again if a delete may have overtaken the
+            // read: the delete bumps the stamp before it invalidates, so one of the two sides always removes the entry.
+            storeIfNewer(foundUser.get());
+            if (deletionStamp.get() != stampBeforeLoad) {
+                myLookupCache.synchronous().invalidate(foundUser.get().getUserId());
+            }
+            return new CachedLookup(foundUser.get().getUserId(), null);
+        });
+        if (emailLookup == null || emailLookup.userId() == NO_SUCH_USER) {
+            if (emailLookup != null && !isLoadedHere[0]) negativeHits.increment();
+            return Optional.empty();
+        }
+        if (loadedUser[0] != null) {
+            return Optional.of(copyOf(loadedUser[0]));
+        }
+        Optional<UserEntity> mappedUser = findById(emailLookup.userId(), userLoader);
+        if (mappedUser.isPresent() && emailAddress.equals(mappedUser.get().getUserEmail())) {
+            return mappedUser;
+        }
+        // The user changed email or was deleted since the mapping was cached, possibly by another process. Both entries
+        // are dropped and this caller asks the database directly, so two stale entries cannot send it round in circles.
+        staleEmailMappings.increment();
+        myLookupCache.synchronous().invalidate(emailAddress);
+        myLookupCache.synchronous().invalidate(emailLookup.userId());
+        return emailLoader.apply(emailAddress);
+    }
+    
+    // After a successful update: the new state replaces the cached one unless a later version is cached already
+    void userUpdated(UserEntity updatedUser, String previousEmail) {
+        long userIdValue = updatedUser.getUserId();
+        storeIfNewer(updatedUser);
+        if (previousEmail != null && !previousEmail.equals(updatedUser.getUserEmail())) {
+            myLookupCache.synchronous().invalidate(previousEmail);
+        }
+        myLookupCache.put(updatedUser.getUserEmail(), 
+            CompletableFuture.completedFuture(new CachedLookup(userIdValue, null)));
+    }
+    
+    // Drops a cached "no such user" for an email that has just been registered
+    void emailRegistered(String emailAddress) {
+        myLookupCache.synchronous().invalidate(emailAddress);
+    }
+    
+    // After a delete or a lost version check. Email keys pointing at the id stay; their next hit sees the id reload.
+    void invalidateUser(Long userIdValue) {
+        deletionStamp.incrementAndGet();
+        myLookupCache.synchronous().invalidate(userIdValue);
+    }
+    
+    // Returns the cached or freshly loaded entry; concurrent callers missing the same key wait for one load
+    private CachedLookup lookup(Object cacheKey, Supplier<CachedLookup> lookupLoader) {
+        CompletableFuture<CachedLookup> cachedFuture = myLookupCache.getIfPresent(cacheKey);
+        if (cachedFuture != null) {
+            if (cachedFuture.isDone()) {
+                cacheHits.increment();
+            } else {
+                coalescedLoads.increment();
+            }
+            return await(cachedFuture);
+        }
+        CompletableFuture<CachedLookup> loadFuture = new CompletableFuture<>();
+        CompletableFuture<CachedLookup> runningLoad = myLookupCache.asMap().putIfAbsent(cacheKey, loadFuture);
+        if (runningLoad != null) {
+            coalescedLoads.increment();
+            return await(runningLoad);
+        }
+        cacheMisses.increment();
+        long startNanos = System.nanoTime();
+        CachedLookup loadedLookup;
+        try {
+            loadedLookup = lookupLoader.get();
+        } catch (RuntimeException myException) {
+            if (loadMetrics != null) loadMetrics.recordFailure(System.nanoTime() - startNanos, myException);
+            // Failed futures are removed by the cache, so the next caller retries the load
+            loadFuture.completeExceptionally(myException);
+            throw myException;
+        }
+        if (loadMetrics != null) loadMetrics.recordSuccess(System.nanoTime() - startNanos);
+        // A null value removes the entry: unknown ids are not cached, only unknown emails are
+        loadFuture.complete(loadedLookup);
+        return loadedLookup;
+    }
+    
+    private void storeIfNewer(UserEntity currentUser) {
+        CachedLookup currentLookup = new CachedLookup(currentUser.getUserId(), copyOf(currentUser));
+        myLookupCache.asMap().compute(currentUser.getUserId(), (cacheKey, cachedFuture) -> {
+            if (cachedFuture != null && cachedFuture.isDone() && !cachedFuture.isCompletedExceptionally()) {
+                CachedLookup cachedLookup = cachedFuture.join();
+                if (cachedLookup != null && cachedLookup.userSnapshot().getVersionNumber() > currentUser.getVersionNumber()) {
+                    return cachedFuture;
+                }
+            }
+            return CompletableFuture.completedFuture(currentLookup);
+        });
+    }
+    
+    private static CachedLookup await(CompletableFuture<CachedLookup> cachedFuture) {
+        if (cachedFuture == null) {
+            return null;
+        }
+        try {
+            return cachedFuture.join();
+        } catch (CompletionException myException) {
+            throw myException.getCause() instanceof RuntimeException 
+                ? (RuntimeException) myException.getCause() : myException;
+        }
+    }
+    
+    private static int weighEntry(Object cacheKey, CachedLookup cachedLookup) {
+        UserEntity userSnapshot = cachedLookup.userSnapshot();
+        if (userSnapshot == null) {
+            return EMAIL_ENTRY_BYTES + 2 * ((String) cacheKey).length();
+        }
+        return USER_ENTRY_BYTES + 2 * (userSnapshot.getUserName().length() + userSnapshot.getUserEmail().length());
+    }
+    
+    // Callers get their own copy: modifyUserData and the menu mutate the entities they are handed
+    private static UserEntity copyOf(UserEntity myUserEntity) {
+        UserEntity copiedUser = new UserEntity(myUserEntity.getUserName(), myUserEntity.getUserEmail(), myUserEntity.getUserAge());
+        copiedUser.setUserId(myUserEntity.getUserId());
+        copiedUser.setUserCreatedAt(myUserEntity.getUserCreatedAt());
+        copiedUser.setVersionNumber(myUserEntity.getVersionNumber());
+        return copiedUser;
+    }
+    
+    // Unknown emails expire sooner, since a registration in another process does not reach this cache
+    private static class LookupExpiry implements Expiry<Object, CachedLookup> {
+        @Override
+        public long expireAfterCreate(Object cacheKey, CachedLookup cachedLookup, long currentTime) {
+            return (cachedLookup.userId() == NO_SUCH_USER ? NEGATIVE_TTL : ENTRY_TTL).toNanos();
+        }
+        
+        @Override
+        public long expireAfterUpdate(Object cacheKey, CachedLookup cachedLookup, long currentTime, long currentDuration) {
+            return expireAfterCreate(cacheKey, cachedLookup, currentTime);
+        }
+        
+        @Override
+        public long expireAfterRead(Object cacheKey, CachedLookup cachedLookup, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        long hitCount = cacheHits.sum();
+        long lookupCount = hitCount + coalescedLoads.sum() + cacheMisses.sum();
+        return String.format("hit rate %.1f%% (%d hits, %d negative, %d coalesced, %d misses, %d stale email mappings), "
+                + "%d entries, %d of %d KB, %d evictions", 
+            lookupCount == 0 ? 0.0 : 100.0 * hitCount / lookupCount, hitCount, negativeHits.sum(), coalescedLoads.sum(), 
+            cacheMisses.sum(), staleEmailMappings.sum(), myLookupCache.synchronous().estimatedSize(),
+            myLookupCache.synchronous().policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L) / 1024,
+            MAX_BYTES / 1024, myLookupCache.synchronous().stats().evictionCount());
+    }
+}
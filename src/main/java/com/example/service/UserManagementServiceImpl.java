@@ -1,58 +1,238 @@
 package com.example.service;
 
+import com.example.config.ReadReplicaRouter;
 import com.example.entity.UserEntity;
+import com.example.repository.BulkDeleteResult;
+import com.example.repository.BulkInsertResult;
+import com.example.repository.BulkLookupResult;
+import com.example.repository.DuplicateEmailException;
 import com.example.repository.UserRepositoryInterface;
-import com.example.repository.UserRepositoryImplementation;
+import com.example.repository.UserSearchCriteria;
+import com.example.repository.UserSearchField;
+import com.example.repository.UserSummary;
+import com.example.repository.UserRepositoryFactory;
+import com.example.metrics.MetricsRegistry;
 import com.example.util.ValidationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 public class UserManagementServiceImpl {
     private static final Logger myLoggerInstance = LoggerFactory.getLogger(UserManagementServiceImpl.class);
+    private static final int DEFAULT_PAGE_SIZE = 500;
     private final UserRepositoryInterface myUserRepositoryInstance;
+    private final UserLookupCache myUserCache;
+    private volatile WriteBehindRegistrationBuffer myWriteBehindBuffer;
     
     public UserManagementServiceImpl() {
-        this.myUserRepositoryInstance = new UserRepositoryImplementation();
+        this(UserRepositoryFactory.createConfiguredRepository());
     }
     
     public UserManagementServiceImpl(UserRepositoryInterface myUserRepositoryInstance) {
         this.myUserRepositoryInstance = myUserRepositoryInstance;
+        this.myUserCache = UserLookupCache.USER_CACHE_ENABLED ? new UserLookupCache() : null;
+    }
+    
+    public static UserManagementServiceImpl createConfiguredService() {
+        return MetricsRegistry.isEnabled() ? new InstrumentedUserManagementService() : new UserManagementServiceImpl();
     }
     
     public UserEntity registerNewUser(String userName, String userEmail, Integer userAge) {
         validateUserInputData(userName, userEmail, userAge);
         
-        if (myUserRepositoryInstance.checkIfEmailExists(userEmail)) {
+        UserEntity newUserEntity = new UserEntity(userName, userEmail, userAge);
+        if (WriteBehindRegistrationBuffer.WRITE_BEHIND_ENABLED) {
+            // Blocking here still shares a commit with every other caller that arrives within the flush interval
+            try {
+                getWriteBehindBuffer().submit(newUserEntity).join();
+            } catch (CompletionException myException) {
+                throw myException.getCause() instanceof RuntimeException 
+                    ? (RuntimeException) myException.getCause() : myException;
+            }
+            return newUserEntity;
+        }
+        UserEntity storedUser;
+        try {
+            storedUser = myUserRepositoryInstance.MyInsertNewUser(newUserEntity);
+        } catch (DuplicateEmailException myException) {
             throw new IllegalArgumentException("Email адрес уже зарегистрирован: " + userEmail);
         }
+        if (myUserCache != null) myUserCache.emailRegistered(storedUser.getUserEmail());
+        return storedUser;
+    }
+    
+    // Validation errors are thrown right away; the future completes with the new userId once the user is committed
+    public CompletableFuture<Long> registerNewUserAsync(String userName, String userEmail, Integer userAge) {
+        validateUserInputData(userName, userEmail, userAge);
+        if (!WriteBehindRegistrationBuffer.WRITE_BEHIND_ENABLED) {
+            try {
+                return CompletableFuture.completedFuture(registerNewUser(userName, userEmail, userAge).getUserId());
+            } catch (RuntimeException myException) {
+                return CompletableFuture.failedFuture(myException);
+            }
+        }
+        return getWriteBehindBuffer().submit(new UserEntity(userName, userEmail, userAge));
+    }
+    
+    // Created on first use rather than in the constructor, so the writer thread never sees a half-built subclass
+    private WriteBehindRegistrationBuffer getWriteBehindBuffer() {
+        WriteBehindRegistrationBuffer writeBehindBuffer = myWriteBehindBuffer;
+        if (writeBehindBuffer == null) {
+            synchronized (this) {
+                writeBehindBuffer = myWriteBehindBuffer;
+                if (writeBehindBuffer == null) {
+                    writeBehindBuffer = new WriteBehindRegistrationBuffer(this::storeUsersInBulk);
+                    myWriteBehindBuffer = writeBehindBuffer;
+                }
+            }
+        }
+        return writeBehindBuffer;
+    }
+    
+    public BulkInsertResult registerUsersInBulk(Collection<UserEntity> newUsers) {
+        BulkInsertResult bulkResult = storeUsersInBulk(newUsers);
+        myLoggerInstance.info("Bulk registration: {} registered, {} rejected", 
+            bulkResult.getInsertedCount(), bulkResult.getRejectedCount());
+        return bulkResult;
+    }
+    
+    private BulkInsertResult storeUsersInBulk(Collection<UserEntity> newUsers) {
+        BulkInsertResult bulkResult = new BulkInsertResult();
+        List<UserEntity> validUsers = new ArrayList<>(newUsers.size());
+        List<Integer> validUserPositions = new ArrayList<>(newUsers.size());
+        Set<String> batchEmails = new HashSet<>();
+        List<UserEntity> inputUsers = new ArrayList<>(newUsers);
+        int[] validationErrors = ValidationUtils.validateUsersInBulk(inputUsers);
+        for (int inputPosition = 0; inputPosition < inputUsers.size(); inputPosition++) {
+            UserEntity newUser = inputUsers.get(inputPosition);
+            if (validationErrors[inputPosition] != ValidationUtils.VALID_USER_DATA) {
+                bulkResult.addRejectedUser(inputPosition, newUser, ValidationUtils.describeValidationErrors(validationErrors[inputPosition]));
+            } else if (!batchEmails.add(newUser.getUserEmail())) {
+                bulkResult.addRejectedUser(inputPosition, newUser, "Email повторяется в пакете: " + newUser.getUserEmail());
+            } else {
+                validUsers.add(newUser);
+                validUserPositions.add(inputPosition);
+            }
+        }
         
-        UserEntity newUserEntity = new UserEntity(userName, userEmail, userAge);
-        return myUserRepositoryInstance.MyInsertNewUser(newUserEntity);
+        Set<String> existingEmails = myUserRepositoryInstance.findExistingEmails(batchEmails);
+        List<UserEntity> usersToInsert = new ArrayList<>(validUsers.size());
+        int[] insertPositionMapping = new int[validUsers.size()];
+        for (int validIndex = 0; validIndex < validUsers.size(); validIndex++) {
+            UserEntity validUser = validUsers.get(validIndex);
+            if (existingEmails.contains(validUser.getUserEmail())) {
+                bulkResult.addRejectedUser(validUserPositions.get(validIndex), validUser, 
+                    "Email адрес уже зарегистрирован: " + validUser.getUserEmail());
+            } else {
+                insertPositionMapping[usersToInsert.size()] = validUserPositions.get(validIndex);
+                usersToInsert.add(validUser);
+            }
+        }
+        
+        if (!usersToInsert.isEmpty()) {
+            bulkResult.mergeFrom(myUserRepositoryInstance.insertUsersInBulk(usersToInsert), insertPositionMapping);
+        }
+        if (myUserCache != null) {
+            for (UserEntity insertedUser : bulkResult.getInsertedUsers()) {
+                myUserCache.emailRegistered(insertedUser.getUserEmail());
+            }
+        }
+        return bulkResult;
     }
     
     public Optional<UserEntity> getUserByIdValue(Long userIdValue) {
         if (userIdValue == null || userIdValue <= 0) {
             throw new IllegalArgumentException("Неверный ID пользователя");
         }
+        if (myUserCache != null) {
+            return myUserCache.findById(userIdValue, myUserRepositoryInstance::findUserById);
+        }
         return myUserRepositoryInstance.findUserById(userIdValue);
     }
     
+    // Paging keeps each read short, but the result still holds every user, so memory grows with the table. Kept for
+    // existing callers of the list; processAllUsers or getUsersPage read the table in flat memory.
+    @Deprecated
     public List<UserEntity> getAllUsersList() {
-        return myUserRepositoryInstance.retrieveAllUsers();
+        List<UserEntity> allUsersList = new ArrayList<>();
+        Long lastUserId = 0L;
+        List<UserEntity> usersPage;
+        do {
+            usersPage = myUserRepositoryInstance.retrieveUsersPage(lastUserId, DEFAULT_PAGE_SIZE);
+            allUsersList.addAll(usersPage);
+            if (!usersPage.isEmpty()) {
+                lastUserId = usersPage.get(usersPage.size() - 1).getUserId();
+            }
+        } while (usersPage.size() == DEFAULT_PAGE_SIZE);
+        return allUsersList;
+    }
+    
+    public List<UserEntity> getUsersPage(Long afterUserId, int pageSize) {
+        if (afterUserId != null && afterUserId < 0) {
+            throw new IllegalArgumentException("Неверный ID пользователя");
+        }
+        return myUserRepositoryInstance.retrieveUsersPage(afterUserId, pageSize);
+    }
+    
+    public long processAllUsers(Consumer<UserEntity> userConsumer) {
+        return myUserRepositoryInstance.streamAllUsers(userConsumer);
+    }
+    
+    public List<UserSummary> getUserSummariesPage(Long afterUserId, int pageSize) {
+        if (afterUserId != null && afterUserId < 0) {
+            throw new IllegalArgumentException("Неверный ID пользователя");
+        }
+        return myUserRepositoryInstance.retrieveUserSummariesPage(afterUserId, pageSize);
     }
     
+    public long processAllUserSummaries(Consumer<UserSummary> summaryConsumer) {
+        return myUserRepositoryInstance.streamAllUserSummaries(summaryConsumer);
+    }
+    
+    public List<UserEntity> searchUsers(UserSearchCriteria searchCriteria) {
+        validateSearchCriteria(searchCriteria);
+        return myUserRepositoryInstance.searchUsers(searchCriteria);
+    }
+    
+    public List<Object[]> searchUserFields(UserSearchCriteria searchCriteria, List<UserSearchField> selectedFields) {
+        validateSearchCriteria(searchCriteria);
+        if (selectedFields == null || selectedFields.isEmpty()) {
+            throw new IllegalArgumentException("Не выбрано ни одного поля");
+        }
+        return myUserRepositoryInstance.searchUserFields(searchCriteria, selectedFields);
+    }
+    
+    public List<UserSummary> searchUserSummaries(UserSearchCriteria searchCriteria) {
+        validateSearchCriteria(searchCriteria);
+        return myUserRepositoryInstance.searchUserSummaries(searchCriteria);
+    }
+    
+    // Reads the row from the repository, not the cache: the version check needs the current version
     public UserEntity modifyUserData(Long userIdValue, String userName, String userEmail, Integer userAge) {
-        UserEntity existingUserEntity = myUserRepositoryInstance.findUserById(userIdValue)
+        // The version read here guards the update, so it must not come from a replica that lags behind
+        UserEntity existingUserEntity = ReadReplicaRouter.readFromPrimary(() -> myUserRepositoryInstance.findUserById(userIdValue))
             .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден с ID: " + userIdValue));
         
+        String changedUserName = null;
+        String changedUserEmail = null;
+        Integer changedUserAge = null;
+        
         if (userName != null && !userName.trim().isEmpty()) {
             if (!ValidationUtils.isValidName(userName)) {
                 throw new IllegalArgumentException("Имя должно содержать только буквы и быть от 2 до 50 символов");
             }
-            existingUserEntity.setUserName(userName.trim());
+            if (!userName.trim().equals(existingUserEntity.getUserName())) {
+                changedUserName = userName.trim();
+            }
         }
         
         if (userEmail != null && !userEmail.trim().isEmpty()) {
@@ -61,10 +241,7 @@ public class UserManagementServiceImpl {
                 throw new IllegalArgumentException("Неверный формат email");
             }
             if (!newEmailValue.equals(existingUserEntity.getUserEmail())) {
-                if (myUserRepositoryInstance.checkIfEmailExists(newEmailValue)) {
-                    throw new IllegalArgumentException("Email уже используется: " + newEmailValue);
-                }
-                existingUserEntity.setUserEmail(newEmailValue);
+                changedUserEmail = newEmailValue;
             }
         }
         
@@ -72,35 +249,114 @@ public class UserManagementServiceImpl {
             if (!ValidationUtils.isValidAge(userAge)) {
                 throw new IllegalArgumentException("Возраст должен быть от 1 до 120");
             }
-            existingUserEntity.setUserAge(userAge);
+            if (!userAge.equals(existingUserEntity.getUserAge())) {
+                changedUserAge = userAge;
+            }
+        }
+        
+        if (changedUserName == null && changedUserEmail == null && changedUserAge == null) {
+            return existingUserEntity;
         }
         
-        return myUserRepositoryInstance.updateExistingUser(existingUserEntity);
+        boolean isUpdated;
+        try {
+            isUpdated = myUserRepositoryInstance.updateUserFields(userIdValue, existingUserEntity.getVersionNumber(),
+                changedUserName, changedUserEmail, changedUserAge);
+        } catch (DuplicateEmailException myException) {
+            throw new IllegalArgumentException("Email уже используется: " + myException.getEmailAddress());
+        }
+        if (!isUpdated) {
+            if (myUserCache != null) myUserCache.invalidateUser(userIdValue);
+            throw new IllegalStateException("Пользователь с ID " + userIdValue + " был изменён или удалён другим процессом");
+        }
+        
+        String previousUserEmail = existingUserEntity.getUserEmail();
+        if (changedUserName != null) existingUserEntity.setUserName(changedUserName);
+        if (changedUserEmail != null) existingUserEntity.setUserEmail(changedUserEmail);
+        if (changedUserAge != null) existingUserEntity.setUserAge(changedUserAge);
+        existingUserEntity.setVersionNumber(existingUserEntity.getVersionNumber() + 1);
+        if (myUserCache != null) myUserCache.userUpdated(existingUserEntity, previousUserEmail);
+        return existingUserEntity;
     }
     
     public boolean deleteUserById(Long userIdValue) {
         if (userIdValue == null || userIdValue <= 0) {
             throw new IllegalArgumentException("Неверный ID пользователя");
         }
-        return myUserRepositoryInstance.removeUserById(userIdValue);
+        boolean isDeleted = myUserRepositoryInstance.removeUserById(userIdValue);
+        // Also when nothing was deleted: a cached copy of a user that is already gone must not outlive this call
+        if (myUserCache != null) myUserCache.invalidateUser(userIdValue);
+        return isDeleted;
     }
     
     public Optional<UserEntity> findUserByEmailString(String userEmail) {
         if (userEmail == null || userEmail.trim().isEmpty()) {
             throw new IllegalArgumentException("Email не может быть пустым");
         }
+        if (myUserCache != null) {
+            return myUserCache.findByEmail(userEmail.trim(), myUserRepositoryInstance::findUserByEmailAddress, 
+                myUserRepositoryInstance::findUserById);
+        }
         return myUserRepositoryInstance.findUserByEmailAddress(userEmail.trim());
     }
     
-    private void validateUserInputData(String userName, String userEmail, Integer userAge) {
-        if (!ValidationUtils.isValidName(userName)) {
-            throw new IllegalArgumentException("Имя должно содержать только буквы и быть от 2 до 50 символов");
+    // Multi-gets skip the lookup cache: it is keyed for single lookups, and one round trip already answers the batch
+    public BulkLookupResult<Long> getUsersByIds(Collection<Long> userIds) {
+        return myUserRepositoryInstance.findUsersByIds(validateUserIds(userIds));
+    }
+    
+    public BulkLookupResult<String> getUsersByEmails(Collection<String> userEmails) {
+        if (userEmails == null) {
+            throw new IllegalArgumentException("Список email не задан");
+        }
+        List<String> trimmedEmails = new ArrayList<>(userEmails.size());
+        for (String userEmail : userEmails) {
+            if (userEmail == null || userEmail.trim().isEmpty()) {
+                throw new IllegalArgumentException("Email не может быть пустым");
+            }
+            trimmedEmails.add(userEmail.trim());
+        }
+        return myUserRepositoryInstance.findUsersByEmails(trimmedEmails);
+    }
+    
+    public BulkDeleteResult deleteUsersByIds(Collection<Long> userIds) {
+        List<Long> validatedIds = validateUserIds(userIds);
+        try {
+            return myUserRepositoryInstance.removeUsersByIds(validatedIds);
+        } finally {
+            // Chunks that committed before a failure are gone too
+            if (myUserCache != null) validatedIds.forEach(myUserCache::invalidateUser);
         }
-        if (!ValidationUtils.isValidEmail(userEmail)) {
-            throw new IllegalArgumentException("Неверный формат email");
+    }
+    
+    private List<Long> validateUserIds(Collection<Long> userIds) {
+        if (userIds == null) {
+            throw new IllegalArgumentException("Список ID пользователей не задан");
         }
-        if (!ValidationUtils.isValidAge(userAge)) {
-            throw new IllegalArgumentException("Возраст должен быть от 1 до 120");
+        for (Long userIdValue : userIds) {
+            if (userIdValue == null || userIdValue <= 0) {
+                throw new IllegalArgumentException("Неверный ID пользователя");
+            }
+        }
+        return new ArrayList<>(userIds);
+    }
+    
+    private void validateSearchCriteria(UserSearchCriteria searchCriteria) {
+        if (searchCriteria == null) {
+            throw new IllegalArgumentException("Критерии поиска не заданы");
+        }
+        if (searchCriteria.getNamePrefix() != null && searchCriteria.getNamePrefix().length() > 50) {
+            throw new IllegalArgumentException("Начало имени не может быть длиннее 50 символов");
+        }
+        if (searchCriteria.getEmailPrefix() != null && searchCriteria.getEmailPrefix().length() > 100) {
+            throw new IllegalArgumentException("Начало email не может быть длиннее 100 символов");
+        }
+    }
+    
+    private void validateUserInputData(String userName, String userEmail, Integer userAge) {
+        int validationErrors = ValidationUtils.validateUserFields(userName, userEmail, userAge);
+        if (validationErrors != ValidationUtils.VALID_USER_DATA) {
+            throw new IllegalArgumentException(ValidationUtils.describeValidationErrors(validationErrors));
         }
     }
 }
\ No newline at end of file
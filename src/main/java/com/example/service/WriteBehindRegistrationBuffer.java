@@ -0,0 +1,201 @@
+package com.example.service;
+
+import com.example.config.DatabaseConfigurationManager;
+import com.example.config.ReadReplicaRouter;
+import com.example.entity.UserEntity;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.OperationMetrics;
+import com.example.repository.BulkInsertResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+// Collects validated registrations from many callers and writes them as one bulk insert, so a burst of signups
+// pays for one commit per batch instead of one per user. Callers that need the id wait on the returned future.
+class WriteBehindRegistrationBuffer {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(WriteBehindRegistrationBuffer.class);
+    static final boolean WRITE_BEHIND_ENABLED = Boolean.parseBoolean(System.getProperty("write-behind.enabled", "false"));
+    private static final int BATCH_SIZE = Integer.getInteger("write-behind.batch-size", 200);
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("write-behind.flush-interval-ms", 10));
+    private static final int QUEUE_CAPACITY = Integer.getInteger("write-behind.capacity", 10_000);
+    private static final long OFFER_TIMEOUT_MILLIS = Integer.getInteger("write-behind.offer-timeout-ms", 1000);
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30_000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    private final Function<List<UserEntity>, BulkInsertResult> myBatchWriter;
+    private final ConcurrentLinkedQueue<PendingRegistration> myPendingQueue = new ConcurrentLinkedQueue<>();
+    // Permits cover queued and in-flight registrations, so a stalled database turns into caller backpressure
+    private final Semaphore myCapacityPermits = new Semaphore(QUEUE_CAPACITY);
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final LongAdder flushedBatches = new LongAdder();
+    private final LongAdder flushedRegistrations = new LongAdder();
+    private final OperationMetrics flushMetrics;
+    private final Thread myWriterThread;
+    private volatile boolean isWriterIdle;
+    private volatile boolean isStopping;
+    private volatile boolean isStopped;
+    
+    WriteBehindRegistrationBuffer(Function<List<UserEntity>, BulkInsertResult> myBatchWriter) {
+        this.myBatchWriter = myBatchWriter;
+        this.flushMetrics = MetricsRegistry.isEnabled() ? MetricsRegistry.getInstance().operation("service.writeBehindFlush") : null;
+        this.myWriterThread = new Thread(this::runWriter, "registration-writer");
+        myWriterThread.setDaemon(true);
+        myWriterThread.start();
+        // Registrations acknowledged to callers are only durable once flushed, so shutdown drains before the pool closes
+        DatabaseConfigurationManager.registerShutdownAction(this::close);
+        myLoggerInstance.info("Write-behind registrations enabled: batch size {}, flush interval {} ms, capacity {}",
+            BATCH_SIZE, TimeUnit.NANOSECONDS.toMillis(FLUSH_INTERVAL_NANOS), QUEUE_CAPACITY);
+    }
+    
+    CompletableFuture<Long> submit(UserEntity newUser) {
+        if (isStopping) {
+            throw new IllegalStateException("Приём регистраций остановлен");
+        }
+        try {
+            if (!myCapacityPermits.tryAcquire(OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Очередь регистраций переполнена, попробуйте позже");
+            }
+        } catch (InterruptedException myException) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Регистрация прервана");
+        }
+        PendingRegistration pendingRegistration = new PendingRegistration(newUser);
+        myPendingQueue.offer(pendingRegistration);
+        if (queuedCount.incrementAndGet() >= BATCH_SIZE || isWriterIdle) {
+            LockSupport.unpark(myWriterThread);
+        }
+        if (isStopped) {
+            // Raced with close() after the writer exited; nobody else will pick this one up
+            drainRemaining();
+        }
+        return pendingRegistration.idFuture;
+    }
+    
+    private void runWriter() {
+        List<PendingRegistration> pendingBatch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            PendingRegistration firstRegistration = myPendingQueue.poll();
+            if (firstRegistration == null) {
+                if (isStopping) {
+                    return;
+                }
+                isWriterIdle = true;
+                if (myPendingQueue.isEmpty() && !isStopping) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                isWriterIdle = false;
+                continue;
+            }
+            pendingBatch.add(firstRegistration);
+            // Linger up to the flush interval so concurrent callers can join this commit
+            long flushDeadline = System.nanoTime() + FLUSH_INTERVAL_NANOS;
+            while (pendingBatch.size() < BATCH_SIZE) {
+                PendingRegistration nextRegistration = myPendingQueue.poll();
+                if (nextRegistration != null) {
+                    pendingBatch.add(nextRegistration);
+                    continue;
+                }
+                long remainingNanos = flushDeadline - System.nanoTime();
+                if (remainingNanos <= 0 || isStopping) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remainingNanos);
+            }
+            flushBatch(pendingBatch);
+            pendingBatch.clear();
+        }
+    }
+    
+    private void flushBatch(List<PendingRegistration> pendingBatch) {
+        queuedCount.addAndGet(-pendingBatch.size());
+        List<UserEntity> batchUsers = new ArrayList<>(pendingBatch.size());
+        for (PendingRegistration pendingRegistration : pendingBatch) {
+            batchUsers.add(pendingRegistration.newUser);
+        }
+        long startNanos = System.nanoTime();
+        try {
+            BulkInsertResult bulkResult = myBatchWriter.apply(batchUsers);
+            for (BulkInsertResult.RejectedUser rejectedUser : bulkResult.getRejectedUsers()) {
+                pendingBatch.get(rejectedUser.getInputPosition()).idFuture
+                    .completeExceptionally(new IllegalArgumentException(rejectedUser.getRejectionReason()));
+            }
+            for (PendingRegistration pendingRegistration : pendingBatch) {
+                if (pendingRegistration.newUser.getUserId() != null) {
+                    // The insert ran on the writer thread, so the caller's read-your-writes window is stamped here
+                    pendingRegistration.callerWriteScope.recordWrite();
+                    pendingRegistration.idFuture.complete(pendingRegistration.newUser.getUserId());
+                }
+            }
+            if (flushMetrics != null) flushMetrics.recordSuccess(System.nanoTime() - startNanos);
+            flushedBatches.increment();
+            flushedRegistrations.add(bulkResult.getInsertedCount());
+        } catch (RuntimeException myException) {
+            if (flushMetrics != null) flushMetrics.recordFailure(System.nanoTime() - startNanos, myException);
+            myLoggerInstance.error("Write-behind flush of {} registrations failed: {}", pendingBatch.size(), myException.getMessage());
+            for (PendingRegistration pendingRegistration : pendingBatch) {
+                pendingRegistration.idFuture.completeExceptionally(myException);
+            }
+        } finally {
+            // Anything still open was neither inserted nor reported as rejected
+            for (PendingRegistration pendingRegistration : pendingBatch) {
+                pendingRegistration.idFuture.completeExceptionally(new IllegalStateException("Регистрация не была сохранена"));
+            }
+            myCapacityPermits.release(pendingBatch.size());
+        }
+    }
+    
+    private synchronized void drainRemaining() {
+        List<PendingRegistration> pendingBatch = new ArrayList<>(BATCH_SIZE);
+        PendingRegistration pendingRegistration;
+        while ((pendingRegistration = myPendingQueue.poll()) != null) {
+            pendingBatch.add(pendingRegistration);
+            if (pendingBatch.size() == BATCH_SIZE) {
+                flushBatch(pendingBatch);
+                pendingBatch.clear();
+            }
+        }
+        if (!pendingBatch.isEmpty()) {
+            flushBatch(pendingBatch);
+        }
+    }
+    
+    void close() {
+        if (isStopped) {
+            return;
+        }
+        isStopping = true;
+        LockSupport.unpark(myWriterThread);
+        try {
+            myWriterThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException myException) {
+            Thread.currentThread().interrupt();
+        }
+        if (myWriterThread.isAlive()) {
+            myLoggerInstance.warn("Registration writer did not finish within {} ms, flushing the rest on the caller", SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        isStopped = true;
+        drainRemaining();
+        myLoggerInstance.info("Write-behind registrations stopped: {} users in {} batches",
+            flushedRegistrations.sum(), flushedBatches.sum());
+    }
+    
+    private static class PendingRegistration {
+        private final UserEntity newUser;
+        private final CompletableFuture<Long> idFuture = new CompletableFuture<>();
+        private final ReadReplicaRouter.WriteScope callerWriteScope = ReadReplicaRouter.currentWriteScope();
+        
+        private PendingRegistration(UserEntity newUser) {
+            this.newUser = newUser;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.shard;
+
+import com.example.entity.UserEntity;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+// Plain sequence ids unless the session factory belongs to a shard, in which case the id also encodes the
+// user's bucket and the shard; see UserShardKeys
+public class ShardAwareSequenceGenerator extends SequenceStyleGenerator {
+    public static final String SHARD_INDEX_SETTING = "user.shard.index";
+    
+    private int shardIndex = -1;
+    
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        super.configure(type, params, serviceRegistry);
+        Object shardIndexSetting = serviceRegistry.getService(ConfigurationService.class).getSettings().get(SHARD_INDEX_SETTING);
+        if (shardIndexSetting != null) {
+            shardIndex = Integer.parseInt(shardIndexSetting.toString());
+        }
+    }
+    
+    @Override
+    public Serializable generate(SharedSessionContractImplementor mySession, Object myObject) {
+        Serializable sequenceValue = super.generate(mySession, myObject);
+        if (shardIndex < 0) {
+            return sequenceValue;
+        }
+        return UserShardKeys.encodeUserId((Long) sequenceValue, shardIndex, 
+            UserShardKeys.bucketOf(((UserEntity) myObject).getUserEmail()));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.shard;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// Which shard owns each bucket, persisted on the primary so a restart keeps the placement the rebalancer left.
+// Writers hold their buckets' read locks for the whole write; the rebalancer takes the write locks to fence the
+// buckets it is about to hand over.
+public class ShardBucketMap {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(ShardBucketMap.class);
+    private static final String CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS user_shard_buckets "
+        + "(bucket_id INTEGER PRIMARY KEY, shard_index INTEGER NOT NULL)";
+    
+    private final SessionFactory myPrimarySessionFactory;
+    private final int shardCount;
+    private final ReentrantReadWriteLock[] myBucketLocks = new ReentrantReadWriteLock[UserShardKeys.BUCKET_COUNT];
+    private volatile int[] myBucketShards;
+    
+    private ShardBucketMap(SessionFactory myPrimarySessionFactory, int shardCount, int[] myBucketShards) {
+        this.myPrimarySessionFactory = myPrimarySessionFactory;
+        this.shardCount = shardCount;
+        this.myBucketShards = myBucketShards;
+        for (int bucketIndex = 0; bucketIndex < myBucketLocks.length; bucketIndex++) {
+            myBucketLocks[bucketIndex] = new ReentrantReadWriteLock();
+        }
+    }
+    
+    // A new cluster spreads buckets round-robin; adding a shard leaves them in place until the rebalancer runs
+    public static ShardBucketMap load(SessionFactory myPrimarySessionFactory, int shardCount) {
+        int[] bucketShards = new int[UserShardKeys.BUCKET_COUNT];
+        Arrays.fill(bucketShards, -1);
+        try (Session mySession = myPrimarySessionFactory.openSession()) {
+            Transaction myTransaction = mySession.beginTransaction();
+            int assignedBuckets = mySession.doReturningWork(myConnection -> {
+                try (Statement myStatement = myConnection.createStatement()) {
+                    myStatement.execute(CREATE_TABLE_STATEMENT);
+                }
+                int storedBuckets = 0;
+                try (Statement myStatement = myConnection.createStatement();
+                     ResultSet myResults = myStatement.executeQuery("SELECT bucket_id, shard_index FROM user_shard_buckets")) {
+                    while (myResults.next()) {
+                        bucketShards[myResults.getInt(1)] = myResults.getInt(2);
+                        storedBuckets++;
+                    }
+                }
+                try (PreparedStatement myStatement = myConnection.prepareStatement(
+                        "INSERT INTO user_shard_buckets (bucket_id, shard_index) VALUES (?, ?)")) {
+                    for (int bucketIndex = 0; bucketIndex < bucketShards.length; bucketIndex++) {
+                        if (bucketShards[bucketIndex] < 0) {
+                            bucketShards[bucketIndex] = bucketIndex % shardCount;
+                            myStatement.setInt(1, bucketIndex);
+                            myStatement.setInt(2, bucketShards[bucketIndex]);
+                            myStatement.addBatch();
+                        }
+                    }
+                    myStatement.executeBatch();
+                }
+                return UserShardKeys.BUCKET_COUNT - storedBuckets;
+            });
+            myTransaction.commit();
+            if (assignedBuckets > 0) {
+                myLoggerInstance.info("Assigned {} new buckets across {} shards", assignedBuckets, shardCount);
+            }
+        }
+        for (int bucketShard : bucketShards) {
+            if (bucketShard >= shardCount) {
+                throw new IllegalStateException("Bucket map refers to shard " + bucketShard + " but only " + shardCount 
+                    + " shards are configured; rebalance before removing a shard");
+            }
+        }
+        return new ShardBucketMap(myPrimarySessionFactory, shardCount, bucketShards);
+    }
+    
+    public int getShardCount() {
+        return shardCount;
+    }
+    
+    public int shardOfBucket(int bucketIndex) {
+        return myBucketShards[bucketIndex];
+    }
+    
+    public int[] snapshot() {
+        return myBucketShards.clone();
+    }
+    
+    public <T> T withBucketsLocked(int[] bucketIndexes, Supplier<T> bucketOperation) {
+        int[] sortedBuckets = Arrays.stream(bucketIndexes).sorted().distinct().toArray();
+        int lockedCount = 0;
+        try {
+            for (int bucketIndex : sortedBuckets) {
+                myBucketLocks[bucketIndex].readLock().lock();
+                lockedCount++;
+            }
+            return bucketOperation.get();
+        } finally {
+            for (int lockIndex = lockedCount - 1; lockIndex >= 0; lockIndex--) {
+                myBucketLocks[sortedBuckets[lockIndex]].readLock().unlock();
+            }
+        }
+    }
+    
+    // Same ascending order as the readers, so a writer holding several buckets can never deadlock with the rebalancer
+    void lockExclusively(int[] sortedBuckets) {
+        for (int bucketIndex : sortedBuckets) {
+            myBucketLocks[bucketIndex].writeLock().lock();
+        }
+    }
+    
+    void unlockExclusively(int[] sortedBuckets) {
+        for (int lockIndex = sortedBuckets.length - 1; lockIndex >= 0; lockIndex--) {
+            myBucketLocks[sortedBuckets[lockIndex]].writeLock().unlock();
+        }
+    }
+    
+    void reassign(int[] bucketIndexes, int targetShard) {
+        try (Session mySession = myPrimarySessionFactory.openSession()) {
+            Transaction myTransaction = mySession.beginTransaction();
+            mySession.doWork(myConnection -> {
+                try (PreparedStatement myStatement = myConnection.prepareStatement(
+                        "UPDATE user_shard_buckets SET shard_index = ? WHERE bucket_id = ?")) {
+                    for (int bucketIndex : bucketIndexes) {
+                        myStatement.setInt(1, targetShard);
+                        myStatement.setInt(2, bucketIndex);
+                        myStatement.addBatch();
+                    }
+                    myStatement.executeBatch();
+                }
+            });
+            myTransaction.commit();
+        }
+        int[] updatedShards = myBucketShards.clone();
+        for (int bucketIndex : bucketIndexes) {
+            updatedShards[bucketIndex] = targetShard;
+        }
+        myBucketShards = updatedShards;
+    }
+}
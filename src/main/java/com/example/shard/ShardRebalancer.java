@@ -0,0 +1,227 @@
+package com.example.shard;
+
+import com.example.entity.UserEntity;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Moves buckets to the shard bucketIndex % shardCount names, so adding shard.N.url and running this spreads the
+// existing users over the new shard. Ids are not rewritten: they only say where a user was created, and lookups by
+// id fall back to the other shards when the bucket has moved on.
+//
+// A move copies the buckets while they stay writable, then briefly fences their writers to copy whatever changed
+// during the bulk copy, flips the bucket map and deletes the source rows. The fence is the bucket map's locks, so it
+// only covers writers in this process: run it inside the serving application (JMX startRebalance) or while nothing
+// else writes, never next to a second application instance.
+public class ShardRebalancer implements ShardRebalancerMXBean {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(ShardRebalancer.class);
+    private static final int BUCKETS_PER_MOVE = Integer.getInteger("shard.rebalance.buckets-per-move", 64);
+    private static final int COPY_BATCH_SIZE = 500;
+    
+    private final List<SessionFactory> myShardSessionFactories;
+    private final ShardBucketMap myBucketMap;
+    private final AtomicBoolean isRunning = new AtomicBoolean();
+    private final LongAdder movedBucketCount = new LongAdder();
+    private final LongAdder copiedRowCount = new LongAdder();
+    private final LongAdder caughtUpRowCount = new LongAdder();
+    private volatile String lastError;
+    
+    public ShardRebalancer(List<SessionFactory> myShardSessionFactories, ShardBucketMap myBucketMap) {
+        this.myShardSessionFactories = myShardSessionFactories;
+        this.myBucketMap = myBucketMap;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("com.example:type=ShardRebalancer"));
+        } catch (Exception myException) {
+            myLoggerInstance.warn("Could not register shard rebalancer MBean: {}", myException.getMessage());
+        }
+    }
+    
+    // Runs on the caller; returns the number of buckets moved
+    public int rebalance() {
+        if (!isRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("Rebalancing is already running");
+        }
+        int movedBuckets = 0;
+        long startMillis = System.currentTimeMillis();
+        try {
+            lastError = null;
+            Map<Long, List<Integer>> pendingMoves = planMoves();
+            myLoggerInstance.info("Rebalancing {} buckets across {} shards", getMisplacedBucketCount(), myBucketMap.getShardCount());
+            for (Map.Entry<Long, List<Integer>> pendingMove : pendingMoves.entrySet()) {
+                int sourceShard = (int) (pendingMove.getKey() >> 32);
+                int targetShard = (int) (long) pendingMove.getKey();
+                List<Integer> movedBucketList = pendingMove.getValue();
+                for (int batchStart = 0; batchStart < movedBucketList.size(); batchStart += BUCKETS_PER_MOVE) {
+                    int[] bucketBatch = movedBucketList.subList(batchStart, Math.min(batchStart + BUCKETS_PER_MOVE, movedBucketList.size()))
+                        .stream().mapToInt(Integer::intValue).toArray();
+                    moveBuckets(bucketBatch, sourceShard, targetShard);
+                    movedBuckets += bucketBatch.length;
+                }
+            }
+            myLoggerInstance.info("Rebalancing finished: {} buckets moved in {} ms", movedBuckets, System.currentTimeMillis() - startMillis);
+            return movedBuckets;
+        } catch (RuntimeException myException) {
+            lastError = myException.getMessage();
+            myLoggerInstance.error("Rebalancing stopped after {} buckets: {}", movedBuckets, myException.getMessage());
+            throw myException;
+        } finally {
+            isRunning.set(false);
+        }
+    }
+    
+    @Override
+    public boolean startRebalance() {
+        if (isRunning.get()) {
+            return false;
+        }
+        Thread rebalancerThread = new Thread(() -> {
+            try {
+                rebalance();
+            } catch (RuntimeException myException) {
+                // Already logged and kept as lastError
+            }
+        }, "shard-rebalancer");
+        rebalancerThread.setDaemon(true);
+        rebalancerThread.start();
+        return true;
+    }
+    
+    // Keyed by source shard in the high half and target shard in the low half, ascending bucket order inside
+    private Map<Long, List<Integer>> planMoves() {
+        int[] bucketShards = myBucketMap.snapshot();
+        Map<Long, List<Integer>> pendingMoves = new LinkedHashMap<>();
+        for (int bucketIndex = 0; bucketIndex < bucketShards.length; bucketIndex++) {
+            int targetShard = bucketIndex % myBucketMap.getShardCount();
+            if (bucketShards[bucketIndex] != targetShard) {
+                pendingMoves.computeIfAbsent((long) bucketShards[bucketIndex] << 32 | targetShard, moveKey -> new ArrayList<>())
+                    .add(bucketIndex);
+            }
+        }
+        return pendingMoves;
+    }
+    
+    private void moveBuckets(int[] bucketBatch, int sourceShard, int targetShard) {
+        SessionFactory sourceFactory = myShardSessionFactories.get(sourceShard);
+        SessionFactory targetFactory = myShardSessionFactories.get(targetShard);
+        long moveStartMillis = System.currentTimeMillis();
+        // Leftovers of an interrupted move; the target does not own these buckets, so nothing there is live
+        ShardRowStore.deleteBucketRows(targetFactory, bucketBatch);
+        
+        List<UserEntity> copyBatch = new ArrayList<>(COPY_BATCH_SIZE);
+        long copiedRows = ShardRowStore.streamBucketRows(sourceFactory, bucketBatch, sourceRow -> {
+            copyBatch.add(sourceRow);
+            if (copyBatch.size() == COPY_BATCH_SIZE) {
+                ShardRowStore.insertRows(targetFactory, copyBatch, true);
+                copyBatch.clear();
+            }
+        });
+        ShardRowStore.insertRows(targetFactory, copyBatch, true);
+        copiedRowCount.add(copiedRows);
+        
+        long fenceStartMillis = System.currentTimeMillis();
+        int caughtUpRows;
+        myBucketMap.lockExclusively(bucketBatch);
+        try {
+            caughtUpRows = catchUp(sourceFactory, targetFactory, bucketBatch);
+            myBucketMap.reassign(bucketBatch, targetShard);
+        } finally {
+            myBucketMap.unlockExclusively(bucketBatch);
+        }
+        long fenceMillis = System.currentTimeMillis() - fenceStartMillis;
+        caughtUpRowCount.add(caughtUpRows);
+        
+        ShardRowStore.deleteBucketRows(sourceFactory, bucketBatch);
+        movedBucketCount.add(bucketBatch.length);
+        myLoggerInstance.info("Moved {} buckets from shard {} to shard {}: {} rows copied, {} caught up, writes fenced for {} ms, {} ms total",
+            bucketBatch.length, sourceShard, targetShard, copiedRows, caughtUpRows, fenceMillis, 
+            System.currentTimeMillis() - moveStartMillis);
+    }
+    
+    // Walks both shards' (id, version) lists in id order and repairs every difference on the target
+    private int catchUp(SessionFactory sourceFactory, SessionFactory targetFactory, int[] bucketBatch) {
+        List<Long> changedUserIds = new ArrayList<>();
+        List<Long> removedUserIds = new ArrayList<>();
+        try (ShardRowStore.VersionCursor sourceCursor = ShardRowStore.openVersionCursor(sourceFactory, bucketBatch);
+             ShardRowStore.VersionCursor targetCursor = ShardRowStore.openVersionCursor(targetFactory, bucketBatch)) {
+            sourceCursor.advance();
+            targetCursor.advance();
+            while (!sourceCursor.isExhausted() || !targetCursor.isExhausted()) {
+                int idOrder = sourceCursor.isExhausted() ? 1 : targetCursor.isExhausted() ? -1 
+                    : Long.compare(sourceCursor.userId(), targetCursor.userId());
+                if (idOrder < 0) {
+                    changedUserIds.add(sourceCursor.userId());
+                    sourceCursor.advance();
+                } else if (idOrder > 0) {
+                    removedUserIds.add(targetCursor.userId());
+                    targetCursor.advance();
+                } else {
+                    if (sourceCursor.version() != targetCursor.version()) {
+                        changedUserIds.add(sourceCursor.userId());
+                    }
+                    sourceCursor.advance();
+                    targetCursor.advance();
+                }
+            }
+        } catch (SQLException myException) {
+            throw new IllegalStateException("Failed to compare shard rows: " + myException.getMessage(), myException);
+        }
+        removedUserIds.addAll(changedUserIds);
+        ShardRowStore.deleteRows(targetFactory, removedUserIds);
+        for (int batchStart = 0; batchStart < changedUserIds.size(); batchStart += COPY_BATCH_SIZE) {
+            List<Long> changedBatch = changedUserIds.subList(batchStart, Math.min(batchStart + COPY_BATCH_SIZE, changedUserIds.size()));
+            ShardRowStore.insertRows(targetFactory, ShardRowStore.loadRows(sourceFactory, changedBatch), false);
+        }
+        return removedUserIds.size();
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return isRunning.get();
+    }
+    
+    @Override
+    public int getShardCount() {
+        return myBucketMap.getShardCount();
+    }
+    
+    @Override
+    public int getMisplacedBucketCount() {
+        int[] bucketShards = myBucketMap.snapshot();
+        int misplacedBuckets = 0;
+        for (int bucketIndex = 0; bucketIndex < bucketShards.length; bucketIndex++) {
+            if (bucketShards[bucketIndex] != bucketIndex % myBucketMap.getShardCount()) {
+                misplacedBuckets++;
+            }
+        }
+        return misplacedBuckets;
+    }
+    
+    @Override
+    public long getMovedBucketCount() { return movedBucketCount.sum(); }
+    
+    @Override
+    public long getCopiedRowCount() { return copiedRowCount.sum(); }
+    
+    @Override
+    public long getCaughtUpRowCount() { return caughtUpRowCount.sum(); }
+    
+    @Override
+    public String getLastError() { return lastError; }
+    
+    @Override
+    public String toString() {
+        return "shards=" + getShardCount() + ", misplaced buckets=" + getMisplacedBucketCount() + ", running=" + isRunning.get() 
+            + ", moved buckets=" + getMovedBucketCount() + ", copied rows=" + getCopiedRowCount() 
+            + (lastError == null ? "" : ", last error=" + lastError);
+    }
+}
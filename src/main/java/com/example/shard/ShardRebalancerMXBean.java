@@ -0,0 +1,12 @@
+package com.example.shard;
+
+public interface ShardRebalancerMXBean {
+    boolean isRunning();
+    int getShardCount();
+    int getMisplacedBucketCount();
+    long getMovedBucketCount();
+    long getCopiedRowCount();
+    long getCaughtUpRowCount();
+    String getLastError();
+    boolean startRebalance();
+}
@@ -0,0 +1,267 @@
+package com.example.shard;
+
+import com.example.cdc.UserChangeOutbox;
+import com.example.entity.UserEntity;
+import org.hibernate.Cache;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Row-level copies between shards. Rows keep their id, version and creation time, which the entity mapping
+// would regenerate, so these go through JDBC rather than persist/merge.
+public final class ShardRowStore {
+    private static final String COLUMN_LIST = "userId, user_full_name, user_email_address, user_age_value, "
+        + "user_registration_timestamp, versionNumber";
+    private static final String INSERT_STATEMENT = "INSERT INTO app_users (" + COLUMN_LIST + ") VALUES (?, ?, ?, ?, ?, ?)";
+    // A newer version already on the target (written after the copy started) must not be overwritten
+    private static final String UPSERT_STATEMENT = INSERT_STATEMENT + " ON CONFLICT (userId) DO UPDATE SET "
+        + "user_full_name = EXCLUDED.user_full_name, user_email_address = EXCLUDED.user_email_address, "
+        + "user_age_value = EXCLUDED.user_age_value, user_registration_timestamp = EXCLUDED.user_registration_timestamp, "
+        + "versionNumber = EXCLUDED.versionNumber WHERE app_users.versionNumber < EXCLUDED.versionNumber";
+    private static final int JDBC_BATCH_SIZE = 500;
+    private static final int CURSOR_FETCH_SIZE = 1000;
+    
+    private ShardRowStore() {}
+    
+    public static void insertRows(SessionFactory shardSessionFactory, List<UserEntity> shardRows, boolean isUpsert) {
+        if (shardRows.isEmpty()) {
+            return;
+        }
+        inTransaction(shardSessionFactory, myConnection -> {
+            try (PreparedStatement myStatement = myConnection.prepareStatement(isUpsert ? UPSERT_STATEMENT : INSERT_STATEMENT)) {
+                int batchedRows = 0;
+                for (UserEntity shardRow : shardRows) {
+                    bindRow(myStatement, shardRow);
+                    myStatement.addBatch();
+                    if (++batchedRows % JDBC_BATCH_SIZE == 0) {
+                        myStatement.executeBatch();
+                    }
+                }
+                myStatement.executeBatch();
+            }
+            return null;
+        });
+        evictUsers(shardSessionFactory, shardRows.stream().map(UserEntity::getUserId).toList());
+    }
+    
+    public static List<UserEntity> loadRows(SessionFactory shardSessionFactory, Collection<Long> userIds) {
+        return inTransaction(shardSessionFactory, myConnection -> {
+            List<UserEntity> loadedRows = new ArrayList<>(userIds.size());
+            try (PreparedStatement myStatement = myConnection.prepareStatement(
+                    "SELECT " + COLUMN_LIST + " FROM app_users WHERE userId = ANY(?)")) {
+                myStatement.setArray(1, myConnection.createArrayOf("bigint", userIds.toArray()));
+                try (ResultSet myResults = myStatement.executeQuery()) {
+                    while (myResults.next()) {
+                        loadedRows.add(readRow(myResults));
+                    }
+                }
+            }
+            return loadedRows;
+        });
+    }
+    
+    public static int deleteRows(SessionFactory shardSessionFactory, Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        int deletedRows = inTransaction(shardSessionFactory, myConnection -> {
+            try (PreparedStatement myStatement = myConnection.prepareStatement("DELETE FROM app_users WHERE userId = ANY(?)")) {
+                myStatement.setArray(1, myConnection.createArrayOf("bigint", userIds.toArray()));
+                return myStatement.executeUpdate();
+            }
+        });
+        evictUsers(shardSessionFactory, userIds);
+        return deletedRows;
+    }
+    
+    // An email change that moves a user is an update to the user. Removing the source row is what makes the move take
+    // effect, so the change is recorded in the same transaction on the source's feed: a move that is abandoned and
+    // compensated never shows up. Copies made by the rebalancer are not changes and record nothing.
+    public static boolean deleteRelocatedRow(SessionFactory sourceSessionFactory, UserEntity previousState, UserEntity relocatedRow) {
+        Transaction myTransaction = null;
+        Session mySession = sourceSessionFactory.openSession();
+        boolean isDeleted;
+        try {
+            myTransaction = mySession.beginTransaction();
+            isDeleted = mySession.doReturningWork(myConnection -> {
+                try (PreparedStatement myStatement = myConnection.prepareStatement(
+                        "DELETE FROM app_users WHERE userId = ? AND versionNumber = ?")) {
+                    myStatement.setLong(1, previousState.getUserId());
+                    myStatement.setLong(2, previousState.getVersionNumber());
+                    return myStatement.executeUpdate() > 0;
+                }
+            });
+            if (isDeleted && UserChangeOutbox.isEnabled()) {
+                UserChangeOutbox.recordUpdated(mySession, previousState, relocatedRow);
+            }
+            myTransaction.commit();
+        } catch (RuntimeException myException) {
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
+            throw myException;
+        } finally {
+            mySession.close();
+        }
+        evictUsers(sourceSessionFactory, List.of(previousState.getUserId()));
+        return isDeleted;
+    }
+    
+    // Streams every row whose email falls into one of the buckets, in id order
+    static long streamBucketRows(SessionFactory shardSessionFactory, int[] bucketIndexes, Consumer<UserEntity> rowConsumer) {
+        return inTransaction(shardSessionFactory, myConnection -> {
+            long streamedRows = 0;
+            try (PreparedStatement myStatement = prepareBucketQuery(myConnection, COLUMN_LIST, bucketIndexes);
+                 ResultSet myResults = myStatement.executeQuery()) {
+                while (myResults.next()) {
+                    rowConsumer.accept(readRow(myResults));
+                    streamedRows++;
+                }
+            }
+            return streamedRows;
+        });
+    }
+    
+    // Opens an (id, version) cursor over the buckets on its own connection; the caller must close it
+    static VersionCursor openVersionCursor(SessionFactory shardSessionFactory, int[] bucketIndexes) {
+        Session mySession = shardSessionFactory.openSession();
+        try {
+            Transaction myTransaction = mySession.beginTransaction();
+            ResultSet myResults = mySession.doReturningWork(myConnection -> 
+                prepareBucketQuery(myConnection, "userId, versionNumber", bucketIndexes).executeQuery());
+            return new VersionCursor(mySession, myTransaction, myResults);
+        } catch (RuntimeException myException) {
+            mySession.close();
+            throw myException;
+        }
+    }
+    
+    static int deleteBucketRows(SessionFactory shardSessionFactory, int[] bucketIndexes) {
+        int deletedRows = inTransaction(shardSessionFactory, myConnection -> {
+            try (PreparedStatement myStatement = myConnection.prepareStatement(
+                    "DELETE FROM app_users WHERE " + UserShardKeys.BUCKET_SQL_EXPRESSION + " = ANY(?)")) {
+                myStatement.setArray(1, toIntArray(myConnection, bucketIndexes));
+                return myStatement.executeUpdate();
+            }
+        });
+        evictAllUsers(shardSessionFactory);
+        return deletedRows;
+    }
+    
+    public static void evictUsers(SessionFactory shardSessionFactory, Collection<Long> userIds) {
+        Cache myCache = shardSessionFactory.getCache();
+        for (Long userId : userIds) {
+            myCache.evictEntityData(UserEntity.class, userId);
+        }
+        myCache.evictNaturalIdData(UserEntity.class);
+        myCache.evictDefaultQueryRegion();
+    }
+    
+    static void evictAllUsers(SessionFactory shardSessionFactory) {
+        Cache myCache = shardSessionFactory.getCache();
+        myCache.evictEntityData(UserEntity.class);
+        myCache.evictNaturalIdData(UserEntity.class);
+        myCache.evictDefaultQueryRegion();
+    }
+    
+    private static PreparedStatement prepareBucketQuery(Connection myConnection, String selectedColumns, int[] bucketIndexes) 
+            throws SQLException {
+        // A cursor (fetch size inside a transaction) keeps a large bucket range from being buffered whole by the driver
+        PreparedStatement myStatement = myConnection.prepareStatement("SELECT " + selectedColumns + " FROM app_users WHERE " 
+            + UserShardKeys.BUCKET_SQL_EXPRESSION + " = ANY(?) ORDER BY userId");
+        myStatement.setFetchSize(CURSOR_FETCH_SIZE);
+        myStatement.setArray(1, toIntArray(myConnection, bucketIndexes));
+        return myStatement;
+    }
+    
+    private static Array toIntArray(Connection myConnection, int[] bucketIndexes) throws SQLException {
+        Object[] boxedBuckets = new Object[bucketIndexes.length];
+        for (int position = 0; position < bucketIndexes.length; position++) {
+            boxedBuckets[position] = bucketIndexes[position];
+        }
+        return myConnection.createArrayOf("integer", boxedBuckets);
+    }
+    
+    private static void bindRow(PreparedStatement myStatement, UserEntity shardRow) throws SQLException {
+        myStatement.setLong(1, shardRow.getUserId());
+        myStatement.setString(2, shardRow.getUserName());
+        myStatement.setString(3, shardRow.getUserEmail());
+        myStatement.setInt(4, shardRow.getUserAge());
+        myStatement.setTimestamp(5, Timestamp.valueOf(shardRow.getUserCreatedAt()));
+        myStatement.setLong(6, shardRow.getVersionNumber());
+    }
+    
+    private static UserEntity readRow(ResultSet myResults) throws SQLException {
+        UserEntity shardRow = new UserEntity(myResults.getString(2), myResults.getString(3), myResults.getInt(4));
+        shardRow.setUserId(myResults.getLong(1));
+        shardRow.setUserCreatedAt(myResults.getTimestamp(5).toLocalDateTime());
+        shardRow.setVersionNumber(myResults.getLong(6));
+        return shardRow;
+    }
+    
+    private static <T> T inTransaction(SessionFactory shardSessionFactory, ReturningWork<T> jdbcWork) {
+        Transaction myTransaction = null;
+        Session mySession = shardSessionFactory.openSession();
+        try {
+            myTransaction = mySession.beginTransaction();
+            T workResult = mySession.doReturningWork(jdbcWork);
+            myTransaction.commit();
+            return workResult;
+        } catch (RuntimeException myException) {
+            if (myTransaction != null && myTransaction.isActive()) myTransaction.rollback();
+            throw myException;
+        } finally {
+            mySession.close();
+        }
+    }
+    
+    static final class VersionCursor implements AutoCloseable {
+        private final Session mySession;
+        private final Transaction myTransaction;
+        private final ResultSet myResults;
+        private long currentUserId;
+        private long currentVersion;
+        private boolean isExhausted;
+        
+        private VersionCursor(Session mySession, Transaction myTransaction, ResultSet myResults) {
+            this.mySession = mySession;
+            this.myTransaction = myTransaction;
+            this.myResults = myResults;
+        }
+        
+        boolean advance() throws SQLException {
+            if (!isExhausted && myResults.next()) {
+                currentUserId = myResults.getLong(1);
+                currentVersion = myResults.getLong(2);
+                return true;
+            }
+            isExhausted = true;
+            return false;
+        }
+        
+        long userId() { return currentUserId; }
+        long version() { return currentVersion; }
+        boolean isExhausted() { return isExhausted; }
+        
+        @Override
+        public void close() {
+            try {
+                myResults.getStatement().close();
+            } catch (SQLException myException) {
+                // The transaction below ends the cursor anyway
+            }
+            if (myTransaction.isActive()) myTransaction.rollback();
+            mySession.close();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Users are placed by a hash of their email into a fixed number of buckets, and buckets are assigned to shards.
+// Ids carry the bucket (so a lookup by id finds the shard) and the shard that generated them (so two shards
+// whose sequences hand out the same value still produce different ids).
+public final class UserShardKeys {
+    public static final int BUCKET_COUNT = 1024;
+    public static final int MAX_SHARDS = 64;
+    // md5 is the one hash PostgreSQL and the JDK compute identically, so the rebalancer can select buckets in SQL
+    public static final String BUCKET_SQL_EXPRESSION = "((('x' || substr(md5(user_email_address), 1, 8))::bit(32)::int) & " 
+        + (BUCKET_COUNT - 1) + ")";
+    private static final ThreadLocal<MessageDigest> myDigests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException myException) {
+            throw new IllegalStateException("MD5 is not available", myException);
+        }
+    });
+    
+    private UserShardKeys() {}
+    
+    public static int bucketOf(String userEmail) {
+        if (userEmail == null) {
+            throw new IllegalArgumentException("Email is required to place a user on a shard");
+        }
+        byte[] emailDigest = myDigests.get().digest(userEmail.getBytes(StandardCharsets.UTF_8));
+        int leadingBits = (emailDigest[0] & 0xff) << 24 | (emailDigest[1] & 0xff) << 16 
+            | (emailDigest[2] & 0xff) << 8 | (emailDigest[3] & 0xff);
+        return leadingBits & (BUCKET_COUNT - 1);
+    }
+    
+    public static long encodeUserId(long sequenceValue, int shardIndex, int bucketIndex) {
+        return (sequenceValue * MAX_SHARDS + shardIndex) * BUCKET_COUNT + bucketIndex;
+    }
+    
+    // Ids created before sharding carry no bucket; this then names an arbitrary one and lookups fall back to all shards
+    public static int bucketOfUserId(long userId) {
+        return (int) Math.floorMod(userId, (long) BUCKET_COUNT);
+    }
+}
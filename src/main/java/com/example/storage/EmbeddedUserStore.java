@@ -0,0 +1,495 @@
+package com.example.storage;
+
+import com.example.repository.DataAccessCustomException;
+import com.example.repository.DuplicateEmailException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Users live in two concurrent indexes, ordered by id and unique by email, and every change is appended to a
+// memory-mapped log before it becomes visible. Once the log has grown past storage.embedded.snapshot-log-bytes, a
+// snapshot of all users replaces it; recovery loads the latest snapshot and replays the logs written after it.
+public class EmbeddedUserStore implements AutoCloseable {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(EmbeddedUserStore.class);
+    private static final boolean FSYNC_ENABLED = Boolean.parseBoolean(System.getProperty("storage.embedded.fsync", "true"));
+    private static final int LOG_REGION_BYTES = Math.max(Integer.getInteger("storage.embedded.log-region-bytes", 64 * 1024 * 1024),
+        1024 * 1024);
+    private static final long SNAPSHOT_LOG_BYTES = Long.getLong("storage.embedded.snapshot-log-bytes", 64L * 1024 * 1024);
+    private static final String SNAPSHOT_FILE_NAME = "users.snapshot";
+    private static final String SNAPSHOT_TEMP_FILE_NAME = "users.snapshot.tmp";
+    private static final String LOCK_FILE_NAME = "store.lock";
+    private static final Pattern LOG_FILE_PATTERN = Pattern.compile("users-(\\d{20})\\.log");
+    private static final int MAX_NAME_LENGTH = 50;
+    private static final int MAX_EMAIL_LENGTH = 100;
+    private static final long NO_USER_ID = 0L;
+    
+    private final Path myStoreDirectory;
+    private final FileChannel myLockChannel;
+    private final ConcurrentSkipListMap<Long, StoredUser> myUsersById = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Long> myUserIdsByEmail = new ConcurrentHashMap<>();
+    private final ReentrantLock myWriteLock = new ReentrantLock();
+    private final ReentrantLock mySnapshotLock = new ReentrantLock();
+    private final AtomicBoolean isSnapshotScheduled = new AtomicBoolean();
+    private final ByteBuffer myRecordBuffer = ByteBuffer.allocate(StoredUserCodec.MAX_PAYLOAD_BYTES);
+    private MappedRecordLog myCurrentLog;
+    private long nextUserId = 1;
+    private long highestReplayedUserId;
+    private long replayedRecords;
+    private volatile Thread mySnapshotThread;
+    private volatile boolean isClosed;
+    private volatile long recoveryMillis;
+    private volatile long snapshotCount;
+    private volatile long lastSnapshotUsers;
+    private volatile long lastSnapshotMillis;
+    
+    private record PendingChange(StoredUser previousUser, StoredUser currentUser) {}
+    
+    public EmbeddedUserStore(Path myStoreDirectory) {
+        this.myStoreDirectory = myStoreDirectory;
+        FileChannel lockChannel = null;
+        try {
+            Files.createDirectories(myStoreDirectory);
+            lockChannel = FileChannel.open(myStoreDirectory.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            // Held until close; the channel closing releases it, and the operating system does so if the process dies.
+            // Another store in this JVM shows up as an overlapping lock rather than a failed one
+            FileLock directoryLock;
+            try {
+                directoryLock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException myException) {
+                directoryLock = null;
+            }
+            if (directoryLock == null) {
+                throw new DataAccessCustomException("User store " + myStoreDirectory + " is used by another process");
+            }
+            this.myLockChannel = lockChannel;
+            recover();
+        } catch (IOException | RuntimeException myException) {
+            closeQuietly(lockChannel);
+            myLoggerInstance.error("Failed to open user store {}: {}", myStoreDirectory, myException.getMessage());
+            if (myException instanceof DataAccessCustomException) {
+                throw (DataAccessCustomException) myException;
+            }
+            throw new DataAccessCustomException("Failed to open user store " + myStoreDirectory, myException);
+        }
+    }
+    
+    public Optional<StoredUser> findById(long userId) {
+        return Optional.ofNullable(myUsersById.get(userId));
+    }
+    
+    // The email index can briefly point at a user whose email a writer has just changed, so the row is checked
+    public Optional<StoredUser> findByEmail(String userEmail) {
+        Long userId = myUserIdsByEmail.get(userEmail);
+        StoredUser storedUser = userId == null ? null : myUsersById.get(userId);
+        return storedUser != null && storedUser.userEmail().equals(userEmail) ? Optional.of(storedUser) : Optional.empty();
+    }
+    
+    // A live, id-ordered view; iterating it never blocks writers and sees every change committed before it got there
+    public Collection<StoredUser> usersAfter(long afterUserId) {
+        return myUsersById.tailMap(afterUserId, false).values();
+    }
+    
+    public int size() {
+        return myUsersById.size();
+    }
+    
+    // All changes of one call share the writer lock and one sync, and become visible to readers only after it
+    public <T> T write(Function<WriteBatch, T> batchOperation) {
+        myWriteLock.lock();
+        try {
+            ensureOpen();
+            WriteBatch myWriteBatch = new WriteBatch();
+            try {
+                return batchOperation.apply(myWriteBatch);
+            } finally {
+                // Whatever reached the log before a failure is applied too, or memory would disagree with a restart
+                myWriteBatch.isOpen = false;
+                commit(myWriteBatch);
+            }
+        } finally {
+            myWriteLock.unlock();
+        }
+    }
+    
+    public void writeSnapshot() {
+        mySnapshotLock.lock();
+        try {
+            long snapshotGeneration;
+            List<StoredUser> snapshotUsers;
+            long snapshotNextUserId;
+            long snapshotStartNanos = System.nanoTime();
+            myWriteLock.lock();
+            try {
+                ensureOpen();
+                // Later changes go to a new log, so the snapshot plus every log from this generation on is the whole store
+                snapshotGeneration = myCurrentLog.getGeneration() + 1;
+                MappedRecordLog nextLog = MappedRecordLog.create(logPath(snapshotGeneration), MappedRecordLog.LOG_FILE,
+                    snapshotGeneration, LOG_REGION_BYTES);
+                MappedRecordLog previousLog = myCurrentLog;
+                myCurrentLog = nextLog;
+                previousLog.close();
+                // Rows are immutable, so copying the references is a consistent image; it costs a pause of O(users)
+                snapshotUsers = new ArrayList<>(myUsersById.values());
+                snapshotNextUserId = nextUserId;
+            } finally {
+                myWriteLock.unlock();
+            }
+            Path temporaryPath = myStoreDirectory.resolve(SNAPSHOT_TEMP_FILE_NAME);
+            Files.deleteIfExists(temporaryPath);
+            ByteBuffer snapshotBuffer = ByteBuffer.allocate(StoredUserCodec.MAX_PAYLOAD_BYTES);
+            try (MappedRecordLog snapshotLog = MappedRecordLog.create(temporaryPath, MappedRecordLog.SNAPSHOT_FILE, snapshotGeneration,
+                    LOG_REGION_BYTES)) {
+                for (StoredUser snapshotUser : snapshotUsers) {
+                    StoredUserCodec.encodePut(snapshotUser, snapshotBuffer);
+                    snapshotLog.append(snapshotBuffer);
+                }
+                StoredUserCodec.encodeSnapshotEnd(snapshotUsers.size(), snapshotNextUserId, snapshotBuffer);
+                snapshotLog.append(snapshotBuffer);
+            }
+            Files.move(temporaryPath, myStoreDirectory.resolve(SNAPSHOT_FILE_NAME), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+            for (Path logPath : listLogs()) {
+                if (generationOf(logPath) < snapshotGeneration) {
+                    Files.delete(logPath);
+                }
+            }
+            snapshotCount++;
+            lastSnapshotUsers = snapshotUsers.size();
+            lastSnapshotMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - snapshotStartNanos);
+            myLoggerInstance.info("User store snapshot of {} users written in {} ms, log generation {}",
+                snapshotUsers.size(), lastSnapshotMillis, snapshotGeneration);
+        } catch (IOException | UncheckedIOException myException) {
+            myLoggerInstance.error("Failed to write user store snapshot: {}", myException.getMessage());
+            throw new DataAccessCustomException("Failed to write user store snapshot", myException);
+        } finally {
+            mySnapshotLock.unlock();
+        }
+    }
+    
+    @Override
+    public void close() {
+        Thread snapshotThread = mySnapshotThread;
+        if (snapshotThread != null) {
+            try {
+                snapshotThread.join();
+            } catch (InterruptedException myException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        myWriteLock.lock();
+        try {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            myCurrentLog.close();
+            myLoggerInstance.info("User store {} closed with {} users", myStoreDirectory, myUsersById.size());
+        } catch (IOException myException) {
+            throw new DataAccessCustomException("Failed to close user store " + myStoreDirectory, myException);
+        } finally {
+            closeQuietly(myLockChannel);
+            myWriteLock.unlock();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        MappedRecordLog currentLog = myCurrentLog;
+        return "users=" + myUsersById.size() + ", logGeneration=" + (currentLog == null ? "-" : currentLog.getGeneration())
+            + ", logBytes=" + (currentLog == null || isClosed ? 0 : currentLog.size()) + ", snapshots=" + snapshotCount
+            + ", lastSnapshotUsers=" + lastSnapshotUsers + ", lastSnapshotMillis=" + lastSnapshotMillis
+            + ", recoveryMillis=" + recoveryMillis + ", fsync=" + FSYNC_ENABLED;
+    }
+    
+    private void commit(WriteBatch myWriteBatch) {
+        if (myWriteBatch.myPendingChanges.isEmpty()) {
+            return;
+        }
+        try {
+            if (FSYNC_ENABLED) {
+                myCurrentLog.sync();
+            }
+        } finally {
+            for (PendingChange pendingChange : myWriteBatch.myPendingChanges) {
+                applyChange(pendingChange.previousUser(), pendingChange.currentUser());
+            }
+        }
+        if (myCurrentLog.size() >= SNAPSHOT_LOG_BYTES && isSnapshotScheduled.compareAndSet(false, true)) {
+            Thread snapshotThread = new Thread(() -> {
+                try {
+                    writeSnapshot();
+                } catch (RuntimeException myException) {
+                    myLoggerInstance.error("Background snapshot failed, the log keeps growing: {}", myException.getMessage());
+                } finally {
+                    isSnapshotScheduled.set(false);
+                }
+            }, "user-store-snapshot");
+            snapshotThread.setDaemon(true);
+            mySnapshotThread = snapshotThread;
+            snapshotThread.start();
+        }
+    }
+    
+    // The row goes in before the email points at it, and the old email is released last, so a reader following
+    // either index never finds a user that is missing from the other
+    private void applyChange(StoredUser previousUser, StoredUser currentUser) {
+        if (currentUser == null) {
+            myUsersById.remove(previousUser.userId());
+            myUserIdsByEmail.remove(previousUser.userEmail(), previousUser.userId());
+            return;
+        }
+        myUsersById.put(currentUser.userId(), currentUser);
+        myUserIdsByEmail.put(currentUser.userEmail(), currentUser.userId());
+        if (previousUser != null && !previousUser.userEmail().equals(currentUser.userEmail())) {
+            myUserIdsByEmail.remove(previousUser.userEmail(), previousUser.userId());
+        }
+    }
+    
+    private void recover() throws IOException {
+        long recoveryStartNanos = System.nanoTime();
+        Files.deleteIfExists(myStoreDirectory.resolve(SNAPSHOT_TEMP_FILE_NAME));
+        long firstLogGeneration = 1;
+        Path snapshotPath = myStoreDirectory.resolve(SNAPSHOT_FILE_NAME);
+        if (Files.exists(snapshotPath)) {
+            long[] snapshotEnd = {-1L, 0L};
+            MappedRecordLog.ReplayResult snapshotResult = MappedRecordLog.replay(snapshotPath, payloadBuffer -> {
+                if (StoredUserCodec.recordType(payloadBuffer) == StoredUserCodec.SNAPSHOT_END_RECORD) {
+                    snapshotEnd[0] = StoredUserCodec.firstLong(payloadBuffer);
+                    snapshotEnd[1] = StoredUserCodec.secondLong(payloadBuffer);
+                } else {
+                    replayRecord(payloadBuffer);
+                }
+            });
+            // Snapshots are renamed into place only when complete, so anything else here is damage, not a crash
+            if (snapshotResult == null || snapshotResult.fileKind() != MappedRecordLog.SNAPSHOT_FILE || snapshotEnd[0] != myUsersById.size()) {
+                throw new IOException("Snapshot " + snapshotPath + " is incomplete or damaged");
+            }
+            firstLogGeneration = snapshotResult.generation();
+            nextUserId = snapshotEnd[1];
+        }
+        List<Path> logPaths = listLogs();
+        Path lastLogPath = null;
+        MappedRecordLog.ReplayResult lastLogResult = null;
+        for (int logIndex = 0; logIndex < logPaths.size(); logIndex++) {
+            Path logPath = logPaths.get(logIndex);
+            boolean isNewestLog = logIndex == logPaths.size() - 1;
+            if (generationOf(logPath) < firstLogGeneration) {
+                // Left behind by a snapshot that finished just before a crash
+                Files.delete(logPath);
+                continue;
+            }
+            MappedRecordLog.ReplayResult logResult = MappedRecordLog.replay(logPath, this::replayRecord);
+            if (logResult == null && isNewestLog) {
+                // Created by a snapshot that crashed before writing anything
+                Files.delete(logPath);
+                continue;
+            }
+            if (logResult == null || (logResult.isTorn() && !isNewestLog)) {
+                throw new IOException("Log " + logPath + " is damaged before the end of the store");
+            }
+            if (logResult.isTorn()) {
+                myLoggerInstance.warn("Log {} ends in an incomplete record at byte {}, dropping it", logPath, logResult.validEnd());
+            }
+            lastLogPath = logPath;
+            lastLogResult = logResult;
+        }
+        nextUserId = Math.max(nextUserId, highestReplayedUserId + 1);
+        myCurrentLog = lastLogResult == null
+            ? MappedRecordLog.create(logPath(firstLogGeneration), MappedRecordLog.LOG_FILE, firstLogGeneration, LOG_REGION_BYTES)
+            : MappedRecordLog.openForAppend(lastLogPath, lastLogResult);
+        syncDirectory();
+        recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - recoveryStartNanos);
+        myLoggerInstance.info("User store {} recovered {} users from {} records in {} ms",
+            myStoreDirectory, myUsersById.size(), replayedRecords, recoveryMillis);
+    }
+    
+    private void replayRecord(ByteBuffer payloadBuffer) {
+        byte recordType = StoredUserCodec.recordType(payloadBuffer);
+        if (recordType == StoredUserCodec.PUT_RECORD) {
+            StoredUser storedUser = StoredUserCodec.decodePut(payloadBuffer);
+            applyChange(myUsersById.get(storedUser.userId()), storedUser);
+            highestReplayedUserId = Math.max(highestReplayedUserId, storedUser.userId());
+        } else if (recordType == StoredUserCodec.DELETE_RECORD) {
+            long userId = StoredUserCodec.firstLong(payloadBuffer);
+            StoredUser deletedUser = myUsersById.get(userId);
+            if (deletedUser != null) {
+                applyChange(deletedUser, null);
+            }
+            highestReplayedUserId = Math.max(highestReplayedUserId, userId);
+        } else {
+            throw new IllegalStateException("Unknown user store record type " + recordType);
+        }
+        replayedRecords++;
+    }
+    
+    private List<Path> listLogs() throws IOException {
+        try (Stream<Path> directoryEntries = Files.list(myStoreDirectory)) {
+            return directoryEntries.filter(entryPath -> LOG_FILE_PATTERN.matcher(entryPath.getFileName().toString()).matches())
+                .sorted()
+                .toList();
+        }
+    }
+    
+    private Path logPath(long logGeneration) {
+        return myStoreDirectory.resolve(String.format("users-%020d.log", logGeneration));
+    }
+    
+    private static long generationOf(Path logPath) {
+        Matcher logNameMatcher = LOG_FILE_PATTERN.matcher(logPath.getFileName().toString());
+        if (!logNameMatcher.matches()) {
+            throw new IllegalArgumentException("Not a log file: " + logPath);
+        }
+        return Long.parseLong(logNameMatcher.group(1));
+    }
+    
+    // New and renamed files are only durable once the directory entry is
+    private void syncDirectory() {
+        try (FileChannel directoryChannel = FileChannel.open(myStoreDirectory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException myException) {
+            myLoggerInstance.debug("Directory sync not supported for {}: {}", myStoreDirectory, myException.getMessage());
+        }
+    }
+    
+    private void ensureOpen() {
+        if (isClosed) {
+            throw new DataAccessCustomException("User store " + myStoreDirectory + " is closed");
+        }
+    }
+    
+    private static void closeQuietly(FileChannel myFileChannel) {
+        if (myFileChannel == null) {
+            return;
+        }
+        try {
+            myFileChannel.close();
+        } catch (IOException myException) {
+            myLoggerInstance.debug("Failed to close {}: {}", myFileChannel, myException.getMessage());
+        }
+    }
+    
+    // Reads through a batch see its own earlier changes; the store's indexes see none of them until the batch ends
+    public final class WriteBatch {
+        private final List<PendingChange> myPendingChanges = new ArrayList<>();
+        private final Map<Long, StoredUser> myChangedUsers = new HashMap<>();
+        private final Map<String, Long> myChangedEmails = new HashMap<>();
+        private boolean isOpen = true;
+        
+        private WriteBatch() {}
+        
+        public Optional<StoredUser> findById(long userId) {
+            ensureBatchOpen();
+            return myChangedUsers.containsKey(userId) ? Optional.ofNullable(myChangedUsers.get(userId)) : EmbeddedUserStore.this.findById(userId);
+        }
+        
+        public StoredUser insert(String userName, String userEmail, Integer userAge, LocalDateTime userCreatedAt) {
+            ensureBatchOpen();
+            validateUser(userName, userEmail, userAge, userCreatedAt);
+            if (ownerOfEmail(userEmail) != NO_USER_ID) {
+                throw new DuplicateEmailException(userEmail, null);
+            }
+            StoredUser insertedUser = new StoredUser(nextUserId, 0L, userName, userEmail, userAge, userCreatedAt);
+            appendChange(null, insertedUser);
+            nextUserId++;
+            return insertedUser;
+        }
+        
+        public StoredUser replace(StoredUser currentUser, String userName, String userEmail, Integer userAge, LocalDateTime userCreatedAt) {
+            ensureBatchOpen();
+            ensureCurrent(currentUser);
+            validateUser(userName, userEmail, userAge, userCreatedAt);
+            long emailOwnerId = ownerOfEmail(userEmail);
+            if (emailOwnerId != NO_USER_ID && emailOwnerId != currentUser.userId()) {
+                throw new DuplicateEmailException(userEmail, null);
+            }
+            StoredUser replacedUser = currentUser.withState(userName, userEmail, userAge, userCreatedAt);
+            appendChange(currentUser, replacedUser);
+            return replacedUser;
+        }
+        
+        public void delete(StoredUser currentUser) {
+            ensureBatchOpen();
+            ensureCurrent(currentUser);
+            appendChange(currentUser, null);
+        }
+        
+        private long ownerOfEmail(String userEmail) {
+            Long ownerId = myChangedEmails.containsKey(userEmail) ? myChangedEmails.get(userEmail) : myUserIdsByEmail.get(userEmail);
+            return ownerId == null ? NO_USER_ID : ownerId;
+        }
+        
+        private void appendChange(StoredUser previousUser, StoredUser currentUser) {
+            if (currentUser == null) {
+                StoredUserCodec.encodeDelete(previousUser.userId(), previousUser.versionNumber(), myRecordBuffer);
+            } else {
+                StoredUserCodec.encodePut(currentUser, myRecordBuffer);
+            }
+            try {
+                myCurrentLog.append(myRecordBuffer);
+            } catch (IOException | UncheckedIOException myException) {
+                throw new DataAccessCustomException("Failed to append to the user log", myException);
+            }
+            long userId = currentUser == null ? previousUser.userId() : currentUser.userId();
+            myChangedUsers.put(userId, currentUser);
+            if (previousUser != null && (currentUser == null || !previousUser.userEmail().equals(currentUser.userEmail()))) {
+                myChangedEmails.put(previousUser.userEmail(), NO_USER_ID);
+            }
+            if (currentUser != null) {
+                myChangedEmails.put(currentUser.userEmail(), userId);
+            }
+            myPendingChanges.add(new PendingChange(previousUser, currentUser));
+        }
+        
+        private void ensureCurrent(StoredUser currentUser) {
+            if (findById(currentUser.userId()).orElse(null) != currentUser) {
+                throw new IllegalStateException("User " + currentUser.userId() + " was not read in this batch");
+            }
+        }
+        
+        private void ensureBatchOpen() {
+            if (!isOpen) {
+                throw new IllegalStateException("Write batch is already committed");
+            }
+        }
+    }
+    
+    // The same limits the app_users columns enforce
+    private static void validateUser(String userName, String userEmail, Integer userAge, LocalDateTime userCreatedAt) {
+        if (userName == null || userEmail == null || userAge == null || userCreatedAt == null) {
+            throw new IllegalArgumentException("User name, email, age and registration time must not be null");
+        }
+        if (userName.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("User name is longer than " + MAX_NAME_LENGTH + " characters");
+        }
+        if (userEmail.length() > MAX_EMAIL_LENGTH) {
+            throw new IllegalArgumentException("User email is longer than " + MAX_EMAIL_LENGTH + " characters");
+        }
+    }
+}
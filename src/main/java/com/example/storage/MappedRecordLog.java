@@ -0,0 +1,198 @@
+package com.example.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Append-only file of [length][crc32c][payload] frames, written through a memory-mapped region at a time. Regions
+// are mapped ahead of the data, so the unwritten rest of a file reads as zeros and a zero length marks its end. A
+// frame never crosses a region boundary; the space it would not fit in is skipped with a padding marker.
+final class MappedRecordLog implements AutoCloseable {
+    static final int LOG_FILE = 0;
+    static final int SNAPSHOT_FILE = 1;
+    private static final int FILE_MAGIC = 0x55534C47;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int PADDING_MARKER = -1;
+    
+    private final Path myFilePath;
+    private final FileChannel myFileChannel;
+    private final int regionBytes;
+    private final long generation;
+    private final CRC32C myChecksum = new CRC32C();
+    private MappedByteBuffer myRegionBuffer;
+    private long regionStart;
+    private int syncedPosition;
+    
+    record ReplayResult(int fileKind, long generation, long validEnd, boolean isTorn) {}
+    
+    private MappedRecordLog(Path myFilePath, FileChannel myFileChannel, int regionBytes, long generation) {
+        this.myFilePath = myFilePath;
+        this.myFileChannel = myFileChannel;
+        this.regionBytes = regionBytes;
+        this.generation = generation;
+    }
+    
+    static MappedRecordLog create(Path myFilePath, int fileKind, long generation, int regionBytes) throws IOException {
+        FileChannel myFileChannel = FileChannel.open(myFilePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        MappedRecordLog myRecordLog = new MappedRecordLog(myFilePath, myFileChannel, regionBytes, generation);
+        try {
+            myRecordLog.mapRegion(0);
+            myRecordLog.myRegionBuffer.putInt(FILE_MAGIC).putInt(FORMAT_VERSION).putInt(regionBytes).putInt(fileKind)
+                .putLong(generation).putLong(0L);
+            myRecordLog.sync();
+            return myRecordLog;
+        } catch (IOException | RuntimeException myException) {
+            myFileChannel.close();
+            throw myException;
+        }
+    }
+    
+    // Continues a log after replay; anything past the last valid frame, e.g. a torn write, is cut off first
+    static MappedRecordLog openForAppend(Path myFilePath, ReplayResult replayResult) throws IOException {
+        FileChannel myFileChannel = FileChannel.open(myFilePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int fileRegionBytes = myFileChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).getInt(8);
+            MappedRecordLog myRecordLog = new MappedRecordLog(myFilePath, myFileChannel, fileRegionBytes, replayResult.generation());
+            myFileChannel.truncate(replayResult.validEnd());
+            myRecordLog.mapRegion(replayResult.validEnd() / fileRegionBytes * fileRegionBytes);
+            myRecordLog.myRegionBuffer.position((int) (replayResult.validEnd() % fileRegionBytes));
+            myRecordLog.syncedPosition = myRecordLog.myRegionBuffer.position();
+            return myRecordLog;
+        } catch (IOException | RuntimeException myException) {
+            myFileChannel.close();
+            throw myException;
+        }
+    }
+    
+    // Payloads are handed over as read-only slices of the mapping, valid only during the call. Returns null for a file
+    // without a header.
+    static ReplayResult replay(Path myFilePath, Consumer<ByteBuffer> payloadConsumer) throws IOException {
+        try (FileChannel myFileChannel = FileChannel.open(myFilePath, StandardOpenOption.READ)) {
+            ByteBuffer headerBuffer = readHeader(myFileChannel, myFilePath);
+            if (headerBuffer == null) {
+                return null;
+            }
+            int fileRegionBytes = headerBuffer.getInt(8);
+            int fileKind = headerBuffer.getInt(12);
+            long fileGeneration = headerBuffer.getLong(16);
+            long fileSize = myFileChannel.size();
+            CRC32C replayChecksum = new CRC32C();
+            for (long currentRegionStart = 0; currentRegionStart < fileSize; currentRegionStart += fileRegionBytes) {
+                MappedByteBuffer regionBuffer = myFileChannel.map(FileChannel.MapMode.READ_ONLY, currentRegionStart,
+                    Math.min(fileRegionBytes, fileSize - currentRegionStart));
+                int framePosition = currentRegionStart == 0 ? HEADER_BYTES : 0;
+                boolean hasNextRegion = currentRegionStart + fileRegionBytes < fileSize;
+                while (true) {
+                    if (regionBuffer.limit() - framePosition < FRAME_HEADER_BYTES) {
+                        if (hasNextRegion) break;
+                        return new ReplayResult(fileKind, fileGeneration, currentRegionStart + framePosition, false);
+                    }
+                    int payloadLength = regionBuffer.getInt(framePosition);
+                    if (payloadLength == 0 || (payloadLength == PADDING_MARKER && !hasNextRegion)) {
+                        return new ReplayResult(fileKind, fileGeneration, currentRegionStart + framePosition, false);
+                    }
+                    if (payloadLength == PADDING_MARKER) break;
+                    if (payloadLength < 0 || payloadLength > regionBuffer.limit() - framePosition - FRAME_HEADER_BYTES) {
+                        return new ReplayResult(fileKind, fileGeneration, currentRegionStart + framePosition, true);
+                    }
+                    ByteBuffer payloadBuffer = regionBuffer.slice(framePosition + FRAME_HEADER_BYTES, payloadLength);
+                    replayChecksum.reset();
+                    replayChecksum.update(payloadBuffer.duplicate());
+                    if ((int) replayChecksum.getValue() != regionBuffer.getInt(framePosition + 4)) {
+                        return new ReplayResult(fileKind, fileGeneration, currentRegionStart + framePosition, true);
+                    }
+                    payloadConsumer.accept(payloadBuffer.asReadOnlyBuffer());
+                    framePosition += FRAME_HEADER_BYTES + payloadLength;
+                }
+            }
+            return new ReplayResult(fileKind, fileGeneration, fileSize, false);
+        }
+    }
+    
+    // Only the mapping is written here; sync() makes it durable
+    void append(ByteBuffer payloadBuffer) throws IOException {
+        int payloadLength = payloadBuffer.remaining();
+        if (myRegionBuffer.remaining() < FRAME_HEADER_BYTES + payloadLength) {
+            if (myRegionBuffer.remaining() >= 4) {
+                myRegionBuffer.putInt(myRegionBuffer.position(), PADDING_MARKER);
+            }
+            // The marker must be on disk before anything in the next region can be
+            myRegionBuffer.force();
+            mapRegion(regionStart + regionBytes);
+        }
+        int framePosition = myRegionBuffer.position();
+        myChecksum.reset();
+        myChecksum.update(payloadBuffer.duplicate());
+        myRegionBuffer.putInt(framePosition + 4, (int) myChecksum.getValue());
+        myRegionBuffer.put(framePosition + FRAME_HEADER_BYTES, payloadBuffer, payloadBuffer.position(), payloadLength);
+        // The length goes last: a process that dies mid-copy leaves a zero length, and the checksum covers the rest
+        myRegionBuffer.putInt(framePosition, payloadLength);
+        myRegionBuffer.position(framePosition + FRAME_HEADER_BYTES + payloadLength);
+    }
+    
+    void sync() {
+        int currentPosition = myRegionBuffer.position();
+        if (currentPosition > syncedPosition) {
+            myRegionBuffer.force(syncedPosition, currentPosition - syncedPosition);
+            syncedPosition = currentPosition;
+        }
+    }
+    
+    long size() {
+        return regionStart + myRegionBuffer.position();
+    }
+    
+    long getGeneration() {
+        return generation;
+    }
+    
+    Path getFilePath() {
+        return myFilePath;
+    }
+    
+    // Trims the mapped-ahead zeros, so a closed file is exactly as long as its data
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+            long dataEnd = size();
+            myRegionBuffer = null;
+            myFileChannel.truncate(dataEnd);
+            myFileChannel.force(true);
+        } finally {
+            myFileChannel.close();
+        }
+    }
+    
+    private void mapRegion(long newRegionStart) throws IOException {
+        myRegionBuffer = myFileChannel.map(FileChannel.MapMode.READ_WRITE, newRegionStart, regionBytes);
+        regionStart = newRegionStart;
+        syncedPosition = 0;
+    }
+    
+    // Null for a file whose header was never written, i.e. one created just before a crash
+    private static ByteBuffer readHeader(FileChannel myFileChannel, Path myFilePath) throws IOException {
+        if (myFileChannel.size() < HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer headerBuffer = myFileChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        if (headerBuffer.getInt(0) == 0) {
+            return null;
+        }
+        if (headerBuffer.getInt(0) != FILE_MAGIC) {
+            throw new IOException("Not a user store file: " + myFilePath);
+        }
+        if (headerBuffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported user store format " + headerBuffer.getInt(4) + " in " + myFilePath);
+        }
+        return headerBuffer;
+    }
+}
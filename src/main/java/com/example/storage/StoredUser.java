@@ -0,0 +1,22 @@
+package com.example.storage;
+
+import com.example.entity.UserEntity;
+
+import java.time.LocalDateTime;
+
+// Rows are immutable, so readers share them without locks and a writer replaces the whole row
+public record StoredUser(long userId, long versionNumber, String userName, String userEmail, int userAge, LocalDateTime userCreatedAt) {
+    
+    public StoredUser withState(String userName, String userEmail, int userAge, LocalDateTime userCreatedAt) {
+        return new StoredUser(userId, versionNumber + 1, userName, userEmail, userAge, userCreatedAt);
+    }
+    
+    // Callers get a detached copy they may change freely, like an entity loaded by a closed session
+    public UserEntity toEntity() {
+        UserEntity myUserEntity = new UserEntity(userName, userEmail, userAge);
+        myUserEntity.setUserId(userId);
+        myUserEntity.setUserCreatedAt(userCreatedAt);
+        myUserEntity.setVersionNumber(versionNumber);
+        return myUserEntity;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Payloads of the log records; timestamps are stored like the in-memory index stores them (UTC seconds and nanos)
+final class StoredUserCodec {
+    static final byte PUT_RECORD = 1;
+    static final byte DELETE_RECORD = 2;
+    static final byte SNAPSHOT_END_RECORD = 3;
+    // Type, id, version, seconds, nanos, age and two string lengths, plus 50 and 100 characters of up to 3 UTF-8 bytes
+    static final int MAX_PAYLOAD_BYTES = 1 + 8 + 8 + 8 + 4 + 4 + 2 + 2 + 150 * 3;
+    
+    private StoredUserCodec() {}
+    
+    static void encodePut(StoredUser storedUser, ByteBuffer targetBuffer) {
+        targetBuffer.clear();
+        targetBuffer.put(PUT_RECORD);
+        targetBuffer.putLong(storedUser.userId());
+        targetBuffer.putLong(storedUser.versionNumber());
+        targetBuffer.putLong(storedUser.userCreatedAt().toEpochSecond(ZoneOffset.UTC));
+        targetBuffer.putInt(storedUser.userCreatedAt().getNano());
+        targetBuffer.putInt(storedUser.userAge());
+        putString(targetBuffer, storedUser.userName());
+        putString(targetBuffer, storedUser.userEmail());
+        targetBuffer.flip();
+    }
+    
+    static void encodeDelete(long userId, long versionNumber, ByteBuffer targetBuffer) {
+        targetBuffer.clear();
+        targetBuffer.put(DELETE_RECORD);
+        targetBuffer.putLong(userId);
+        targetBuffer.putLong(versionNumber);
+        targetBuffer.flip();
+    }
+    
+    // Closes a snapshot; a snapshot without it was cut short and is not used
+    static void encodeSnapshotEnd(long userCount, long nextUserId, ByteBuffer targetBuffer) {
+        targetBuffer.clear();
+        targetBuffer.put(SNAPSHOT_END_RECORD);
+        targetBuffer.putLong(userCount);
+        targetBuffer.putLong(nextUserId);
+        targetBuffer.flip();
+    }
+    
+    static byte recordType(ByteBuffer payloadBuffer) {
+        return payloadBuffer.get(0);
+    }
+    
+    static StoredUser decodePut(ByteBuffer payloadBuffer) {
+        payloadBuffer.position(1);
+        long userId = payloadBuffer.getLong();
+        long versionNumber = payloadBuffer.getLong();
+        long createdSeconds = payloadBuffer.getLong();
+        int createdNanos = payloadBuffer.getInt();
+        int userAge = payloadBuffer.getInt();
+        String userName = getString(payloadBuffer);
+        String userEmail = getString(payloadBuffer);
+        return new StoredUser(userId, versionNumber, userName, userEmail, userAge,
+            LocalDateTime.ofEpochSecond(createdSeconds, createdNanos, ZoneOffset.UTC));
+    }
+    
+    // Delete and snapshot-end records are both two longs after the type
+    static long firstLong(ByteBuffer payloadBuffer) {
+        return payloadBuffer.getLong(1);
+    }
+    
+    static long secondLong(ByteBuffer payloadBuffer) {
+        return payloadBuffer.getLong(9);
+    }
+    
+    private static void putString(ByteBuffer targetBuffer, String textValue) {
+        byte[] textBytes = textValue.getBytes(StandardCharsets.UTF_8);
+        targetBuffer.putShort((short) textBytes.length);
+        targetBuffer.put(textBytes);
+    }
+    
+    private static String getString(ByteBuffer payloadBuffer) {
+        byte[] textBytes = new byte[Short.toUnsignedInt(payloadBuffer.getShort())];
+        payloadBuffer.get(textBytes);
+        return new String(textBytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.transfer;
+
+import com.example.entity.UserEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class CsvUserRecordCodec implements UserRecordCodec {
+    // Column names match the lowercased table columns, so a COPY ... WITH (HEADER) export reads back unchanged
+    static final String CSV_HEADER = "userid,user_full_name,user_email_address,user_age_value,user_registration_timestamp,versionnumber";
+    
+    private int nameColumn = 1;
+    private int emailColumn = 2;
+    private int ageColumn = 3;
+    private int createdAtColumn = 4;
+    private final List<String> myFieldValues = new ArrayList<>(8);
+    
+    @Override
+    public String headerLine() {
+        return CSV_HEADER;
+    }
+    
+    @Override
+    public boolean readHeader(String firstLine) {
+        List<String> headerColumns = splitFields(firstLine);
+        int headerNameColumn = headerColumns.indexOf("user_full_name");
+        int headerEmailColumn = headerColumns.indexOf("user_email_address");
+        int headerAgeColumn = headerColumns.indexOf("user_age_value");
+        if (headerNameColumn < 0 || headerEmailColumn < 0 || headerAgeColumn < 0) {
+            return false;
+        }
+        nameColumn = headerNameColumn;
+        emailColumn = headerEmailColumn;
+        ageColumn = headerAgeColumn;
+        createdAtColumn = headerColumns.indexOf("user_registration_timestamp");
+        return true;
+    }
+    
+    @Override
+    public void appendRecord(UserEntity myUserEntity, StringBuilder targetBuilder) {
+        targetBuilder.append(myUserEntity.getUserId()).append(',');
+        appendField(myUserEntity.getUserName(), targetBuilder);
+        targetBuilder.append(',');
+        appendField(myUserEntity.getUserEmail(), targetBuilder);
+        targetBuilder.append(',').append(myUserEntity.getUserAge()).append(',')
+            .append(UserRecordCodec.formatTimestamp(myUserEntity.getUserCreatedAt())).append(',')
+            .append(myUserEntity.getVersionNumber()).append('\n');
+    }
+    
+    @Override
+    public UserEntity parseRecord(String recordLine) {
+        List<String> fieldValues = splitFields(recordLine);
+        if (fieldValues.size() <= Math.max(nameColumn, Math.max(emailColumn, ageColumn))) {
+            throw new IllegalArgumentException("Недостаточно полей в строке");
+        }
+        UserEntity myUserEntity = new UserEntity(fieldValues.get(nameColumn), fieldValues.get(emailColumn), 
+            Integer.valueOf(fieldValues.get(ageColumn).trim()));
+        if (createdAtColumn >= 0 && createdAtColumn < fieldValues.size()) {
+            myUserEntity.setUserCreatedAt(UserRecordCodec.parseTimestamp(fieldValues.get(createdAtColumn)));
+        }
+        return myUserEntity;
+    }
+    
+    static void appendField(String fieldValue, StringBuilder targetBuilder) {
+        boolean isQuotingNeeded = false;
+        for (int charIndex = 0; charIndex < fieldValue.length() && !isQuotingNeeded; charIndex++) {
+            char currentChar = fieldValue.charAt(charIndex);
+            isQuotingNeeded = currentChar == ',' || currentChar == '"' || currentChar == '\n' || currentChar == '\r';
+        }
+        if (!isQuotingNeeded) {
+            targetBuilder.append(fieldValue);
+            return;
+        }
+        targetBuilder.append('"');
+        for (int charIndex = 0; charIndex < fieldValue.length(); charIndex++) {
+            char currentChar = fieldValue.charAt(charIndex);
+            if (currentChar == '"') {
+                targetBuilder.append('"');
+            }
+            targetBuilder.append(currentChar);
+        }
+        targetBuilder.append('"');
+    }
+    
+    private List<String> splitFields(String recordLine) {
+        myFieldValues.clear();
+        StringBuilder fieldBuilder = new StringBuilder(32);
+        boolean isInsideQuotes = false;
+        for (int charIndex = 0; charIndex < recordLine.length(); charIndex++) {
+            char currentChar = recordLine.charAt(charIndex);
+            if (isInsideQuotes) {
+                if (currentChar != '"') {
+                    fieldBuilder.append(currentChar);
+                } else if (charIndex + 1 < recordLine.length() && recordLine.charAt(charIndex + 1) == '"') {
+                    fieldBuilder.append('"');
+                    charIndex++;
+                } else {
+                    isInsideQuotes = false;
+                }
+            } else if (currentChar == '"') {
+                isInsideQuotes = true;
+            } else if (currentChar == ',') {
+                myFieldValues.add(fieldBuilder.toString());
+                fieldBuilder.setLength(0);
+            } else {
+                fieldBuilder.append(currentChar);
+            }
+        }
+        if (isInsideQuotes) {
+            throw new IllegalArgumentException("Незакрытые кавычки в строке");
+        }
+        myFieldValues.add(fieldBuilder.toString());
+        return myFieldValues;
+    }
+}
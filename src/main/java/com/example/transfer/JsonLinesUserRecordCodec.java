@@ -0,0 +1,163 @@
+package com.example.transfer;
+
+import com.example.entity.UserEntity;
+
+class JsonLinesUserRecordCodec implements UserRecordCodec {
+    private final StringBuilder myValueBuilder = new StringBuilder(64);
+    
+    @Override
+    public String headerLine() {
+        return null;
+    }
+    
+    @Override
+    public boolean readHeader(String firstLine) {
+        return false;
+    }
+    
+    @Override
+    public void appendRecord(UserEntity myUserEntity, StringBuilder targetBuilder) {
+        targetBuilder.append("{\"userId\":").append(myUserEntity.getUserId()).append(",\"userName\":");
+        appendString(myUserEntity.getUserName(), targetBuilder);
+        targetBuilder.append(",\"userEmail\":");
+        appendString(myUserEntity.getUserEmail(), targetBuilder);
+        targetBuilder.append(",\"userAge\":").append(myUserEntity.getUserAge()).append(",\"userCreatedAt\":");
+        if (myUserEntity.getUserCreatedAt() == null) {
+            targetBuilder.append("null");
+        } else {
+            targetBuilder.append('"').append(myUserEntity.getUserCreatedAt()).append('"');
+        }
+        targetBuilder.append(",\"versionNumber\":").append(myUserEntity.getVersionNumber()).append("}\n");
+    }
+    
+    // Flat objects only: that is all the exporter writes, and it keeps the parser allocation-light
+    @Override
+    public UserEntity parseRecord(String recordLine) {
+        UserEntity myUserEntity = new UserEntity();
+        int readPosition = skipWhitespace(recordLine, 0);
+        readPosition = expect(recordLine, readPosition, '{');
+        readPosition = skipWhitespace(recordLine, readPosition);
+        if (readPosition < recordLine.length() && recordLine.charAt(readPosition) == '}') {
+            readPosition++;
+        } else {
+            while (true) {
+                readPosition = readString(recordLine, skipWhitespace(recordLine, readPosition));
+                String fieldName = myValueBuilder.toString();
+                readPosition = expect(recordLine, skipWhitespace(recordLine, readPosition), ':');
+                readPosition = skipWhitespace(recordLine, readPosition);
+                boolean isStringValue = readPosition < recordLine.length() && recordLine.charAt(readPosition) == '"';
+                readPosition = isStringValue ? readString(recordLine, readPosition) : readLiteral(recordLine, readPosition);
+                String fieldValue = !isStringValue && "null".contentEquals(myValueBuilder) ? null : myValueBuilder.toString();
+                applyField(myUserEntity, fieldName, fieldValue);
+                readPosition = skipWhitespace(recordLine, readPosition);
+                if (readPosition < recordLine.length() && recordLine.charAt(readPosition) == ',') {
+                    readPosition++;
+                    continue;
+                }
+                readPosition = expect(recordLine, readPosition, '}');
+                break;
+            }
+        }
+        if (skipWhitespace(recordLine, readPosition) != recordLine.length()) {
+            throw new IllegalArgumentException("Лишние символы после JSON объекта");
+        }
+        return myUserEntity;
+    }
+    
+    private static void applyField(UserEntity myUserEntity, String fieldName, String fieldValue) {
+        switch (fieldName) {
+            case "userName" -> myUserEntity.setUserName(fieldValue);
+            case "userEmail" -> myUserEntity.setUserEmail(fieldValue);
+            case "userAge" -> myUserEntity.setUserAge(fieldValue == null ? null : Integer.valueOf(fieldValue));
+            case "userCreatedAt" -> myUserEntity.setUserCreatedAt(UserRecordCodec.parseTimestamp(fieldValue));
+            default -> { }
+        }
+    }
+    
+    private int readString(String recordLine, int readPosition) {
+        readPosition = expect(recordLine, readPosition, '"');
+        myValueBuilder.setLength(0);
+        while (readPosition < recordLine.length()) {
+            char currentChar = recordLine.charAt(readPosition++);
+            if (currentChar == '"') {
+                return readPosition;
+            }
+            if (currentChar != '\\') {
+                myValueBuilder.append(currentChar);
+                continue;
+            }
+            if (readPosition >= recordLine.length()) {
+                break;
+            }
+            char escapedChar = recordLine.charAt(readPosition++);
+            switch (escapedChar) {
+                case 'b' -> myValueBuilder.append('\b');
+                case 'f' -> myValueBuilder.append('\f');
+                case 'n' -> myValueBuilder.append('\n');
+                case 'r' -> myValueBuilder.append('\r');
+                case 't' -> myValueBuilder.append('\t');
+                case 'u' -> {
+                    if (readPosition + 4 > recordLine.length()) {
+                        throw new IllegalArgumentException("Неверная escape-последовательность в JSON");
+                    }
+                    myValueBuilder.append((char) Integer.parseInt(recordLine, readPosition, readPosition + 4, 16));
+                    readPosition += 4;
+                }
+                default -> myValueBuilder.append(escapedChar);
+            }
+        }
+        throw new IllegalArgumentException("Незакрытая строка в JSON");
+    }
+    
+    private int readLiteral(String recordLine, int readPosition) {
+        myValueBuilder.setLength(0);
+        while (readPosition < recordLine.length()) {
+            char currentChar = recordLine.charAt(readPosition);
+            if (currentChar == ',' || currentChar == '}' || Character.isWhitespace(currentChar)) {
+                break;
+            }
+            myValueBuilder.append(currentChar);
+            readPosition++;
+        }
+        if (myValueBuilder.length() == 0) {
+            throw new IllegalArgumentException("Пустое значение в JSON");
+        }
+        return readPosition;
+    }
+    
+    private static int expect(String recordLine, int readPosition, char expectedChar) {
+        if (readPosition >= recordLine.length() || recordLine.charAt(readPosition) != expectedChar) {
+            throw new IllegalArgumentException("Ожидался символ '" + expectedChar + "' в позиции " + readPosition);
+        }
+        return readPosition + 1;
+    }
+    
+    private static int skipWhitespace(String recordLine, int readPosition) {
+        while (readPosition < recordLine.length() && Character.isWhitespace(recordLine.charAt(readPosition))) {
+            readPosition++;
+        }
+        return readPosition;
+    }
+    
+    private static void appendString(String stringValue, StringBuilder targetBuilder) {
+        targetBuilder.append('"');
+        for (int charIndex = 0; charIndex < stringValue.length(); charIndex++) {
+            char currentChar = stringValue.charAt(charIndex);
+            switch (currentChar) {
+                case '"' -> targetBuilder.append("\\\"");
+                case '\\' -> targetBuilder.append("\\\\");
+                case '\n' -> targetBuilder.append("\\n");
+                case '\r' -> targetBuilder.append("\\r");
+                case '\t' -> targetBuilder.append("\\t");
+                default -> {
+                    if (currentChar < 0x20) {
+                        targetBuilder.append(String.format("\\u%04x", (int) currentChar));
+                    } else {
+                        targetBuilder.append(currentChar);
+                    }
+                }
+            }
+        }
+        targetBuilder.append('"');
+    }
+}
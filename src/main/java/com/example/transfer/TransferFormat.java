@@ -0,0 +1,21 @@
+package com.example.transfer;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+public enum TransferFormat {
+    CSV,
+    JSON_LINES;
+    
+    public static TransferFormat fromPath(Path transferFile) {
+        String fileName = transferFile.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (fileName.endsWith(".json") || fileName.endsWith(".jsonl") || fileName.endsWith(".ndjson")) {
+            return JSON_LINES;
+        }
+        return CSV;
+    }
+    
+    UserRecordCodec createCodec() {
+        return this == CSV ? new CsvUserRecordCodec() : new JsonLinesUserRecordCodec();
+    }
+}
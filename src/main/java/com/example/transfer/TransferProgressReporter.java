@@ -0,0 +1,27 @@
+package com.example.transfer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+class TransferProgressReporter implements AutoCloseable {
+    private static final long PROGRESS_INTERVAL_MILLIS = 2000;
+    
+    private final ScheduledExecutorService myProgressScheduler;
+    
+    TransferProgressReporter(TransferReport myTransferReport, Consumer<String> progressListener) {
+        this.myProgressScheduler = Executors.newSingleThreadScheduledExecutor(progressTask -> {
+            Thread progressThread = new Thread(progressTask, "transfer-progress");
+            progressThread.setDaemon(true);
+            return progressThread;
+        });
+        myProgressScheduler.scheduleAtFixedRate(() -> progressListener.accept(myTransferReport.toString()),
+            PROGRESS_INTERVAL_MILLIS, PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public void close() {
+        myProgressScheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.transfer;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TransferReport {
+    private final String transferName;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder processedRows = new LongAdder();
+    private final LongAdder acceptedRows = new LongAdder();
+    private final LongAdder rejectedRows = new LongAdder();
+    private final LongAdder transferredBytes = new LongAdder();
+    private volatile long finishNanos;
+    private volatile Path rejectedRowsFile;
+    
+    TransferReport(String transferName) {
+        this.transferName = transferName;
+    }
+    
+    void addProcessedRows(long rowCount) { processedRows.add(rowCount); }
+    void addAcceptedRows(long rowCount) { acceptedRows.add(rowCount); }
+    void addRejectedRows(long rowCount) { rejectedRows.add(rowCount); }
+    void addTransferredBytes(long byteCount) { transferredBytes.add(byteCount); }
+    void setRejectedRowsFile(Path rejectedRowsFile) { this.rejectedRowsFile = rejectedRowsFile; }
+    
+    void markFinished() {
+        finishNanos = System.nanoTime();
+    }
+    
+    public long getProcessedRows() { return processedRows.sum(); }
+    public long getAcceptedRows() { return acceptedRows.sum(); }
+    public long getRejectedRows() { return rejectedRows.sum(); }
+    public long getTransferredBytes() { return transferredBytes.sum(); }
+    public Path getRejectedRowsFile() { return rejectedRowsFile; }
+    
+    public long getElapsedMillis() {
+        long endNanos = finishNanos == 0 ? System.nanoTime() : finishNanos;
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+    }
+    
+    public double getRowsPerSecond() {
+        return getProcessedRows() * 1000.0 / Math.max(getElapsedMillis(), 1);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: %d rows (%d accepted, %d rejected), %.1f MB in %.1f s, %.0f rows/s", transferName,
+            getProcessedRows(), getAcceptedRows(), getRejectedRows(), getTransferredBytes() / (1024.0 * 1024.0),
+            getElapsedMillis() / 1000.0, getRowsPerSecond());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.transfer;
+
+import com.example.config.DatabaseConfigurationManager;
+import com.example.entity.UserEntity;
+import com.example.repository.DataAccessCustomException;
+import com.example.repository.UserRepositoryInterface;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+public class UserDataExporter {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(UserDataExporter.class);
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final int RECORD_FLUSH_CHARS = 256 * 1024;
+    private static final String COPY_EXPORT_SQL = "COPY app_users (userid, user_full_name, user_email_address, "
+        + "user_age_value, user_registration_timestamp, versionnumber) TO STDOUT WITH (FORMAT csv, HEADER true)";
+    
+    private final UserRepositoryInterface myUserRepository;
+    
+    public UserDataExporter(UserRepositoryInterface myUserRepository) {
+        this.myUserRepository = myUserRepository;
+    }
+    
+    public TransferReport exportUsers(Path targetFile, TransferFormat transferFormat, Consumer<String> progressListener) {
+        TransferReport myTransferReport = new TransferReport("Export " + targetFile.getFileName());
+        try (FileChannel targetChannel = FileChannel.open(targetFile, StandardOpenOption.CREATE, 
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             TransferProgressReporter progressReporter = new TransferProgressReporter(myTransferReport, progressListener)) {
+            // COPY only speaks CSV and sees one database; everything else goes through the repository's stream
+            if (transferFormat != TransferFormat.CSV || DatabaseConfigurationManager.isShardingConfigured() 
+                    || DatabaseConfigurationManager.isEmbeddedStorage()
+                    || !exportWithCopy(targetChannel, myTransferReport)) {
+                exportWithCursor(targetChannel, transferFormat.createCodec(), myTransferReport);
+            }
+            targetChannel.force(false);
+        } catch (IOException | UncheckedIOException myException) {
+            myLoggerInstance.error("Failed to export users to {}: {}", targetFile, myException.getMessage());
+            throw new DataAccessCustomException("Failed to export users", myException);
+        }
+        myTransferReport.markFinished();
+        myLoggerInstance.info("{}", myTransferReport);
+        return myTransferReport;
+    }
+    
+    private boolean exportWithCopy(FileChannel targetChannel, TransferReport myTransferReport) {
+        try (Session mySession = DatabaseConfigurationManager.getDatabaseSession()) {
+            return mySession.doReturningWork(myConnection -> {
+                if (!myConnection.isWrapperFor(PGConnection.class)) {
+                    return false;
+                }
+                // Not closed here: closing a channel stream would close the file channel owned by exportUsers
+                OutputStream copyTarget = new BufferedOutputStream(
+                    new RowCountingOutputStream(Channels.newOutputStream(targetChannel), myTransferReport), WRITE_BUFFER_BYTES);
+                try {
+                    long exportedRows = myConnection.unwrap(PGConnection.class).getCopyAPI().copyOut(COPY_EXPORT_SQL, copyTarget);
+                    copyTarget.flush();
+                    myLoggerInstance.debug("COPY exported {} rows", exportedRows);
+                } catch (IOException myException) {
+                    throw new UncheckedIOException(myException);
+                }
+                return true;
+            });
+        }
+    }
+    
+    private void exportWithCursor(FileChannel targetChannel, UserRecordCodec recordCodec, TransferReport myTransferReport) {
+        StringBuilder recordBuilder = new StringBuilder(RECORD_FLUSH_CHARS + 1024);
+        if (recordCodec.headerLine() != null) {
+            recordBuilder.append(recordCodec.headerLine()).append('\n');
+        }
+        myUserRepository.streamAllUsers(myUserEntity -> {
+            recordCodec.appendRecord(myUserEntity, recordBuilder);
+            myTransferReport.addProcessedRows(1);
+            myTransferReport.addAcceptedRows(1);
+            if (recordBuilder.length() >= RECORD_FLUSH_CHARS) {
+                writeRecords(targetChannel, recordBuilder, myTransferReport);
+            }
+        });
+        writeRecords(targetChannel, recordBuilder, myTransferReport);
+    }
+    
+    private static void writeRecords(FileChannel targetChannel, StringBuilder recordBuilder, TransferReport myTransferReport) {
+        ByteBuffer encodedRecords = StandardCharsets.UTF_8.encode(CharBuffer.wrap(recordBuilder));
+        myTransferReport.addTransferredBytes(encodedRecords.remaining());
+        try {
+            while (encodedRecords.hasRemaining()) {
+                targetChannel.write(encodedRecords);
+            }
+        } catch (IOException myException) {
+            throw new UncheckedIOException(myException);
+        }
+        recordBuilder.setLength(0);
+    }
+    
+    // COPY hands over raw bytes; newlines are the only row boundary we can see without parsing CSV
+    private static class RowCountingOutputStream extends OutputStream {
+        private final OutputStream myTargetStream;
+        private final TransferReport myTransferReport;
+        private boolean isHeaderSkipped;
+        
+        RowCountingOutputStream(OutputStream myTargetStream, TransferReport myTransferReport) {
+            this.myTargetStream = myTargetStream;
+            this.myTransferReport = myTransferReport;
+        }
+        
+        @Override
+        public void write(int byteValue) throws IOException {
+            write(new byte[] {(byte) byteValue}, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] sourceBytes, int sourceOffset, int byteCount) throws IOException {
+            int newlineCount = 0;
+            for (int byteIndex = sourceOffset; byteIndex < sourceOffset + byteCount; byteIndex++) {
+                if (sourceBytes[byteIndex] == '\n') {
+                    newlineCount++;
+                }
+            }
+            if (newlineCount > 0 && !isHeaderSkipped) {
+                newlineCount--;
+                isHeaderSkipped = true;
+            }
+            myTargetStream.write(sourceBytes, sourceOffset, byteCount);
+            myTransferReport.addTransferredBytes(byteCount);
+            myTransferReport.addProcessedRows(newlineCount);
+            myTransferReport.addAcceptedRows(newlineCount);
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            myTargetStream.flush();
+        }
+    }
+}
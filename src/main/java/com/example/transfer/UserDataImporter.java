@@ -0,0 +1,448 @@
+package com.example.transfer;
+
+import com.example.cdc.UserChangeOutbox;
+import com.example.config.DatabaseConfigurationManager;
+import com.example.entity.UserEntity;
+import com.example.repository.BulkInsertResult;
+import com.example.repository.DataAccessCustomException;
+import com.example.repository.UserRepositoryInterface;
+import com.example.util.ValidationUtils;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Three stages joined by bounded queues: one reader, N parsers/validators, one writer on the calling thread.
+// Only a few batches are ever in flight, so memory does not grow with the size of the file.
+public class UserDataImporter {
+    private static final Logger myLoggerInstance = LoggerFactory.getLogger(UserDataImporter.class);
+    private static final int IMPORT_BATCH_SIZE = 5000;
+    private static final int READ_BUFFER_CHARS = 1 << 20;
+    private static final ImportBatch END_OF_INPUT = new ImportBatch(0, List.of());
+    private static final String CREATE_STAGING_SQL = "CREATE TEMP TABLE IF NOT EXISTS user_import_staging ("
+        + "line_number bigint, user_full_name varchar(50), user_email_address varchar(100), "
+        + "user_age_value integer, user_registration_timestamp timestamp) ON COMMIT DELETE ROWS";
+    private static final String COPY_STAGING_SQL = "COPY user_import_staging (line_number, user_full_name, "
+        + "user_email_address, user_age_value, user_registration_timestamp) FROM STDIN WITH (FORMAT csv)";
+    // Hibernate adopts the sequence's real increment (increment_size_mismatch_strategy=fix), so the import must too
+    private static final String SEQUENCE_INCREMENT_SQL = 
+        "SELECT seqincrement FROM pg_sequence WHERE seqrelid = 'user_sequence_table'::regclass";
+    // pooled-lo hands out blocks [value, value + increment) per nextval, exactly as Hibernate does, so ids never collide with ORM inserts
+    private static final String STAGED_USERS_SQL = "WITH id_blocks AS ("
+        + "SELECT nextval('user_sequence_table') AS block_start, block_number - 1 AS block_index "
+        + "FROM generate_series(1, ?) AS block_number), "
+        + "staged_users AS (SELECT staging.*, row_number() OVER (ORDER BY staging.line_number) - 1 AS row_index "
+        + "FROM user_import_staging staging)";
+    private static final String INSERT_STAGED_USERS_SQL = "INSERT INTO app_users (userid, versionnumber, user_full_name, "
+        + "user_email_address, user_age_value, user_registration_timestamp) "
+        + "SELECT id_blocks.block_start + staged_users.row_index % ?, 0, staged_users.user_full_name, "
+        + "staged_users.user_email_address, staged_users.user_age_value, "
+        + "COALESCE(staged_users.user_registration_timestamp, LOCALTIMESTAMP) "
+        + "FROM staged_users JOIN id_blocks ON id_blocks.block_index = staged_users.row_index / ? "
+        + "ON CONFLICT (user_email_address) DO NOTHING RETURNING ";
+    private static final String INSERT_FROM_STAGING_SQL = STAGED_USERS_SQL + " " + INSERT_STAGED_USERS_SQL + "user_email_address";
+    // Same statement with the change records written by a second data-modifying CTE, inside the same transaction
+    private static final String INSERT_FROM_STAGING_WITH_CHANGES_SQL = STAGED_USERS_SQL + ", inserted_users AS (" 
+        + INSERT_STAGED_USERS_SQL + "userid, user_full_name, user_email_address, user_age_value, user_registration_timestamp), "
+        + "recorded_changes AS (INSERT INTO user_change_outbox (user_id, change_type, version_number, changed_fields, "
+        + "user_full_name, user_email_address, user_age_value, user_registration_timestamp, changed_at) "
+        + "SELECT userid, 'CREATED', 0, 'userName,userEmail,userAge,userCreatedAt', user_full_name, user_email_address, "
+        + "user_age_value, user_registration_timestamp, LOCALTIMESTAMP FROM inserted_users) "
+        + "SELECT user_email_address FROM inserted_users";
+    
+    private final UserRepositoryInterface myUserRepository;
+    private final int validationThreads;
+    
+    public UserDataImporter(UserRepositoryInterface myUserRepository) {
+        this(myUserRepository, Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+    
+    public UserDataImporter(UserRepositoryInterface myUserRepository, int validationThreads) {
+        this.myUserRepository = myUserRepository;
+        this.validationThreads = validationThreads;
+    }
+    
+    public TransferReport importUsers(Path sourceFile, Consumer<String> progressListener) {
+        TransferFormat transferFormat = TransferFormat.fromPath(sourceFile);
+        TransferReport myTransferReport = new TransferReport("Import " + sourceFile.getFileName());
+        Path rejectedRowsFile = sourceFile.resolveSibling(sourceFile.getFileName() + ".rejected");
+        boolean isCopySupported = isCopySupported();
+        int idBlockSize = isCopySupported ? readIdBlockSize() : 1;
+        BlockingQueue<ImportBatch> parsedQueue = new ArrayBlockingQueue<>(validationThreads * 2);
+        BlockingQueue<ImportBatch> validatedQueue = new ArrayBlockingQueue<>(validationThreads * 2);
+        AtomicReference<Throwable> pipelineFailure = new AtomicReference<>();
+        AtomicReference<String> headerLine = new AtomicReference<>();
+        ExecutorService pipelineExecutor = Executors.newFixedThreadPool(validationThreads + 1, pipelineTask -> {
+            Thread pipelineThread = new Thread(pipelineTask, "user-import");
+            pipelineThread.setDaemon(true);
+            return pipelineThread;
+        });
+        
+        try (FileChannel sourceChannel = FileChannel.open(sourceFile, StandardOpenOption.READ);
+             TransferProgressReporter progressReporter = new TransferProgressReporter(myTransferReport, progressListener);
+             RejectedRowsWriter rejectedRowsWriter = new RejectedRowsWriter(rejectedRowsFile)) {
+            pipelineExecutor.execute(() -> readBatches(sourceChannel, transferFormat, headerLine, parsedQueue,
+                pipelineFailure, myTransferReport));
+            for (int threadIndex = 0; threadIndex < validationThreads; threadIndex++) {
+                pipelineExecutor.execute(() -> validateBatches(transferFormat, headerLine, parsedQueue, validatedQueue, pipelineFailure));
+            }
+            
+            int finishedValidators = 0;
+            while (finishedValidators < validationThreads) {
+                ImportBatch importBatch = validatedQueue.take();
+                if (importBatch == END_OF_INPUT) {
+                    finishedValidators++;
+                    continue;
+                }
+                // After a failure keep draining so the upstream stages are never left blocked on a full queue
+                if (pipelineFailure.get() != null) {
+                    continue;
+                }
+                try {
+                    if (isCopySupported) {
+                        writeBatchWithCopy(importBatch, idBlockSize);
+                    } else {
+                        writeBatchWithRepository(importBatch);
+                    }
+                    rejectedRowsWriter.writeRejections(importBatch);
+                    int acceptedCount = importBatch.validUsers.size() - importBatch.writeRejectedCount;
+                    myTransferReport.addAcceptedRows(acceptedCount);
+                    myTransferReport.addRejectedRows(importBatch.rejectedLineNumbers.size());
+                    myTransferReport.addProcessedRows(acceptedCount + importBatch.rejectedLineNumbers.size());
+                } catch (RuntimeException myException) {
+                    pipelineFailure.compareAndSet(null, myException);
+                }
+            }
+            if (rejectedRowsWriter.hasRejections()) {
+                myTransferReport.setRejectedRowsFile(rejectedRowsFile);
+            }
+        } catch (IOException myException) {
+            pipelineFailure.compareAndSet(null, myException);
+        } catch (InterruptedException myException) {
+            Thread.currentThread().interrupt();
+            pipelineFailure.compareAndSet(null, myException);
+        } finally {
+            pipelineExecutor.shutdownNow();
+            myTransferReport.markFinished();
+        }
+        
+        if (isCopySupported) {
+            // Rows inserted behind Hibernate's back can turn cached "no such email" query results stale
+            DatabaseConfigurationManager.getMySessionFactory().getCache().evictQueryRegions();
+        }
+        if (pipelineFailure.get() != null) {
+            myLoggerInstance.error("Import of {} failed: {} ({})", sourceFile, pipelineFailure.get().getMessage(), myTransferReport);
+            throw new DataAccessCustomException("Failed to import users", pipelineFailure.get());
+        }
+        myLoggerInstance.info("{}", myTransferReport);
+        return myTransferReport;
+    }
+    
+    private void readBatches(FileChannel sourceChannel, TransferFormat transferFormat, AtomicReference<String> headerLine,
+            BlockingQueue<ImportBatch> parsedQueue, AtomicReference<Throwable> pipelineFailure, TransferReport myTransferReport) {
+        try {
+            // Not closed here: the channel belongs to importUsers
+            BufferedReader sourceReader = new BufferedReader(
+                Channels.newReader(sourceChannel, StandardCharsets.UTF_8), READ_BUFFER_CHARS);
+            long lineNumber = 0;
+            String sourceLine;
+            ImportBatch importBatch = new ImportBatch(1, new ArrayList<>(IMPORT_BATCH_SIZE));
+            while ((sourceLine = sourceReader.readLine()) != null && pipelineFailure.get() == null) {
+                lineNumber++;
+                if (lineNumber == 1 && transferFormat.createCodec().readHeader(sourceLine)) {
+                    headerLine.set(sourceLine);
+                    importBatch = new ImportBatch(2, new ArrayList<>(IMPORT_BATCH_SIZE));
+                    continue;
+                }
+                importBatch.sourceLines.add(sourceLine);
+                myTransferReport.addTransferredBytes(sourceLine.length() + 1);
+                if (importBatch.sourceLines.size() == IMPORT_BATCH_SIZE) {
+                    parsedQueue.put(importBatch);
+                    importBatch = new ImportBatch(lineNumber + 1, new ArrayList<>(IMPORT_BATCH_SIZE));
+                }
+            }
+            if (!importBatch.sourceLines.isEmpty()) {
+                parsedQueue.put(importBatch);
+            }
+        } catch (IOException myException) {
+            pipelineFailure.compareAndSet(null, myException);
+        } catch (InterruptedException myException) {
+            Thread.currentThread().interrupt();
+            pipelineFailure.compareAndSet(null, myException);
+        } finally {
+            try {
+                for (int threadIndex = 0; threadIndex < validationThreads; threadIndex++) {
+                    parsedQueue.put(END_OF_INPUT);
+                }
+            } catch (InterruptedException myException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private void validateBatches(TransferFormat transferFormat, AtomicReference<String> headerLine,
+            BlockingQueue<ImportBatch> parsedQueue, BlockingQueue<ImportBatch> validatedQueue, AtomicReference<Throwable> pipelineFailure) {
+        try {
+            while (true) {
+                ImportBatch importBatch = parsedQueue.take();
+                if (importBatch == END_OF_INPUT) {
+                    break;
+                }
+                try {
+                    validateBatch(importBatch, transferFormat, headerLine.get());
+                } catch (RuntimeException myException) {
+                    pipelineFailure.compareAndSet(null, myException);
+                }
+                validatedQueue.put(importBatch);
+            }
+            validatedQueue.put(END_OF_INPUT);
+        } catch (InterruptedException myException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static void validateBatch(ImportBatch importBatch, TransferFormat transferFormat, String headerLine) {
+        UserRecordCodec recordCodec = transferFormat.createCodec();
+        if (headerLine != null) {
+            recordCodec.readHeader(headerLine);
+        }
+        List<UserEntity> parsedUsers = new ArrayList<>(importBatch.sourceLines.size());
+        List<Long> parsedLineNumbers = new ArrayList<>(importBatch.sourceLines.size());
+        for (int lineIndex = 0; lineIndex < importBatch.sourceLines.size(); lineIndex++) {
+            String sourceLine = importBatch.sourceLines.get(lineIndex);
+            long lineNumber = importBatch.firstLineNumber + lineIndex;
+            if (sourceLine.isBlank()) {
+                continue;
+            }
+            try {
+                UserEntity parsedUser = recordCodec.parseRecord(sourceLine);
+                if (parsedUser.getUserName() != null) parsedUser.setUserName(parsedUser.getUserName().trim());
+                if (parsedUser.getUserEmail() != null) parsedUser.setUserEmail(parsedUser.getUserEmail().trim());
+                parsedUsers.add(parsedUser);
+                parsedLineNumbers.add(lineNumber);
+            } catch (RuntimeException myException) {
+                importBatch.reject(lineNumber, "Неверный формат строки: " + myException.getMessage(), sourceLine);
+            }
+        }
+        
+        int[] validationErrors = ValidationUtils.validateUsersInBulk(parsedUsers);
+        Set<String> batchEmails = new HashSet<>();
+        for (int userIndex = 0; userIndex < parsedUsers.size(); userIndex++) {
+            UserEntity parsedUser = parsedUsers.get(userIndex);
+            long lineNumber = parsedLineNumbers.get(userIndex);
+            String sourceLine = importBatch.sourceLines.get((int) (lineNumber - importBatch.firstLineNumber));
+            if (validationErrors[userIndex] != ValidationUtils.VALID_USER_DATA) {
+                importBatch.reject(lineNumber, ValidationUtils.describeValidationErrors(validationErrors[userIndex]), sourceLine);
+            } else if (!batchEmails.add(parsedUser.getUserEmail())) {
+                importBatch.reject(lineNumber, "Email повторяется в файле: " + parsedUser.getUserEmail(), sourceLine);
+            } else {
+                importBatch.validUsers.add(parsedUser);
+                importBatch.validLineNumbers.add(lineNumber);
+            }
+        }
+    }
+    
+    private void writeBatchWithCopy(ImportBatch importBatch, int idBlockSize) {
+        if (importBatch.validUsers.isEmpty()) {
+            return;
+        }
+        StringBuilder stagingRows = new StringBuilder(importBatch.validUsers.size() * 96);
+        for (int userIndex = 0; userIndex < importBatch.validUsers.size(); userIndex++) {
+            UserEntity validUser = importBatch.validUsers.get(userIndex);
+            stagingRows.append(importBatch.validLineNumbers.get(userIndex)).append(',');
+            CsvUserRecordCodec.appendField(validUser.getUserName(), stagingRows);
+            stagingRows.append(',');
+            CsvUserRecordCodec.appendField(validUser.getUserEmail(), stagingRows);
+            stagingRows.append(',').append(validUser.getUserAge()).append(',')
+                .append(UserRecordCodec.formatTimestamp(validUser.getUserCreatedAt())).append('\n');
+        }
+        byte[] stagingBytes = stagingRows.toString().getBytes(StandardCharsets.UTF_8);
+        int idBlockCount = (importBatch.validUsers.size() + idBlockSize - 1) / idBlockSize;
+        Set<String> insertedEmails = new HashSet<>();
+        
+        Transaction myTransaction = null;
+        Session mySession = DatabaseConfigurationManager.getDatabaseSession();
+        try {
+            myTransaction = mySession.beginTransaction();
+            mySession.doWork(myConnection -> {
+                try (Statement myStatement = myConnection.createStatement()) {
+                    myStatement.execute(CREATE_STAGING_SQL);
+                }
+                CopyIn stagingCopy = myConnection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGING_SQL);
+                try {
+                    stagingCopy.writeToCopy(stagingBytes, 0, stagingBytes.length);
+                    stagingCopy.endCopy();
+                } finally {
+                    if (stagingCopy.isActive()) {
+                        stagingCopy.cancelCopy();
+                    }
+                }
+                try (PreparedStatement myStatement = myConnection.prepareStatement(
+                        UserChangeOutbox.isEnabled() ? INSERT_FROM_STAGING_WITH_CHANGES_SQL : INSERT_FROM_STAGING_SQL)) {
+                    myStatement.setInt(1, idBlockCount);
+                    myStatement.setInt(2, idBlockSize);
+                    myStatement.setInt(3, idBlockSize);
+                    try (ResultSet myResults = myStatement.executeQuery()) {
+                        while (myResults.next()) {
+                            insertedEmails.add(myResults.getString(1));
+                        }
+                    }
+                }
+            });
+            myTransaction.commit();
+        } catch (Exception myException) {
+            if (myTransaction != null) myTransaction.rollback();
+            myLoggerInstance.error("Failed to import batch starting at line {}: {}", importBatch.firstLineNumber, myException.getMessage());
+            throw new DataAccessCustomException("Failed to import users batch", myException);
+        } finally {
+            mySession.close();
+        }
+        
+        for (int userIndex = 0; userIndex < importBatch.validUsers.size(); userIndex++) {
+            String userEmail = importBatch.validUsers.get(userIndex).getUserEmail();
+            if (!insertedEmails.contains(userEmail)) {
+                importBatch.rejectWritten(importBatch.validLineNumbers.get(userIndex), "Email адрес уже зарегистрирован: " + userEmail);
+            }
+        }
+    }
+    
+    private void writeBatchWithRepository(ImportBatch importBatch) {
+        if (importBatch.validUsers.isEmpty()) {
+            return;
+        }
+        Set<String> batchEmails = new HashSet<>(importBatch.validUsers.size() * 2);
+        importBatch.validUsers.forEach(validUser -> batchEmails.add(validUser.getUserEmail()));
+        Set<String> existingEmails = myUserRepository.findExistingEmails(batchEmails);
+        List<UserEntity> usersToInsert = new ArrayList<>(importBatch.validUsers.size());
+        List<Long> insertLineNumbers = new ArrayList<>(importBatch.validUsers.size());
+        for (int userIndex = 0; userIndex < importBatch.validUsers.size(); userIndex++) {
+            UserEntity validUser = importBatch.validUsers.get(userIndex);
+            if (existingEmails.contains(validUser.getUserEmail())) {
+                importBatch.rejectWritten(importBatch.validLineNumbers.get(userIndex),
+                    "Email адрес уже зарегистрирован: " + validUser.getUserEmail());
+            } else {
+                usersToInsert.add(validUser);
+                insertLineNumbers.add(importBatch.validLineNumbers.get(userIndex));
+            }
+        }
+        if (!usersToInsert.isEmpty()) {
+            BulkInsertResult bulkResult = myUserRepository.insertUsersInBulk(usersToInsert);
+            for (BulkInsertResult.RejectedUser rejectedUser : bulkResult.getRejectedUsers()) {
+                importBatch.rejectWritten(insertLineNumbers.get(rejectedUser.getInputPosition()), rejectedUser.getRejectionReason());
+            }
+        }
+    }
+    
+    // Sharded deployments must go through the repository, which knows which database each user belongs to, and
+    // the embedded store has no database to copy into
+    private static boolean isCopySupported() {
+        if (DatabaseConfigurationManager.isShardingConfigured() || DatabaseConfigurationManager.isEmbeddedStorage()) {
+            return false;
+        }
+        try (Session mySession = DatabaseConfigurationManager.getDatabaseSession()) {
+            return mySession.doReturningWork(myConnection -> myConnection.isWrapperFor(PGConnection.class));
+        }
+    }
+    
+    // With an increment of 1 (or a descending sequence) every row draws its own nextval
+    private static int readIdBlockSize() {
+        try (Session mySession = DatabaseConfigurationManager.getDatabaseSession()) {
+            long sequenceIncrement = mySession.doReturningWork(myConnection -> {
+                try (Statement myStatement = myConnection.createStatement();
+                     ResultSet myResults = myStatement.executeQuery(SEQUENCE_INCREMENT_SQL)) {
+                    return myResults.next() ? myResults.getLong(1) : 1L;
+                }
+            });
+            return (int) Math.max(1L, Math.min(sequenceIncrement, IMPORT_BATCH_SIZE));
+        }
+    }
+    
+    private static final class ImportBatch {
+        private final long firstLineNumber;
+        private final List<String> sourceLines;
+        private final List<UserEntity> validUsers = new ArrayList<>();
+        private final List<Long> validLineNumbers = new ArrayList<>();
+        private final List<Long> rejectedLineNumbers = new ArrayList<>();
+        private final List<String> rejectionReasons = new ArrayList<>();
+        private int writeRejectedCount;
+        
+        private ImportBatch(long firstLineNumber, List<String> sourceLines) {
+            this.firstLineNumber = firstLineNumber;
+            this.sourceLines = sourceLines;
+        }
+        
+        private void reject(long lineNumber, String rejectionReason, String sourceLine) {
+            rejectedLineNumbers.add(lineNumber);
+            rejectionReasons.add(rejectionReason + "\t" + sourceLine);
+        }
+        
+        private void rejectWritten(long lineNumber, String rejectionReason) {
+            reject(lineNumber, rejectionReason, sourceLines.get((int) (lineNumber - firstLineNumber)));
+            writeRejectedCount++;
+        }
+    }
+    
+    private static final class RejectedRowsWriter implements AutoCloseable {
+        private final Path rejectedRowsFile;
+        private BufferedWriter myRejectedRowsWriter;
+        
+        private RejectedRowsWriter(Path rejectedRowsFile) {
+            this.rejectedRowsFile = rejectedRowsFile;
+        }
+        
+        private void writeRejections(ImportBatch importBatch) {
+            if (importBatch.rejectedLineNumbers.isEmpty()) {
+                return;
+            }
+            try {
+                if (myRejectedRowsWriter == null) {
+                    myRejectedRowsWriter = Files.newBufferedWriter(rejectedRowsFile, StandardCharsets.UTF_8);
+                    myRejectedRowsWriter.write("line\treason\trow\n");
+                }
+                for (int rejectIndex = 0; rejectIndex < importBatch.rejectedLineNumbers.size(); rejectIndex++) {
+                    myRejectedRowsWriter.write(importBatch.rejectedLineNumbers.get(rejectIndex) + "\t"
+                        + importBatch.rejectionReasons.get(rejectIndex) + "\n");
+                }
+            } catch (IOException myException) {
+                throw new UncheckedIOException(myException);
+            }
+        }
+        
+        private boolean hasRejections() {
+            return myRejectedRowsWriter != null;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (myRejectedRowsWriter != null) {
+                myRejectedRowsWriter.close();
+            }
+        }
+    }
+}
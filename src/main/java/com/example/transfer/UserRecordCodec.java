@@ -0,0 +1,28 @@
+package com.example.transfer;
+
+import com.example.entity.UserEntity;
+
+import java.time.LocalDateTime;
+
+// One user per line in both formats, so export and import stream without holding more than a batch
+interface UserRecordCodec {
+    String headerLine();
+    
+    boolean readHeader(String firstLine);
+    
+    void appendRecord(UserEntity myUserEntity, StringBuilder targetBuilder);
+    
+    UserEntity parseRecord(String recordLine);
+    
+    // PostgreSQL COPY prints timestamps with a space separator; accept that as well as ISO-8601
+    static LocalDateTime parseTimestamp(String timestampValue) {
+        if (timestampValue == null || timestampValue.isEmpty()) {
+            return null;
+        }
+        return LocalDateTime.parse(timestampValue.replace(' ', 'T'));
+    }
+    
+    static String formatTimestamp(LocalDateTime timestampValue) {
+        return timestampValue == null ? "" : timestampValue.toString().replace('T', ' ');
+    }
+}
@@ -1,22 +1,125 @@
 package com.example.util;
 
-import java.util.regex.Pattern;
+import com.example.entity.UserEntity;
+
+import java.util.List;
 
 public class ValidationUtils {
-    private static final Pattern EMAIL_PATTERN = 
-        Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
-    private static final Pattern NAME_PATTERN = 
-        Pattern.compile("^[a-zA-Zа-яА-ЯёЁ\\s-]{2,50}$");
+    public static final int VALID_USER_DATA = 0;
+    public static final int INVALID_NAME = 1;
+    public static final int INVALID_EMAIL = 1 << 1;
+    public static final int INVALID_AGE = 1 << 2;
+    
+    private static final int MIN_NAME_LENGTH = 2;
+    private static final int MAX_NAME_LENGTH = 50;
+    private static final int MIN_TOP_LEVEL_DOMAIN_LENGTH = 2;
     
+    // Single-pass equivalent of ^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\.[A-Za-z]{2,}$
     public static boolean isValidEmail(String email) {
-        return email != null && EMAIL_PATTERN.matcher(email).matches();
+        if (email == null) {
+            return false;
+        }
+        int emailLength = email.length();
+        int atSignIndex = -1;
+        int lastDotIndex = -1;
+        for (int charIndex = 0; charIndex < emailLength; charIndex++) {
+            char currentChar = email.charAt(charIndex);
+            if (currentChar == '@') {
+                if (atSignIndex >= 0) {
+                    return false;
+                }
+                atSignIndex = charIndex;
+            } else if (atSignIndex < 0) {
+                if (!isAsciiLetterOrDigit(currentChar) && currentChar != '+' && currentChar != '_' 
+                        && currentChar != '.' && currentChar != '-') {
+                    return false;
+                }
+            } else if (currentChar == '.') {
+                lastDotIndex = charIndex;
+            } else if (!isAsciiLetterOrDigit(currentChar) && currentChar != '-') {
+                return false;
+            }
+        }
+        // Non-empty local part, non-empty domain label before the last dot, and a letters-only TLD after it
+        if (atSignIndex < 1 || lastDotIndex < atSignIndex + 2 
+                || emailLength - lastDotIndex - 1 < MIN_TOP_LEVEL_DOMAIN_LENGTH) {
+            return false;
+        }
+        for (int charIndex = lastDotIndex + 1; charIndex < emailLength; charIndex++) {
+            if (!isAsciiLetter(email.charAt(charIndex))) {
+                return false;
+            }
+        }
+        return true;
     }
     
+    // Single-pass equivalent of ^[a-zA-Zа-яА-ЯёЁ\s-]{2,50}$ plus the "at least two characters after trim" rule
     public static boolean isValidName(String name) {
-        return name != null && NAME_PATTERN.matcher(name).matches() && name.trim().length() >= 2;
+        if (name == null) {
+            return false;
+        }
+        int nameLength = name.length();
+        if (nameLength < MIN_NAME_LENGTH || nameLength > MAX_NAME_LENGTH) {
+            return false;
+        }
+        int nonWhitespaceCount = 0;
+        for (int charIndex = 0; charIndex < nameLength; charIndex++) {
+            char currentChar = name.charAt(charIndex);
+            if (isAsciiLetter(currentChar) || isCyrillicNameLetter(currentChar) || currentChar == '-') {
+                nonWhitespaceCount++;
+            } else if (!isRegexWhitespace(currentChar)) {
+                return false;
+            }
+        }
+        return nonWhitespaceCount >= MIN_NAME_LENGTH;
     }
     
     public static boolean isValidAge(Integer age) {
         return age != null && age >= 1 && age <= 120;
     }
-}
\ No newline at end of file
+    
+    public static int validateUserFields(String name, String email, Integer age) {
+        int errorCodes = VALID_USER_DATA;
+        if (!isValidName(name)) errorCodes |= INVALID_NAME;
+        if (!isValidEmail(email)) errorCodes |= INVALID_EMAIL;
+        if (!isValidAge(age)) errorCodes |= INVALID_AGE;
+        return errorCodes;
+    }
+    
+    public static int[] validateUsersInBulk(List<UserEntity> users) {
+        int[] errorCodes = new int[users.size()];
+        for (int userIndex = 0; userIndex < errorCodes.length; userIndex++) {
+            UserEntity user = users.get(userIndex);
+            errorCodes[userIndex] = validateUserFields(user.getUserName(), user.getUserEmail(), user.getUserAge());
+        }
+        return errorCodes;
+    }
+    
+    private static boolean isAsciiLetter(char currentChar) {
+        return (currentChar >= 'a' && currentChar <= 'z') || (currentChar >= 'A' && currentChar <= 'Z');
+    }
+    
+    private static boolean isAsciiLetterOrDigit(char currentChar) {
+        return isAsciiLetter(currentChar) || (currentChar >= '0' && currentChar <= '9');
+    }
+    
+    private static boolean isCyrillicNameLetter(char currentChar) {
+        return (currentChar >= 'а' && currentChar <= 'я') || (currentChar >= 'А' && currentChar <= 'Я') 
+            || currentChar == 'ё' || currentChar == 'Ё';
+    }
+    
+    private static boolean isRegexWhitespace(char currentChar) {
+        return currentChar == ' ' || currentChar == '\t' || currentChar == '\n' 
+            || currentChar == '\u000B' || currentChar == '\f' || currentChar == '\r';
+    }
+    
+    public static String describeValidationErrors(int validationErrors) {
+        if ((validationErrors & INVALID_NAME) != 0) {
+            return "Имя должно содержать только буквы и быть от 2 до 50 символов";
+        }
+        if ((validationErrors & INVALID_EMAIL) != 0) {
+            return "Неверный формат email";
+        }
+        return "Возраст должен быть от 1 до 120";
+    }
+}
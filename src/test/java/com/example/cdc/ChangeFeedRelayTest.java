@@ -0,0 +1,163 @@
+package com.example.cdc;
+
+import com.example.config.DatabaseConfigurationManager;
+import com.example.entity.UserChangeRecord;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Outbox ids are written by hand so the tests decide where the gaps are. H2 cannot report running transactions,
+// so the relay settles a gap after cdc.relay.gap-timeout-ms, which the surefire configuration keeps short.
+class ChangeFeedRelayTest {
+    private static final long GAP_TIMEOUT_MILLIS = Long.getLong("cdc.relay.gap-timeout-ms", 10_000);
+    
+    private SessionFactory mySessionFactory;
+    private RecordingSink myRecordingSink;
+    
+    @BeforeEach
+    void clearOutbox() {
+        mySessionFactory = DatabaseConfigurationManager.getMySessionFactory();
+        myRecordingSink = new RecordingSink();
+        executeUpdate("DELETE FROM user_change_outbox");
+        executeUpdate("CREATE TABLE IF NOT EXISTS user_change_checkpoints (relay_name VARCHAR(100) PRIMARY KEY, last_change_id BIGINT NOT NULL)");
+        executeUpdate("DELETE FROM user_change_checkpoints");
+    }
+    
+    @Test
+    void publishesOnlyGapFreePrefixUntilGapSettles() throws InterruptedException {
+        insertChanges(1, 2, 4);
+        ChangeFeedRelay changeRelay = newRelay();
+        
+        assertEquals(2, changeRelay.pollOnce());
+        assertEquals(0, changeRelay.pollOnce());
+        assertEquals(0, changeRelay.pollOnce());
+        assertEquals(List.of(1L, 2L), myRecordingSink.publishedChangeIds);
+        assertEquals(2L, changeRelay.getCheckpointChangeId());
+        
+        // Nothing fills id 3 within the timeout, so it is taken as a rolled-back insert
+        Thread.sleep(GAP_TIMEOUT_MILLIS + 50);
+        assertEquals(1, changeRelay.pollOnce());
+        assertEquals(List.of(1L, 2L, 4L), myRecordingSink.publishedChangeIds);
+        assertEquals(4L, changeRelay.getCheckpointChangeId());
+    }
+    
+    @Test
+    void gapFilledByLateCommitIsPublishedInOrder() {
+        insertChanges(1, 3);
+        ChangeFeedRelay changeRelay = newRelay();
+        
+        assertEquals(1, changeRelay.pollOnce());
+        assertEquals(0, changeRelay.pollOnce());
+        insertChanges(2);
+        
+        assertEquals(2, changeRelay.pollOnce());
+        assertEquals(List.of(1L, 2L, 3L), myRecordingSink.publishedChangeIds);
+    }
+    
+    @Test
+    void restartedRelayResumesAfterCheckpointAndPublishedRecordsArePruned() {
+        insertChanges(1, 2);
+        newRelay().drain();
+        
+        assertEquals(0L, countOutboxRecords());
+        insertChanges(3);
+        ChangeFeedRelay restartedRelay = newRelay();
+        assertEquals(2L, restartedRelay.getCheckpointChangeId());
+        restartedRelay.drain();
+        
+        assertEquals(List.of(1L, 2L, 3L), myRecordingSink.publishedChangeIds);
+        assertEquals(0L, countOutboxRecords());
+    }
+    
+    @Test
+    void failedBatchKeepsCheckpointAndIsDeliveredAgain() {
+        insertChanges(1, 2);
+        ChangeFeedRelay changeRelay = newRelay();
+        myRecordingSink.failuresLeft = 1;
+        
+        assertEquals(0, changeRelay.pollOnce());
+        assertEquals(0L, changeRelay.getCheckpointChangeId());
+        assertEquals(2L, countOutboxRecords());
+        
+        assertEquals(2, changeRelay.pollOnce());
+        assertEquals(List.of(1L, 2L), myRecordingSink.publishedChangeIds);
+        assertEquals(0L, countOutboxRecords());
+    }
+    
+    private ChangeFeedRelay newRelay() {
+        return new ChangeFeedRelay("test", mySessionFactory, List.of(myRecordingSink));
+    }
+    
+    private void insertChanges(long... changeIds) {
+        inTransaction(mySession -> mySession.doWork(myConnection -> {
+            try (PreparedStatement myStatement = myConnection.prepareStatement("INSERT INTO user_change_outbox "
+                    + "(change_id, user_id, change_type, version_number, changed_at) VALUES (?, ?, 'CREATED', 0, CURRENT_TIMESTAMP)")) {
+                for (long changeId : changeIds) {
+                    myStatement.setLong(1, changeId);
+                    myStatement.setLong(2, 1000 + changeId);
+                    myStatement.addBatch();
+                }
+                myStatement.executeBatch();
+            }
+        }));
+    }
+    
+    private long countOutboxRecords() {
+        try (Session mySession = mySessionFactory.openSession()) {
+            return mySession.doReturningWork(myConnection -> {
+                try (Statement myStatement = myConnection.createStatement();
+                     ResultSet myResults = myStatement.executeQuery("SELECT COUNT(*) FROM user_change_outbox")) {
+                    myResults.next();
+                    return myResults.getLong(1);
+                }
+            });
+        }
+    }
+    
+    private void executeUpdate(String sqlStatement) {
+        inTransaction(mySession -> mySession.doWork(myConnection -> {
+            try (Statement myStatement = myConnection.createStatement()) {
+                myStatement.executeUpdate(sqlStatement);
+            }
+        }));
+    }
+    
+    private void inTransaction(Consumer<Session> sessionWork) {
+        try (Session mySession = mySessionFactory.openSession()) {
+            Transaction myTransaction = mySession.beginTransaction();
+            sessionWork.accept(mySession);
+            myTransaction.commit();
+        }
+    }
+    
+    private static class RecordingSink implements UserChangeSink {
+        private final List<Long> publishedChangeIds = new ArrayList<>();
+        private int failuresLeft;
+        
+        @Override
+        public String getSinkName() {
+            return "recording";
+        }
+        
+        @Override
+        public void publish(List<UserChangeRecord> changeBatch) throws IOException {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new IOException("sink unavailable");
+            }
+            changeBatch.forEach(changeRecord -> publishedChangeIds.add(changeRecord.getChangeId()));
+        }
+    }
+}
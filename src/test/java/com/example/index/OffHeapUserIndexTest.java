@@ -0,0 +1,123 @@
+package com.example.index;
+
+import com.example.entity.UserEntity;
+import com.example.repository.UserRepositoryInterface;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Live writes land while the background load streams an older snapshot; the snapshot must never win
+class OffHeapUserIndexTest {
+    
+    @Test
+    void loadKeepsEmailTakenByLiveWrite() {
+        OffHeapUserIndex myUserIndex = new OffHeapUserIndex(16);
+        myUserIndex.loadFrom(streamingRepository(List.of(user(5L, 0L, "old@example.com")), () -> {
+            // User 5 moves to a new email before it was indexed, then user 9 registers with the freed one
+            myUserIndex.applyFieldUpdate(5L, 1L, null, "new@example.com", null);
+            myUserIndex.upsert(user(9L, 0L, "old@example.com"));
+        }));
+        
+        assertEquals(9L, myUserIndex.findByEmail("old@example.com").getUserId());
+        assertEquals(0L, myUserIndex.findById(9L).getVersionNumber());
+        assertNull(myUserIndex.findById(5L));
+    }
+    
+    @Test
+    void loadSkipsRowOlderThanLiveVersion() {
+        OffHeapUserIndex myUserIndex = new OffHeapUserIndex(16);
+        myUserIndex.loadFrom(streamingRepository(List.of(user(5L, 1L, "old@example.com"), user(6L, 0L, "six@example.com")),
+            () -> myUserIndex.upsert(user(5L, 2L, "new@example.com"))));
+        
+        assertEquals("new@example.com", myUserIndex.findById(5L).getUserEmail());
+        assertEquals(2L, myUserIndex.findById(5L).getVersionNumber());
+        assertNull(myUserIndex.findByEmail("old@example.com"));
+        assertEquals(6L, myUserIndex.findByEmail("six@example.com").getUserId());
+        assertEquals(2, myUserIndex.size());
+    }
+    
+    @Test
+    void loadDoesNotResurrectRemovedRow() {
+        OffHeapUserIndex myUserIndex = new OffHeapUserIndex(16);
+        myUserIndex.loadFrom(streamingRepository(List.of(user(5L, 0L, "five@example.com")), () -> myUserIndex.remove(5L)));
+        
+        assertNull(myUserIndex.findById(5L));
+        assertNull(myUserIndex.findByEmail("five@example.com"));
+    }
+    
+    @Test
+    void liveWriteReplacesRowThatLostItsEmail() {
+        OffHeapUserIndex myUserIndex = new OffHeapUserIndex(16);
+        myUserIndex.upsert(user(5L, 0L, "shared@example.com"));
+        // Email is unique in the table, so the committed write proves user 5 no longer holds it
+        myUserIndex.upsert(user(9L, 0L, "shared@example.com"));
+        
+        assertEquals(9L, myUserIndex.findByEmail("shared@example.com").getUserId());
+        assertNull(myUserIndex.findById(5L));
+    }
+    
+    @Test
+    void staleReadDoesNotResurrectRemovedRow() {
+        OffHeapUserIndex myUserIndex = new OffHeapUserIndex(16);
+        myUserIndex.upsert(user(5L, 0L, "five@example.com"));
+        // The miss path read the row, then a delete committed and invalidated it before the read was stored
+        long readStamp = myUserIndex.changeStamp();
+        myUserIndex.remove(5L);
+        
+        assertFalse(myUserIndex.upsertIfUnchanged(user(5L, 0L, "five@example.com"), readStamp));
+        assertNull(myUserIndex.findById(5L));
+        assertNull(myUserIndex.findByEmail("five@example.com"));
+    }
+    
+    @Test
+    void staleReadDoesNotOverwriteUpdateOfUnindexedRow() {
+        OffHeapUserIndex myUserIndex = new OffHeapUserIndex(16);
+        long readStamp = myUserIndex.changeStamp();
+        // No slot to compare versions against, so only the stamp shows the read is behind
+        myUserIndex.applyFieldUpdate(5L, 1L, null, "new@example.com", null);
+        
+        assertFalse(myUserIndex.upsertIfUnchanged(user(5L, 0L, "old@example.com"), readStamp));
+        assertNull(myUserIndex.findByEmail("old@example.com"));
+        
+        assertTrue(myUserIndex.upsertIfUnchanged(user(5L, 1L, "new@example.com"), myUserIndex.changeStamp()));
+        assertEquals(5L, myUserIndex.findByEmail("new@example.com").getUserId());
+    }
+    
+    @Test
+    void readIsStoredWhenOnlyOtherUsersChanged() {
+        OffHeapUserIndex myUserIndex = new OffHeapUserIndex(16);
+        long readStamp = myUserIndex.changeStamp();
+        myUserIndex.remove(6L);
+        
+        assertTrue(myUserIndex.upsertIfUnchanged(user(5L, 0L, "five@example.com"), readStamp));
+        assertEquals(5L, myUserIndex.findByEmail("five@example.com").getUserId());
+    }
+    
+    private static UserEntity user(long userIdValue, long versionNumber, String userEmail) {
+        UserEntity myUserEntity = new UserEntity("User", userEmail, 30);
+        myUserEntity.setUserId(userIdValue);
+        myUserEntity.setVersionNumber(versionNumber);
+        return myUserEntity;
+    }
+    
+    // Runs the live writes after the stream has started, then hands out the snapshot rows
+    @SuppressWarnings("unchecked")
+    private static UserRepositoryInterface streamingRepository(List<UserEntity> snapshotUsers, Runnable liveWrites) {
+        return (UserRepositoryInterface) Proxy.newProxyInstance(UserRepositoryInterface.class.getClassLoader(),
+            new Class<?>[] {UserRepositoryInterface.class}, (proxy, method, methodArgs) -> {
+                if (!method.getName().equals("streamAllUsers")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                liveWrites.run();
+                snapshotUsers.forEach((Consumer<UserEntity>) methodArgs[0]);
+                return (long) snapshotUsers.size();
+            });
+    }
+}
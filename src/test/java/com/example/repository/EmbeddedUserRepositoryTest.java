@@ -0,0 +1,122 @@
+package com.example.repository;
+
+import com.example.entity.UserEntity;
+import com.example.storage.EmbeddedUserStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddedUserRepositoryTest extends UserRepositoryContractTest {
+    @TempDir
+    Path myStoreDirectory;
+    
+    private EmbeddedUserStore myUserStore;
+    
+    @BeforeEach
+    void openStore() {
+        myUserStore = new EmbeddedUserStore(myStoreDirectory);
+        myUserRepository = new EmbeddedUserRepository(myUserStore);
+    }
+    
+    @AfterEach
+    void closeStore() {
+        myUserStore.close();
+    }
+    
+    @Test
+    void restartReplaysInsertsUpdatesAndDeletes() {
+        Long keptUserId = myUserRepository.MyInsertNewUser(new UserEntity("Kept", "kept@example.com", 30)).getUserId();
+        Long removedUserId = myUserRepository.MyInsertNewUser(new UserEntity("Removed", "removed@example.com", 31)).getUserId();
+        assertTrue(myUserRepository.updateUserFields(keptUserId, 0L, "Кира", "kira@example.com", 32));
+        assertTrue(myUserRepository.removeUserById(removedUserId));
+        
+        reopenStore();
+        
+        UserEntity keptUser = myUserRepository.findUserById(keptUserId).orElseThrow();
+        assertEquals("Кира", keptUser.getUserName());
+        assertEquals(1L, keptUser.getVersionNumber());
+        assertEquals(keptUserId, myUserRepository.findUserByEmailAddress("kira@example.com").orElseThrow().getUserId());
+        assertTrue(myUserRepository.findUserByEmailAddress("kept@example.com").isEmpty());
+        assertTrue(myUserRepository.findUserById(removedUserId).isEmpty());
+        assertTrue(myUserRepository.MyInsertNewUser(new UserEntity("Next", "next@example.com", 33)).getUserId() > removedUserId);
+    }
+    
+    @Test
+    void recoveryDropsTornTail() throws IOException {
+        Long firstUserId = myUserRepository.MyInsertNewUser(new UserEntity("First", "first@example.com", 30)).getUserId();
+        Long secondUserId = myUserRepository.MyInsertNewUser(new UserEntity("Second", "second@example.com", 31)).getUserId();
+        Long tornUserId = myUserRepository.MyInsertNewUser(new UserEntity("Torn", "torn@example.com", 32)).getUserId();
+        myUserStore.close();
+        // A crash in the middle of the last append leaves only part of its frame on disk
+        Path lastLog = listLogs().get(listLogs().size() - 1);
+        try (FileChannel logChannel = FileChannel.open(lastLog, StandardOpenOption.WRITE)) {
+            logChannel.truncate(logChannel.size() - 5);
+        }
+        
+        openStore();
+        
+        assertEquals(2, myUserStore.size());
+        assertTrue(myUserRepository.findUserById(firstUserId).isPresent());
+        assertTrue(myUserRepository.findUserById(secondUserId).isPresent());
+        assertTrue(myUserRepository.findUserById(tornUserId).isEmpty());
+        assertTrue(myUserRepository.findUserByEmailAddress("torn@example.com").isEmpty());
+        // Appends continue after the last whole record and survive the next restart
+        Long retriedUserId = myUserRepository.MyInsertNewUser(new UserEntity("Torn", "torn@example.com", 32)).getUserId();
+        reopenStore();
+        assertEquals(3, myUserStore.size());
+        assertEquals(retriedUserId, myUserRepository.findUserByEmailAddress("torn@example.com").orElseThrow().getUserId());
+    }
+    
+    @Test
+    void recoveryCombinesSnapshotWithLaterLog() throws IOException {
+        Long[] userIds = new Long[5];
+        for (int userIndex = 0; userIndex < userIds.length; userIndex++) {
+            userIds[userIndex] = myUserRepository.MyInsertNewUser(
+                new UserEntity("Snap", "snap" + userIndex + "@example.com", 20 + userIndex)).getUserId();
+        }
+        List<Path> logsBeforeSnapshot = listLogs();
+        myUserStore.writeSnapshot();
+        assertTrue(Files.exists(myStoreDirectory.resolve("users.snapshot")));
+        assertTrue(logsBeforeSnapshot.stream().noneMatch(Files::exists));
+        assertTrue(myUserRepository.updateUserFields(userIds[1], 0L, null, "moved@example.com", null));
+        assertTrue(myUserRepository.removeUserByIdAndVersion(userIds[3], 0L));
+        
+        reopenStore();
+        
+        assertEquals(4, myUserStore.size());
+        assertEquals(userIds[1], myUserRepository.findUserByEmailAddress("moved@example.com").orElseThrow().getUserId());
+        assertTrue(myUserRepository.findUserByEmailAddress("snap1@example.com").isEmpty());
+        assertTrue(myUserRepository.findUserById(userIds[3]).isEmpty());
+        assertEquals(24, myUserRepository.findUserById(userIds[4]).orElseThrow().getUserAge());
+        assertTrue(myUserRepository.MyInsertNewUser(new UserEntity("After", "after@example.com", 40)).getUserId() > userIds[4]);
+        
+        // A second compaction folds the post-snapshot changes in as well
+        myUserStore.writeSnapshot();
+        reopenStore();
+        assertEquals(5, myUserStore.size());
+        assertEquals(1L, myUserRepository.findUserById(userIds[1]).orElseThrow().getVersionNumber());
+    }
+    
+    private void reopenStore() {
+        myUserStore.close();
+        openStore();
+    }
+    
+    private List<Path> listLogs() throws IOException {
+        try (Stream<Path> storeFiles = Files.list(myStoreDirectory)) {
+            return storeFiles.filter(storeFile -> storeFile.getFileName().toString().matches("users-\\d{20}\\.log")).sorted().toList();
+        }
+    }
+}
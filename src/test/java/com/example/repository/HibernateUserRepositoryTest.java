@@ -0,0 +1,13 @@
+package com.example.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+
+// Runs against the in-memory H2 database named by database.config in the surefire configuration. Other test classes
+// share it, and a database that was shut down cannot be started again, so it stays open until the test JVM exits.
+class HibernateUserRepositoryTest extends UserRepositoryContractTest {
+    
+    @BeforeEach
+    void createRepository() {
+        myUserRepository = new UserRepositoryImplementation();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Defaults apart from circuit-breaker.open-duration-ms, which the surefire configuration keeps short
+class RepositoryCircuitBreakerTest {
+    private static final long OPEN_DURATION_MILLIS = Long.getLong("circuit-breaker.open-duration-ms", 5000);
+    private static final int MINIMUM_CALLS = Integer.getInteger("circuit-breaker.minimum-calls", 10);
+    private static final int HALF_OPEN_TRIAL_CALLS = Integer.getInteger("circuit-breaker.half-open-calls", 3);
+    
+    @Test
+    void opensOnlyOnceEnoughCallsFailed() {
+        RepositoryCircuitBreaker myCircuitBreaker = new RepositoryCircuitBreaker();
+        for (int callNumber = 1; callNumber < MINIMUM_CALLS; callNumber++) {
+            myCircuitBreaker.recordFailure();
+        }
+        assertEquals(RepositoryCircuitBreaker.State.CLOSED, myCircuitBreaker.currentState());
+        
+        myCircuitBreaker.recordFailure();
+        assertEquals(RepositoryCircuitBreaker.State.OPEN, myCircuitBreaker.currentState());
+        assertFalse(myCircuitBreaker.tryAcquirePermission());
+    }
+    
+    @Test
+    void halfOpenHandsOutOnlyTrialPermitsUntilTheyAllSucceed() throws InterruptedException {
+        RepositoryCircuitBreaker myCircuitBreaker = openAndWaitForHalfOpen();
+        for (int trialCall = 0; trialCall < HALF_OPEN_TRIAL_CALLS; trialCall++) {
+            assertTrue(myCircuitBreaker.tryAcquirePermission());
+        }
+        assertEquals(RepositoryCircuitBreaker.State.HALF_OPEN, myCircuitBreaker.currentState());
+        // The trial calls are still running, so everyone else keeps failing fast
+        assertFalse(myCircuitBreaker.tryAcquirePermission());
+        
+        for (int trialCall = 0; trialCall < HALF_OPEN_TRIAL_CALLS; trialCall++) {
+            myCircuitBreaker.recordSuccess();
+        }
+        assertEquals(RepositoryCircuitBreaker.State.CLOSED, myCircuitBreaker.currentState());
+        assertTrue(myCircuitBreaker.tryAcquirePermission());
+    }
+    
+    @Test
+    void failedTrialCallReopens() throws InterruptedException {
+        RepositoryCircuitBreaker myCircuitBreaker = openAndWaitForHalfOpen();
+        assertTrue(myCircuitBreaker.tryAcquirePermission());
+        
+        myCircuitBreaker.recordFailure();
+        
+        assertEquals(RepositoryCircuitBreaker.State.OPEN, myCircuitBreaker.currentState());
+        assertFalse(myCircuitBreaker.tryAcquirePermission());
+    }
+    
+    private static RepositoryCircuitBreaker openAndWaitForHalfOpen() throws InterruptedException {
+        RepositoryCircuitBreaker myCircuitBreaker = new RepositoryCircuitBreaker();
+        myCircuitBreaker.forceOpen();
+        assertFalse(myCircuitBreaker.tryAcquirePermission());
+        Thread.sleep(OPEN_DURATION_MILLIS + 50);
+        return myCircuitBreaker;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.repository;
+
+import com.example.entity.UserEntity;
+import org.hibernate.exception.JDBCConnectionException;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A call is only repeated when repeating it cannot change what the caller is told
+class ResilientUserRepositoryTest {
+    
+    @Test
+    void classifiesFailuresBySqlState() {
+        assertEquals(ResilientUserRepository.FailureKind.CONTENTION, ResilientUserRepository.classifyFailure(sqlFailure("40001")));
+        assertEquals(ResilientUserRepository.FailureKind.CONTENTION, ResilientUserRepository.classifyFailure(sqlFailure("40P01")));
+        assertEquals(ResilientUserRepository.FailureKind.TIMEOUT, ResilientUserRepository.classifyFailure(sqlFailure("57014")));
+        assertEquals(ResilientUserRepository.FailureKind.CONNECTION, ResilientUserRepository.classifyFailure(sqlFailure("57P01")));
+        assertEquals(ResilientUserRepository.FailureKind.CONNECTION, ResilientUserRepository.classifyFailure(brokenConnection()));
+        assertEquals(ResilientUserRepository.FailureKind.CONNECTION_NOT_ACQUIRED, ResilientUserRepository.classifyFailure(
+            new DataAccessCustomException("pool", new SQLTransientConnectionException("Connection is not available"))));
+        assertEquals(ResilientUserRepository.FailureKind.NONE, ResilientUserRepository.classifyFailure(sqlFailure("23505")));
+        assertEquals(ResilientUserRepository.FailureKind.NONE,
+            ResilientUserRepository.classifyFailure(new RepositoryUnavailableException("rejected")));
+    }
+    
+    @Test
+    void onlyReadsAndGuardedWritesRetryAfterBrokenConnection() {
+        assertTrue(ResilientUserRepository.RetryMode.READ.allowsRetry(ResilientUserRepository.FailureKind.CONNECTION));
+        assertTrue(ResilientUserRepository.RetryMode.GUARDED_WRITE.allowsRetry(ResilientUserRepository.FailureKind.CONNECTION));
+        assertFalse(ResilientUserRepository.RetryMode.WRITE.allowsRetry(ResilientUserRepository.FailureKind.CONNECTION));
+        assertTrue(ResilientUserRepository.RetryMode.WRITE.allowsRetry(ResilientUserRepository.FailureKind.CONTENTION));
+        assertTrue(ResilientUserRepository.RetryMode.WRITE.allowsRetry(ResilientUserRepository.FailureKind.CONNECTION_NOT_ACQUIRED));
+        assertFalse(ResilientUserRepository.RetryMode.NONE.allowsRetry(ResilientUserRepository.FailureKind.CONTENTION));
+        assertFalse(ResilientUserRepository.RetryMode.READ.allowsRetry(ResilientUserRepository.FailureKind.TIMEOUT));
+        assertFalse(ResilientUserRepository.RetryMode.READ.allowsRetry(ResilientUserRepository.FailureKind.NONE));
+    }
+    
+    @Test
+    void readIsRetriedAfterBrokenConnection() {
+        UserEntity storedUser = new UserEntity("Анна", "anna@example.com", 30);
+        ScriptedRepository scriptedRepository = new ScriptedRepository(brokenConnection());
+        ResilientUserRepository myUserRepository = scriptedRepository.wrap(Optional.of(storedUser));
+        
+        assertSame(storedUser, myUserRepository.findUserById(5L).orElseThrow());
+        assertEquals(2, scriptedRepository.callCount.get());
+    }
+    
+    @Test
+    void deleteByIdIsNotRetriedAfterBrokenConnection() {
+        // The delete may have committed; a repeat would find nothing and report the user as never there
+        RuntimeException lostCommit = brokenConnection();
+        ScriptedRepository scriptedRepository = new ScriptedRepository(lostCommit);
+        ResilientUserRepository myUserRepository = scriptedRepository.wrap(Boolean.FALSE);
+        
+        assertSame(lostCommit, assertThrows(RuntimeException.class, () -> myUserRepository.removeUserById(5L)));
+        assertEquals(1, scriptedRepository.callCount.get());
+        
+        ScriptedRepository bulkRepository = new ScriptedRepository(brokenConnection());
+        assertThrows(RuntimeException.class, () -> bulkRepository.wrap(null).removeUsersByIds(List.of(5L, 6L)));
+        assertEquals(1, bulkRepository.callCount.get());
+    }
+    
+    @Test
+    void deleteByIdIsRetriedAfterDeadlock() {
+        ScriptedRepository scriptedRepository = new ScriptedRepository(sqlFailure("40P01"));
+        
+        assertTrue(scriptedRepository.wrap(Boolean.TRUE).removeUserById(5L));
+        assertEquals(2, scriptedRepository.callCount.get());
+    }
+    
+    private static RuntimeException sqlFailure(String sqlState) {
+        return new DataAccessCustomException("failed", new SQLException("failed", sqlState));
+    }
+    
+    private static RuntimeException brokenConnection() {
+        return new JDBCConnectionException("I/O error", new SQLException("An I/O error occurred", "08006"));
+    }
+    
+    // Throws the scripted failures in order, then answers every call with the same result
+    private static class ScriptedRepository {
+        private final Deque<RuntimeException> myFailures = new ArrayDeque<>();
+        private final AtomicInteger callCount = new AtomicInteger();
+        
+        private ScriptedRepository(RuntimeException... scriptedFailures) {
+            myFailures.addAll(List.of(scriptedFailures));
+        }
+        
+        private ResilientUserRepository wrap(Object callResult) {
+            UserRepositoryInterface delegateRepository = (UserRepositoryInterface) Proxy.newProxyInstance(
+                UserRepositoryInterface.class.getClassLoader(), new Class<?>[] {UserRepositoryInterface.class},
+                (proxy, method, methodArgs) -> {
+                    callCount.incrementAndGet();
+                    if (!myFailures.isEmpty()) {
+                        throw myFailures.poll();
+                    }
+                    return callResult;
+                });
+            return new ResilientUserRepository(delegateRepository, new RepositoryCircuitBreaker());
+        }
+    }
+}
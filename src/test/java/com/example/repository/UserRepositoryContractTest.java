@@ -0,0 +1,183 @@
+package com.example.repository;
+
+import com.example.entity.UserEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Behaviour every UserRepositoryInterface implementation must share; subclasses supply the repository. Emails are unique
+// per test, so an implementation backed by a shared database needs no cleanup between tests.
+abstract class UserRepositoryContractTest {
+    private static final AtomicLong myEmailCounter = new AtomicLong(System.nanoTime());
+    
+    protected UserRepositoryInterface myUserRepository;
+    
+    @Test
+    void insertAssignsIdVersionAndCreationTime() {
+        String userEmail = uniqueEmail("insert");
+        UserEntity insertedUser = myUserRepository.MyInsertNewUser(new UserEntity("Анна", userEmail, 30));
+        
+        assertNotNull(insertedUser.getUserId());
+        assertEquals(0L, insertedUser.getVersionNumber());
+        assertNotNull(insertedUser.getUserCreatedAt());
+        UserEntity loadedUser = myUserRepository.findUserById(insertedUser.getUserId()).orElseThrow();
+        assertEquals("Анна", loadedUser.getUserName());
+        assertEquals(userEmail, loadedUser.getUserEmail());
+        assertEquals(30, loadedUser.getUserAge());
+        assertEquals(insertedUser.getUserId(), myUserRepository.findUserByEmailAddress(userEmail).orElseThrow().getUserId());
+        assertTrue(myUserRepository.checkIfEmailExists(userEmail));
+        assertFalse(myUserRepository.checkIfEmailExists(uniqueEmail("absent")));
+    }
+    
+    @Test
+    void insertRejectsDuplicateEmail() {
+        String userEmail = uniqueEmail("duplicate");
+        myUserRepository.MyInsertNewUser(new UserEntity("First", userEmail, 30));
+        
+        assertThrows(DuplicateEmailException.class, () -> myUserRepository.MyInsertNewUser(new UserEntity("Second", userEmail, 31)));
+        assertEquals("First", myUserRepository.findUserByEmailAddress(userEmail).orElseThrow().getUserName());
+    }
+    
+    @Test
+    void updateUserFieldsRequiresCurrentVersion() {
+        String oldEmail = uniqueEmail("old");
+        String newEmail = uniqueEmail("new");
+        Long userIdValue = myUserRepository.MyInsertNewUser(new UserEntity("Boris", oldEmail, 40)).getUserId();
+        
+        assertFalse(myUserRepository.updateUserFields(userIdValue, 5L, "Stale", null, null));
+        assertEquals("Boris", myUserRepository.findUserById(userIdValue).orElseThrow().getUserName());
+        
+        assertTrue(myUserRepository.updateUserFields(userIdValue, 0L, "Борис", newEmail, null));
+        UserEntity updatedUser = myUserRepository.findUserById(userIdValue).orElseThrow();
+        assertEquals(1L, updatedUser.getVersionNumber());
+        assertEquals("Борис", updatedUser.getUserName());
+        assertEquals(newEmail, updatedUser.getUserEmail());
+        assertEquals(40, updatedUser.getUserAge());
+        assertTrue(myUserRepository.findUserByEmailAddress(oldEmail).isEmpty());
+        assertFalse(myUserRepository.updateUserFields(userIdValue, 0L, null, null, 41));
+    }
+    
+    @Test
+    void updateUserFieldsRejectsTakenEmail() {
+        String takenEmail = uniqueEmail("taken");
+        myUserRepository.MyInsertNewUser(new UserEntity("Owner", takenEmail, 30));
+        Long userIdValue = myUserRepository.MyInsertNewUser(new UserEntity("Other", uniqueEmail("other"), 30)).getUserId();
+        
+        assertThrows(DuplicateEmailException.class, () -> myUserRepository.updateUserFields(userIdValue, 0L, null, takenEmail, null));
+        assertEquals(0L, myUserRepository.findUserById(userIdValue).orElseThrow().getVersionNumber());
+    }
+    
+    @Test
+    void updateExistingUserRejectsStaleVersion() {
+        Long userIdValue = myUserRepository.MyInsertNewUser(new UserEntity("Vera", uniqueEmail("merge"), 25)).getUserId();
+        UserEntity currentUser = myUserRepository.findUserById(userIdValue).orElseThrow();
+        currentUser.setUserAge(26);
+        assertEquals(1L, myUserRepository.updateExistingUser(currentUser).getVersionNumber());
+        
+        UserEntity staleUser = myUserRepository.findUserById(userIdValue).orElseThrow();
+        staleUser.setVersionNumber(0L);
+        staleUser.setUserAge(27);
+        assertThrows(DataAccessCustomException.class, () -> myUserRepository.updateExistingUser(staleUser));
+        assertEquals(26, myUserRepository.findUserById(userIdValue).orElseThrow().getUserAge());
+    }
+    
+    @Test
+    void removeUserByIdAndVersionRequiresCurrentVersion() {
+        String userEmail = uniqueEmail("remove");
+        Long userIdValue = myUserRepository.MyInsertNewUser(new UserEntity("Gleb", userEmail, 50)).getUserId();
+        
+        assertFalse(myUserRepository.removeUserByIdAndVersion(userIdValue, 3L));
+        assertTrue(myUserRepository.findUserById(userIdValue).isPresent());
+        assertTrue(myUserRepository.removeUserByIdAndVersion(userIdValue, 0L));
+        assertTrue(myUserRepository.findUserById(userIdValue).isEmpty());
+        assertFalse(myUserRepository.checkIfEmailExists(userEmail));
+        assertFalse(myUserRepository.removeUserByIdAndVersion(userIdValue, 0L));
+        assertFalse(myUserRepository.removeUserById(userIdValue));
+    }
+    
+    @Test
+    void pagesFollowIdOrder() {
+        List<Long> insertedIds = new ArrayList<>();
+        for (int userIndex = 0; userIndex < 7; userIndex++) {
+            insertedIds.add(myUserRepository.MyInsertNewUser(new UserEntity("Page", uniqueEmail("page"), 20 + userIndex)).getUserId());
+        }
+        
+        List<Long> pagedIds = new ArrayList<>();
+        Long afterUserId = insertedIds.get(0) - 1;
+        List<UserEntity> usersPage;
+        do {
+            usersPage = myUserRepository.retrieveUsersPage(afterUserId, 3);
+            assertTrue(usersPage.size() <= 3);
+            for (UserEntity pagedUser : usersPage) {
+                pagedIds.add(pagedUser.getUserId());
+                afterUserId = pagedUser.getUserId();
+            }
+        } while (!usersPage.isEmpty());
+        assertEquals(insertedIds, pagedIds);
+        
+        List<Long> summaryIds = new ArrayList<>();
+        myUserRepository.retrieveUserSummariesPage(insertedIds.get(0) - 1, 7).forEach(userSummary -> summaryIds.add(userSummary.userId()));
+        assertEquals(insertedIds, summaryIds);
+    }
+    
+    @Test
+    void bulkInsertRejectsDuplicateEmails() {
+        String existingEmail = uniqueEmail("existing");
+        String repeatedEmail = uniqueEmail("repeated");
+        myUserRepository.MyInsertNewUser(new UserEntity("Existing", existingEmail, 30));
+        
+        BulkInsertResult bulkResult = myUserRepository.insertUsersInBulk(List.of(
+            new UserEntity("One", uniqueEmail("bulk"), 21),
+            new UserEntity("Two", repeatedEmail, 22),
+            new UserEntity("Three", existingEmail, 23),
+            new UserEntity("Four", repeatedEmail, 24),
+            new UserEntity("Five", uniqueEmail("bulk"), 25)));
+        
+        assertEquals(3, bulkResult.getInsertedCount());
+        assertEquals(List.of(2, 3), bulkResult.getRejectedUsers().stream().map(BulkInsertResult.RejectedUser::getInputPosition).sorted().toList());
+        for (UserEntity insertedUser : bulkResult.getInsertedUsers()) {
+            assertNotNull(insertedUser.getUserId());
+            assertEquals(insertedUser.getUserName(), myUserRepository.findUserById(insertedUser.getUserId()).orElseThrow().getUserName());
+        }
+        assertEquals("Two", myUserRepository.findUserByEmailAddress(repeatedEmail).orElseThrow().getUserName());
+        assertEquals("Existing", myUserRepository.findUserByEmailAddress(existingEmail).orElseThrow().getUserName());
+    }
+    
+    @Test
+    void bulkLookupAndDeleteReportMissingKeys() {
+        List<String> userEmails = List.of(uniqueEmail("lookup"), uniqueEmail("lookup"), uniqueEmail("lookup"));
+        List<Long> userIds = new ArrayList<>();
+        for (String userEmail : userEmails) {
+            userIds.add(myUserRepository.MyInsertNewUser(new UserEntity("Lookup", userEmail, 33)).getUserId());
+        }
+        Long missingUserId = userIds.get(2) + 1_000_000;
+        String missingEmail = uniqueEmail("missing");
+        
+        BulkLookupResult<Long> idLookup = myUserRepository.findUsersByIds(List.of(userIds.get(2), missingUserId, userIds.get(0)));
+        assertEquals(List.of(userIds.get(2), userIds.get(0)), idLookup.getFoundUsers().stream().map(UserEntity::getUserId).toList());
+        assertEquals(List.of(missingUserId), idLookup.getMissingKeys());
+        
+        BulkLookupResult<String> emailLookup = myUserRepository.findUsersByEmails(List.of(missingEmail, userEmails.get(1)));
+        assertEquals(userIds.get(1), emailLookup.getUser(userEmails.get(1)).orElseThrow().getUserId());
+        assertEquals(List.of(missingEmail), emailLookup.getMissingKeys());
+        
+        BulkDeleteResult deleteResult = myUserRepository.removeUsersByIds(List.of(userIds.get(0), missingUserId, userIds.get(1)));
+        assertEquals(List.of(userIds.get(0), userIds.get(1)), deleteResult.getDeletedIds().stream().sorted().toList());
+        assertEquals(List.of(missingUserId), deleteResult.getMissingIds());
+        assertTrue(myUserRepository.findUserById(userIds.get(0)).isEmpty());
+        assertTrue(myUserRepository.findUserById(userIds.get(1)).isEmpty());
+        assertTrue(myUserRepository.findUserById(userIds.get(2)).isPresent());
+    }
+    
+    protected static String uniqueEmail(String emailPrefix) {
+        return emailPrefix + myEmailCounter.incrementAndGet() + "@example.com";
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.shard;
+
+import com.example.config.DatabaseConfigurationManager;
+import com.example.entity.UserEntity;
+import com.example.repository.UserRepositoryImplementation;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The last step of moving a user between shards: the source row goes away together with the change record, or neither does
+class ShardRowStoreTest {
+    private static final AtomicLong myEmailCounter = new AtomicLong(System.nanoTime());
+    
+    private SessionFactory mySessionFactory;
+    private UserRepositoryImplementation myUserRepository;
+    
+    @BeforeEach
+    void openDatabase() {
+        mySessionFactory = DatabaseConfigurationManager.getMySessionFactory();
+        myUserRepository = new UserRepositoryImplementation();
+    }
+    
+    @Test
+    void abortedRelocationLeavesSourceRowAndRecordsNothing() {
+        UserEntity currentRow = myUserRepository.MyInsertNewUser(new UserEntity("Source", uniqueEmail("source"), 30));
+        UserEntity copiedState = loadRow(currentRow.getUserId());
+        // A concurrent update on the source wins over the copy that was made from the older version
+        assertTrue(myUserRepository.updateUserFields(currentRow.getUserId(), 0L, "Changed", null, null));
+        long recordsBefore = countUpdateRecords(currentRow.getUserId());
+        
+        assertFalse(ShardRowStore.deleteRelocatedRow(mySessionFactory, copiedState, relocated(copiedState, uniqueEmail("moved"))));
+        
+        assertEquals("Changed", loadRow(currentRow.getUserId()).getUserName());
+        assertEquals(recordsBefore, countUpdateRecords(currentRow.getUserId()));
+    }
+    
+    @Test
+    void completedRelocationRemovesSourceRowAndRecordsTheUpdate() {
+        UserEntity currentRow = myUserRepository.MyInsertNewUser(new UserEntity("Source", uniqueEmail("source"), 30));
+        UserEntity copiedState = loadRow(currentRow.getUserId());
+        long recordsBefore = countUpdateRecords(currentRow.getUserId());
+        
+        assertTrue(ShardRowStore.deleteRelocatedRow(mySessionFactory, copiedState, relocated(copiedState, uniqueEmail("moved"))));
+        
+        assertTrue(ShardRowStore.loadRows(mySessionFactory, List.of(currentRow.getUserId())).isEmpty());
+        assertEquals(recordsBefore + 1, countUpdateRecords(currentRow.getUserId()));
+    }
+    
+    private UserEntity loadRow(Long userIdValue) {
+        return ShardRowStore.loadRows(mySessionFactory, List.of(userIdValue)).get(0);
+    }
+    
+    private static UserEntity relocated(UserEntity currentRow, String newEmail) {
+        UserEntity relocatedRow = new UserEntity(currentRow.getUserName(), newEmail, currentRow.getUserAge());
+        relocatedRow.setUserId(currentRow.getUserId());
+        relocatedRow.setUserCreatedAt(currentRow.getUserCreatedAt());
+        relocatedRow.setVersionNumber(currentRow.getVersionNumber() + 1);
+        return relocatedRow;
+    }
+    
+    private long countUpdateRecords(Long userIdValue) {
+        try (Session mySession = mySessionFactory.openSession()) {
+            return mySession.doReturningWork(myConnection -> {
+                try (PreparedStatement myStatement = myConnection.prepareStatement(
+                        "SELECT COUNT(*) FROM user_change_outbox WHERE user_id = ? AND change_type = 'UPDATED'")) {
+                    myStatement.setLong(1, userIdValue);
+                    try (ResultSet myResults = myStatement.executeQuery()) {
+                        myResults.next();
+                        return myResults.getLong(1);
+                    }
+                }
+            });
+        }
+    }
+    
+    private static String uniqueEmail(String emailPrefix) {
+        return emailPrefix + myEmailCounter.incrementAndGet() + "@example.com";
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The single-pass validators must accept exactly what the regex validators they replaced accepted
+class ValidationUtilsTest {
+    private static final Pattern ORACLE_EMAIL_PATTERN = 
+        Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
+    private static final Pattern ORACLE_NAME_PATTERN = 
+        Pattern.compile("^[a-zA-Zа-яА-ЯёЁ\\s-]{2,50}$");
+    
+    private static final long RANDOM_SEED = 20261018L;
+    private static final int RANDOM_CASE_COUNT = 300_000;
+    
+    // Cyrillic letters at and just outside the accepted ranges, including ё/Ё and the rest of the U+0400 block
+    private static final String CYRILLIC_CHARS = "аяАЯёЁжЖѐЀђЂіІїЇґҐӀЯаяѐёЀЁӿ";
+    // \s without UNICODE_CHARACTER_CLASS is [ \t\n\x0B\f\r]; the rest are Unicode spaces it must not match
+    private static final String WHITESPACE_CHARS = " \t\n\u000B\f\r \u0085       　\u001C\u001F";
+    private static final String ASCII_CHARS = "azAZmM09+_.-@!#$%&'*/=?^`{|}~\"(),:;<>[\\]";
+    private static final String OTHER_CHARS = "éÉüßøłİıªºµ\u0000\u007F﻿😀ⅰ";
+    
+    private static final List<String> EDGE_CASE_EMAILS = List.of(
+        "", "@", "a@b.co", "a@b.c", "a@b.c1", "a@b.1c", "a@b.co1", "a@b.co.", "a@.co", "@b.co", "a@b..co", 
+        "a@b.co.uk", "a@b-.co", "a@-b.co", "a.@b.co", ".a@b.co", "a+b_c.d-e@x.y-z.com", "a@@b.co", "a@b@c.co", 
+        "a@b.co\n", "\na@b.co", " a@b.co", "a@b.co ", "a@b .co", "a@b.c o", "a@b.со", "а@b.co", "a@б.co", 
+        "a@b.COM", "a@b.Co", "a@b.c-o", "a@b.c_o", "a@b_c.co", "a@b+c.co", "a@b.", "a@b", "a@.", "a@..co", 
+        "a@b.ée", "a@b.ⅰⅱ", "ab", "a@1.23", "a@1.2a", "a@b.cö"
+    );
+    
+    private static final List<String> EDGE_CASE_NAMES = List.of(
+        "", "a", "ab", "Ан", "ёЁ", "Ё", "a-", "--", "- ", " a", "a ", "  ", " \t", "a\tb", "a\nb", "a\u000Bb", 
+        "a\fb", "a\rb", "a b", "a\u0085b", "a b", "a　b", "Ѐлена", "ѐлена", "Іван", "Ґанна", 
+        "Jean-Luc", "Анна-Мария", "O'Brien", "José", "a1", "a_b", "a.b", " a ", "\ta\t", "\n\n", "-\n", 
+        "a".repeat(50), "a".repeat(51), "я".repeat(50), "я".repeat(51), " ".repeat(49) + "a", 
+        " ".repeat(48) + "ab", "-".repeat(50), "😀ab"
+    );
+    
+    @Test
+    void emailEdgeCasesMatchOldPattern() {
+        for (String email : EDGE_CASE_EMAILS) {
+            assertEmailMatchesOracle(email);
+        }
+        assertEquals(false, ValidationUtils.isValidEmail(null));
+    }
+    
+    @Test
+    void nameEdgeCasesMatchOldPattern() {
+        for (String name : EDGE_CASE_NAMES) {
+            assertNameMatchesOracle(name);
+        }
+        assertEquals(false, ValidationUtils.isValidName(null));
+    }
+    
+    @Test
+    void randomEmailsMatchOldPattern() {
+        Random random = new Random(RANDOM_SEED);
+        for (int caseIndex = 0; caseIndex < RANDOM_CASE_COUNT; caseIndex++) {
+            assertEmailMatchesOracle(randomEmail(random));
+        }
+    }
+    
+    @Test
+    void randomNamesMatchOldPattern() {
+        Random random = new Random(RANDOM_SEED + 1);
+        for (int caseIndex = 0; caseIndex < RANDOM_CASE_COUNT; caseIndex++) {
+            assertNameMatchesOracle(randomName(random));
+        }
+    }
+    
+    private static void assertEmailMatchesOracle(String email) {
+        boolean expectedResult = ORACLE_EMAIL_PATTERN.matcher(email).matches();
+        assertEquals(expectedResult, ValidationUtils.isValidEmail(email), () -> "email " + escape(email));
+    }
+    
+    private static void assertNameMatchesOracle(String name) {
+        boolean expectedResult = ORACLE_NAME_PATTERN.matcher(name).matches() && name.trim().length() >= 2;
+        assertEquals(expectedResult, ValidationUtils.isValidName(name), () -> "name " + escape(name));
+    }
+    
+    // Mostly well-formed local@domain.tld with one or two mutations, so both verdicts come up often
+    private static String randomEmail(Random random) {
+        if (random.nextInt(8) == 0) {
+            return randomString(random, random.nextInt(16), ASCII_CHARS + CYRILLIC_CHARS + WHITESPACE_CHARS + OTHER_CHARS);
+        }
+        StringBuilder emailBuilder = new StringBuilder();
+        emailBuilder.append(randomString(random, random.nextInt(5), "abcXYZ019+_.-"));
+        emailBuilder.append('@');
+        emailBuilder.append(randomString(random, random.nextInt(5), "abcXYZ019.-"));
+        if (random.nextInt(4) != 0) {
+            emailBuilder.append('.');
+        }
+        emailBuilder.append(randomString(random, random.nextInt(5), "comRUuk"));
+        int mutationCount = random.nextInt(3);
+        for (int mutationIndex = 0; mutationIndex < mutationCount; mutationIndex++) {
+            mutate(random, emailBuilder, ASCII_CHARS + CYRILLIC_CHARS + WHITESPACE_CHARS + OTHER_CHARS);
+        }
+        return emailBuilder.toString();
+    }
+    
+    // Lengths cluster around the 2 and 50 bounds; letters are mixed with whitespace, hyphens and near-miss characters
+    private static String randomName(Random random) {
+        int nameLength = switch (random.nextInt(4)) {
+            case 0 -> random.nextInt(5);
+            case 1 -> 48 + random.nextInt(5);
+            default -> random.nextInt(60);
+        };
+        StringBuilder nameBuilder = new StringBuilder();
+        for (int charIndex = 0; charIndex < nameLength; charIndex++) {
+            int charClass = random.nextInt(100);
+            if (charClass < 35) {
+                nameBuilder.append(randomChar(random, "abzABZ-"));
+            } else if (charClass < 65) {
+                nameBuilder.append(randomChar(random, CYRILLIC_CHARS));
+            } else if (charClass < 95) {
+                nameBuilder.append(randomChar(random, WHITESPACE_CHARS));
+            } else {
+                nameBuilder.append(randomChar(random, ASCII_CHARS + OTHER_CHARS));
+            }
+        }
+        return nameBuilder.toString();
+    }
+    
+    private static void mutate(Random random, StringBuilder valueBuilder, String alphabet) {
+        int position = valueBuilder.length() == 0 ? 0 : random.nextInt(valueBuilder.length() + 1);
+        switch (random.nextInt(3)) {
+            case 0 -> valueBuilder.insert(position, randomChar(random, alphabet));
+            case 1 -> {
+                if (position < valueBuilder.length()) {
+                    valueBuilder.setCharAt(position, randomChar(random, alphabet));
+                }
+            }
+            default -> {
+                if (position < valueBuilder.length()) {
+                    valueBuilder.deleteCharAt(position);
+                }
+            }
+        }
+    }
+    
+    private static String randomString(Random random, int length, String alphabet) {
+        StringBuilder valueBuilder = new StringBuilder(length);
+        for (int charIndex = 0; charIndex < length; charIndex++) {
+            valueBuilder.append(randomChar(random, alphabet));
+        }
+        return valueBuilder.toString();
+    }
+    
+    private static char randomChar(Random random, String alphabet) {
+        return alphabet.charAt(random.nextInt(alphabet.length()));
+    }
+    
+    private static String escape(String value) {
+        StringBuilder escapedValue = new StringBuilder("\"");
+        for (int charIndex = 0; charIndex < value.length(); charIndex++) {
+            char currentChar = value.charAt(charIndex);
+            if (currentChar < 0x20 || currentChar > 0x7E) {
+                escapedValue.append(String.format("\\u%04X", (int) currentChar));
+            } else {
+                escapedValue.append(currentChar);
+            }
+        }
+        return escapedValue.append('"').toString();
+    }
+}